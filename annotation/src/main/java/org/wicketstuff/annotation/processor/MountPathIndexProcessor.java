@@ -0,0 +1,149 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.annotation.processor;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+import org.wicketstuff.annotation.mount.MountPath;
+import org.wicketstuff.annotation.scan.MountPathIndex;
+
+/**
+ * Writes the {@link MountPathIndex} of the compiled classes, so that the
+ * {@link org.wicketstuff.annotation.scan.AnnotatedMountScanner} does not need to scan the class
+ * path at startup. The processor is registered as a service and runs automatically when this jar
+ * is on the compile class path.
+ * <p>
+ * On incremental builds the existing index is merged: entries of classes that are not compiled
+ * again are kept as long as the class still exists and is still annotated.
+ */
+@SupportedAnnotationTypes("org.wicketstuff.annotation.mount.MountPath")
+public class MountPathIndexProcessor extends AbstractProcessor
+{
+	private final Set<String> classNames = new TreeSet<String>();
+
+	@Override
+	public SourceVersion getSupportedSourceVersion()
+	{
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv)
+	{
+		for (Element element : roundEnv.getElementsAnnotatedWith(MountPath.class))
+		{
+			if (element.getKind() == ElementKind.CLASS)
+			{
+				classNames.add(processingEnv.getElementUtils()
+					.getBinaryName((TypeElement)element)
+					.toString());
+			}
+		}
+		if (roundEnv.processingOver() && !classNames.isEmpty())
+		{
+			writeIndex();
+		}
+		return false;
+	}
+
+	private void writeIndex()
+	{
+		Set<String> index = new TreeSet<String>(classNames);
+		try
+		{
+			readPreviousIndex(index);
+			FileObject file = processingEnv.getFiler().createResource(
+				StandardLocation.CLASS_OUTPUT, "", MountPathIndex.LOCATION);
+			Writer writer = new OutputStreamWriter(file.openOutputStream(), StandardCharsets.UTF_8);
+			try
+			{
+				writer.write("# Classes annotated with @MountPath, written by " +
+					getClass().getSimpleName() + "\n");
+				for (String className : index)
+				{
+					writer.write(className);
+					writer.write('\n');
+				}
+			}
+			finally
+			{
+				writer.close();
+			}
+		}
+		catch (IOException e)
+		{
+			processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+				"Unable to write " + MountPathIndex.LOCATION + ": " + e);
+		}
+	}
+
+	private void readPreviousIndex(Set<String> index)
+	{
+		try
+		{
+			FileObject file = processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT,
+				"", MountPathIndex.LOCATION);
+			BufferedReader reader = new BufferedReader(new InputStreamReader(
+				file.openInputStream(), StandardCharsets.UTF_8));
+			try
+			{
+				String line;
+				while ((line = reader.readLine()) != null)
+				{
+					line = line.trim();
+					if (line.length() > 0 && line.charAt(0) != '#' && isStillAnnotated(line))
+					{
+						index.add(line);
+					}
+				}
+			}
+			finally
+			{
+				reader.close();
+			}
+		}
+		catch (IOException e)
+		{
+			// no previous index, this is a full build
+		}
+	}
+
+	private boolean isStillAnnotated(String binaryName)
+	{
+		TypeElement type = processingEnv.getElementUtils().getTypeElement(
+			binaryName.replace('$', '.'));
+		return type != null && type.getAnnotation(MountPath.class) != null;
+	}
+}
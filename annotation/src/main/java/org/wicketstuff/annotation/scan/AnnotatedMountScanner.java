@@ -16,6 +16,8 @@
  */
 package org.wicketstuff.annotation.scan;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.wicket.Application;
@@ -24,6 +26,13 @@ import org.apache.wicket.core.request.mapper.HomePageMapper;
 import org.apache.wicket.request.IRequestMapper;
 import org.apache.wicket.request.component.IRequestablePage;
 import org.apache.wicket.core.request.mapper.MountedMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.Resource;
+import org.springframework.core.type.AnnotationMetadata;
+import org.springframework.core.type.classreading.MetadataReaderFactory;
+import org.springframework.core.type.classreading.SimpleMetadataReaderFactory;
+import org.springframework.util.ClassUtils;
 import org.wicketstuff.annotation.mount.MountPath;
 import org.wicketstuff.config.MatchingResources;
 
@@ -90,11 +99,58 @@ import org.wicketstuff.config.MatchingResources;
  * The third example will mount DogsPage at "/dogs" (as the primary) and as "/canines" and "/k9s" as
  * alternates using the {@link MountedMapper}.
  * 
+ * <p>
+ * If the classes were compiled with this jar on the class path, the
+ * {@link org.wicketstuff.annotation.processor.MountPathIndexProcessor} has written a
+ * {@link MountPathIndex} of all annotated classes. For class path patterns, the class files of jars
+ * and classes directories with an index are then looked up in their index instead of being read.
+ * Class files of roots without an index, e.g. jars built without the processor, and class files
+ * that are newer than the index of their classes directory are still read. Use
+ * {@link #setUseIndex(boolean)} to always read all class files.
+ * 
  * @author Doug Donohoe
  * @author Ronald Tetsuo Miura
  */
 public class AnnotatedMountScanner
 {
+	private static final Logger log = LoggerFactory.getLogger(AnnotatedMountScanner.class);
+
+	private boolean useIndex = true;
+
+	private MountPathIndex index;
+
+	private boolean indexLoaded;
+
+	/**
+	 * Sets whether a {@link MountPathIndex} found in the class path is used instead of scanning.
+	 * Defaults to <code>true</code>.
+	 * 
+	 * @param useIndex
+	 * @return this
+	 */
+	public AnnotatedMountScanner setUseIndex(boolean useIndex)
+	{
+		this.useIndex = useIndex;
+		return this;
+	}
+
+	/**
+	 * @return the index of annotated classes or <code>null</code> if there is none or it is not
+	 *         used
+	 */
+	protected MountPathIndex getIndex()
+	{
+		if (!useIndex)
+		{
+			return null;
+		}
+		if (!indexLoaded)
+		{
+			index = MountPathIndex.load(ClassUtils.getDefaultClassLoader());
+			indexLoaded = true;
+		}
+		return index;
+	}
 
 	/**
 	 * Get the Spring search pattern given a package name or part of a package name
@@ -135,8 +191,17 @@ public class AnnotatedMountScanner
 	 */
 	public List<Class<?>> getPatternMatches(String pattern)
 	{
-		MatchingResources resources = new MatchingResources(pattern);
-		List<Class<?>> mounts = resources.getAnnotatedMatches(MountPath.class);
+		List<Class<?>> mounts;
+		MountPathIndex index = getIndex();
+		if (index != null && index.supports(pattern))
+		{
+			mounts = getIndexedMatches(index, pattern);
+		}
+		else
+		{
+			MatchingResources resources = new MatchingResources(pattern);
+			mounts = resources.getAnnotatedMatches(MountPath.class);
+		}
 		for (Class<?> mount : mounts)
 		{
 			if (!(Page.class.isAssignableFrom(mount)))
@@ -148,6 +213,57 @@ public class AnnotatedMountScanner
 		return mounts;
 	}
 
+	/**
+	 * Finds the annotated classes matching a pattern. Class files covered by the index of their
+	 * class path root are looked up in it, all other class files are read.
+	 */
+	private List<Class<?>> getIndexedMatches(MountPathIndex index, String pattern)
+	{
+		List<Class<?>> mounts = new ArrayList<Class<?>>();
+		ClassLoader classLoader = ClassUtils.getDefaultClassLoader();
+		MetadataReaderFactory readerFactory = new SimpleMetadataReaderFactory(classLoader);
+		for (Resource classFile : new MatchingResources(pattern).getAllMatches())
+		{
+			try
+			{
+				MountPathIndex.Root root = index.getRoot(classFile);
+				if (root == null || !root.covers(classFile))
+				{
+					AnnotationMetadata metadata = readerFactory.getMetadataReader(classFile)
+						.getAnnotationMetadata();
+					if (metadata.hasAnnotation(MountPath.class.getName()))
+					{
+						mounts.add(ClassUtils.forName(metadata.getClassName(), classLoader));
+					}
+					continue;
+				}
+				String className = root.getClassName(classFile);
+				if (root.contains(className))
+				{
+					Class<?> mount = ClassUtils.forName(className, classLoader);
+					if (mount.isAnnotationPresent(MountPath.class))
+					{
+						mounts.add(mount);
+					}
+					else
+					{
+						log.warn("Class {} listed in {} is not annotated with @MountPath",
+							className, MountPathIndex.LOCATION);
+					}
+				}
+			}
+			catch (IOException e)
+			{
+				throw new RuntimeException("Unable to read " + classFile, e);
+			}
+			catch (ClassNotFoundException e)
+			{
+				throw new RuntimeException(e);
+			}
+		}
+		return mounts;
+	}
+
 	/**
 	 * Scan given package name or part of a package name
 	 * 
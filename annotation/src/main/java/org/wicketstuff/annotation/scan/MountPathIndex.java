@@ -0,0 +1,266 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.annotation.scan;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.springframework.core.io.Resource;
+
+/**
+ * The names of all classes annotated with {@link org.wicketstuff.annotation.mount.MountPath}, as
+ * written at compile time by the
+ * {@link org.wicketstuff.annotation.processor.MountPathIndexProcessor}. Every jar or classes
+ * directory built with the processor contains an index file at {@link #LOCATION}. The index is
+ * kept per class path root, i.e. per jar or classes directory; roots without an index file are
+ * not covered and have to be scanned.
+ * 
+ * @see AnnotatedMountScanner
+ */
+public class MountPathIndex
+{
+	/**
+	 * The location of the index files in the class path. Each line holds the binary name of one
+	 * class, lines starting with '#' are comments.
+	 */
+	public static final String LOCATION = "META-INF/wicketstuff/mount-path.index";
+
+	private static final String CLASSPATH_ALL_URL_PREFIX = "classpath*:";
+
+	private static final String CLASSPATH_URL_PREFIX = "classpath:";
+
+	private final List<Root> roots;
+
+	MountPathIndex(List<Root> roots)
+	{
+		this.roots = roots;
+	}
+
+	/**
+	 * Reads all index files visible to a class loader.
+	 * 
+	 * @param classLoader
+	 * @return the index or {@code null} if there is no index file in the class path
+	 */
+	public static MountPathIndex load(ClassLoader classLoader)
+	{
+		try
+		{
+			Enumeration<URL> urls = classLoader.getResources(LOCATION);
+			if (!urls.hasMoreElements())
+			{
+				return null;
+			}
+			Map<String, Root> roots = new LinkedHashMap<String, Root>();
+			while (urls.hasMoreElements())
+			{
+				URL url = urls.nextElement();
+				String location = location(url);
+				String root = location.substring(0, location.length() - LOCATION.length());
+				if (!roots.containsKey(root))
+				{
+					Set<String> classNames = new TreeSet<String>();
+					read(url, classNames);
+					roots.put(root, new Root(root, classNames, getLastModified(url)));
+				}
+			}
+			return new MountPathIndex(new ArrayList<Root>(roots.values()));
+		}
+		catch (IOException e)
+		{
+			throw new RuntimeException("Unable to load " + LOCATION, e);
+		}
+	}
+
+	private static void read(URL url, Set<String> classNames) throws IOException
+	{
+		InputStream in = url.openStream();
+		try
+		{
+			BufferedReader reader = new BufferedReader(new InputStreamReader(in,
+				StandardCharsets.UTF_8));
+			String line;
+			while ((line = reader.readLine()) != null)
+			{
+				line = line.trim();
+				if (line.length() > 0 && line.charAt(0) != '#')
+				{
+					classNames.add(line);
+				}
+			}
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	/**
+	 * @return the modification time of an index file in a classes directory, 0 for jars
+	 */
+	private static long getLastModified(URL url)
+	{
+		if (!"file".equals(url.getProtocol()))
+		{
+			return 0;
+		}
+		try
+		{
+			return new File(url.toURI()).lastModified();
+		}
+		catch (URISyntaxException e)
+		{
+			return 0;
+		}
+	}
+
+	private static String location(URL url)
+	{
+		try
+		{
+			// the class loader and Spring may escape differently
+			return url.toURI().normalize().toString();
+		}
+		catch (URISyntaxException e)
+		{
+			return url.toExternalForm();
+		}
+	}
+
+	/**
+	 * @return the names of all indexed classes
+	 */
+	public List<String> getClassNames()
+	{
+		Set<String> classNames = new TreeSet<String>();
+		for (Root root : roots)
+		{
+			classNames.addAll(root.classNames);
+		}
+		return new ArrayList<String>(classNames);
+	}
+
+	/**
+	 * Tells whether a search pattern can be answered with the index. Only class path patterns can,
+	 * other locations such as file system paths are not covered by the index.
+	 * 
+	 * @param pattern
+	 *            a Spring search pattern
+	 * @return whether {@link #getRoot(Resource)} can find the roots of the matched class files
+	 */
+	public boolean supports(String pattern)
+	{
+		return pattern.startsWith(CLASSPATH_ALL_URL_PREFIX) ||
+			pattern.startsWith(CLASSPATH_URL_PREFIX);
+	}
+
+	/**
+	 * Finds the index of the class path root of a class file.
+	 * 
+	 * @param classFile
+	 *            a class file in the class path
+	 * @return the index of its root or {@code null} if the root has no index
+	 * @throws IOException
+	 *             if the location of the class file can not be resolved
+	 */
+	public Root getRoot(Resource classFile) throws IOException
+	{
+		String location = location(classFile.getURL());
+		for (Root root : roots)
+		{
+			if (location.startsWith(root.location))
+			{
+				return root;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * The index of one jar or classes directory
+	 */
+	public static final class Root
+	{
+		private final String location;
+
+		private final Set<String> classNames;
+
+		private final long lastModified;
+
+		Root(String location, Set<String> classNames, long lastModified)
+		{
+			this.location = location;
+			this.classNames = Collections.unmodifiableSet(classNames);
+			this.lastModified = lastModified;
+		}
+
+		/**
+		 * Returns the name of a class file of this root.
+		 * 
+		 * @param classFile
+		 *            a class file of this root
+		 * @return the binary name of the class
+		 * @throws IOException
+		 *             if the location of the class file can not be resolved
+		 */
+		public String getClassName(Resource classFile) throws IOException
+		{
+			String path = location(classFile.getURL()).substring(location.length());
+			return path.substring(0, path.length() - ".class".length()).replace('/', '.');
+		}
+
+		/**
+		 * @param className
+		 *            the binary name of a class of this root
+		 * @return whether the class is listed as annotated
+		 */
+		public boolean contains(String className)
+		{
+			return classNames.contains(className);
+		}
+
+		/**
+		 * Tells whether the index covers a class file. The class files of a classes directory may be
+		 * compiled again without the processor, e.g. by an IDE, so class files newer than the index
+		 * are not covered.
+		 * 
+		 * @param classFile
+		 *            a class file of this root
+		 * @return whether the index tells if the class is annotated
+		 * @throws IOException
+		 *             if the modification time of the class file can not be read
+		 */
+		public boolean covers(Resource classFile) throws IOException
+		{
+			return lastModified == 0 || classFile.lastModified() <= lastModified;
+		}
+	}
+}
@@ -0,0 +1,72 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.annotation.scan;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH benchmark of the startup cost of {@link AnnotatedMountScanner#scanPackage(String)}, once
+ * answered from the {@link MountPathIndex} and once by scanning the class path. Every invocation
+ * uses a new scanner, as an application starting up would. Run with {@link #main(String[])} from
+ * the test classpath.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class AnnotatedMountScannerBenchmark
+{
+	/**
+	 * The package to mount. "org" includes all of Wicket and Spring in the scan.
+	 */
+	@Param({ "org.wicketstuff.annotation", "org" })
+	private String scanPackage;
+
+	@Benchmark
+	public AnnotatedMountList indexed()
+	{
+		return new AnnotatedMountScanner().scanPackage(scanPackage);
+	}
+
+	@Benchmark
+	public AnnotatedMountList scanned()
+	{
+		return new AnnotatedMountScanner().setUseIndex(false).scanPackage(scanPackage);
+	}
+
+	public static void main(String[] args) throws RunnerException
+	{
+		new Runner(new OptionsBuilder().include(AnnotatedMountScannerBenchmark.class.getSimpleName())
+			.build()).run();
+	}
+}
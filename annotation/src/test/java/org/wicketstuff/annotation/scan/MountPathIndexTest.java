@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.annotation.scan;
+
+import static org.hamcrest.CoreMatchers.hasItem;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.Resource;
+
+/**
+ * The index of the test classes is written by the processor while compiling the tests.
+ */
+public class MountPathIndexTest extends Assert
+{
+	private static final String SCAN_PACKAGE = AnnotationTest.class.getPackage().getName();
+
+	private static final String ALTERNATIVE_PATHS_PAGE = AnnotationTest.class.getName() +
+		"$AlternativePathsPage";
+
+	@Test
+	public void indexesAnnotatedTestPages()
+	{
+		MountPathIndex index = MountPathIndex.load(getClass().getClassLoader());
+		assertNotNull(index);
+		assertThat(index.getClassNames(), hasItem(ALTERNATIVE_PATHS_PAGE));
+		assertThat(index.getClassNames(), not(hasItem(AnnotationTest.class.getName())));
+	}
+
+	@Test
+	public void findsRootsOfClassFiles() throws IOException
+	{
+		MountPathIndex index = MountPathIndex.load(getClass().getClassLoader());
+		MountPathIndex.Root root = index.getRoot(classFile(ALTERNATIVE_PATHS_PAGE));
+
+		assertNotNull(root);
+		assertThat(root.getClassName(classFile(ALTERNATIVE_PATHS_PAGE)), is(ALTERNATIVE_PATHS_PAGE));
+		assertTrue(root.contains(ALTERNATIVE_PATHS_PAGE));
+		assertFalse(root.contains(AnnotationTest.class.getName()));
+		assertNull(index.getRoot(classFile(Test.class.getName())));
+		assertTrue(index.supports("classpath:/org/acme/**/*.class"));
+		assertFalse(index.supports("file:/tmp/classes/**/*.class"));
+	}
+
+	@Test
+	public void indexFindsSameClassesAsScanning()
+	{
+		List<Class<?>> indexed = new AnnotatedMountScanner().getPackageMatches(SCAN_PACKAGE);
+		List<Class<?>> scanned = new AnnotatedMountScanner().setUseIndex(false).getPackageMatches(
+			SCAN_PACKAGE);
+
+		assertThat(indexed.size(), is(4));
+		assertThat(new HashSet<Class<?>>(indexed), is(new HashSet<Class<?>>(scanned)));
+	}
+
+	@Test
+	public void usesValidIndex()
+	{
+		List<Class<?>> matches = newScanner(Long.MAX_VALUE, ALTERNATIVE_PATHS_PAGE)
+			.getPackageMatches(SCAN_PACKAGE);
+
+		assertThat(matches.size(), is(1));
+		assertThat(matches.get(0).getName(), is(ALTERNATIVE_PATHS_PAGE));
+	}
+
+	@Test
+	public void ignoresMissingIndexedClass()
+	{
+		List<Class<?>> matches = newScanner(Long.MAX_VALUE, ALTERNATIVE_PATHS_PAGE,
+			SCAN_PACKAGE + ".RemovedPage").getPackageMatches(SCAN_PACKAGE);
+
+		assertThat(matches.size(), is(1));
+	}
+
+	@Test
+	public void ignoresIndexedClassNoLongerAnnotated()
+	{
+		List<Class<?>> matches = newScanner(Long.MAX_VALUE, ALTERNATIVE_PATHS_PAGE,
+			AnnotationTest.class.getName()).getPackageMatches(SCAN_PACKAGE);
+
+		assertThat(matches.size(), is(1));
+		assertThat(matches, not(hasItem(AnnotationTest.class)));
+	}
+
+	@Test
+	public void readsClassFilesNewerThanIndex()
+	{
+		List<Class<?>> matches = newScanner(1, ALTERNATIVE_PATHS_PAGE).getPackageMatches(
+			SCAN_PACKAGE);
+
+		assertThat(matches.size(), is(4));
+	}
+
+	@Test
+	public void readsClassFilesOfRootsWithoutIndex()
+	{
+		final MountPathIndex index = new MountPathIndex(Collections.singletonList(
+			new MountPathIndex.Root("file:/nowhere/", new HashSet<String>(), Long.MAX_VALUE)));
+		List<Class<?>> matches = newScanner(index).getPackageMatches(SCAN_PACKAGE);
+
+		assertThat(matches.size(), is(4));
+	}
+
+	private static Resource classFile(String className)
+	{
+		return new ClassPathResource(className.replace('.', '/') + ".class");
+	}
+
+	/**
+	 * @return a scanner with an index of the root of the test classes
+	 */
+	private static AnnotatedMountScanner newScanner(long lastModified, String... classNames)
+	{
+		try
+		{
+			String location = classFile(ALTERNATIVE_PATHS_PAGE).getURL().toURI().toString();
+			location = location.substring(0, location.length() -
+				(ALTERNATIVE_PATHS_PAGE.replace('.', '/') + ".class").length());
+			return newScanner(new MountPathIndex(Collections.singletonList(new MountPathIndex.Root(
+				location, new HashSet<String>(Arrays.asList(classNames)), lastModified))));
+		}
+		catch (IOException | URISyntaxException e)
+		{
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static AnnotatedMountScanner newScanner(final MountPathIndex index)
+	{
+		return new AnnotatedMountScanner()
+		{
+			@Override
+			protected MountPathIndex getIndex()
+			{
+				return index;
+			}
+		};
+	}
+}
@@ -37,11 +37,39 @@ import java.lang.reflect.Method;
  * getComponentInstantiationListeners().add(dispatcher);
  * getFrameworkSettings().add(dispatcher);
  * }
+ * <p>
+ * The {@link OnEvent} handlers of a component class are resolved once, the first time an instance
+ * of that class is created. Components without any handler are skipped without further lookups.
+ * </p>
  */
 public class AnnotationEventDispatcher implements IEventDispatcher, IComponentInstantiationListener
 {
 	private static final AnnotationEventSink EMPTY_SINK = new AnnotationEventSink(Void.class);
+	private static final AnnotationEventDispatcherConfig DEFAULT_CONFIG = new AnnotationEventDispatcherConfig();
 	private final ClassMetaCache<AnnotationEventSink> eventSinkByClass = new ClassMetaCache<AnnotationEventSink>();
+	private final AnnotationEventDispatcherConfig config;
+
+	/**
+	 * Creates a dispatcher that reads its {@link AnnotationEventDispatcherConfig} from the
+	 * application meta data whenever an event reaches a component with {@link OnEvent} handlers,
+	 * so a configuration set later is taken into account.
+	 */
+	public AnnotationEventDispatcher()
+	{
+		this(null);
+	}
+
+	/**
+	 * Creates a dispatcher using the given configuration. The application meta data is not
+	 * consulted then, only changes to the given instance are seen.
+	 *
+	 * @param config
+	 *            the configuration, or {@code null} to look it up in the application meta data
+	 */
+	public AnnotationEventDispatcher(final AnnotationEventDispatcherConfig config)
+	{
+		this.config = config;
+	}
 
 	@Override
 	public void onInstantiation(final Component component)
@@ -76,15 +104,26 @@ public class AnnotationEventDispatcher implements IEventDispatcher, IComponentIn
 	public void dispatchEvent(final Object sink, final IEvent<?> event, final Component component)
 	{
 		AnnotationEventSink eventSink = eventSinkByClass.get(sink.getClass());
-		AnnotationEventDispatcherConfig config = Application.get().getMetaData(
-				Initializer.ANNOTATION_EVENT_DISPATCHER_CONFIG_CONTEXT_KEY);
-		if (eventSink != null
-				&& eventSink != EMPTY_SINK
-				&& (config.getEventFilter() == null || config.getEventFilter().isAssignableFrom(
-						event.getPayload().getClass())))
+		if (eventSink == null || eventSink == EMPTY_SINK)
+		{
+			return;
+		}
+		Class<?> eventFilter = getConfig().getEventFilter();
+		if (eventFilter == null || eventFilter.isAssignableFrom(event.getPayload().getClass()))
 		{
 			eventSink.onEvent(sink, event);
 		}
 	}
 
+	private AnnotationEventDispatcherConfig getConfig()
+	{
+		if (config != null)
+		{
+			return config;
+		}
+		AnnotationEventDispatcherConfig current = Application.get().getMetaData(
+			Initializer.ANNOTATION_EVENT_DISPATCHER_CONFIG_CONTEXT_KEY);
+		return current != null ? current : DEFAULT_CONFIG;
+	}
+
 }
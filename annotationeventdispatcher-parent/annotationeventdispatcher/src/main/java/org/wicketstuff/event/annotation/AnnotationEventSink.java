@@ -20,23 +20,23 @@ import static java.lang.reflect.Modifier.isPublic;
 import static java.util.Arrays.asList;
 import static org.apache.wicket.RuntimeConfigurationType.DEVELOPMENT;
 
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.HashSet;
-import java.util.List;
+import java.util.LinkedHashSet;
 import java.util.Set;
 
 import org.apache.wicket.Application;
 import org.apache.wicket.Component;
 import org.apache.wicket.event.IEvent;
-import org.apache.wicket.request.RequestHandlerExecutor;
 import org.apache.wicket.util.collections.ClassMetaCache;
 import org.apache.wicket.util.visit.Visit;
 
 class AnnotationEventSink
 {
-	private final ClassMetaCache<Set<Method>> onEventMethodsByParameterType = new ClassMetaCache<Set<Method>>();
-	private final ClassMetaCache<Set<Method>> onEventMethodsByPayloadType = new ClassMetaCache<Set<Method>>();
+	private static final OnEventHandler[] NO_HANDLERS = new OnEventHandler[0];
+
+	private final ClassMetaCache<Set<OnEventHandler>> onEventHandlersByParameterType = new ClassMetaCache<Set<OnEventHandler>>();
+	private final ClassMetaCache<OnEventHandler[]> onEventHandlersByPayloadType = new ClassMetaCache<OnEventHandler[]>();
 
 	public AnnotationEventSink(final Class<?> clazz)
 	{
@@ -52,7 +52,7 @@ class AnnotationEventSink
 				}
 				if (parameterTypes.length == 1)
 				{
-					addOnEventMethodForType(parameterTypes[0], method);
+					addOnEventHandlerForType(parameterTypes[0], new OnEventHandler(method));
 				}
 			}
 		}
@@ -80,15 +80,15 @@ class AnnotationEventSink
 		}
 	}
 
-	private void addOnEventMethodForType(final Class<?> type, final Method method)
+	private void addOnEventHandlerForType(final Class<?> type, final OnEventHandler handler)
 	{
-		Set<Method> methods = onEventMethodsByParameterType.get(type);
-		if (methods == null)
+		Set<OnEventHandler> handlers = onEventHandlersByParameterType.get(type);
+		if (handlers == null)
 		{
-			methods = new HashSet<Method>();
-			onEventMethodsByParameterType.put(type, methods);
+			handlers = new LinkedHashSet<OnEventHandler>();
+			onEventHandlersByParameterType.put(type, handlers);
 		}
-		methods.add(method);
+		handlers.add(handler);
 	}
 
 	public void onEvent(final Object sink, final IEvent<?> event)
@@ -102,79 +102,62 @@ class AnnotationEventSink
 		{
 			return;
 		}
-		Set<Method> onEventMethods = getOnEventMethods(payload.getClass());
-		if (!onEventMethods.isEmpty())
+		OnEventHandler[] handlers = getOnEventHandlers(payload.getClass());
+		if (handlers.length > 0)
 		{
-			onEvent(onEventMethods, sink, payload, event);
+			onEvent(handlers, sink, payload, event);
 		}
 	}
 
-	private Set<Method> getOnEventMethods(final Class<?> payloadType)
+	private OnEventHandler[] getOnEventHandlers(final Class<?> payloadType)
 	{
-		Set<Method> onEventMethods = onEventMethodsByPayloadType.get(payloadType);
-		if (onEventMethods == null)
+		OnEventHandler[] handlers = onEventHandlersByPayloadType.get(payloadType);
+		if (handlers == null)
 		{
-			onEventMethods = new HashSet<Method>();
+			Set<OnEventHandler> compatible = new LinkedHashSet<OnEventHandler>();
 			for (Class<?> type : CompatibleTypesCache.getCompatibleTypes(payloadType))
 			{
-				Set<Method> methods = onEventMethodsByParameterType.get(type);
-				if (methods != null)
+				Set<OnEventHandler> handlersForType = onEventHandlersByParameterType.get(type);
+				if (handlersForType != null)
 				{
-					onEventMethods.addAll(methods);
+					compatible.addAll(handlersForType);
 				}
 			}
-			onEventMethodsByPayloadType.put(payloadType, onEventMethods);
+			handlers = compatible.isEmpty() ? NO_HANDLERS
+				: compatible.toArray(new OnEventHandler[compatible.size()]);
+			onEventHandlersByPayloadType.put(payloadType, handlers);
 		}
-		return onEventMethods;
+		return handlers;
 	}
 
-	private void onEvent(final Set<Method> onEventMethods, final Object sink, final Object payload,
+	private void onEvent(final OnEventHandler[] handlers, final Object sink, final Object payload,
 			final IEvent<?> event)
 	{
-		try
+		for (OnEventHandler handler : handlers)
 		{
-			for (Method method : onEventMethods)
+			// a previous handler may have hidden or disabled the sink, so check every time
+			if (canCallListenerInterface(sink) && handler.isApplicableTo(payload))
 			{
-				if (canCallListenerInterface(sink))
+				Object result = handler.invoke(sink, payload);
+				if (result instanceof Visit<?>)
 				{
-					OnEvent onEvent = method.getAnnotation(OnEvent.class);
-					if (isPayloadApplicableToHandler(onEvent, payload))
+					Visit<?> visit = (Visit<?>) result;
+					if (visit.isDontGoDeeper())
+					{
+						event.dontBroadcastDeeper();
+					}
+					else if (visit.isStopped())
 					{
-						Object result = method.invoke(sink, payload);
-						if (result instanceof Visit<?>)
-						{
-							Visit<?> visit = (Visit<?>) result;
-							if (visit.isDontGoDeeper())
-							{
-								event.dontBroadcastDeeper();
-							}
-							else if (visit.isStopped())
-							{
-								event.stop();
-								break;
-							}
-						}
-						else if (onEvent.stop())
-						{
-							event.stop();
-							break;
-						}
+						event.stop();
+						break;
 					}
 				}
+				else if (handler.isStop())
+				{
+					event.stop();
+					break;
+				}
 			}
-		} catch (InvocationTargetException e)
-		{
-			if (e.getCause() instanceof RequestHandlerExecutor.ReplaceHandlerException)
-			{
-				throw ((RequestHandlerExecutor.ReplaceHandlerException)e.getCause());
-			}
-			else
-			{
-				throw new IllegalStateException("Failed to invoke @OnEvent method", e);
-			}
-		} catch (IllegalAccessException e)
-		{
-			throw new IllegalStateException("Failed to invoke @OnEvent method", e);
 		}
 	}
 
@@ -188,24 +171,4 @@ class AnnotationEventSink
 		}
 		return canCall;
 	}
-
-	private boolean isPayloadApplicableToHandler(final OnEvent onEvent, final Object payload)
-	{
-		boolean applicable = true;
-		if (payload instanceof ITypedEvent)
-		{
-			Class<?>[] methodTypes = onEvent.types();
-			ITypedEvent event = (ITypedEvent) payload;
-			List<Class<?>> eventTypes = event.getTypes();
-			for (int i = 0; i < methodTypes.length; i++)
-			{
-				if (!methodTypes[i].isAssignableFrom(eventTypes.get(i)))
-				{
-					applicable = false;
-					break;
-				}
-			}
-		}
-		return applicable;
-	}
 }
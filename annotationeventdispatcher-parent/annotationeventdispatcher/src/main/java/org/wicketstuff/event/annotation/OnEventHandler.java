@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.event.annotation;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.List;
+
+import org.apache.wicket.request.RequestHandlerExecutor;
+
+/**
+ * A single {@link OnEvent} annotated method, resolved once per class. The annotation attributes
+ * are read eagerly and the method is bound to a {@link MethodHandle} of type
+ * {@code (Object, Object)Object} so that dispatching does not go through reflection.
+ */
+class OnEventHandler
+{
+	private static final MethodType INVOKER_TYPE = MethodType.methodType(Object.class,
+		Object.class, Object.class);
+
+	private final Method method;
+	private final MethodHandle invoker;
+	private final IllegalAccessException accessFailure;
+	private final boolean stop;
+	private final Class<?>[] types;
+
+	OnEventHandler(final Method method)
+	{
+		this.method = method;
+		OnEvent onEvent = method.getAnnotation(OnEvent.class);
+		stop = onEvent.stop();
+		types = onEvent.types();
+
+		MethodHandle handle = null;
+		IllegalAccessException failure = null;
+		try
+		{
+			handle = MethodHandles.lookup().unreflect(method).asType(INVOKER_TYPE);
+		}
+		catch (IllegalAccessException e)
+		{
+			// keep the old behavior of failing when the event is delivered, not when the class
+			// is first seen
+			failure = e;
+		}
+		invoker = handle;
+		accessFailure = failure;
+	}
+
+	boolean isStop()
+	{
+		return stop;
+	}
+
+	boolean isApplicableTo(final Object payload)
+	{
+		if (types.length > 0 && payload instanceof ITypedEvent)
+		{
+			List<Class<?>> eventTypes = ((ITypedEvent)payload).getTypes();
+			for (int i = 0; i < types.length; i++)
+			{
+				if (!types[i].isAssignableFrom(eventTypes.get(i)))
+				{
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	Object invoke(final Object sink, final Object payload)
+	{
+		if (accessFailure != null)
+		{
+			throw new IllegalStateException("Failed to invoke @OnEvent method", accessFailure);
+		}
+		try
+		{
+			return invoker.invokeExact(sink, payload);
+		}
+		catch (RequestHandlerExecutor.ReplaceHandlerException e)
+		{
+			throw e;
+		}
+		catch (Throwable e)
+		{
+			throw new IllegalStateException("Failed to invoke @OnEvent method", e);
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		return method.toString();
+	}
+}
@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.event.annotation;
+
+import static org.apache.wicket.event.Broadcast.BREADTH;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.wicket.markup.html.WebMarkupContainer;
+import org.apache.wicket.markup.html.WebPage;
+import org.apache.wicket.mock.MockApplication;
+import org.apache.wicket.util.tester.WicketTester;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH benchmark broadcasting an event over a large component tree, where only a fraction of the
+ * components declares an {@link OnEvent} handler. Run with {@link #main(String[])} from the test
+ * classpath.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class AnnotationEventDispatcherBenchmark
+{
+	@Param({ "5000" })
+	private int components;
+
+	@Param({ "10" })
+	private int handlerEvery;
+
+	private WicketTester tester;
+	private WebPage page;
+
+	@Setup
+	public void setup()
+	{
+		tester = new WicketTester(new MockApplication());
+		page = new WebPage()
+		{
+			private static final long serialVersionUID = 1L;
+		};
+		WebMarkupContainer container = new WebMarkupContainer("container");
+		for (int i = 0; i < components; i++)
+		{
+			String id = "c" + i;
+			container.add(i % handlerEvery == 0 ? new HandlingContainer(id)
+				: new WebMarkupContainer(id));
+		}
+		page.add(container);
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		tester.destroy();
+	}
+
+	@Benchmark
+	public int broadcastMatchingPayload()
+	{
+		Counter counter = new Counter();
+		page.send(page, BREADTH, counter);
+		return counter.count;
+	}
+
+	@Benchmark
+	public void broadcastUnhandledPayload()
+	{
+		page.send(page, BREADTH, "unhandled");
+	}
+
+	public static void main(final String[] args) throws RunnerException
+	{
+		new Runner(new OptionsBuilder().include(
+			AnnotationEventDispatcherBenchmark.class.getSimpleName()).build()).run();
+	}
+
+	static class Counter
+	{
+		int count;
+	}
+
+	public static class HandlingContainer extends WebMarkupContainer
+	{
+		private static final long serialVersionUID = 1L;
+
+		public HandlingContainer(final String id)
+		{
+			super(id);
+		}
+
+		@OnEvent
+		public void onCounter(final Counter counter)
+		{
+			counter.count++;
+		}
+	}
+}
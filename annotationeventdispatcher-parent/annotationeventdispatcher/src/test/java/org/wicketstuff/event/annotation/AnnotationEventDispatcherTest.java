@@ -71,6 +71,25 @@ public class AnnotationEventDispatcherTest
 		verify(mock).onRuntimeExceptionEvent();
 	}
 
+	/**
+	 * Verify that a configuration set after the first event is used
+	 */
+	@Test
+	public void configurationSetLaterIsUsed()
+	{
+		component = tester.startComponentInPage(new TestComponent("id"));
+		component.send(testApp, BREADTH, "Hello!");
+		verify(mock).onStringEvent();
+
+		reset(mock);
+		testApp.setMetaData(Initializer.ANNOTATION_EVENT_DISPATCHER_CONFIG_CONTEXT_KEY,
+			new AnnotationEventDispatcherConfig().eventFilter(RuntimeException.class));
+		component.send(testApp, BREADTH, "Hello!");
+		component.send(testApp, BREADTH, new IllegalArgumentException());
+		verify(mock, never()).onStringEvent();
+		verify(mock).onRuntimeExceptionEvent();
+	}
+
 	/**
 	 * Verify that an exception is raised when the annotated method does not contain exactly one
 	 * parameter
@@ -1,5 +1,6 @@
 package org.wicketstuff.async.components;
 
+import org.apache.wicket.AttributeModifier;
 import org.apache.wicket.Component;
 import org.apache.wicket.behavior.AttributeAppender;
 import org.apache.wicket.markup.html.WebMarkupContainer;
@@ -31,8 +32,16 @@ public class ProgressBar extends Panel {
         add(wrapper);
 
         Component bar = makeBar("bar").add(new AttributeAppender("style", new TaskProgressPercentageStyleModel()));
+        bar.add(AttributeModifier.replace("data-async-task-bar", new PushTargetModel()));
         wrapper.add(bar);
-        wrapper.add(new Label("message", new TaskProgressMessageModel()));
+        wrapper.add(new Label("message", new TaskProgressMessageModel())
+                .add(AttributeModifier.replace("data-async-task-message", new PushTargetModel()))
+                .add(AttributeModifier.replace("data-async-task-percentage", new AbstractReadOnlyModel<Boolean>() {
+                    @Override
+                    public Boolean getObject() {
+                        return progressButton.isProgressPushEnabled() ? isShowPercentage() : null;
+                    }
+                })));
 
         stateCssClasses = new HashMap<StateDescription, IModel<String>>();
         this.add(new AttributeAppender("class", progressButton.new StateDispatcherModel<String>(new Model<String>(), stateCssClasses), " "));
@@ -99,6 +108,16 @@ public class ProgressBar extends Panel {
         }
     }
 
+    /**
+     * Identifies the elements updated by pushed progress messages, see {@link ProgressButton#enableProgressPush()}.
+     */
+    private class PushTargetModel extends AbstractReadOnlyModel<String> {
+        @Override
+        public String getObject() {
+            return progressButton.isProgressPushEnabled() ? progressButton.getMarkupId() : null;
+        }
+    }
+
     private int getPercentProgress() {
         double width = getTaskContainer().getProgress() == null ? getDefaultWidth() : getTaskContainer().getProgress();
         return (int) Math.round(Math.max(Math.min(width, 1d), 0d) * 100d);
@@ -2,7 +2,9 @@ package org.wicketstuff.async.components;
 
 import org.apache.wicket.Component;
 import org.apache.wicket.Page;
+import org.apache.wicket.WicketRuntimeException;
 import org.apache.wicket.ajax.AbstractAjaxTimerBehavior;
+import org.apache.wicket.ajax.AbstractDefaultAjaxBehavior;
 import org.apache.wicket.ajax.AjaxRequestTarget;
 import org.apache.wicket.ajax.markup.html.form.AjaxFallbackButton;
 import org.apache.wicket.behavior.AttributeAppender;
@@ -23,9 +25,17 @@ import java.util.Optional;
  * A progress button which allows to control a {@link Runnable}. Each such button will refresh itself as given by
  * by the {@link Duration} with which it was constructed. It represents a runnable by a {@link AbstractTaskContainer}.
  * In order to create tasks, the button needs to be provided a {@link IRunnableFactory}.
+ * <p/>
+ * Instead of polling, the progress can be pushed to the browser over a web socket connection by calling
+ * {@link #enableProgressPush()}. In this case, the page is only requested again once the task is no longer running.
  */
 public class ProgressButton extends AjaxFallbackButton {
 
+    /**
+     * Loaded reflectively to check for the optional web socket dependency before any class using it is loaded.
+     */
+    private static final String WEB_SOCKET_BEHAVIOR = "org.apache.wicket.protocol.ws.api.WebSocketBehavior";
+
     private final Map<StateDescription, IModel<String>> stateTextModels;
     private final Map<StateDescription, IModel<String>> stateCssClasses;
 
@@ -34,6 +44,9 @@ public class ProgressButton extends AjaxFallbackButton {
     private final IRunnableFactory runnableFactory;
     private final RefreshBehavior refreshBehavior;
 
+    private ProgressPushBehavior progressPushBehavior;
+    private ConclusionBehavior conclusionBehavior;
+
     private volatile IModel<? extends AbstractTaskContainer> taskContainerModel;
 
     public ProgressButton(String id, Form<?> form, IModel<? extends AbstractTaskContainer> taskContainerModel, Duration duration) {
@@ -89,6 +102,53 @@ public class ProgressButton extends AjaxFallbackButton {
         return taskContainerModel.getObject();
     }
 
+    /**
+     * Pushes the progress of running tasks over the page's web socket connection instead of refreshing the button
+     * and its dependants by an Ajax timer. Only the progress bars of this button are updated by pushed progress
+     * messages; all components are rendered again by a single Ajax request once the task is no longer running.
+     * This requires Wicket's native web socket support to be set up for the application. The
+     * {@code wicket-native-websocket-core} dependency is optional and has to be added by the application.
+     *
+     * @return This button.
+     * @throws WicketRuntimeException If Wicket's native web socket support is not on the class path.
+     */
+    public ProgressButton enableProgressPush() {
+        if (progressPushBehavior == null) {
+            checkWebSocketSupport();
+            progressPushBehavior = new ProgressPushBehavior(this);
+            conclusionBehavior = new ConclusionBehavior();
+            add(progressPushBehavior, conclusionBehavior);
+            if (getBehaviors(RefreshBehavior.class).size() > 0) {
+                remove(refreshBehavior);
+            }
+        }
+        return this;
+    }
+
+    private static void checkWebSocketSupport() {
+        try {
+            Class.forName(WEB_SOCKET_BEHAVIOR, false, ProgressButton.class.getClassLoader());
+        } catch (ClassNotFoundException e) {
+            throw new WicketRuntimeException("Progress push requires Wicket's native web socket support. Add a "
+                    + "dependency on org.apache.wicket:wicket-native-websocket-core and one of its container "
+                    + "implementations to the application.", e);
+        } catch (LinkageError e) {
+            throw new WicketRuntimeException("Progress push requires Wicket's native web socket support, which "
+                    + "could not be loaded.", e);
+        }
+    }
+
+    /**
+     * @return {@code true} if the progress is pushed to the browser rather than polled.
+     */
+    public boolean isProgressPushEnabled() {
+        return progressPushBehavior != null;
+    }
+
+    CharSequence getConclusionCallbackUrl() {
+        return conclusionBehavior.getCallbackUrl();
+    }
+
     /**
      * This method can be overridden to implement a custom behavior for starting tasks.
      *
@@ -141,10 +201,15 @@ public class ProgressButton extends AjaxFallbackButton {
             return;
         }
 
-	    targetOptional.ifPresent(target -> {
-            activateRefresh(target);
-            renderAll(target);
-        });
+        if (isProgressPushEnabled()) {
+            progressPushBehavior.subscribe();
+            targetOptional.ifPresent(this::renderAll);
+        } else {
+            targetOptional.ifPresent(target -> {
+                activateRefresh(target);
+                renderAll(target);
+            });
+        }
 
         concludeIfApplicable(targetOptional);
     }
@@ -169,9 +234,11 @@ public class ProgressButton extends AjaxFallbackButton {
 
     private void concludeIfApplicable(Optional<AjaxRequestTarget> targetOptional) {
         if (!getTaskContainer().isRunning()) {
-        	targetOptional.ifPresent(target -> {
-                refreshBehavior.stop(target);
-            });
+            if (!isProgressPushEnabled()) {
+                targetOptional.ifPresent(target -> {
+                    refreshBehavior.stop(target);
+                });
+            }
             if (getTaskContainer().isFailed()) {
                 onTaskError(targetOptional);
             } else if (!getTaskContainer().isCancelled()) {
@@ -217,6 +284,19 @@ public class ProgressButton extends AjaxFallbackButton {
         }
     }
 
+    private class ConclusionBehavior extends AbstractDefaultAjaxBehavior {
+        @Override
+        protected void respond(AjaxRequestTarget target) {
+            refresh(target);
+        }
+
+        @Override
+        public boolean canCallListener(Component component) {
+            // Skip check for the component being enabled
+            return component.isVisibleInHierarchy();
+        }
+    }
+
     /**
      * Adds a text model for the button which will be appended only if {@code taskState} and {@code interactionState} apply.
      *
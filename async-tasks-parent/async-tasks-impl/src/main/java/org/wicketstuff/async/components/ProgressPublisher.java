@@ -0,0 +1,261 @@
+package org.wicketstuff.async.components;
+
+import com.github.openjson.JSONObject;
+import org.apache.wicket.Application;
+import org.apache.wicket.IApplicationListener;
+import org.apache.wicket.MetaDataKey;
+import org.apache.wicket.protocol.ws.WebSocketSettings;
+import org.apache.wicket.protocol.ws.api.IWebSocketConnection;
+import org.apache.wicket.protocol.ws.api.registry.IKey;
+import org.apache.wicket.util.time.Duration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wicketstuff.async.task.AbstractTaskContainer;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes the progress of running tasks to the browser over the web socket connection of the page showing them.
+ * Progress is sampled by a single background thread at a fixed interval, which also limits the rate of messages
+ * sent to a client. A message is only sent if the progress or the progress message changed.
+ * <p/>
+ * Progress messages are written to the connection as plain text and never touch the page. Only once a task is no
+ * longer running the client is told to issue a single Ajax request to render the final state.
+ *
+ * @see ProgressPushBehavior
+ */
+public class ProgressPublisher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ProgressPublisher.class);
+
+    private static final MetaDataKey<ProgressPublisher> KEY = new MetaDataKey<ProgressPublisher>() {
+    };
+
+    /**
+     * Returns the publisher of an application, creating it on first use. The publisher is stopped when the
+     * application is destroyed.
+     *
+     * @param application The application.
+     * @return The progress publisher of the application.
+     */
+    public static ProgressPublisher get(Application application) {
+        ProgressPublisher publisher = application.getMetaData(KEY);
+        if (publisher == null) {
+            synchronized (ProgressPublisher.class) {
+                publisher = application.getMetaData(KEY);
+                if (publisher == null) {
+                    final ProgressPublisher created = new ProgressPublisher(application.getName(), Duration.milliseconds(500L));
+                    application.setMetaData(KEY, created);
+                    application.getApplicationListeners().add(new IApplicationListener() {
+                        @Override
+                        public void onAfterInitialized(Application application) {
+                        }
+
+                        @Override
+                        public void onBeforeDestroyed(Application application) {
+                            created.stop();
+                        }
+                    });
+                    publisher = created;
+                }
+            }
+        }
+        return publisher;
+    }
+
+    private final String applicationName;
+    private final ConcurrentMap<List<Object>, Subscription> subscriptions;
+
+    private volatile Duration interval;
+    private ScheduledExecutorService scheduler;
+
+    ProgressPublisher(String applicationName, Duration interval) {
+        this.applicationName = applicationName;
+        this.interval = interval;
+        this.subscriptions = new ConcurrentHashMap<List<Object>, Subscription>();
+    }
+
+    /**
+     * Sets the minimal time between two progress messages sent for the same task. The change takes effect for
+     * the next started sampling thread.
+     *
+     * @param interval The sampling interval.
+     * @return This instance.
+     */
+    public ProgressPublisher setInterval(Duration interval) {
+        this.interval = interval;
+        return this;
+    }
+
+    public Duration getInterval() {
+        return interval;
+    }
+
+    /**
+     * Starts publishing the progress of a task to a web socket connection.
+     *
+     * @param sessionId     The session of the connection.
+     * @param key           The key of the connection.
+     * @param markupId      The markup id of the {@link ProgressButton} controlling the task.
+     * @param taskContainer The task.
+     */
+    public void subscribe(String sessionId, IKey key, String markupId, AbstractTaskContainer taskContainer) {
+        subscriptions.put(subscriptionKey(sessionId, key, markupId), new Subscription(sessionId, key, markupId, taskContainer));
+        start();
+    }
+
+    /**
+     * Stops publishing the progress for all tasks shown by a connection.
+     *
+     * @param sessionId The session of the connection.
+     * @param key       The key of the connection.
+     */
+    public void unsubscribe(String sessionId, IKey key) {
+        Iterator<Subscription> iterator = subscriptions.values().iterator();
+        while (iterator.hasNext()) {
+            Subscription subscription = iterator.next();
+            if (subscription.sessionId.equals(sessionId) && subscription.key.equals(key)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    int getSubscriptionCount() {
+        return subscriptions.size();
+    }
+
+    private synchronized void start() {
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "async-task-progress-" + applicationName);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            long millis = interval.getMilliseconds();
+            scheduler.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        publish();
+                    } catch (RuntimeException e) {
+                        LOGGER.warn("Could not publish task progress", e);
+                    }
+                }
+            }, millis, millis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+        subscriptions.clear();
+    }
+
+    /**
+     * Samples all subscribed tasks once and sends the changes.
+     */
+    void publish() {
+        Application application = Application.get(applicationName);
+        if (application == null) {
+            return;
+        }
+        for (Subscription subscription : subscriptions.values()) {
+            IWebSocketConnection connection = WebSocketSettings.Holder.get(application).getConnectionRegistry()
+                    .getConnection(application, subscription.sessionId, subscription.key);
+            if (connection == null || !connection.isOpen()) {
+                continue;
+            }
+            String message;
+            boolean done;
+            try {
+                done = !subscription.taskContainer.isRunning();
+                message = done ? doneMessage(subscription) : subscription.progressMessage();
+            } catch (RuntimeException e) {
+                // The task container expired or its task manager is gone
+                LOGGER.debug("Dropping progress subscription of task {}", subscription.taskContainer.getId(), e);
+                subscriptions.remove(subscription.subscriptionKey(), subscription);
+                continue;
+            } finally {
+                subscription.taskContainer.detach();
+            }
+            if (done) {
+                subscriptions.remove(subscription.subscriptionKey(), subscription);
+            }
+            if (message != null) {
+                try {
+                    connection.sendMessage(message);
+                } catch (Exception e) {
+                    LOGGER.debug("Could not send task progress to {}", subscription.key, e);
+                }
+            }
+        }
+    }
+
+    private static String doneMessage(Subscription subscription) {
+        return new JSONObject()
+                .put(ProgressPushBehavior.TASK_PROPERTY, subscription.markupId)
+                .put("done", true)
+                .toString();
+    }
+
+    private static List<Object> subscriptionKey(String sessionId, IKey key, String markupId) {
+        return Arrays.<Object>asList(sessionId, key, markupId);
+    }
+
+    private static class Subscription {
+
+        private final String sessionId;
+        private final IKey key;
+        private final String markupId;
+        private final AbstractTaskContainer taskContainer;
+
+        private Double lastProgress;
+        private String lastMessage;
+
+        private Subscription(String sessionId, IKey key, String markupId, AbstractTaskContainer taskContainer) {
+            this.sessionId = sessionId;
+            this.key = key;
+            this.markupId = markupId;
+            this.taskContainer = taskContainer;
+        }
+
+        private List<Object> subscriptionKey() {
+            return ProgressPublisher.subscriptionKey(sessionId, key, markupId);
+        }
+
+        /**
+         * @return The progress message or {@code null} if nothing changed since the last message.
+         */
+        private String progressMessage() {
+            Double progress = taskContainer.getProgress();
+            String message = taskContainer.getProgressMessage();
+            if (progress == null || (progress.equals(lastProgress) && equal(message, lastMessage))) {
+                return null;
+            }
+            lastProgress = progress;
+            lastMessage = message;
+            return new JSONObject()
+                    .put(ProgressPushBehavior.TASK_PROPERTY, markupId)
+                    .put("progress", Math.max(Math.min(progress, 1d), 0d))
+                    .put("message", message == null ? "" : message)
+                    .toString();
+        }
+
+        private static boolean equal(Object first, Object second) {
+            return first == null ? second == null : first.equals(second);
+        }
+    }
+}
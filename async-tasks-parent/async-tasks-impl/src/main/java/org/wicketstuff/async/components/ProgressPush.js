@@ -0,0 +1,54 @@
+/*
+ * Applies task progress pushed by org.wicketstuff.async.components.ProgressPublisher
+ * and requests the final state of a task once it is no longer running.
+ */
+;(function ($) {
+	'use strict';
+
+	window.WicketStuff = window.WicketStuff || {};
+
+	if (window.WicketStuff.AsyncTasks) {
+		return;
+	}
+
+	var callbackUrls = {};
+
+	function selector(attribute, taskId) {
+		return '[' + attribute + '="' + taskId + '"]';
+	}
+
+	function onMessage(jqEvent, data) {
+		var update;
+		try {
+			update = JSON.parse(data);
+		} catch (e) {
+			return;
+		}
+		if (!update || !update.asyncTask) {
+			return;
+		}
+		if (update.done) {
+			var url = callbackUrls[update.asyncTask];
+			if (url) {
+				delete callbackUrls[update.asyncTask];
+				Wicket.Ajax.get({u: url});
+			}
+			return;
+		}
+		var percent = Math.round(update.progress * 100);
+		$(selector('data-async-task-bar', update.asyncTask)).css('width', percent + '%');
+		$(selector('data-async-task-message', update.asyncTask)).each(function () {
+			var $message = $(this);
+			var suffix = $message.attr('data-async-task-percentage') === 'true' ? '(' + percent + '%)' : '';
+			$message.text(update.message + ' ' + suffix);
+		});
+	}
+
+	window.WicketStuff.AsyncTasks = {
+		register: function (taskId, callbackUrl) {
+			callbackUrls[taskId] = callbackUrl;
+		}
+	};
+
+	Wicket.Event.subscribe('/websocket/message', onMessage);
+})(jQuery);
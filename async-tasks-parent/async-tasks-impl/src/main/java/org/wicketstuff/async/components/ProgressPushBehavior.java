@@ -0,0 +1,73 @@
+package org.wicketstuff.async.components;
+
+import org.apache.wicket.Component;
+import org.apache.wicket.core.util.lang.WicketObjects;
+import org.apache.wicket.markup.head.IHeaderResponse;
+import org.apache.wicket.markup.head.JavaScriptHeaderItem;
+import org.apache.wicket.markup.head.OnDomReadyHeaderItem;
+import org.apache.wicket.protocol.ws.api.WebSocketBehavior;
+import org.apache.wicket.protocol.ws.api.message.ClosedMessage;
+import org.apache.wicket.protocol.ws.api.message.ConnectedMessage;
+import org.apache.wicket.protocol.ws.api.registry.IKey;
+import org.apache.wicket.request.resource.JavaScriptResourceReference;
+import org.apache.wicket.request.resource.ResourceReference;
+import org.wicketstuff.async.task.AbstractTaskContainer;
+
+/**
+ * Replaces the Ajax timer of a {@link ProgressButton} by progress messages pushed over a web socket connection.
+ * Requires Wicket's native web socket support to be set up for the application.
+ *
+ * @see ProgressButton#enableProgressPush()
+ * @see ProgressPublisher
+ */
+public class ProgressPushBehavior extends WebSocketBehavior {
+
+    /**
+     * The property of a pushed JSON message holding the markup id of the progress button.
+     */
+    static final String TASK_PROPERTY = "asyncTask";
+
+    private static final ResourceReference JAVASCRIPT = new JavaScriptResourceReference(ProgressPushBehavior.class, "ProgressPush.js");
+
+    private final ProgressButton progressButton;
+
+    private String sessionId;
+    private IKey key;
+
+    ProgressPushBehavior(ProgressButton progressButton) {
+        this.progressButton = progressButton;
+    }
+
+    @Override
+    protected void onConnect(ConnectedMessage message) {
+        sessionId = message.getSessionId();
+        key = message.getKey();
+        subscribe();
+    }
+
+    @Override
+    protected void onClose(ClosedMessage message) {
+        ProgressPublisher.get(message.getApplication()).unsubscribe(message.getSessionId(), message.getKey());
+    }
+
+    /**
+     * Starts publishing the progress of the button's task if the task is running and the page is connected.
+     */
+    void subscribe() {
+        AbstractTaskContainer taskContainer = progressButton.getTaskContainer();
+        if (key != null && taskContainer.isRunning()) {
+            // The publisher samples the task on its own thread and therefore gets its own copy of the container
+            taskContainer.detach();
+            ProgressPublisher.get(progressButton.getApplication()).subscribe(sessionId, key,
+                    progressButton.getMarkupId(), WicketObjects.cloneObject(taskContainer));
+        }
+    }
+
+    @Override
+    public void renderHead(Component component, IHeaderResponse response) {
+        super.renderHead(component, response);
+        response.render(JavaScriptHeaderItem.forReference(JAVASCRIPT));
+        response.render(OnDomReadyHeaderItem.forScript(String.format("WicketStuff.AsyncTasks.register('%s', '%s');",
+                progressButton.getMarkupId(), progressButton.getConclusionCallbackUrl())));
+    }
+}
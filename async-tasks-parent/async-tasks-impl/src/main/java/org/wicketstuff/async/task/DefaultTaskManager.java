@@ -1,10 +1,18 @@
 package org.wicketstuff.async.task;
 
-import com.google.common.collect.MapMaker;
+import org.apache.wicket.Session;
 
+import java.time.Clock;
 import java.util.UUID;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * The default task manager. Tasks are executed on a bounded executor as configured by {@link TaskManagerSettings}.
+ * Task containers expire after their life time; expiry is tracked by a hashed timing wheel which is swept by a
+ * background reaper thread. The reaper is only running while containers are registered, so an idle task manager
+ * (such as the unused {@link #getInstance() singleton}) holds no threads.
+ */
 public abstract class DefaultTaskManager implements ITaskManager {
 
     private static final DefaultTaskManager INSTANCE = new DefaultTaskManager() {
@@ -31,17 +39,46 @@ public abstract class DefaultTaskManager implements ITaskManager {
     }
 
     private final ExecutorService executorService;
+    private final boolean ownsExecutorService;
+    private final int maxTasksPerOwner;
 
     private final ConcurrentMap<String, ITaskManagerHook> taskManagerHooks;
+    private final ConcurrentMap<String, AtomicInteger> tasksByOwner;
 
-    private final ConcurrentNavigableMap<Long, ITaskManagerHook> taskManagerRemovalRegister;
-    private final ConcurrentMap<ITaskManagerHook, Long> taskManagerRemovalBackRegister;
+    private final HashedExpiryWheel expiryWheel;
+    private final long expiryTickMillis;
+    private final Clock clock;
+    private final Object reaperLock = new Object();
+    private ScheduledExecutorService reaper;
+    private boolean shutdown;
+
+    private final TaskManagerMetrics metrics;
 
     public DefaultTaskManager() {
-        this.executorService = Executors.newCachedThreadPool();
-        this.taskManagerHooks = new MapMaker().weakValues().makeMap();
-        this.taskManagerRemovalRegister = new ConcurrentSkipListMap<Long, ITaskManagerHook>();
-        this.taskManagerRemovalBackRegister = new MapMaker().weakKeys().makeMap();
+        this(new TaskManagerSettings());
+    }
+
+    public DefaultTaskManager(TaskManagerSettings settings) {
+        if (settings.getExecutorService() != null) {
+            this.executorService = settings.getExecutorService();
+            this.ownsExecutorService = false;
+        } else {
+            ThreadFactory threadFactory = settings.getThreadFactory();
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(settings.getPoolSize(), settings.getPoolSize(),
+                    60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(settings.getQueueCapacity()),
+                    threadFactory == null ? new NamedThreadFactory("async-task-", false) : threadFactory);
+            executor.allowCoreThreadTimeOut(true);
+            this.executorService = executor;
+            this.ownsExecutorService = true;
+        }
+        this.maxTasksPerOwner = settings.getMaxTasksPerOwner();
+        this.taskManagerHooks = new ConcurrentHashMap<String, ITaskManagerHook>();
+        this.tasksByOwner = new ConcurrentHashMap<String, AtomicInteger>();
+        this.clock = settings.getClock();
+        this.expiryWheel = new HashedExpiryWheel(settings.getExpiryTickMillis(), settings.getExpiryWheelSize(),
+                clock.millis());
+        this.expiryTickMillis = settings.getExpiryTickMillis();
+        this.metrics = new TaskManagerMetrics(executorService, expiryWheel);
     }
 
     @Override
@@ -50,34 +87,47 @@ public abstract class DefaultTaskManager implements ITaskManager {
     }
 
     @Override
-    public AbstractTaskContainer makeOrRenewContainer(String id, long lifeTime, TimeUnit unit) {
-        cleanUp();
-        taskManagerHooks.putIfAbsent(id, makeTaskManagerHook(id));
-        registerRemoval(id, lifeTime, unit);
+    public AbstractTaskContainer makeOrRenewContainer(final String id, long lifeTime, TimeUnit unit) {
+        final long deadline = unit.toMillis(lifeTime) + clock.millis();
+        // Atomic with the removal of the hook by cleanUp()
+        taskManagerHooks.compute(id, (key, hook) -> {
+            expiryWheel.schedule(id, deadline);
+            return hook != null ? hook : makeTaskManagerHook(id);
+        });
+        startReaper();
         return makeTaskContainer(id);
     }
 
-    private void registerRemoval(String id, long lifeTime, TimeUnit unit) {
-        ITaskManagerHook hook = taskManagerHooks.get(id);
-        if (hook != null) {
-
-            long removalTime = unit.toMillis(lifeTime) + System.currentTimeMillis();
-
-            // Remove current scheduled removal
-            Long currentRemovalTime = taskManagerRemovalBackRegister.get(hook);
-            if (currentRemovalTime != null) {
-                taskManagerRemovalRegister.remove(currentRemovalTime);
+    private void startReaper() {
+        synchronized (reaperLock) {
+            if (reaper != null || shutdown) {
+                return;
             }
+            reaper = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("async-task-reaper-", true));
+            reaper.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    cleanUp();
+                    stopReaperIfIdle();
+                }
+            }, expiryTickMillis, expiryTickMillis, TimeUnit.MILLISECONDS);
+        }
+    }
 
-            // Find an empty spot in the sorted map's key register
-            removalTime--;
-            do {
-                removalTime++;
-                taskManagerRemovalRegister.putIfAbsent(removalTime, hook);
-            } while (taskManagerRemovalRegister.get(removalTime) != hook);
+    boolean isReaperRunning() {
+        synchronized (reaperLock) {
+            return reaper != null;
+        }
+    }
 
-            // Back reference the removal
-            taskManagerRemovalBackRegister.put(hook, removalTime);
+    private void stopReaperIfIdle() {
+        synchronized (reaperLock) {
+            // Containers are scheduled before the reaper is started, so a container scheduled concurrently either
+            // keeps this reaper alive or starts a new one
+            if (reaper != null && expiryWheel.size() == 0) {
+                reaper.shutdown();
+                reaper = null;
+            }
         }
     }
 
@@ -93,19 +143,183 @@ public abstract class DefaultTaskManager implements ITaskManager {
         return taskManagerHooks.get(id);
     }
 
+    /**
+     * Submits a task for execution. If the task cannot be accepted, because the queue is full or because the owner
+     * of the current request exceeds its task limit, a failed future is returned instead.
+     *
+     * @param runnable The task to run.
+     * @return The future of the task.
+     */
     protected Future<?> submit(Runnable runnable) {
-        return executorService.submit(runnable);
+        String owner = maxTasksPerOwner > 0 ? getTaskOwner() : null;
+        AtomicInteger ownerTasks = null;
+        if (owner != null) {
+            ownerTasks = acquire(owner);
+            if (ownerTasks == null) {
+                return reject(new RejectedExecutionException(String.format(
+                        "Owner %s already has %d tasks queued or running", owner, maxTasksPerOwner)));
+            }
+        }
+        TrackedTask task = new TrackedTask(runnable, owner, ownerTasks);
+        try {
+            executorService.execute(task);
+        } catch (RejectedExecutionException e) {
+            task.release();
+            return reject(e);
+        }
+        metrics.onSubmit();
+        return task;
+    }
+
+    /**
+     * Determines the owner of a task that is submitted by the current thread. The per-owner task limit is only
+     * applied to tasks with an owner.
+     *
+     * @return The id of the current session or {@code null} if there is no bound session.
+     */
+    protected String getTaskOwner() {
+        return Session.exists() ? Session.get().getId() : null;
+    }
+
+    private AtomicInteger acquire(String owner) {
+        while (true) {
+            AtomicInteger count = tasksByOwner.get(owner);
+            if (count == null) {
+                count = new AtomicInteger();
+                AtomicInteger existing = tasksByOwner.putIfAbsent(owner, count);
+                if (existing != null) {
+                    count = existing;
+                }
+            }
+            int current = count.get();
+            if (current < 0) {
+                // The counter was released concurrently and removed from the map
+                continue;
+            }
+            if (current >= maxTasksPerOwner) {
+                return null;
+            }
+            if (count.compareAndSet(current, current + 1)) {
+                return count;
+            }
+        }
+    }
+
+    private void release(String owner, AtomicInteger count) {
+        if (count.decrementAndGet() == 0 && count.compareAndSet(0, -1)) {
+            tasksByOwner.remove(owner, count);
+        }
+    }
+
+    private Future<?> reject(RejectedExecutionException e) {
+        metrics.onReject();
+        final RejectedExecutionException cause = e;
+        FutureTask<Void> failed = new FutureTask<Void>(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                throw cause;
+            }
+        });
+        failed.run();
+        return failed;
     }
 
     protected abstract AbstractTaskContainer makeTaskContainer(String id);
 
     protected ITaskManagerHook makeTaskManagerHook(String id) {
-        return new DefaultTaskManagerHook(id);
+        return new DefaultTaskManagerHook(id, this);
+    }
+
+    /**
+     * @return Counters about the tasks and containers of this task manager.
+     */
+    public TaskManagerMetrics getMetrics() {
+        return metrics;
     }
 
+    /**
+     * Removes all expired containers. This is done regularly by a background thread but can also be triggered
+     * explicitly.
+     */
     @Override
     public void cleanUp() {
-        taskManagerRemovalRegister.headMap(System.currentTimeMillis()).clear();
+        for (final String id : expiryWheel.expire(clock.millis())) {
+            // The container may have been renewed since it expired
+            taskManagerHooks.computeIfPresent(id, (key, hook) -> expiryWheel.isScheduled(id) ? hook : null);
+        }
+    }
+
+    /**
+     * Stops the background reaper and, unless a custom executor was configured, the worker threads of this task
+     * manager. Running tasks are not interrupted.
+     */
+    public void shutdown() {
+        synchronized (reaperLock) {
+            shutdown = true;
+            if (reaper != null) {
+                reaper.shutdownNow();
+                reaper = null;
+            }
+        }
+        if (ownsExecutorService) {
+            executorService.shutdown();
+        }
+    }
+
+    private class TrackedTask extends FutureTask<Void> {
+
+        private final String owner;
+        private AtomicInteger ownerTasks;
+
+        private TrackedTask(Runnable runnable, String owner, AtomicInteger ownerTasks) {
+            super(runnable, null);
+            this.owner = owner;
+            this.ownerTasks = ownerTasks;
+        }
+
+        @Override
+        public void run() {
+            if (isDone()) {
+                // Cancelled while waiting in the queue
+                return;
+            }
+            long start = System.nanoTime();
+            try {
+                super.run();
+            } finally {
+                metrics.onComplete(System.nanoTime() - start);
+            }
+        }
+
+        @Override
+        protected void done() {
+            release();
+        }
+
+        private synchronized void release() {
+            if (ownerTasks != null) {
+                DefaultTaskManager.this.release(owner, ownerTasks);
+                ownerTasks = null;
+            }
+        }
     }
 
+    private static class NamedThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger counter = new AtomicInteger();
+        private final String prefix;
+        private final boolean daemon;
+
+        private NamedThreadFactory(String prefix, boolean daemon) {
+            this.prefix = prefix;
+            this.daemon = daemon;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(daemon);
+            return thread;
+        }
+    }
 }
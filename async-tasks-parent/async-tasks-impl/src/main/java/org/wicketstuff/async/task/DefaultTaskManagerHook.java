@@ -5,12 +5,18 @@ import java.util.concurrent.Future;
 public class DefaultTaskManagerHook implements ITaskManagerHook {
 
     private final String id;
+    private final DefaultTaskManager taskManager;
 
     private Runnable runnable;
     private Future<?> future;
 
     public DefaultTaskManagerHook(String id) {
+        this(id, DefaultTaskManager.getInstance());
+    }
+
+    public DefaultTaskManagerHook(String id, DefaultTaskManager taskManager) {
         this.id = id;
+        this.taskManager = taskManager;
     }
 
     @Override
@@ -34,6 +40,6 @@ public class DefaultTaskManagerHook implements ITaskManagerHook {
             future.cancel(true);
         }
         this.runnable = runnable;
-        this.future = DefaultTaskManager.getInstance().submit(runnable);
+        this.future = taskManager.submit(runnable);
     }
 }
@@ -0,0 +1,109 @@
+package org.wicketstuff.async.task;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A hashed timing wheel keeping track of the expiry of task containers. Scheduling and cancelling an expiry is
+ * constant in time; expiring only visits the buckets of the ticks that passed since the last call. All operations
+ * hold the lock of the wheel, so an id is always in the bucket of its current entry.
+ */
+class HashedExpiryWheel {
+
+    private final long tickMillis;
+    private final int mask;
+    private final Set<Entry>[] buckets;
+    private final Map<String, Entry> entries;
+
+    private long lastTick;
+
+    @SuppressWarnings("unchecked")
+    HashedExpiryWheel(long tickMillis, int wheelSize, long now) {
+        this.tickMillis = tickMillis;
+        int size = Integer.highestOneBit(wheelSize);
+        if (size < wheelSize) {
+            size <<= 1;
+        }
+        this.mask = size - 1;
+        this.buckets = new Set[size];
+        for (int i = 0; i < size; i++) {
+            buckets[i] = new HashSet<Entry>();
+        }
+        this.entries = new HashMap<String, Entry>();
+        this.lastTick = now / tickMillis;
+    }
+
+    /**
+     * Schedules the expiry of an id, replacing any previously scheduled expiry of the same id.
+     */
+    synchronized void schedule(String id, long deadline) {
+        // Deadlines in the past go into the current bucket which is visited by the next expiry
+        long tick = Math.max(deadline / tickMillis, lastTick);
+        Entry entry = new Entry(id, deadline, (int) (tick & mask));
+        buckets[entry.bucket].add(entry);
+        Entry previous = entries.put(id, entry);
+        if (previous != null) {
+            buckets[previous.bucket].remove(previous);
+        }
+    }
+
+    synchronized void cancel(String id) {
+        Entry entry = entries.remove(id);
+        if (entry != null) {
+            buckets[entry.bucket].remove(entry);
+        }
+    }
+
+    /**
+     * @return Whether an expiry is scheduled for the id, i.e. it was scheduled and did not expire since.
+     */
+    synchronized boolean isScheduled(String id) {
+        return entries.containsKey(id);
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Removes and returns all ids with a deadline not after {@code now}.
+     */
+    synchronized List<String> expire(long now) {
+        long nowTick = now / tickMillis;
+        // The bucket of the last tick is visited again since it may hold entries that were not yet due back then
+        long ticks = Math.min(nowTick - lastTick + 1L, buckets.length);
+        List<String> expired = new ArrayList<String>();
+        for (long tick = nowTick - ticks + 1L; tick <= nowTick; tick++) {
+            Iterator<Entry> iterator = buckets[(int) (tick & mask)].iterator();
+            while (iterator.hasNext()) {
+                Entry entry = iterator.next();
+                if (entry.deadline <= now) {
+                    iterator.remove();
+                    if (entries.remove(entry.id, entry)) {
+                        expired.add(entry.id);
+                    }
+                }
+            }
+        }
+        lastTick = Math.max(lastTick, nowTick);
+        return expired;
+    }
+
+    private static class Entry {
+
+        private final String id;
+        private final long deadline;
+        private final int bucket;
+
+        private Entry(String id, long deadline, int bucket) {
+            this.id = id;
+            this.deadline = deadline;
+            this.bucket = bucket;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package org.wicketstuff.async.task;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of a {@link DefaultTaskManager}. All values are read without locking and may therefore be slightly
+ * out of date when read during concurrent task execution.
+ */
+public class TaskManagerMetrics {
+
+    private final ExecutorService executorService;
+    private final HashedExpiryWheel expiryWheel;
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder totalRunTimeNanos = new LongAdder();
+    private final AtomicLong maxRunTimeNanos = new AtomicLong();
+
+    TaskManagerMetrics(ExecutorService executorService, HashedExpiryWheel expiryWheel) {
+        this.executorService = executorService;
+        this.expiryWheel = expiryWheel;
+    }
+
+    void onSubmit() {
+        submitted.increment();
+    }
+
+    void onReject() {
+        rejected.increment();
+    }
+
+    void onComplete(long runTimeNanos) {
+        completed.increment();
+        totalRunTimeNanos.add(runTimeNanos);
+        long max;
+        do {
+            max = maxRunTimeNanos.get();
+        } while (runTimeNanos > max && !maxRunTimeNanos.compareAndSet(max, runTimeNanos));
+    }
+
+    /**
+     * @return The number of tasks waiting for a worker thread or {@code -1} if a custom executor is used.
+     */
+    public int getQueueLength() {
+        if (executorService instanceof ThreadPoolExecutor) {
+            return ((ThreadPoolExecutor) executorService).getQueue().size();
+        }
+        return -1;
+    }
+
+    /**
+     * @return The number of tasks currently running or {@code -1} if a custom executor is used.
+     */
+    public int getActiveCount() {
+        if (executorService instanceof ThreadPoolExecutor) {
+            return ((ThreadPoolExecutor) executorService).getActiveCount();
+        }
+        return -1;
+    }
+
+    /**
+     * @return The number of task containers which are registered and not yet expired.
+     */
+    public int getContainerCount() {
+        return expiryWheel.size();
+    }
+
+    public long getSubmittedCount() {
+        return submitted.sum();
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    /**
+     * @return The number of tasks that ran to their end, including failed and interrupted tasks.
+     */
+    public long getCompletedCount() {
+        return completed.sum();
+    }
+
+    public long getAverageRunTime(TimeUnit unit) {
+        long count = completed.sum();
+        return count == 0L ? 0L : unit.convert(totalRunTimeNanos.sum() / count, TimeUnit.NANOSECONDS);
+    }
+
+    public long getMaxRunTime(TimeUnit unit) {
+        return unit.convert(maxRunTimeNanos.get(), TimeUnit.NANOSECONDS);
+    }
+}
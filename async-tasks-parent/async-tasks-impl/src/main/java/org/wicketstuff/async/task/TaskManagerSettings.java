@@ -0,0 +1,153 @@
+package org.wicketstuff.async.task;
+
+import java.time.Clock;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Settings of a {@link DefaultTaskManager}. By default, tasks run on a bounded pool of worker threads with a bounded
+ * queue. Tasks that do not fit into the queue, or that exceed the per-owner limit, are not executed but reported
+ * as failed with a {@link java.util.concurrent.RejectedExecutionException}.
+ * <p/>
+ * Alternatively, a custom {@link ExecutorService} can be supplied, for example an executor that runs every task on a
+ * new lightweight thread. Such an executor is used as is and is not shut down by the task manager.
+ */
+public class TaskManagerSettings {
+
+    private int poolSize = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+    private int queueCapacity = 256;
+    private int maxTasksPerOwner = 0;
+    private long expiryTickMillis = TimeUnit.SECONDS.toMillis(1L);
+    private int expiryWheelSize = 512;
+    private ThreadFactory threadFactory;
+    private ExecutorService executorService;
+    private Clock clock = Clock.systemUTC();
+
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    /**
+     * @param poolSize The maximum number of threads executing tasks at the same time.
+     * @return This instance.
+     */
+    public TaskManagerSettings poolSize(int poolSize) {
+        if (poolSize < 1) {
+            throw new IllegalArgumentException("The pool size must be positive: " + poolSize);
+        }
+        this.poolSize = poolSize;
+        return this;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * @param queueCapacity The number of tasks that may wait for a free worker thread.
+     * @return This instance.
+     */
+    public TaskManagerSettings queueCapacity(int queueCapacity) {
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("The queue capacity must be positive: " + queueCapacity);
+        }
+        this.queueCapacity = queueCapacity;
+        return this;
+    }
+
+    public int getMaxTasksPerOwner() {
+        return maxTasksPerOwner;
+    }
+
+    /**
+     * @param maxTasksPerOwner The number of tasks a single owner (by default a Wicket session) may have queued or
+     *                         running at the same time. {@code 0} disables the limit.
+     * @return This instance.
+     */
+    public TaskManagerSettings maxTasksPerOwner(int maxTasksPerOwner) {
+        if (maxTasksPerOwner < 0) {
+            throw new IllegalArgumentException("The task limit must not be negative: " + maxTasksPerOwner);
+        }
+        this.maxTasksPerOwner = maxTasksPerOwner;
+        return this;
+    }
+
+    public long getExpiryTickMillis() {
+        return expiryTickMillis;
+    }
+
+    /**
+     * @param tick The resolution of container expiry, which is also the interval of the background reaper.
+     * @param unit The time unit of {@code tick}.
+     * @return This instance.
+     */
+    public TaskManagerSettings expiryTick(long tick, TimeUnit unit) {
+        long millis = unit.toMillis(tick);
+        if (millis < 1L) {
+            throw new IllegalArgumentException("The expiry tick must be at least one millisecond");
+        }
+        this.expiryTickMillis = millis;
+        return this;
+    }
+
+    public int getExpiryWheelSize() {
+        return expiryWheelSize;
+    }
+
+    /**
+     * @param expiryWheelSize The number of buckets of the expiry wheel. Rounded up to the next power of two.
+     * @return This instance.
+     */
+    public TaskManagerSettings expiryWheelSize(int expiryWheelSize) {
+        if (expiryWheelSize < 1) {
+            throw new IllegalArgumentException("The wheel size must be positive: " + expiryWheelSize);
+        }
+        this.expiryWheelSize = expiryWheelSize;
+        return this;
+    }
+
+    public ThreadFactory getThreadFactory() {
+        return threadFactory;
+    }
+
+    /**
+     * @param threadFactory The factory for worker threads of the default executor or {@code null} for named
+     *                      non-daemon threads.
+     * @return This instance.
+     */
+    public TaskManagerSettings threadFactory(ThreadFactory threadFactory) {
+        this.threadFactory = threadFactory;
+        return this;
+    }
+
+    public ExecutorService getExecutorService() {
+        return executorService;
+    }
+
+    /**
+     * @param executorService A custom executor to run tasks on, replacing the default bounded pool. The pool size
+     *                        and queue capacity settings are ignored in this case.
+     * @return This instance.
+     */
+    public TaskManagerSettings executorService(ExecutorService executorService) {
+        this.executorService = executorService;
+        return this;
+    }
+
+    public Clock getClock() {
+        return clock;
+    }
+
+    /**
+     * @param clock The clock the life time of containers is measured with.
+     * @return This instance.
+     */
+    public TaskManagerSettings clock(Clock clock) {
+        if (clock == null) {
+            throw new IllegalArgumentException("The clock must not be null");
+        }
+        this.clock = clock;
+        return this;
+    }
+}
@@ -0,0 +1,174 @@
+package org.wicketstuff.async.components;
+
+import org.apache.wicket.protocol.ws.WebSocketSettings;
+import org.apache.wicket.protocol.ws.api.IWebSocketConnection;
+import org.apache.wicket.protocol.ws.api.message.IWebSocketPushMessage;
+import org.apache.wicket.protocol.ws.api.registry.IKey;
+import org.apache.wicket.protocol.ws.api.registry.PageIdKey;
+import org.apache.wicket.util.tester.WicketTester;
+import org.apache.wicket.util.time.Duration;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import org.wicketstuff.async.task.AbstractTaskContainer;
+import org.wicketstuff.async.task.DefaultTaskManager;
+import org.wicketstuff.async.task.IProgressObservableRunnable;
+import org.wicketstuff.async.task.ITaskManagerHook;
+import org.wicketstuff.async.task.TaskManagerSettings;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+
+public class ProgressPublisherTest {
+
+    private static final String SESSION_ID = "session";
+    private static final IKey KEY = new PageIdKey(1);
+
+    private WicketTester tester;
+    private ProgressPublisher publisher;
+    private RecordingConnection connection;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        tester = new WicketTester();
+        publisher = new ProgressPublisher(tester.getApplication().getName(), Duration.minutes(1L));
+        connection = new RecordingConnection();
+        WebSocketSettings.Holder.get(tester.getApplication()).getConnectionRegistry()
+                .setConnection(tester.getApplication(), SESSION_ID, KEY, connection);
+    }
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        publisher.stop();
+        tester.destroy();
+    }
+
+    @Test
+    public void testProgressIsPublishedOnChange() throws Exception {
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        final ObservableRunnable runnable = new ObservableRunnable(latch);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        DefaultTaskManager taskManager = new DefaultTaskManager(new TaskManagerSettings().executorService(executor)) {
+            @Override
+            protected AbstractTaskContainer makeTaskContainer(final String id) {
+                return new AbstractTaskContainer(id) {
+                    @Override
+                    protected ITaskManagerHook load() {
+                        return findHookForId(id);
+                    }
+                };
+            }
+        };
+        AbstractTaskContainer taskContainer = taskManager.makeContainer(1L, TimeUnit.MINUTES);
+        taskContainer.submit(runnable);
+        publisher.subscribe(SESSION_ID, KEY, "button1", taskContainer);
+
+        runnable.progress = 0.25d;
+        publisher.publish();
+        publisher.publish();
+        runnable.progress = 0.5d;
+        publisher.publish();
+
+        assertEquals(connection.messages.size(), 2);
+        assertEquals(connection.messages.get(0), "{\"asyncTask\":\"button1\",\"progress\":0.25,\"message\":\"working\"}");
+        assertEquals(connection.messages.get(1), "{\"asyncTask\":\"button1\",\"progress\":0.5,\"message\":\"working\"}");
+
+        latch.countDown();
+        // The executor runs one task at a time, so the task is done once the next one ran
+        executor.submit(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }).get();
+        publisher.publish();
+
+        assertEquals(connection.messages.size(), 3);
+        assertEquals(connection.messages.get(2), "{\"asyncTask\":\"button1\",\"done\":true}");
+        assertEquals(publisher.getSubscriptionCount(), 0);
+        taskManager.shutdown();
+        executor.shutdown();
+    }
+
+    @Test
+    public void testUnsubscribe() throws Exception {
+
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        AbstractTaskContainer taskContainer = DefaultTaskManager.getInstance().makeContainer(1L, TimeUnit.MINUTES);
+        taskContainer.submit(new ObservableRunnable(latch));
+        publisher.subscribe(SESSION_ID, KEY, "button1", taskContainer);
+        publisher.unsubscribe(SESSION_ID, new PageIdKey(1));
+
+        publisher.publish();
+        latch.countDown();
+
+        assertEquals(publisher.getSubscriptionCount(), 0);
+        assertEquals(connection.messages.size(), 0);
+    }
+
+    private static class ObservableRunnable implements IProgressObservableRunnable {
+
+        private final CountDownLatch latch;
+        private volatile double progress;
+
+        private ObservableRunnable(CountDownLatch latch) {
+            this.latch = latch;
+        }
+
+        @Override
+        public double getProgress() {
+            return progress;
+        }
+
+        @Override
+        public String getProgressMessage() {
+            return "working";
+        }
+
+        @Override
+        public void run() {
+            try {
+                latch.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static class RecordingConnection implements IWebSocketConnection {
+
+        private final List<String> messages = new ArrayList<String>();
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close(int code, String reason) {
+        }
+
+        @Override
+        public IWebSocketConnection sendMessage(String message) {
+            messages.add(message);
+            return this;
+        }
+
+        @Override
+        public IWebSocketConnection sendMessage(byte[] message, int offset, int length) {
+            return this;
+        }
+
+        @Override
+        public void sendMessage(IWebSocketPushMessage message) {
+        }
+    }
+}
@@ -1,19 +1,38 @@
 package org.wicketstuff.async.task;
 
+import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertTrue;
 
 public class DefaultTaskManagerTest {
 
+    private ManualClock clock;
+
+    private ExecutorService executor;
+
     private DefaultTaskManager taskManager;
 
     @BeforeMethod
     public void setUp() throws Exception {
-        taskManager = new DefaultTaskManager() {
+        clock = new ManualClock();
+        executor = Executors.newSingleThreadExecutor();
+        taskManager = new DefaultTaskManager(new TaskManagerSettings().clock(clock).executorService(executor)) {
             @Override
             protected AbstractTaskContainer makeTaskContainer(final String id) {
                 return new AbstractTaskContainer(id) {
@@ -26,23 +45,105 @@ public class DefaultTaskManagerTest {
         };
     }
 
+    @AfterMethod
+    public void tearDown() throws Exception {
+        taskManager.shutdown();
+        executor.shutdown();
+    }
+
+    @Test
+    public void testReaperOnlyRunsWhileContainersAreRegistered() throws Exception {
+
+        ManualClock clock = new ManualClock();
+        DefaultTaskManager clockedTaskManager = newTaskManager(new TaskManagerSettings().clock(clock)
+                .expiryTick(10L, TimeUnit.MILLISECONDS));
+        try {
+            assertFalse(clockedTaskManager.isReaperRunning());
+
+            clockedTaskManager.makeOrRenewContainer("test", 1L, TimeUnit.MINUTES);
+            assertTrue(clockedTaskManager.isReaperRunning());
+
+            // The reaper sweeps every tick, expires the container and stops once nothing is left
+            clock.advance(2L, TimeUnit.MINUTES);
+            long deadline = System.currentTimeMillis() + 5000L;
+            while (clockedTaskManager.isReaperRunning() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10L);
+            }
+            assertFalse(clockedTaskManager.isReaperRunning());
+
+            clockedTaskManager.makeOrRenewContainer("test", 1L, TimeUnit.MINUTES);
+            assertTrue(clockedTaskManager.isReaperRunning());
+
+            clockedTaskManager.shutdown();
+            assertFalse(clockedTaskManager.isReaperRunning());
+            clockedTaskManager.makeOrRenewContainer("other", 1L, TimeUnit.MINUTES);
+            assertFalse(clockedTaskManager.isReaperRunning());
+        } finally {
+            clockedTaskManager.shutdown();
+        }
+    }
+
+    @Test
+    public void testExpiryUsesClock() throws Exception {
+
+        ManualClock clock = new ManualClock();
+        DefaultTaskManager clockedTaskManager = newTaskManager(new TaskManagerSettings().clock(clock));
+        try {
+            clockedTaskManager.makeOrRenewContainer("test", 1L, TimeUnit.MINUTES);
+
+            clock.advance(30L, TimeUnit.SECONDS);
+            clockedTaskManager.makeOrRenewContainer("test", 1L, TimeUnit.MINUTES);
+            clock.advance(45L, TimeUnit.SECONDS);
+            clockedTaskManager.cleanUp();
+            clockedTaskManager.getContainerOrFail("test");
+
+            clock.advance(30L, TimeUnit.SECONDS);
+            clockedTaskManager.cleanUp();
+            assertFalse(clockedTaskManager.findHookForId("test") != null);
+            assertEquals(clockedTaskManager.getMetrics().getContainerCount(), 0);
+        } finally {
+            clockedTaskManager.shutdown();
+        }
+    }
+
+    @Test
+    public void testRenewDuringCleanUpKeepsContainer() throws Exception {
+
+        final ManualClock clock = new ManualClock();
+        final DefaultTaskManager clockedTaskManager = newTaskManager(new TaskManagerSettings().clock(clock));
+        final AtomicBoolean done = new AtomicBoolean();
+        Thread cleaner = new Thread() {
+            @Override
+            public void run() {
+                while (!done.get()) {
+                    clockedTaskManager.cleanUp();
+                }
+            }
+        };
+        cleaner.start();
+        try {
+            for (int i = 0; i < 10000; i++) {
+                // Expires right away, unless renewed
+                clockedTaskManager.makeOrRenewContainer("test", 0L, TimeUnit.MILLISECONDS);
+                clockedTaskManager.makeOrRenewContainer("test", 1L, TimeUnit.MINUTES);
+                clockedTaskManager.getContainerOrFail("test");
+            }
+        } finally {
+            done.set(true);
+            cleaner.join();
+            clockedTaskManager.shutdown();
+        }
+    }
+
     @Test(expectedExceptions = IllegalArgumentException.class)
     public void testTaskRemovalRemoved() throws Exception {
 
         final String testId = "test";
-        final long removalMilliseconds = 200L;
-        final double sleepMultiplier = 2d;
-
-        assertTrue(sleepMultiplier > 1d);
 
-        taskManager.makeOrRenewContainer(testId, removalMilliseconds, TimeUnit.MILLISECONDS);
+        taskManager.makeOrRenewContainer(testId, 200L, TimeUnit.MILLISECONDS);
 
-        Thread.sleep((long) (removalMilliseconds * sleepMultiplier));
-
-        // Since the implementation is built on top of weak references, GC must be triggered manually
-        // Depending of the JVM implementation, this test might unfortunately fail
+        clock.advance(400L, TimeUnit.MILLISECONDS);
         taskManager.cleanUp();
-        System.gc();
 
         taskManager.getContainerOrFail(testId);
     }
@@ -51,18 +152,11 @@ public class DefaultTaskManagerTest {
     public void testTaskRemovalNonRemoved() throws Exception {
 
         final String testId = "test";
-        final long removalMilliseconds = 200L;
-        final double sleepMultiplier = 0.5d;
-
-        assertTrue(sleepMultiplier < 1d);
 
-        taskManager.makeOrRenewContainer(testId, removalMilliseconds, TimeUnit.MILLISECONDS);
+        taskManager.makeOrRenewContainer(testId, 200L, TimeUnit.MILLISECONDS);
 
-        Thread.sleep((long) (removalMilliseconds * sleepMultiplier));
-
-        // Same problem as above
+        clock.advance(100L, TimeUnit.MILLISECONDS);
         taskManager.cleanUp();
-        System.gc();
 
         taskManager.getContainerOrFail(testId);
     }
@@ -71,25 +165,14 @@ public class DefaultTaskManagerTest {
     public void testTaskExtension() throws Exception {
 
         final String testId = "test";
-        final long removalMilliseconds = 200L;
-        final double sleepMultiplier1 = 0.5d;
-        final double sleepMultiplier2 = 2d;
-
-        assertTrue(sleepMultiplier1 < 1d);
-        assertTrue(sleepMultiplier2 > 1d);
 
-        taskManager.makeOrRenewContainer(testId, (long) (removalMilliseconds * sleepMultiplier1), TimeUnit.MILLISECONDS);
-        taskManager.makeOrRenewContainer(testId, (long) (removalMilliseconds * sleepMultiplier2), TimeUnit.MILLISECONDS);
+        taskManager.makeOrRenewContainer(testId, 100L, TimeUnit.MILLISECONDS);
+        taskManager.makeOrRenewContainer(testId, 400L, TimeUnit.MILLISECONDS);
 
-        Thread.sleep(removalMilliseconds);
-
-        // Same problem as above
+        clock.advance(200L, TimeUnit.MILLISECONDS);
         taskManager.cleanUp();
-        System.gc();
 
         taskManager.getContainerOrFail(testId);
-
-
     }
 
     @Test
@@ -105,9 +188,127 @@ public class DefaultTaskManagerTest {
             }
         });
 
-        // This is assumed to be efficient, even for slow machines
-        Thread.sleep(500L);
+        awaitTasks(executor);
 
         assertTrue(val[0]);
     }
+
+    @Test
+    public void testOwnerLimit() throws Exception {
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        final Runnable blocking = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        DefaultTaskManager limitedTaskManager = new DefaultTaskManager(new TaskManagerSettings().maxTasksPerOwner(1)
+                .executorService(executor)) {
+            @Override
+            protected AbstractTaskContainer makeTaskContainer(final String id) {
+                return null;
+            }
+
+            @Override
+            protected String getTaskOwner() {
+                return "owner";
+            }
+        };
+
+        try {
+            AbstractTaskContainer first = new TestTaskContainer(limitedTaskManager.makeTaskManagerHook("first"));
+            AbstractTaskContainer second = new TestTaskContainer(limitedTaskManager.makeTaskManagerHook("second"));
+
+            first.submit(blocking);
+            second.submit(blocking);
+
+            assertTrue(first.isRunning());
+            assertTrue(second.isFailed());
+            assertTrue(second.getExecutionError() instanceof RejectedExecutionException);
+            assertEquals(limitedTaskManager.getMetrics().getRejectedCount(), 1L);
+
+            latch.countDown();
+            awaitTasks(executor);
+
+            assertFalse(first.isRunning());
+            second.submit(blocking);
+            awaitTasks(executor);
+            assertTrue(second.isComplete());
+            assertEquals(limitedTaskManager.getMetrics().getCompletedCount(), 2L);
+        } finally {
+            limitedTaskManager.shutdown();
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Waits until the tasks submitted to a single threaded executor are done.
+     */
+    private static void awaitTasks(ExecutorService executor) throws Exception {
+        executor.submit(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }).get();
+    }
+
+    private static DefaultTaskManager newTaskManager(TaskManagerSettings settings) {
+        return new DefaultTaskManager(settings) {
+            @Override
+            protected AbstractTaskContainer makeTaskContainer(final String id) {
+                return new TestTaskContainer(makeTaskManagerHook(id));
+            }
+        };
+    }
+
+    private static class ManualClock extends Clock {
+
+        private final AtomicLong millis = new AtomicLong(1000000L);
+
+        private void advance(long time, TimeUnit unit) {
+            millis.addAndGet(unit.toMillis(time));
+        }
+
+        @Override
+        public long millis() {
+            return millis.get();
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis());
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private static class TestTaskContainer extends AbstractTaskContainer {
+
+        private final ITaskManagerHook hook;
+
+        private TestTaskContainer(ITaskManagerHook hook) {
+            super(hook.getId());
+            this.hook = hook;
+        }
+
+        @Override
+        protected ITaskManagerHook load() {
+            return hook;
+        }
+    }
 }
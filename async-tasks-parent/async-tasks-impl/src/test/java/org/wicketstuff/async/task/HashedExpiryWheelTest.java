@@ -0,0 +1,98 @@
+package org.wicketstuff.async.task;
+
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class HashedExpiryWheelTest {
+
+    @Test
+    public void testExpiry() throws Exception {
+        HashedExpiryWheel wheel = new HashedExpiryWheel(10L, 8, 0L);
+        wheel.schedule("a", 25L);
+        wheel.schedule("b", 45L);
+
+        assertTrue(wheel.expire(20L).isEmpty());
+        assertEquals(wheel.expire(30L), Collections.singletonList("a"));
+        assertEquals(wheel.expire(50L), Collections.singletonList("b"));
+        assertEquals(wheel.size(), 0);
+    }
+
+    @Test
+    public void testExpiryWithinSameTick() throws Exception {
+        HashedExpiryWheel wheel = new HashedExpiryWheel(10L, 8, 0L);
+        wheel.schedule("a", 18L);
+
+        assertTrue(wheel.expire(15L).isEmpty());
+        assertEquals(wheel.expire(21L), Collections.singletonList("a"));
+    }
+
+    @Test
+    public void testExpiryAfterSeveralRounds() throws Exception {
+        HashedExpiryWheel wheel = new HashedExpiryWheel(10L, 4, 0L);
+        wheel.schedule("a", 15L);
+        wheel.schedule("b", 95L);
+
+        assertEquals(wheel.expire(20L), Collections.singletonList("a"));
+        assertTrue(wheel.expire(60L).isEmpty());
+        assertEquals(wheel.expire(1000L), Arrays.asList("b"));
+    }
+
+    @Test
+    public void testReschedule() throws Exception {
+        HashedExpiryWheel wheel = new HashedExpiryWheel(10L, 8, 0L);
+        wheel.schedule("a", 15L);
+        wheel.schedule("a", 55L);
+
+        assertTrue(wheel.expire(30L).isEmpty());
+        assertEquals(wheel.expire(60L), Collections.singletonList("a"));
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        HashedExpiryWheel wheel = new HashedExpiryWheel(10L, 8, 0L);
+        wheel.schedule("a", 15L);
+        wheel.cancel("a");
+
+        assertTrue(wheel.expire(100L).isEmpty());
+        assertEquals(wheel.size(), 0);
+    }
+
+    @Test
+    public void testConcurrentScheduleAndExpiry() throws Exception {
+        final HashedExpiryWheel wheel = new HashedExpiryWheel(10L, 8, 0L);
+        final AtomicBoolean done = new AtomicBoolean();
+        Thread expirer = new Thread() {
+            @Override
+            public void run() {
+                while (!done.get()) {
+                    wheel.expire(100L);
+                }
+            }
+        };
+        expirer.start();
+        try {
+            for (int i = 0; i < 10000; i++) {
+                String id = String.valueOf(i % 10);
+                wheel.schedule(id, i % 2 == 0 ? 50L : 5000L);
+                if (i % 3 == 0) {
+                    wheel.cancel(id);
+                }
+            }
+        } finally {
+            done.set(true);
+            expirer.join();
+        }
+        for (int i = 0; i < 10; i++) {
+            wheel.cancel(String.valueOf(i));
+        }
+
+        assertEquals(wheel.size(), 0);
+        assertTrue(wheel.expire(10000L).isEmpty());
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.console.engine;
+
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Base class of engines executing scripts on a bounded pool of worker threads.
+ * <p>
+ * Each execution captures its own output: whatever the script writes to stdout or stderr on its
+ * worker thread ends up in its {@link ScriptExecution}, other threads are not affected. Executions
+ * are cancelled after the {@link #setTimeout(long, TimeUnit) timeout}. If all workers are busy and
+ * the queue is full, the execution fails immediately.
+ */
+public abstract class AbstractScriptEngine implements IStreamingScriptEngine
+{
+
+	private static final int WORKERS = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+	private static final int QUEUE_CAPACITY = 16;
+
+	private static final long RETENTION_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+	private static final ThreadPoolExecutor EXECUTOR;
+
+	private static final ScheduledExecutorService WATCHDOG = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory(
+		"console-script-watchdog-"));
+
+	static
+	{
+		EXECUTOR = new ThreadPoolExecutor(WORKERS, WORKERS, 60, TimeUnit.SECONDS,
+			new LinkedBlockingQueue<Runnable>(QUEUE_CAPACITY), new DaemonThreadFactory(
+				"console-script-"));
+		EXECUTOR.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Executions of all engines by id. Shared, so that an execution can be looked up with any
+	 * engine instance, e.g. by an Ajax request of a later request cycle.
+	 */
+	private static final ConcurrentMap<String, ScriptExecution> EXECUTIONS = new ConcurrentHashMap<String, ScriptExecution>();
+
+	private volatile long timeoutMillis = TimeUnit.MINUTES.toMillis(1);
+
+	/**
+	 * Sets how long a script may run before it is cancelled. Cancelling interrupts the worker
+	 * thread, scripts that do not react to interruption keep their worker busy.
+	 * 
+	 * @param timeout
+	 * @param unit
+	 */
+	public void setTimeout(final long timeout, final TimeUnit unit)
+	{
+		timeoutMillis = unit.toMillis(timeout);
+	}
+
+	public long getTimeout(final TimeUnit unit)
+	{
+		return unit.convert(timeoutMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public IScriptExecutionResult execute(final String script)
+	{
+		return execute(script, null);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Blocks until the script finished or timed out.
+	 */
+	public IScriptExecutionResult execute(final String script, final Map<String, Object> bindings)
+	{
+		return submit(script, bindings, null).awaitResult();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public ScriptExecution submit(final String script, final Map<String, Object> bindings,
+		final IScriptTaskDecorator decorator)
+	{
+		final ScriptExecution execution = new ScriptExecution(script);
+
+		Callable<IScriptExecutionResult> task = new Callable<IScriptExecutionResult>()
+		{
+			public IScriptExecutionResult call() throws Exception
+			{
+				return run(execution, bindings);
+			}
+		};
+		if (decorator != null)
+		{
+			task = decorator.decorate(task);
+		}
+
+		final FutureTask<IScriptExecutionResult> future = new FutureTask<IScriptExecutionResult>(
+			task)
+		{
+			@Override
+			protected void done()
+			{
+				WATCHDOG.schedule(new Runnable()
+				{
+					public void run()
+					{
+						EXECUTIONS.remove(execution.getId());
+					}
+				}, RETENTION_MILLIS, TimeUnit.MILLISECONDS);
+			}
+		};
+		execution.setFuture(future);
+		EXECUTIONS.put(execution.getId(), execution);
+
+		try
+		{
+			EXECUTOR.execute(future);
+		}
+		catch (final RejectedExecutionException e)
+		{
+			EXECUTIONS.remove(execution.getId());
+			execution.fail("Too many scripts running, try again later");
+			return execution;
+		}
+
+		WATCHDOG.schedule(new Runnable()
+		{
+			public void run()
+			{
+				if (!future.isDone())
+				{
+					execution.fail("Script execution timed out after " + timeoutMillis + " ms");
+				}
+			}
+		}, timeoutMillis, TimeUnit.MILLISECONDS);
+
+		return execution;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Executions are registered for all engines, so any engine instance finds them.
+	 */
+	public ScriptExecution getExecution(final String id)
+	{
+		return EXECUTIONS.get(id);
+	}
+
+	private IScriptExecutionResult run(final ScriptExecution execution,
+		final Map<String, Object> bindings)
+	{
+		Throwable exception = null;
+		Object returnValue = null;
+
+		final PrintStream out = execution.getOut();
+		ThreadOutputCapture.start(out);
+		try
+		{
+			returnValue = doExecute(execution.getScript(), bindings, out);
+		}
+		catch (final Exception e)
+		{
+			exception = e;
+		}
+		finally
+		{
+			ThreadOutputCapture.stop();
+		}
+
+		return new DefaultScriptExecutionResult(execution.getScript(), exception,
+			execution.getOutput(), returnValue);
+	}
+
+	/**
+	 * Executes a script on the current thread.
+	 * 
+	 * @param script
+	 *            a script in the language supported by this engine
+	 * @param bindings
+	 *            variable bindings, may be {@code null}
+	 * @param out
+	 *            the output of this execution, stdout and stderr of the current thread are
+	 *            already routed to it
+	 * @return the return value of the script
+	 * @throws Exception
+	 *             any exception thrown by the script
+	 */
+	protected abstract Object doExecute(String script, Map<String, Object> bindings,
+		PrintStream out) throws Exception;
+
+	private static class DaemonThreadFactory implements ThreadFactory
+	{
+
+		private final AtomicInteger counter = new AtomicInteger();
+		private final String prefix;
+
+		private DaemonThreadFactory(final String prefix)
+		{
+			this.prefix = prefix;
+		}
+
+		public Thread newThread(final Runnable runnable)
+		{
+			final Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
+}
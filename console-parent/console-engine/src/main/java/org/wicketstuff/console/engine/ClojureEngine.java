@@ -16,7 +16,6 @@
  */
 package org.wicketstuff.console.engine;
 
-import java.io.ByteArrayOutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintStream;
 import java.io.StringReader;
@@ -37,92 +36,36 @@ import clojure.lang.Var;
  * <p>
  * stdout and stderr are captured. Bindings are pushed into user namespace, so to access a binding
  * named &quot;foo&quot; use &quot;user/foo&quot;. *
+ * <p>
+ * Scripts are compiled form by form on every execution, as each top level form has to be compiled
+ * in the namespace left by the previous one.
  * 
  * @author cretzel
  */
-public class ClojureEngine implements IScriptEngine
+public class ClojureEngine extends AbstractScriptEngine
 {
 
-	/**
-	 * {@inheritDoc}
-	 */
-	public synchronized IScriptExecutionResult execute(final String script)
+	@Override
+	protected Object doExecute(final String script, final Map<String, Object> bindings,
+		final PrintStream out) throws Exception
 	{
-		return execute(script, null);
-	}
-
-	/**
-	 * {@inheritDoc}
-	 */
-	public synchronized IScriptExecutionResult execute(final String script,
-		final Map<String, Object> bindings)
-	{
-
-		Throwable exception = null;
-		String output = null;
-		Object returnValue = null;
-
-		final PrintStream oldOut = System.out;
-		final PrintStream oldErr = System.err;
-		final ByteArrayOutputStream bout = new ByteArrayOutputStream();
-		final PrintStream newOut = new PrintStream(bout, false);
-		final OutputStreamWriter newRtOut = new OutputStreamWriter(newOut);
-		boolean threadBindingPushed = false;
-
+		final OutputStreamWriter rtOut = new OutputStreamWriter(out);
+
+		Associative mappings = PersistentHashMap.EMPTY;
+		mappings = mappings.assoc(RT.CURRENT_NS, RT.CURRENT_NS.get());
+		mappings = mappings.assoc(RT.OUT, rtOut);
+		mappings = mappings.assoc(RT.ERR, rtOut);
+		mappings = applyBindings(bindings, mappings);
+		Var.pushThreadBindings(mappings);
 		try
 		{
-			System.setOut(newOut);
-			System.setErr(newOut);
-
-			Associative mappings = PersistentHashMap.EMPTY;
-			mappings = mappings.assoc(RT.CURRENT_NS, RT.CURRENT_NS.get());
-			mappings = mappings.assoc(RT.OUT, newRtOut);
-			mappings = mappings.assoc(RT.ERR, newRtOut);
-			mappings = applyBindings(bindings, mappings);
-			Var.pushThreadBindings(mappings);
-			threadBindingPushed = true;
-
-			returnValue = Compiler.load(new StringReader(script));
-		}
-		catch (final Exception e)
-		{
-			exception = e;
+			return Compiler.load(new StringReader(script));
 		}
 		finally
 		{
-
-			try
-			{
-				if (threadBindingPushed)
-				{
-					Var.popThreadBindings();
-				}
-				newRtOut.flush();
-				newRtOut.close();
-				System.setOut(oldOut);
-				System.setErr(oldErr);
-
-				output = bout.toString();
-			}
-			catch (final Exception e1)
-			{
-				ScriptEngineException see;
-				if (exception == null)
-				{
-					see = new ScriptEngineException(e1);
-				}
-				else
-				{
-					see = new ScriptEngineException("Failed to handle original exception: " +
-						exception, e1);
-				}
-
-				throw see;
-			}
-
+			Var.popThreadBindings();
+			rtOut.flush();
 		}
-
-		return new DefaultScriptExecutionResult(script, exception, output, returnValue);
 	}
 
 	private Associative applyBindings(final Map<String, Object> bindings, Associative mappings)
@@ -17,8 +17,8 @@
 
 package org.wicketstuff.console.engine;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * A factory for {@link IScriptEngine}s.
@@ -28,17 +28,21 @@ import java.util.Map;
 public class Engines
 {
 
-	private static Map<Lang, IScriptEngine> singletons = new HashMap<Lang, IScriptEngine>();
+	private static ConcurrentMap<Lang, IScriptEngine> singletons = new ConcurrentHashMap<Lang, IScriptEngine>();
 
 	public static IScriptEngine getSingletonInstance(final Lang lang)
 	{
-
-		if (!singletons.containsKey(lang))
+		IScriptEngine engine = singletons.get(lang);
+		if (engine == null)
 		{
-			singletons.put(lang, create(lang));
+			final IScriptEngine created = create(lang);
+			engine = singletons.putIfAbsent(lang, created);
+			if (engine == null)
+			{
+				engine = created;
+			}
 		}
-
-		return singletons.get(lang);
+		return engine;
 	}
 
 	public static IScriptEngine create(final Lang lang)
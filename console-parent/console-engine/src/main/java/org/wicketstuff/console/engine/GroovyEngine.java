@@ -17,68 +17,91 @@
 package org.wicketstuff.console.engine;
 
 import groovy.lang.Binding;
-import groovy.lang.GroovyShell;
+import groovy.lang.GroovyClassLoader;
+import groovy.lang.GroovyCodeSource;
+import groovy.lang.Script;
+import groovy.transform.ThreadInterrupt;
 
-import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.codehaus.groovy.control.CompilerConfiguration;
+import org.codehaus.groovy.control.customizers.ASTTransformationCustomizer;
+import org.codehaus.groovy.runtime.InvokerHelper;
 
 /**
  * Executes Groovy scripts.
  * <p>
- * Executes Groovy scripts with {@link GroovyShell}. stdout and stderr are captured. Bindings are
- * available in Groovy code simply by their names.
+ * stdout and stderr are captured. Bindings are available in Groovy code simply by their names.
+ * <p>
+ * Compiled scripts are cached by their source, so executing the same script again does not
+ * compile it again. Loops are compiled with interruption checks, so that scripts running into the
+ * timeout stop.
  * 
  * @author cretzel
  */
-public class GroovyEngine implements IScriptEngine
+public class GroovyEngine extends AbstractScriptEngine
 {
 
-	/**
-	 * {@inheritDoc}
-	 */
-	public synchronized IScriptExecutionResult execute(final String script)
-	{
-		return execute(script, null);
-	}
+	private static final int MAX_CACHED_SCRIPTS = 64;
 
-	/**
-	 * {@inheritDoc}
-	 */
-	public synchronized IScriptExecutionResult execute(final String script,
-		final Map<String, Object> bindings)
-	{
+	/** The code base GroovyShell uses for scripts */
+	private static final String CODE_BASE = "/groovy/shell";
 
-		Throwable exception = null;
-		String output = null;
-		Object returnValue = null;
+	private final GroovyClassLoader classLoader;
 
-		final PrintStream oldOut = System.out;
-		final PrintStream oldErr = System.err;
-		final ByteArrayOutputStream bout = new ByteArrayOutputStream();
-		final PrintStream newOut = new PrintStream(bout, false);
+	private final AtomicInteger scriptCounter = new AtomicInteger();
 
-		try
+	private final Map<String, Class<?>> scripts = Collections.synchronizedMap(new LinkedHashMap<String, Class<?>>(
+		16, 0.75f, true)
+	{
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(final Map.Entry<String, Class<?>> eldest)
 		{
-			System.setOut(newOut);
-			System.setErr(newOut);
+			return size() > MAX_CACHED_SCRIPTS;
+		}
+	});
 
-			final GroovyShell shell = new GroovyShell(new Binding(bindings));
-			returnValue = shell.evaluate(script);
+	public GroovyEngine()
+	{
+		final CompilerConfiguration config = new CompilerConfiguration();
+		config.addCompilationCustomizers(new ASTTransformationCustomizer(ThreadInterrupt.class));
+		classLoader = new GroovyClassLoader(GroovyEngine.class.getClassLoader(), config);
+	}
 
-		}
-		catch (final Exception e)
+	@Override
+	protected Object doExecute(final String script, final Map<String, Object> bindings,
+		final PrintStream out) throws Exception
+	{
+		// variables assigned by the script are visible in the bindings afterwards
+		final Binding binding = bindings != null ? new Binding(bindings) : new Binding();
+		// print and println in scripts write to "out" if bound
+		if (!binding.hasVariable("out"))
 		{
-			exception = e;
+			binding.setVariable("out", out);
 		}
-		finally
+
+		final Script instance = InvokerHelper.createScript(compile(script), binding);
+		return instance.run();
+	}
+
+	private Class<?> compile(final String script)
+	{
+		Class<?> scriptClass = scripts.get(script);
+		if (scriptClass == null)
 		{
-			System.setOut(oldOut);
-			System.setErr(oldErr);
-			output = bout.toString();
+			final GroovyCodeSource codeSource = new GroovyCodeSource(script, "Script" +
+				scriptCounter.incrementAndGet() + ".groovy", CODE_BASE);
+			// not cached by the class loader, so evicted scripts can be unloaded
+			scriptClass = classLoader.parseClass(codeSource, false);
+			scripts.put(script, scriptClass);
 		}
-
-		return new DefaultScriptExecutionResult(script, exception, output, returnValue);
+		return scriptClass;
 	}
 
 }
@@ -0,0 +1,38 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.console.engine;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Decorates the task that executes a script before it is handed to a worker thread.
+ * <p>
+ * {@link #decorate(Callable)} is called on the submitting thread, the returned task runs on the
+ * worker thread. This allows to carry thread bound state, like the current application, over to
+ * the script.
+ */
+public interface IScriptTaskDecorator
+{
+
+	/**
+	 * @param task
+	 *            the task executing the script
+	 * @return the task to run on the worker thread
+	 */
+	<T> Callable<T> decorate(Callable<T> task);
+
+}
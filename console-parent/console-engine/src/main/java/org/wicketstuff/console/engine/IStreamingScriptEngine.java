@@ -0,0 +1,52 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.console.engine;
+
+import java.util.Map;
+
+/**
+ * An {@link IScriptEngine} that executes scripts in the background, so that their output can be
+ * read while they are running.
+ */
+public interface IStreamingScriptEngine extends IScriptEngine
+{
+
+	/**
+	 * Submits a script for execution and returns immediately.
+	 * 
+	 * @param script
+	 *            a script in the language supported by this engine
+	 * @param bindings
+	 *            variable bindings
+	 * @param decorator
+	 *            decorates the execution task, may be {@code null}
+	 * @return the running execution
+	 */
+	ScriptExecution submit(String script, Map<String, Object> bindings,
+		IScriptTaskDecorator decorator);
+
+	/**
+	 * Looks up an execution submitted to this engine. Executions are forgotten some time after
+	 * they finished.
+	 * 
+	 * @param id
+	 *            the id of the execution
+	 * @return the execution or {@code null}
+	 */
+	ScriptExecution getExecution(String id);
+
+}
@@ -16,86 +16,83 @@
  */
 package org.wicketstuff.console.engine;
 
-import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 
+import org.python.core.PyCode;
 import org.python.util.PythonInterpreter;
 
 /**
  * Executes Jython/Python code.
+ * <p>
+ * Compiled code is cached by its source, every execution runs in a new interpreter.
  * 
  * @author cretzel
  */
-public class JythonEngine implements IScriptEngine
+public class JythonEngine extends AbstractScriptEngine
 {
 
-	/**
-	 * {@inheritDoc}
-	 */
-	public synchronized IScriptExecutionResult execute(final String script)
-	{
-		return execute(script, new HashMap<String, Object>());
-	}
+	private static final int MAX_CACHED_SCRIPTS = 64;
 
-	/**
-	 * {@inheritDoc}
-	 */
-	public synchronized IScriptExecutionResult execute(final String script,
-		final Map<String, Object> bindings)
+	private final Map<String, PyCode> scripts = Collections.synchronizedMap(new LinkedHashMap<String, PyCode>(
+		16, 0.75f, true)
 	{
+		private static final long serialVersionUID = 1L;
 
-		Throwable exception = null;
-		String output = null;
-		Object returnValue = null;
-
-		final PrintStream oldOut = System.out;
-		final PrintStream oldErr = System.err;
-		final ByteArrayOutputStream bout = new ByteArrayOutputStream();
-		final PrintStream newOut = new PrintStream(bout, false);
+		@Override
+		protected boolean removeEldestEntry(final Map.Entry<String, PyCode> eldest)
+		{
+			return size() > MAX_CACHED_SCRIPTS;
+		}
+	});
 
+	@Override
+	protected Object doExecute(final String script, final Map<String, Object> bindings,
+		final PrintStream out) throws Exception
+	{
+		final PythonInterpreter interpreter = new PythonInterpreter();
 		try
 		{
-			System.setOut(newOut);
-			System.setErr(newOut);
+			interpreter.setOut(out);
+			interpreter.setErr(out);
 
-			final PythonInterpreter interpreter = new PythonInterpreter();
-			interpreter.setOut(newOut);
-			interpreter.setErr(newOut);
-
-			for (final Entry<String, Object> binding : bindings.entrySet())
+			if (bindings != null)
 			{
-				interpreter.set(binding.getKey(), binding.getValue());
+				for (final Entry<String, Object> binding : bindings.entrySet())
+				{
+					interpreter.set(binding.getKey(), binding.getValue());
+				}
 			}
 
-			interpreter.exec(script);
-			returnValue = interpreter.get("result");
-		}
-		catch (final Exception e)
-		{
-			exception = e;
-			e.printStackTrace();
-		}
-		finally
-		{
-
 			try
 			{
-				System.setOut(oldOut);
-				System.setErr(oldErr);
-
-				output = bout.toString();
+				interpreter.exec(compile(interpreter, script));
 			}
-			catch (final Exception e1)
+			catch (final Exception e)
 			{
-				throw new ScriptEngineException(e1);
+				e.printStackTrace(out);
+				throw e;
 			}
-
+			return interpreter.get("result");
 		}
+		finally
+		{
+			interpreter.cleanup();
+		}
+	}
 
-		return new DefaultScriptExecutionResult(script, exception, output, returnValue);
+	private PyCode compile(final PythonInterpreter interpreter, final String script)
+	{
+		PyCode code = scripts.get(script);
+		if (code == null)
+		{
+			code = interpreter.compile(script);
+			scripts.put(script, code);
+		}
+		return code;
 	}
 
 }
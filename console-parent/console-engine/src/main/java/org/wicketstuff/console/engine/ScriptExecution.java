@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.console.engine;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * A script execution submitted to an {@link IStreamingScriptEngine}.
+ * <p>
+ * The output written by the script so far can be read at any time with {@link #getOutput()}. It
+ * is limited to {@value #MAX_OUTPUT_SIZE} bytes, further output is dropped.
+ */
+public final class ScriptExecution
+{
+
+	static final int MAX_OUTPUT_SIZE = 1024 * 1024;
+
+	private final String id = UUID.randomUUID().toString();
+	private final String script;
+	private final BoundedOutput output = new BoundedOutput();
+	private final PrintStream out = new PrintStream(output, true);
+
+	private volatile Future<IScriptExecutionResult> future;
+	private volatile String failure;
+
+	ScriptExecution(final String script)
+	{
+		this.script = script;
+	}
+
+	void setFuture(final Future<IScriptExecutionResult> future)
+	{
+		this.future = future;
+	}
+
+	/**
+	 * Marks the execution as failed, the reason is reported if the script did not produce a
+	 * result.
+	 */
+	void fail(final String reason)
+	{
+		failure = reason;
+		future.cancel(true);
+	}
+
+	PrintStream getOut()
+	{
+		return out;
+	}
+
+	public String getId()
+	{
+		return id;
+	}
+
+	public String getScript()
+	{
+		return script;
+	}
+
+	/**
+	 * @return everything the script wrote to stdout and stderr so far
+	 */
+	public String getOutput()
+	{
+		return output.toString();
+	}
+
+	public boolean isDone()
+	{
+		return future.isDone();
+	}
+
+	/**
+	 * Stops the execution by interrupting its thread.
+	 */
+	public void cancel()
+	{
+		fail("Script execution cancelled");
+	}
+
+	/**
+	 * @return the result or {@code null} if the script is still running
+	 */
+	public IScriptExecutionResult getResult()
+	{
+		return isDone() ? awaitResult() : null;
+	}
+
+	/**
+	 * Waits for the script to finish.
+	 * 
+	 * @return the result
+	 */
+	public IScriptExecutionResult awaitResult()
+	{
+		try
+		{
+			return future.get();
+		}
+		catch (final CancellationException e)
+		{
+			return failedResult(new ScriptEngineException(failure != null ? failure
+				: "Script execution cancelled", e));
+		}
+		catch (final ExecutionException e)
+		{
+			return failedResult(e.getCause());
+		}
+		catch (final InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			return failedResult(e);
+		}
+	}
+
+	private IScriptExecutionResult failedResult(final Throwable exception)
+	{
+		return new DefaultScriptExecutionResult(script, exception, getOutput(), null);
+	}
+
+	private static class BoundedOutput extends ByteArrayOutputStream
+	{
+
+		@Override
+		public synchronized void write(final int b)
+		{
+			if (count < MAX_OUTPUT_SIZE)
+			{
+				super.write(b);
+			}
+		}
+
+		@Override
+		public synchronized void write(final byte[] b, final int off, final int len)
+		{
+			super.write(b, off, Math.max(0, Math.min(len, MAX_OUTPUT_SIZE - count)));
+		}
+	}
+
+}
@@ -0,0 +1,168 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.console.engine;
+
+import java.io.IOException;
+import java.io.PrintStream;
+
+/**
+ * Captures what a thread writes to {@link System#out} and {@link System#err}.
+ * <p>
+ * While at least one thread captures, the system streams are replaced by streams that write to
+ * the capture target of the current thread, or to the original stream if the thread does not
+ * capture. Other threads are therefore never affected by a running script. The captures are
+ * counted and the original streams are restored when the last one stops, unless somebody else
+ * replaced the system streams in the meantime.
+ */
+final class ThreadOutputCapture
+{
+
+	private static final ThreadLocal<PrintStream> TARGET = new ThreadLocal<PrintStream>();
+
+	private static final Object LOCK = new Object();
+
+	private static int captures;
+
+	private static PrintStream originalOut;
+
+	private static PrintStream originalErr;
+
+	private static PrintStream routingOut;
+
+	private static PrintStream routingErr;
+
+	private ThreadOutputCapture()
+	{
+	}
+
+	/**
+	 * Routes the system streams of the current thread to a target until {@link #stop()}.
+	 */
+	static void start(final PrintStream target)
+	{
+		if (TARGET.get() != null)
+		{
+			throw new IllegalStateException("Output of this thread is already captured");
+		}
+		acquire();
+		TARGET.set(target);
+	}
+
+	static void stop()
+	{
+		final PrintStream target = TARGET.get();
+		if (target == null)
+		{
+			return;
+		}
+		TARGET.remove();
+		target.flush();
+		release();
+	}
+
+	/**
+	 * @return whether the system streams are currently replaced
+	 */
+	static boolean isInstalled()
+	{
+		synchronized (LOCK)
+		{
+			return captures > 0;
+		}
+	}
+
+	private static void acquire()
+	{
+		synchronized (LOCK)
+		{
+			if (captures++ == 0)
+			{
+				originalOut = System.out;
+				originalErr = System.err;
+				routingOut = new RoutingPrintStream(originalOut);
+				routingErr = new RoutingPrintStream(originalErr);
+				System.setOut(routingOut);
+				System.setErr(routingErr);
+			}
+		}
+	}
+
+	private static void release()
+	{
+		synchronized (LOCK)
+		{
+			if (--captures == 0)
+			{
+				if (System.out == routingOut)
+				{
+					System.setOut(originalOut);
+				}
+				if (System.err == routingErr)
+				{
+					System.setErr(originalErr);
+				}
+				originalOut = null;
+				originalErr = null;
+				routingOut = null;
+				routingErr = null;
+			}
+		}
+	}
+
+	private static class RoutingPrintStream extends PrintStream
+	{
+
+		private final PrintStream original;
+
+		private RoutingPrintStream(final PrintStream original)
+		{
+			super(original, true);
+			this.original = original;
+		}
+
+		private PrintStream current()
+		{
+			final PrintStream target = TARGET.get();
+			return target != null ? target : original;
+		}
+
+		@Override
+		public void write(final int b)
+		{
+			current().write(b);
+		}
+
+		@Override
+		public void write(final byte[] buf, final int off, final int len)
+		{
+			current().write(buf, off, len);
+		}
+
+		@Override
+		public void write(final byte[] b) throws IOException
+		{
+			current().write(b, 0, b.length);
+		}
+
+		@Override
+		public void flush()
+		{
+			current().flush();
+		}
+	}
+
+}
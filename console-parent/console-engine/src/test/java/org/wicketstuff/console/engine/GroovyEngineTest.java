@@ -22,8 +22,11 @@ import static junit.framework.Assert.assertNotNull;
 import static junit.framework.Assert.assertNull;
 import static junit.framework.Assert.assertTrue;
 
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -154,4 +157,114 @@ public class GroovyEngineTest
 
 	}
 
+	@Test
+	public void test_assignment_visible_in_bindings() throws Exception
+	{
+		// Given
+		final String script = "y = x + 1";
+		final Map<String, Object> bindings = new HashMap<String, Object>();
+		bindings.put("x", 5);
+
+		// When
+		engine.execute(script, bindings);
+
+		// Then
+		assertEquals(6, bindings.get("y"));
+	}
+
+	@Test
+	public void test_bound_out_not_replaced() throws Exception
+	{
+		// Given
+		final String script = "print 7";
+		final ByteArrayOutputStream bout = new ByteArrayOutputStream();
+		final Map<String, Object> bindings = new HashMap<String, Object>();
+		bindings.put("out", new PrintStream(bout, true));
+
+		// When
+		final IScriptExecutionResult result = engine.execute(script, bindings);
+
+		// Then
+		assertEquals("", result.getOutput());
+		assertEquals("7", bout.toString());
+	}
+
+	@Test
+	public void test_output_of_other_threads_not_captured() throws Exception
+	{
+		// Given
+		final String script = "Thread.start { System.out.print 'other' }.join(); System.out.print 'own'";
+
+		// When
+		final IScriptExecutionResult result = engine.execute(script);
+
+		// Then
+		assertTrue(result.isSuccess());
+		assertEquals("own", result.getOutput());
+	}
+
+	@Test
+	public void test_output_streamed_while_running() throws Exception
+	{
+		// Given
+		final String script = "print 'started'; Thread.sleep(500); print 'done'";
+
+		// When
+		final ScriptExecution execution = ((IStreamingScriptEngine)engine).submit(script, null,
+			null);
+		Thread.sleep(250);
+
+		// Then
+		assertFalse(execution.isDone());
+		assertEquals("started", execution.getOutput());
+		assertEquals("starteddone", execution.awaitResult().getOutput());
+	}
+
+	@Test
+	public void test_timeout() throws Exception
+	{
+		// Given
+		((AbstractScriptEngine)engine).setTimeout(200, TimeUnit.MILLISECONDS);
+		final String script = "while (true) { }";
+
+		// When
+		final IScriptExecutionResult result = engine.execute(script);
+
+		// Then
+		assertFalse(result.isSuccess());
+		assertTrue(result.getException() instanceof ScriptEngineException);
+	}
+
+	@Test
+	public void test_system_streams_restored_after_execution() throws Exception
+	{
+		// Given
+		final PrintStream out = System.out;
+		final PrintStream err = System.err;
+
+		// When
+		final IScriptExecutionResult result = engine.execute("print 'x'");
+
+		// Then
+		assertTrue(result.isSuccess());
+		assertFalse(ThreadOutputCapture.isInstalled());
+		assertTrue(System.out == out);
+		assertTrue(System.err == err);
+	}
+
+	@Test
+	public void test_execution_found_by_other_engine() throws Exception
+	{
+		// Given
+		final ScriptExecution execution = ((IStreamingScriptEngine)engine).submit("1", null,
+			null);
+
+		// When
+		final ScriptExecution found = new GroovyEngine().getExecution(execution.getId());
+
+		// Then
+		assertTrue(found == execution);
+		execution.awaitResult();
+	}
+
 }
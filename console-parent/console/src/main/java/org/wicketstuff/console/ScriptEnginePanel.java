@@ -18,8 +18,12 @@ package org.wicketstuff.console;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Callable;
 
 import org.apache.wicket.Application;
+import org.apache.wicket.Session;
+import org.apache.wicket.ThreadContext;
+import org.apache.wicket.ajax.AbstractAjaxTimerBehavior;
 import org.apache.wicket.ajax.AbstractDefaultAjaxBehavior;
 import org.apache.wicket.ajax.AjaxRequestTarget;
 import org.apache.wicket.markup.head.CssHeaderItem;
@@ -38,11 +42,15 @@ import org.apache.wicket.model.IModel;
 import org.apache.wicket.model.Model;
 import org.apache.wicket.request.resource.PackageResourceReference;
 import org.apache.wicket.request.resource.ResourceReference;
+import org.apache.wicket.util.time.Duration;
 import org.wicketstuff.console.clojure.ClojureScriptEnginePanel;
 import org.wicketstuff.console.engine.Engines;
 import org.wicketstuff.console.engine.IScriptEngine;
 import org.wicketstuff.console.engine.IScriptExecutionResult;
+import org.wicketstuff.console.engine.IScriptTaskDecorator;
+import org.wicketstuff.console.engine.IStreamingScriptEngine;
 import org.wicketstuff.console.engine.Lang;
+import org.wicketstuff.console.engine.ScriptExecution;
 import org.wicketstuff.console.groovy.GroovyScriptEnginePanel;
 import org.wicketstuff.console.jython.JythonScriptEnginePanel;
 import org.wicketstuff.console.scala.ScalaScriptEnginePanel;
@@ -79,10 +87,14 @@ public class ScriptEnginePanel extends Panel
 	private static final ResourceReference JS = new PackageResourceReference(
 		ScriptEnginePanel.class, "ScriptEnginePanel.js");
 
+	private static final Duration POLL_INTERVAL = Duration.milliseconds(500);
+
 	private String input;
 	private String output;
 	private String returnValue;
 	private boolean success;
+	private String executionId;
+	private OutputPollingBehavior pollingBehavior;
 
 	private Label titleLabel;
 	private LangLabel titleLangLabel;
@@ -189,10 +201,57 @@ public class ScriptEnginePanel extends Panel
 	{
 
 		final IScriptEngine engine = newEngine();
-		final Map<String, Object> bindings = newBindings();
 
-		final IScriptExecutionResult result = engine.execute(input, bindings);
+		if (engine instanceof IStreamingScriptEngine)
+		{
+			submit((IStreamingScriptEngine)engine, newBackgroundBindings(), target);
+			return;
+		}
+
+		final IScriptExecutionResult result = engine.execute(input, newBindings());
+		onResult(result);
+
+		target.add(returnValueTf, outputTa);
+	}
+
+	/**
+	 * Starts the script in the background and polls its output until it is done, so that the
+	 * output shows up while the script is still running.
+	 */
+	private void submit(final IStreamingScriptEngine engine, final Map<String, Object> bindings,
+		final AjaxRequestTarget target)
+	{
+		final ScriptExecution execution = engine.submit(input, bindings,
+			new RequestContextDecorator());
+
+		if (pollingBehavior != null)
+		{
+			outputTa.remove(pollingBehavior);
+			pollingBehavior = null;
+		}
+
+		if (execution.isDone())
+		{
+			// e.g. rejected because too many scripts are running
+			executionId = null;
+			onResult(execution.getResult());
+			target.add(returnValueTf, outputTa);
+			return;
+		}
+
+		executionId = execution.getId();
+		returnValue = null;
+		output = "";
+		success = false;
+
+		pollingBehavior = new OutputPollingBehavior();
+		outputTa.add(pollingBehavior);
+
+		target.add(returnValueTf, outputTa);
+	}
 
+	private void onResult(final IScriptExecutionResult result)
+	{
 		if (result.isSuccess())
 		{
 			returnValue = String.valueOf(result.getReturnValue());
@@ -205,10 +264,15 @@ public class ScriptEnginePanel extends Panel
 			output = String.format("%s\n\n%s", result.getOutput(), result.getException());
 			success = false;
 		}
-
-		target.add(returnValueTf, outputTa);
 	}
 
+	/**
+	 * Returns the engine to execute scripts with. It is asked again when polling the output of a
+	 * running script; the executions of streaming engines are registered for all engine
+	 * instances, so it does not have to return the same instance every time.
+	 * 
+	 * @return the engine
+	 */
 	protected IScriptEngine newEngine()
 	{
 		return Engines.getSingletonInstance(lang);
@@ -223,6 +287,21 @@ public class ScriptEnginePanel extends Panel
 		return bindings;
 	}
 
+	/**
+	 * Returns the bindings of scripts executed in the background by streaming engines. These
+	 * scripts keep running after the request, when the page is no longer locked, so the page and
+	 * its components are not bound.
+	 * 
+	 * @return the bindings
+	 */
+	protected Map<String, Object> newBackgroundBindings()
+	{
+		final Map<String, Object> bindings = newBindings();
+		bindings.remove("page");
+		bindings.remove("component");
+		return bindings;
+	}
+
 	public void setTitle(final IModel<String> title)
 	{
 		titleLabel.setDefaultModel(title);
@@ -347,4 +426,77 @@ public class ScriptEnginePanel extends Panel
 
 		store.save(new ScriptTemplate(scriptTitle, getInput(), lang));
 	}
+
+	/**
+	 * Updates the output of the running script and shows its result once it is done.
+	 */
+	private class OutputPollingBehavior extends AbstractAjaxTimerBehavior
+	{
+		private static final long serialVersionUID = 1L;
+
+		private OutputPollingBehavior()
+		{
+			super(POLL_INTERVAL);
+		}
+
+		@Override
+		protected void onTimer(final AjaxRequestTarget target)
+		{
+			final IScriptEngine engine = newEngine();
+			final ScriptExecution execution = executionId != null &&
+				engine instanceof IStreamingScriptEngine
+				? ((IStreamingScriptEngine)engine).getExecution(executionId) : null;
+
+			if (execution == null)
+			{
+				// expired or unknown, nothing more to show
+				stop(target);
+				return;
+			}
+
+			if (execution.isDone())
+			{
+				onResult(execution.getResult());
+				executionId = null;
+				stop(target);
+				target.add(returnValueTf);
+			}
+			else
+			{
+				output = execution.getOutput();
+			}
+			target.add(outputTa);
+		}
+	}
+
+	/**
+	 * Binds the application and session of the submitting request to the thread running the
+	 * script, so scripts can use {@link Application#get()} and {@link Session#get()}.
+	 */
+	private static class RequestContextDecorator implements IScriptTaskDecorator
+	{
+		@Override
+		public <T> Callable<T> decorate(final Callable<T> task)
+		{
+			final Application application = Application.exists() ? Application.get() : null;
+			final Session session = Session.exists() ? Session.get() : null;
+			return new Callable<T>()
+			{
+				@Override
+				public T call() throws Exception
+				{
+					ThreadContext.setApplication(application);
+					ThreadContext.setSession(session);
+					try
+					{
+						return task.call();
+					}
+					finally
+					{
+						ThreadContext.detach();
+					}
+				}
+			};
+		}
+	}
 }
\ No newline at end of file
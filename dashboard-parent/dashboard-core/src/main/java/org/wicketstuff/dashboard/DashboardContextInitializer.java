@@ -12,9 +12,14 @@
  */
 package org.wicketstuff.dashboard;
 
+import java.io.Closeable;
+import java.io.IOException;
+
 import org.apache.wicket.Application;
 import org.apache.wicket.IInitializer;
 import org.apache.wicket.MetaDataKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.wicketstuff.dashboard.web.DashboardContext;
 import org.wicketstuff.dashboard.web.DashboardContextInjector;
 
@@ -25,6 +30,8 @@ import org.wicketstuff.dashboard.web.DashboardContextInjector;
  */
 public class DashboardContextInitializer implements IInitializer {
 
+	private static final Logger log = LoggerFactory.getLogger(DashboardContextInitializer.class);
+
 	@SuppressWarnings("serial")
 	public static MetaDataKey<DashboardContext> DASHBOARD_CONTEXT_KEY = new MetaDataKey<DashboardContext>() {};
 
@@ -43,6 +50,14 @@ public class DashboardContextInitializer implements IInitializer {
 
 	@Override
 	public void destroy(Application application) {
-		// does noting
+		// write pending changes
+		DashboardContext dashboardContext = application.getMetaData(DASHBOARD_CONTEXT_KEY);
+		if ((dashboardContext != null) && (dashboardContext.getDashboardPersister() instanceof Closeable)) {
+			try {
+				((Closeable) dashboardContext.getDashboardPersister()).close();
+			} catch (IOException e) {
+				log.error("Cannot close the dashboard persister", e);
+			}
+		}
 	}
 }
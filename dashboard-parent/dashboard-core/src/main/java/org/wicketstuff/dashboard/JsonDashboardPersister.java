@@ -0,0 +1,378 @@
+/*
+ * Copyright 2012 Decebal Suiu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.wicketstuff.dashboard;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Type;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonDeserializationContext;
+import com.google.gson.JsonDeserializer;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonSerializationContext;
+import com.google.gson.JsonSerializer;
+
+/**
+ * {@link DashboardPersister} that keeps one JSON file per key, e.g. per user, in a directory.
+ * <ul>
+ * <li>the most recently used dashboards are cached in memory</li>
+ * <li>saves and deletes are written behind: changes within the write delay (e.g. while dragging widgets
+ * around) are batched into a single write per key</li>
+ * <li>files are replaced atomically, so a crash never leaves a partially written dashboard</li>
+ * </ul>
+ * Call {@link #close()} on shutdown to write pending changes, this is done by {@link DashboardContextInitializer}
+ * for the persister of the {@link org.wicketstuff.dashboard.web.DashboardContext}.
+ */
+public class JsonDashboardPersister implements DashboardPersister, Closeable {
+
+	private static final Logger log = LoggerFactory.getLogger(JsonDashboardPersister.class);
+
+	private static final String CLASS_PROPERTY = "@class";
+
+	/** pending change of a deleted dashboard, a JSON object is never empty */
+	private static final String DELETED = "";
+
+	/** seconds to wait for a running flush on close */
+	private static final long CLOSE_TIMEOUT = 10;
+
+	private final File directory;
+	private final DashboardKeyResolver keyResolver;
+	private final Gson gson;
+
+	private final Map<String, Dashboard> cache = new LinkedHashMap<String, Dashboard>(16, 0.75f, true) {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Dashboard> eldest) {
+			return size() > maxCacheSize;
+		}
+
+	};
+	private final ConcurrentMap<String, String> pending = new ConcurrentHashMap<String, String>();
+	private final AtomicBoolean flushScheduled = new AtomicBoolean();
+	private final Object flushLock = new Object();
+
+	private long writeDelay = 1000;
+	private volatile int maxCacheSize = 100;
+	private ScheduledExecutorService writer;
+
+	/**
+	 * Persists a single dashboard.
+	 */
+	public JsonDashboardPersister(File directory) {
+		this(directory, new DashboardKeyResolver() {
+
+			@Override
+			public String getKey() {
+				return "dashboard";
+			}
+
+		});
+	}
+
+	public JsonDashboardPersister(File directory, DashboardKeyResolver keyResolver) {
+		this.directory = directory;
+		this.keyResolver = keyResolver;
+
+		TypedAdapter adapter = new TypedAdapter();
+		gson = new GsonBuilder()
+			.registerTypeAdapter(Dashboard.class, adapter)
+			.registerTypeAdapter(Widget.class, adapter)
+			.create();
+	}
+
+	/**
+	 * Sets how long saves are delayed to be batched, 0 to write immediately.
+	 */
+	public JsonDashboardPersister setWriteDelay(long writeDelay, TimeUnit unit) {
+		this.writeDelay = unit.toMillis(writeDelay);
+		return this;
+	}
+
+	/**
+	 * Sets how many dashboards are cached, the least recently used are dropped first.
+	 */
+	public JsonDashboardPersister setMaxCacheSize(int maxCacheSize) {
+		this.maxCacheSize = maxCacheSize;
+		return this;
+	}
+
+	@Override
+	public Dashboard load() {
+		return load(keyResolver.getKey());
+	}
+
+	public Dashboard load(String key) {
+		synchronized (cache) {
+			Dashboard dashboard = cache.get(key);
+			if (dashboard != null) {
+				return dashboard;
+			}
+		}
+
+		// a change dropped from the cache may not be written yet
+		String json = pending.get(key);
+		Dashboard dashboard;
+		if (json == null) {
+			dashboard = read(key);
+		} else if (DELETED.equals(json)) {
+			dashboard = null;
+		} else {
+			dashboard = gson.fromJson(json, Dashboard.class);
+		}
+
+		if (dashboard != null) {
+			synchronized (cache) {
+				Dashboard concurrent = cache.get(key);
+				if (concurrent != null) {
+					return concurrent;
+				}
+				cache.put(key, dashboard);
+			}
+		}
+
+		return dashboard;
+	}
+
+	@Override
+	public void save(Dashboard dashboard) {
+		save(keyResolver.getKey(), dashboard);
+	}
+
+	public void save(String key, Dashboard dashboard) {
+		// sort widgets
+		Collections.sort(dashboard.getWidgets(), new WidgetComparator());
+
+		synchronized (cache) {
+			cache.put(key, dashboard);
+		}
+
+		// encode now, the dashboard may change until written
+		change(key, gson.toJson(dashboard, Dashboard.class));
+	}
+
+	/**
+	 * Removes the dashboard of a key.
+	 */
+	public void delete(String key) {
+		synchronized (cache) {
+			cache.remove(key);
+		}
+
+		// ordered with the writes of the key, so a write in progress can't bring the file back
+		change(key, DELETED);
+	}
+
+	private void change(String key, String json) {
+		if (writeDelay <= 0) {
+			synchronized (flushLock) {
+				// replaces an older pending change
+				pending.remove(key);
+				apply(key, json);
+			}
+		} else {
+			pending.put(key, json);
+			scheduleFlush();
+		}
+	}
+
+	/**
+	 * Writes all pending changes.
+	 */
+	public void flush() {
+		// one flush at a time, so an older version never replaces a newer one
+		synchronized (flushLock) {
+			flushScheduled.set(false);
+
+			Iterator<Map.Entry<String, String>> iterator = pending.entrySet().iterator();
+			while (iterator.hasNext()) {
+				Map.Entry<String, String> entry = iterator.next();
+				// a newer version saved meanwhile stays pending
+				if (pending.remove(entry.getKey(), entry.getValue())) {
+					apply(entry.getKey(), entry.getValue());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Stops the writer thread and writes all pending changes. A flush already running on the writer thread is
+	 * not interrupted, but awaited.
+	 */
+	@Override
+	public synchronized void close() {
+		if (writer != null) {
+			// delayed flushes are cancelled, the final flush writes their changes
+			writer.shutdown();
+			try {
+				if (!writer.awaitTermination(CLOSE_TIMEOUT, TimeUnit.SECONDS)) {
+					log.warn("Dashboard writer still running after {} seconds", CLOSE_TIMEOUT);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			writer = null;
+		}
+		flush();
+	}
+
+	private void scheduleFlush() {
+		if (flushScheduled.compareAndSet(false, true)) {
+			getWriter().schedule(new Runnable() {
+
+				@Override
+				public void run() {
+					flush();
+				}
+
+			}, writeDelay, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	private synchronized ScheduledExecutorService getWriter() {
+		if (writer == null) {
+			ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "JsonDashboardPersister");
+					thread.setDaemon(true);
+					return thread;
+				}
+
+			});
+			executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+			writer = executor;
+		}
+
+		return writer;
+	}
+
+	private Dashboard read(String key) {
+		File file = getFile(key);
+		if (!file.isFile()) {
+			return null;
+		}
+
+		try {
+			String json = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+			return gson.fromJson(json, Dashboard.class);
+		} catch (IOException | JsonParseException e) {
+			log.error("Cannot read dashboard '{}'", key, e);
+			return null;
+		}
+	}
+
+	private void apply(String key, String json) {
+		if (DELETED.equals(json)) {
+			try {
+				Files.deleteIfExists(getFile(key).toPath());
+			} catch (IOException e) {
+				log.error("Cannot delete dashboard '{}'", key, e);
+			}
+		} else {
+			write(key, json);
+		}
+	}
+
+	private void write(String key, String json) {
+		File file = getFile(key);
+		try {
+			Files.createDirectories(directory.toPath());
+			Path temp = Files.createTempFile(directory.toPath(), file.getName(), ".tmp");
+			try {
+				Files.write(temp, json.getBytes(StandardCharsets.UTF_8));
+				try {
+					Files.move(temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+				} catch (AtomicMoveNotSupportedException e) {
+					Files.move(temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+				}
+			} finally {
+				Files.deleteIfExists(temp);
+			}
+		} catch (IOException e) {
+			log.error("Cannot write dashboard '{}'", key, e);
+		}
+	}
+
+	private File getFile(String key) {
+		try {
+			return new File(directory, URLEncoder.encode(key, "UTF-8").replace("*", "%2A") + ".json");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Records the concrete class of dashboards and widgets, so they can be read back.
+	 */
+	private static class TypedAdapter implements JsonSerializer<Object>, JsonDeserializer<Object> {
+
+		@Override
+		public JsonElement serialize(Object src, Type typeOfSrc, JsonSerializationContext context) {
+			JsonObject json = context.serialize(src, src.getClass()).getAsJsonObject();
+			json.addProperty(CLASS_PROPERTY, src.getClass().getName());
+
+			return json;
+		}
+
+		@Override
+		public Object deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context) {
+			JsonObject object = json.getAsJsonObject();
+			JsonElement className = object.remove(CLASS_PROPERTY);
+			if (className == null) {
+				throw new JsonParseException("Missing " + CLASS_PROPERTY + " for " + typeOfT);
+			}
+
+			try {
+				ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+				if (classLoader == null) {
+					classLoader = JsonDashboardPersister.class.getClassLoader();
+				}
+				return context.deserialize(object, Class.forName(className.getAsString(), true, classLoader));
+			} catch (ClassNotFoundException e) {
+				throw new JsonParseException(e);
+			}
+		}
+
+	}
+
+}
@@ -12,10 +12,16 @@
  */
 package org.wicketstuff.dashboard;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.Collections;
 
 import com.thoughtworks.xstream.XStream;
@@ -48,9 +54,9 @@ public class XStreamDashboardPersister implements DashboardPersister {
 			return null;
 		}
 
-		try {
-			return (Dashboard) xstream.fromXML(new FileInputStream(file));
-		} catch (FileNotFoundException e) {
+		try (InputStream input = new BufferedInputStream(new FileInputStream(file))) {
+			return (Dashboard) xstream.fromXML(input);
+		} catch (IOException e) {
 			e.printStackTrace();
 			return null;
 		}
@@ -61,9 +67,14 @@ public class XStreamDashboardPersister implements DashboardPersister {
 		// sort widgets
 		Collections.sort(dashboard.getWidgets(), new WidgetComparator());
 
+		// write to a temporary file first, so a failed save doesn't destroy the dashboard
+		File temp = new File(file.getAbsoluteFile().getParentFile(), file.getName() + ".tmp");
 		try {
-			xstream.toXML(dashboard, new FileOutputStream(file));
-		} catch (FileNotFoundException e) {
+			try (OutputStream output = new BufferedOutputStream(new FileOutputStream(temp))) {
+				xstream.toXML(dashboard, output);
+			}
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
 			e.printStackTrace();
 		}
 	}
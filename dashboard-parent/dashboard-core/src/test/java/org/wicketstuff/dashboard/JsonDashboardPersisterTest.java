@@ -0,0 +1,164 @@
+/*
+ * Copyright 2012 Decebal Suiu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.wicketstuff.dashboard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.wicketstuff.dashboard.web.WidgetView;
+
+public class JsonDashboardPersisterTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File directory;
+
+	@Before
+	public void before() {
+		directory = new File(folder.getRoot(), "dashboards");
+	}
+
+	@Test
+	public void reloadsSavedDashboard() {
+		JsonDashboardPersister persister = new JsonDashboardPersister(directory).setWriteDelay(0, TimeUnit.MILLISECONDS);
+		Dashboard dashboard = newDashboard("first");
+		persister.save("user", dashboard);
+
+		assertSame(dashboard, persister.load("user"));
+
+		Dashboard reloaded = newPersister().load("user");
+		assertEquals("first", reloaded.getTitle());
+		assertEquals(1, reloaded.getWidgets().size());
+		Widget widget = reloaded.getWidgets().get(0);
+		assertTrue(widget instanceof TestWidget);
+		assertEquals("widget", widget.getTitle());
+		assertEquals(1, widget.getLocation().getColumn());
+	}
+
+	@Test
+	public void writesBehindAndFlushesOnClose() {
+		JsonDashboardPersister persister = newPersister();
+		persister.save("user", newDashboard("first"));
+		persister.save("user", newDashboard("second"));
+
+		assertNull(newPersister().load("user"));
+
+		persister.close();
+		assertEquals("second", newPersister().load("user").getTitle());
+		assertEquals(1, directory.list().length);
+	}
+
+	@Test
+	public void closeDoesNotLoseRunningFlush() throws InterruptedException {
+		for (int i = 0; i < 20; i++) {
+			JsonDashboardPersister persister = new JsonDashboardPersister(directory).setWriteDelay(1,
+				TimeUnit.MILLISECONDS);
+			persister.save("user" + i, newDashboard("dashboard" + i));
+			// close while the delayed flush is about to run or running
+			Thread.sleep(1);
+			persister.close();
+
+			assertEquals("dashboard" + i, newPersister().load("user" + i).getTitle());
+		}
+	}
+
+	@Test
+	public void deleteDropsPendingWrite() {
+		JsonDashboardPersister persister = newPersister();
+		persister.save("user", newDashboard("first"));
+		persister.delete("user");
+
+		assertNull(persister.load("user"));
+
+		persister.close();
+		assertNull(newPersister().load("user"));
+		assertEquals(0, directory.exists() ? directory.list().length : 0);
+	}
+
+	@Test
+	public void deleteIsWrittenAfterEarlierWrite() {
+		JsonDashboardPersister persister = newPersister();
+		persister.save("user", newDashboard("first"));
+		persister.flush();
+		persister.save("user", newDashboard("second"));
+		persister.delete("user");
+
+		assertNull(persister.load("user"));
+		// not deleted yet
+		assertEquals("first", newPersister().load("user").getTitle());
+
+		persister.flush();
+		assertNull(newPersister().load("user"));
+
+		persister.save("user", newDashboard("third"));
+		persister.close();
+		assertEquals("third", newPersister().load("user").getTitle());
+	}
+
+	@Test
+	public void cacheIsBounded() {
+		JsonDashboardPersister persister = newPersister().setMaxCacheSize(1);
+		Dashboard first = newDashboard("first");
+		persister.save("first", first);
+		persister.save("second", newDashboard("second"));
+
+		// dropped from the cache, read from the pending change
+		Dashboard loaded = persister.load("first");
+		assertNotSame(first, loaded);
+		assertEquals("first", loaded.getTitle());
+		assertFalse(new File(directory, "first.json").exists());
+
+		persister.close();
+		assertEquals("first", newPersister().load("first").getTitle());
+		assertEquals("second", newPersister().load("second").getTitle());
+	}
+
+	private JsonDashboardPersister newPersister() {
+		return new JsonDashboardPersister(directory).setWriteDelay(1, TimeUnit.HOURS);
+	}
+
+	private static Dashboard newDashboard(String title) {
+		Dashboard dashboard = new DefaultDashboard("dashboard", title);
+		TestWidget widget = new TestWidget();
+		widget.setId("1");
+		widget.setTitle("widget");
+		widget.setLocation(new WidgetLocation(1, 0));
+		dashboard.addWidget(widget);
+
+		return dashboard;
+	}
+
+	public static class TestWidget extends AbstractWidget {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public WidgetView createView(String viewId) {
+			return null;
+		}
+
+	}
+
+}
@@ -1,19 +1,40 @@
 package org.wicketstuff.datatables.virtualscroll;
 
-import com.github.openjson.JSONArray;
 import com.github.openjson.JSONObject;
+import com.github.openjson.JSONStringer;
+import org.apache.wicket.Session;
 import org.apache.wicket.markup.repeater.data.IDataProvider;
-import org.apache.wicket.request.http.WebResponse;
+import org.apache.wicket.model.IModel;
+import org.apache.wicket.request.mapper.parameter.INamedParameters;
 import org.apache.wicket.request.mapper.parameter.PageParameters;
-import org.apache.wicket.request.resource.CharSequenceResource;
+import org.apache.wicket.request.resource.AbstractResource;
 import org.apache.wicket.request.resource.IResource;
 import org.apache.wicket.request.resource.ResourceReference;
 
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Serializable;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 
 /**
- * An abstract resource reference that could be used as a base for custom implementations
+ * An abstract resource reference that could be used as a base for custom implementations.
+ * <p>
+ * The rows of a block are written to the response one by one, as they are returned by the data provider.
+ * <p>
+ * Caching is disabled by default. If {@link #getRecordsTotalTimeToLive()} returns a positive duration, the
+ * total number of records is cached per session and query, i.e. per combination of filter and sort
+ * parameters, for that long. If the data provider is an {@link IKeysetDataProvider}, scrolling down then
+ * continues after the last row of the previous block instead of skipping all rows before the new block.
  */
 public abstract class AbstractVirtualScrollResourceReference<T> extends ResourceReference {
 	private static final long serialVersionUID = 1L;
@@ -38,6 +59,8 @@ public abstract class AbstractVirtualScrollResourceReference<T> extends Resource
 	public static final String DRAW_RESPONSE_FIELD = "draw";
 	public static final String DATA_RESPONSE_FIELD = "data";
 
+	private transient volatile VirtualScrollCache cache;
+
 	public AbstractVirtualScrollResourceReference(final Key key) {
 		super(key);
 	}
@@ -57,17 +80,30 @@ public abstract class AbstractVirtualScrollResourceReference<T> extends Resource
 
 	@Override
 	public IResource getResource() {
-		return new CharSequenceResource("application/json") {
+		return new AbstractResource() {
 			private static final long serialVersionUID = 1L;
 
 			@Override
-			protected CharSequence getData(final Attributes attributes) {
-				PageParameters parameters = attributes.getParameters();
-				WebResponse webResponse = (WebResponse) attributes.getResponse();
-				webResponse.disableCaching();
-
-				String response = generateResponse(parameters);
-				return response;
+			protected ResourceResponse newResourceResponse(final Attributes attributes) {
+				ResourceResponse resourceResponse = new ResourceResponse();
+				resourceResponse.setContentType("application/json");
+				resourceResponse.setTextEncoding(StandardCharsets.UTF_8.name());
+				resourceResponse.disableCaching();
+				resourceResponse.setWriteCallback(new WriteCallback() {
+					@Override
+					public void writeData(final Attributes attributes) throws IOException {
+						Writer writer = new OutputStreamWriter(attributes.getResponse().getOutputStream(),
+								StandardCharsets.UTF_8);
+						if (isGenerateResponseOverridden()) {
+							// the response of an override is written as a whole
+							writer.write(generateResponse(attributes.getParameters()));
+						} else {
+							writeResponse(attributes.getParameters(), writer);
+						}
+						writer.flush();
+					}
+				});
+				return resourceResponse;
 			}
 		};
 	}
@@ -77,31 +113,102 @@ public abstract class AbstractVirtualScrollResourceReference<T> extends Resource
 	 * See <a href="https://datatables.net/manual/server-side">DataTables server side docs.</a>
 	 *
 	 * @param parameters The request parameters
-	 * @return
+	 * @return The JSON response
+	 * @deprecated Override {@link #writeResponse(PageParameters, Writer)} instead. Overrides of this method
+	 *      are still used for the response, but it is no longer streamed then.
 	 */
+	@Deprecated
 	protected String generateResponse(PageParameters parameters) {
+		StringWriter writer = new StringWriter();
+		try {
+			writeResponse(parameters, writer);
+		} catch (IOException e) {
+			// StringWriter does not throw
+			throw new IllegalStateException(e);
+		}
+		return writer.toString();
+	}
+
+	/**
+	 * Writes the JSON response for infinite scrolling/paging, row by row.
+	 * See <a href="https://datatables.net/manual/server-side">DataTables server side docs.</a>
+	 *
+	 * @param parameters The request parameters
+	 * @param writer     The writer to write the response to
+	 * @throws IOException If the response cannot be written
+	 */
+	protected void writeResponse(PageParameters parameters, Writer writer) throws IOException {
 		int length = parameters.get(LENGTH_PARAMETER).toInt(getDefaultLength());
 
 		int start = parameters.get(START_PARAMETER).toInt(getDefaultStart());
+		long ttl = getRecordsTotalTimeToLive().toMillis();
+		String queryKey = ttl > 0L ? getCacheKey(parameters) : null;
+		if (queryKey == null) {
+			ttl = 0L;
+		}
 		IDataProvider<T> dataProvider = getDataProvider(parameters);
 
-		Iterator<? extends T> dataItor = dataProvider.iterator(start, length);
-
 		JSONObject responseJson = new JSONObject();
-		JSONArray data = new JSONArray();
-		responseJson.put(DATA_RESPONSE_FIELD, data);
+		responseJson.put(DRAW_RESPONSE_FIELD, parameters.get(DRAW_PARAMETER).toInt(1));
+		populateDataJson(responseJson, ttl > 0L ? new CountCachingDataProvider(dataProvider, queryKey, ttl) : dataProvider);
+		// the data is always the streamed block
+		responseJson.remove(DATA_RESPONSE_FIELD);
 
+		JSONStringer fields = new JSONStringer().object();
+		for (String name : responseJson.keySet()) {
+			fields.key(name).value(responseJson.get(name));
+		}
+		// the object is still open, the rows are appended as they are read
+		writer.write(fields.toString());
+		if (responseJson.length() > 0) {
+			writer.write(',');
+		}
+		writer.write(JSONObject.quote(DATA_RESPONSE_FIELD));
+		writer.write(":[");
+
+		Iterator<? extends T> dataItor = iterator(dataProvider, queryKey, ttl, start, length);
+		T last = null;
+		long count = 0L;
 		while (dataItor.hasNext()) {
 			T dataEntry = dataItor.next();
 
 			JSONObject entryJson = new JSONObject();
 			populateEntryJson(entryJson, dataEntry);
-			data.put(entryJson);
+			if (count > 0L) {
+				writer.write(',');
+			}
+			writer.write(entryJson.toString());
+			last = dataEntry;
+			count++;
 		}
+		writer.write("]}");
 
-		responseJson.put(DRAW_RESPONSE_FIELD, parameters.get(DRAW_PARAMETER).toInt(1));
-		populateDataJson(responseJson, dataProvider);
-		return responseJson.toString(2);
+		if (last != null && ttl > 0L && dataProvider instanceof IKeysetDataProvider) {
+			Serializable key = ((IKeysetDataProvider<T, ?>) dataProvider).getKey(last);
+			getCache().putPosition(queryKey, ttl, start + count, key);
+		}
+	}
+
+	/**
+	 * Returns an iterator over a block of rows. For an {@link IKeysetDataProvider} the iteration continues after
+	 * the closest row served before, as long as it is not further away than the length of the block.
+	 */
+	@SuppressWarnings("unchecked")
+	private Iterator<? extends T> iterator(IDataProvider<T> dataProvider, String queryKey, long ttl, int start,
+	                                       int length) {
+		if (start > 0 && ttl > 0L && dataProvider instanceof IKeysetDataProvider) {
+			Map.Entry<Long, Serializable> position = getCache().findPosition(queryKey, ttl, start);
+			if (position != null && start - position.getKey() <= length) {
+				long skip = start - position.getKey();
+				Iterator<? extends T> iterator = ((IKeysetDataProvider<T, Serializable>) dataProvider)
+						.iteratorAfter(position.getValue(), skip + length);
+				for (long i = 0L; i < skip && iterator.hasNext(); i++) {
+					iterator.next();
+				}
+				return iterator;
+			}
+		}
+		return dataProvider.iterator(start, length);
 	}
 
 	protected void populateDataJson(final JSONObject response, final IDataProvider<T> dataProvider) {
@@ -110,6 +217,91 @@ public abstract class AbstractVirtualScrollResourceReference<T> extends Resource
 		response.put(RECORDS_FILTERED_RESPONSE_FIELD, size);
 	}
 
+	/**
+	 * Returns the key of the cached data of a query in the current session.
+	 *
+	 * @return The key or {@code null} if there is no bound session, in which case nothing is cached
+	 */
+	private String getCacheKey(PageParameters parameters) {
+		String sessionId = Session.exists() ? Session.get().getId() : null;
+		if (sessionId == null) {
+			return null;
+		}
+		return sessionId + '\n' + getQueryKey(parameters);
+	}
+
+	/**
+	 * Returns the key under which the total number of records and the positions for keyset pagination are
+	 * cached. By default, this are all request parameters except the ones for the requested block. The key is
+	 * always combined with the id of the session, so sessions never share cached data.
+	 * <p>
+	 * Subclasses whose data provider depends on more than the request parameters, e.g. on a filter kept in
+	 * the session or on the permissions of the user, must add that to the key.
+	 *
+	 * @param parameters The request parameters
+	 * @return The key of the query
+	 */
+	protected String getQueryKey(PageParameters parameters) {
+		List<INamedParameters.NamedPair> pairs = new ArrayList<>(parameters.getAllNamed());
+		Collections.sort(pairs, Comparator.comparing(INamedParameters.NamedPair::getKey));
+		StringBuilder key = new StringBuilder();
+		for (INamedParameters.NamedPair pair : pairs) {
+			String name = pair.getKey();
+			if (LENGTH_PARAMETER.equals(name) || START_PARAMETER.equals(name) || DRAW_PARAMETER.equals(name)
+					|| "_".equals(name)) {
+				// "_" is added by jQuery to prevent caching
+				continue;
+			}
+			key.append(name).append('=').append(pair.getValue()).append('&');
+		}
+		return key.toString();
+	}
+
+	/**
+	 * Caching is opt-in: while a count is cached, added or removed records do not change
+	 * {@value #RECORDS_TOTAL_RESPONSE_FIELD}.
+	 *
+	 * @return How long the total number of records of a query is cached. {@link Duration#ZERO}, the default,
+	 *      disables caching and keyset pagination.
+	 */
+	protected Duration getRecordsTotalTimeToLive() {
+		return Duration.ZERO;
+	}
+
+	/**
+	 * The cache is shared by all sessions, the least recently used queries are dropped.
+	 *
+	 * @return The maximum number of queries whose count and positions are cached
+	 */
+	protected int getMaxCachedQueries() {
+		return VirtualScrollCache.DEFAULT_MAX_QUERIES;
+	}
+
+	VirtualScrollCache getCache() {
+		VirtualScrollCache result = cache;
+		if (result == null) {
+			synchronized (this) {
+				result = cache;
+				if (result == null) {
+					result = cache = new VirtualScrollCache(getMaxCachedQueries());
+				}
+			}
+		}
+		return result;
+	}
+
+	private boolean isGenerateResponseOverridden() {
+		for (Class<?> c = getClass(); c != AbstractVirtualScrollResourceReference.class; c = c.getSuperclass()) {
+			try {
+				c.getDeclaredMethod("generateResponse", PageParameters.class);
+				return true;
+			} catch (NoSuchMethodException e) {
+				// not declared by this class
+			}
+		}
+		return false;
+	}
+
 	/**
 	 * A callback method that should populate the JSON object for a single entry
 	 * in the response
@@ -141,4 +333,41 @@ public abstract class AbstractVirtualScrollResourceReference<T> extends Resource
 	protected int getDefaultLength() {
 		return 100;
 	}
+
+	/**
+	 * Answers {@link #size()} from the cache.
+	 */
+	private class CountCachingDataProvider implements IDataProvider<T> {
+		private static final long serialVersionUID = 1L;
+
+		private final IDataProvider<T> delegate;
+		private final String queryKey;
+		private final long ttl;
+
+		private CountCachingDataProvider(IDataProvider<T> delegate, String queryKey, long ttl) {
+			this.delegate = delegate;
+			this.queryKey = queryKey;
+			this.ttl = ttl;
+		}
+
+		@Override
+		public Iterator<? extends T> iterator(long first, long count) {
+			return delegate.iterator(first, count);
+		}
+
+		@Override
+		public long size() {
+			return getCache().getCount(queryKey, ttl, delegate::size);
+		}
+
+		@Override
+		public IModel<T> model(T object) {
+			return delegate.model(object);
+		}
+
+		@Override
+		public void detach() {
+			delegate.detach();
+		}
+	}
 }
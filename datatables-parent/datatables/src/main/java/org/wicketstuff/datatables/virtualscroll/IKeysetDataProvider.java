@@ -0,0 +1,35 @@
+package org.wicketstuff.datatables.virtualscroll;
+
+import org.apache.wicket.markup.repeater.data.IDataProvider;
+
+import java.io.Serializable;
+import java.util.Iterator;
+
+/**
+ * A data provider that can continue iterating after a known entry instead of skipping a number
+ * of entries, e.g. by querying {@code WHERE id > :key ORDER BY id} instead of
+ * {@code ORDER BY id OFFSET :first}.
+ * <p>
+ * {@link AbstractVirtualScrollResourceReference} remembers the key of the last entry of every
+ * block it served, so that scrolling further down continues from there and does not need to
+ * scan all entries before the requested block.
+ *
+ * @param <T> The type of the entries
+ * @param <K> The type of the keys of the entries. They must follow the sort order of the
+ *            iteration for the current filter and sort parameters.
+ */
+public interface IKeysetDataProvider<T, K extends Serializable> extends IDataProvider<T> {
+
+	/**
+	 * @param key   The key of the entry to continue after
+	 * @param count The number of entries to return
+	 * @return An iterator over the entries following the one with the given key
+	 */
+	Iterator<? extends T> iteratorAfter(K key, long count);
+
+	/**
+	 * @param object An entry returned by one of the iterators of this provider
+	 * @return The key of the entry
+	 */
+	K getKey(T object);
+}
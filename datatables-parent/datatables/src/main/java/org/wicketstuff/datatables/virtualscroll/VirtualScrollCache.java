@@ -0,0 +1,117 @@
+package org.wicketstuff.datatables.virtualscroll;
+
+import java.io.Serializable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps the total number of records and the keys of already served positions per query, i.e.
+ * per combination of session, filter and sort parameters, for a limited time.
+ */
+class VirtualScrollCache {
+
+	/**
+	 * The default maximum number of queries to keep
+	 */
+	static final int DEFAULT_MAX_QUERIES = 256;
+
+	/**
+	 * The maximum number of positions kept per query
+	 */
+	static final int MAX_POSITIONS = 1024;
+
+	/**
+	 * The queries in access order, the least recently used are dropped
+	 */
+	private final Map<String, Query> queries;
+
+	/**
+	 * @param maxQueries The maximum number of queries to keep
+	 */
+	VirtualScrollCache(final int maxQueries) {
+		queries = new LinkedHashMap<String, Query>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Query> eldest) {
+				return size() > maxQueries;
+			}
+		};
+	}
+
+	/**
+	 * @param queryKey The key of the query
+	 * @param ttlMillis How long the count stays valid
+	 * @param counter Counts the records if there is no valid count
+	 * @return The number of records
+	 */
+	long getCount(String queryKey, long ttlMillis, LongSupplier counter) {
+		Query query = getQuery(queryKey, ttlMillis);
+		long count = query.count;
+		if (count < 0) {
+			count = counter.getAsLong();
+			query.count = count;
+		}
+		return count;
+	}
+
+	/**
+	 * Finds the closest known position at or before an offset.
+	 *
+	 * @return The position or {@code null} if none is known
+	 */
+	Map.Entry<Long, Serializable> findPosition(String queryKey, long ttlMillis, long offset) {
+		Query query = getQuery(queryKey, ttlMillis);
+		synchronized (query.positions) {
+			return query.positions.floorEntry(offset);
+		}
+	}
+
+	/**
+	 * Remembers the key of the entry before an offset.
+	 */
+	void putPosition(String queryKey, long ttlMillis, long offset, Serializable key) {
+		Query query = getQuery(queryKey, ttlMillis);
+		synchronized (query.positions) {
+			query.positions.put(offset, key);
+			if (query.positions.size() > MAX_POSITIONS) {
+				query.positions.pollFirstEntry();
+			}
+		}
+	}
+
+	/**
+	 * @return The number of cached queries, including expired ones that were not dropped yet
+	 */
+	int size() {
+		synchronized (queries) {
+			return queries.size();
+		}
+	}
+
+	private Query getQuery(String queryKey, long ttlMillis) {
+		long now = System.currentTimeMillis();
+		synchronized (queries) {
+			Query query = queries.get(queryKey);
+			if (query == null || query.expires <= now) {
+				query = new Query(now + ttlMillis);
+				queries.put(queryKey, query);
+			}
+			return query;
+		}
+	}
+
+	private static class Query {
+
+		private final long expires;
+		private volatile long count = -1;
+		private final NavigableMap<Long, Serializable> positions = new TreeMap<>();
+
+		private Query(long expires) {
+			this.expires = expires;
+		}
+	}
+}
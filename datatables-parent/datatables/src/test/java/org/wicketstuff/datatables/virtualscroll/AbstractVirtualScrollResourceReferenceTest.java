@@ -0,0 +1,234 @@
+package org.wicketstuff.datatables.virtualscroll;
+
+import com.github.openjson.JSONArray;
+import com.github.openjson.JSONObject;
+import org.apache.wicket.markup.repeater.data.IDataProvider;
+import org.apache.wicket.model.IModel;
+import org.apache.wicket.model.Model;
+import org.apache.wicket.request.mapper.parameter.PageParameters;
+import org.apache.wicket.util.tester.WicketTester;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.LongStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AbstractVirtualScrollResourceReferenceTest {
+
+	private static final int SIZE = 10;
+
+	private WicketTester tester;
+
+	private final AtomicInteger sizeCalls = new AtomicInteger();
+
+	@Before
+	public void before() {
+		tester = new WicketTester();
+		tester.getSession().bind();
+	}
+
+	@After
+	public void after() {
+		tester.destroy();
+	}
+
+	@Test
+	public void writesJsonWithStreamedData() {
+		JSONObject response = request(new TestReference(Duration.ZERO), parameters(2, 3, 7));
+
+		assertEquals(7, response.getInt("draw"));
+		assertEquals(SIZE, response.getLong("recordsTotal"));
+		assertEquals(SIZE, response.getLong("recordsFiltered"));
+		JSONArray data = response.getJSONArray("data");
+		assertEquals(3, data.length());
+		assertEquals(2L, data.getJSONObject(0).getLong("id"));
+		assertEquals(4L, data.getJSONObject(2).getLong("id"));
+	}
+
+	@Test
+	public void writesEmptyData() {
+		JSONObject response = request(new TestReference(Duration.ZERO), parameters(SIZE, 3, 1));
+
+		assertEquals(0, response.getJSONArray("data").length());
+	}
+
+	@Test
+	public void dataIsOnlyWrittenOnce() {
+		TestReference reference = new TestReference(Duration.ZERO) {
+			@Override
+			protected void populateDataJson(JSONObject response, IDataProvider<Long> dataProvider) {
+				super.populateDataJson(response, dataProvider);
+				response.put(DATA_RESPONSE_FIELD, "ignored");
+				response.put("extra", "a \"quoted\" value");
+			}
+		};
+
+		tester.startResourceReference(reference, parameters(0, 2, 1));
+		String text = tester.getLastResponseAsString();
+		JSONObject response = new JSONObject(text);
+
+		assertEquals(text.indexOf("\"data\""), text.lastIndexOf("\"data\""));
+		assertEquals(2, response.getJSONArray("data").length());
+		assertEquals("a \"quoted\" value", response.getString("extra"));
+	}
+
+	@Test
+	public void cachingIsOptIn() {
+		TestReference reference = new TestReference();
+		request(reference, parameters(0, 2, 1));
+		request(reference, parameters(2, 2, 2));
+
+		assertEquals(2, sizeCalls.get());
+	}
+
+	@Test
+	public void cachesCountPerQuery() {
+		TestReference reference = new TestReference(Duration.ofMinutes(1));
+		request(reference, parameters(0, 2, 1));
+		request(reference, parameters(2, 2, 2));
+		assertEquals(1, sizeCalls.get());
+
+		PageParameters filtered = parameters(0, 2, 3).add("search[value]", "x");
+		request(reference, filtered);
+		assertEquals(2, sizeCalls.get());
+	}
+
+	@Test
+	public void cachesCountPerSession() {
+		TestReference reference = new TestReference(Duration.ofMinutes(1));
+		request(reference, parameters(0, 2, 1));
+		String firstSession = tester.getSession().getId();
+
+		tester.getSession().invalidateNow();
+		tester.getSession().bind();
+		assertNotEquals(firstSession, tester.getSession().getId());
+
+		request(reference, parameters(0, 2, 1));
+		assertEquals(2, sizeCalls.get());
+	}
+
+	@Test
+	public void cachedCountExpires() throws InterruptedException {
+		TestReference reference = new TestReference(Duration.ofMillis(50));
+		request(reference, parameters(0, 2, 1));
+		Thread.sleep(100);
+		request(reference, parameters(2, 2, 2));
+
+		assertEquals(2, sizeCalls.get());
+	}
+
+	@Test
+	@SuppressWarnings("deprecation")
+	public void usesOverriddenGenerateResponse() {
+		TestReference reference = new TestReference() {
+			@Override
+			protected String generateResponse(PageParameters parameters) {
+				return "{\"custom\":true}";
+			}
+		};
+
+		assertTrue(request(reference, parameters(0, 2, 1)).getBoolean("custom"));
+	}
+
+	@Test
+	public void dropsLeastRecentlyUsedQueries() {
+		TestReference reference = new TestReference(Duration.ofMinutes(1)) {
+			@Override
+			protected int getMaxCachedQueries() {
+				return 2;
+			}
+		};
+		request(reference, parameters(0, 2, 1).add("search[value]", "a"));
+		request(reference, parameters(0, 2, 1).add("search[value]", "b"));
+		request(reference, parameters(0, 2, 1).add("search[value]", "a"));
+		request(reference, parameters(0, 2, 1).add("search[value]", "c"));
+		assertEquals(3, sizeCalls.get());
+		assertEquals(2, reference.getCache().size());
+
+		// "b" was dropped, "a" is kept
+		request(reference, parameters(0, 2, 1).add("search[value]", "a"));
+		assertEquals(3, sizeCalls.get());
+		request(reference, parameters(0, 2, 1).add("search[value]", "b"));
+		assertEquals(4, sizeCalls.get());
+	}
+
+	@Test
+	public void queryKeyIgnoresBlockParameters() {
+		TestReference reference = new TestReference();
+		PageParameters first = parameters(0, 10, 1).add("search[value]", "x").add("_", "123");
+		PageParameters second = new PageParameters().add("_", "456").add("search[value]", "x")
+				.add("draw", "2").add("length", "5").add("start", "20");
+
+		assertEquals(reference.getQueryKey(first), reference.getQueryKey(second));
+		assertFalse(reference.getQueryKey(first).contains("start"));
+		assertNotEquals(reference.getQueryKey(first), reference.getQueryKey(parameters(0, 10, 1)));
+	}
+
+	private JSONObject request(TestReference reference, PageParameters parameters) {
+		tester.startResourceReference(reference, parameters);
+		return new JSONObject(tester.getLastResponseAsString());
+	}
+
+	private static PageParameters parameters(int start, int length, int draw) {
+		return new PageParameters()
+				.add(AbstractVirtualScrollResourceReference.START_PARAMETER, start)
+				.add(AbstractVirtualScrollResourceReference.LENGTH_PARAMETER, length)
+				.add(AbstractVirtualScrollResourceReference.DRAW_PARAMETER, draw);
+	}
+
+	private class TestReference extends AbstractVirtualScrollResourceReference<Long> {
+		private static final long serialVersionUID = 1L;
+
+		private final Duration ttl;
+
+		private TestReference() {
+			this(null);
+		}
+
+		private TestReference(Duration ttl) {
+			super(AbstractVirtualScrollResourceReferenceTest.class, "data");
+			this.ttl = ttl;
+		}
+
+		@Override
+		protected Duration getRecordsTotalTimeToLive() {
+			return ttl != null ? ttl : super.getRecordsTotalTimeToLive();
+		}
+
+		@Override
+		protected void populateEntryJson(JSONObject entryJson, Long dataEntry) {
+			entryJson.put("id", dataEntry);
+		}
+
+		@Override
+		protected IDataProvider<Long> getDataProvider(PageParameters parameters) {
+			return new IDataProvider<Long>() {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				public Iterator<? extends Long> iterator(long first, long count) {
+					return LongStream.range(first, Math.min(first + count, SIZE)).boxed().iterator();
+				}
+
+				@Override
+				public long size() {
+					sizeCalls.incrementAndGet();
+					return SIZE;
+				}
+
+				@Override
+				public IModel<Long> model(Long object) {
+					return Model.of(object);
+				}
+			};
+		}
+	}
+}
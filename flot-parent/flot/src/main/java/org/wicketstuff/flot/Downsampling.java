@@ -0,0 +1,212 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.flot;
+
+import java.util.Arrays;
+
+/**
+ * Algorithms reducing a series to a number of points that can actually be told apart on screen.
+ * Both expect the x coordinates to be sorted ascending and always keep the first and the last
+ * point.
+ * <p>
+ * Points whose y value is not a finite number are gaps, which flot draws as a break in the line.
+ * A bucket containing a gap keeps its first gap, so the line stays broken where data is missing.
+ */
+public enum Downsampling
+{
+	/**
+	 * Largest-Triangle-Three-Buckets: keeps the point of each bucket that spans the largest
+	 * triangle with its neighbours, which preserves the visual shape of lines well.
+	 */
+	LTTB
+	{
+		@Override
+		int[] select(double[] x, double[] y, int threshold)
+		{
+			final int length = x.length;
+			if (threshold >= length || threshold < 3)
+				return bounds(length, threshold);
+
+			final int[] indices = new int[threshold];
+			// the first and the last point form buckets of their own
+			final double bucketSize = (double)(length - 2) / (threshold - 2);
+			int selected = 0;
+			indices[0] = 0;
+
+			for (int bucket = 0; bucket < threshold - 2; bucket++)
+			{
+				final int start = (int)(bucket * bucketSize) + 1;
+				final int end = (int)((bucket + 1) * bucketSize) + 1;
+
+				// average of the next bucket, or the last point for the last bucket
+				final int nextStart = end;
+				final int nextEnd = Math.min((int)((bucket + 2) * bucketSize) + 1, length);
+				double avgX = 0;
+				double avgY = 0;
+				int nextCount = 0;
+				for (int i = nextStart; i < nextEnd; i++)
+				{
+					if (!isGap(y[i]))
+					{
+						avgX += x[i];
+						avgY += y[i];
+						nextCount++;
+					}
+				}
+				avgX /= nextCount;
+				avgY /= nextCount;
+
+				final boolean anchored = !isGap(y[selected]);
+				final double ax = x[selected];
+				final double ay = y[selected];
+				double maxArea = -1;
+				int maxIndex = start;
+				int gap = -1;
+				for (int i = start; i < end; i++)
+				{
+					if (isGap(y[i]))
+					{
+						if (gap < 0)
+							gap = i;
+						continue;
+					}
+					final double area;
+					if (anchored && nextCount > 0)
+						area = Math.abs((ax - avgX) * (y[i] - ay) - (ax - x[i]) * (avgY - ay));
+					else if (anchored)
+						area = Math.abs(y[i] - ay);
+					else if (nextCount > 0)
+						area = Math.abs(y[i] - avgY);
+					else
+						area = 0;
+					if (area > maxArea)
+					{
+						maxArea = area;
+						maxIndex = i;
+					}
+				}
+				selected = gap >= 0 ? gap : maxIndex;
+				indices[bucket + 1] = selected;
+			}
+
+			indices[threshold - 1] = length - 1;
+			return indices;
+		}
+	},
+
+	/**
+	 * Keeps the smallest and the largest value of each bucket. Cheaper than {@link #LTTB} and
+	 * never hides spikes, at the cost of two points per bucket. A bucket with a gap keeps the gap
+	 * and the one of both values that is farther from the mean of the bucket.
+	 */
+	MIN_MAX
+	{
+		@Override
+		int[] select(double[] x, double[] y, int threshold)
+		{
+			final int length = x.length;
+			if (threshold >= length || threshold < 4)
+				return bounds(length, threshold);
+
+			final int buckets = (threshold - 2) / 2;
+			final double bucketSize = (double)(length - 2) / buckets;
+			final int[] indices = new int[buckets * 2 + 2];
+			int count = 0;
+			indices[count++] = 0;
+
+			for (int bucket = 0; bucket < buckets; bucket++)
+			{
+				final int start = (int)(bucket * bucketSize) + 1;
+				final int end = Math.min((int)((bucket + 1) * bucketSize) + 1, length - 1);
+				if (start >= end)
+					continue;
+
+				int min = -1;
+				int max = -1;
+				int gap = -1;
+				double sum = 0;
+				int values = 0;
+				for (int i = start; i < end; i++)
+				{
+					if (isGap(y[i]))
+					{
+						if (gap < 0)
+							gap = i;
+						continue;
+					}
+					if (min < 0 || y[i] < y[min])
+						min = i;
+					if (max < 0 || y[i] > y[max])
+						max = i;
+					sum += y[i];
+					values++;
+				}
+
+				int first = min;
+				int second = max;
+				if (gap >= 0)
+				{
+					first = gap;
+					if (values == 0)
+						second = gap;
+					else
+					{
+						final double mean = sum / values;
+						second = Math.abs(y[max] - mean) > Math.abs(y[min] - mean) ? max : min;
+					}
+				}
+				// keep the points in the order of x
+				indices[count++] = Math.min(first, second);
+				if (first != second)
+					indices[count++] = Math.max(first, second);
+			}
+
+			indices[count++] = length - 1;
+			return count == indices.length ? indices : Arrays.copyOf(indices, count);
+		}
+	};
+
+	/**
+	 * Selects the points to keep.
+	 *
+	 * @return The indices of the points to keep, in ascending order.
+	 */
+	abstract int[] select(double[] x, double[] y, int threshold);
+
+	/**
+	 * Selection for series that are too small to be reduced or thresholds that are too small to
+	 * reduce to: all points, or just the first and the last one.
+	 */
+	private static int[] bounds(int length, int threshold)
+	{
+		if (threshold >= length)
+		{
+			final int[] all = new int[length];
+			for (int i = 0; i < length; i++)
+				all[i] = i;
+			return all;
+		}
+		if (length == 0)
+			return new int[0];
+		return length > 1 ? new int[] { 0, length - 1 } : new int[] { 0 };
+	}
+
+	/**
+	 * @return Whether a value is a gap rather than a point that can be drawn.
+	 */
+	private static boolean isGap(double value)
+	{
+		return Double.isNaN(value) || Double.isInfinite(value);
+	}
+}
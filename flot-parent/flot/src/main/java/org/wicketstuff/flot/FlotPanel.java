@@ -20,20 +20,37 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
 import java.io.Serializable;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.apache.wicket.behavior.AbstractAjaxBehavior;
 import org.apache.wicket.markup.ComponentTag;
 import org.apache.wicket.markup.MarkupStream;
 import org.apache.wicket.markup.html.WebComponent;
 import org.apache.wicket.markup.html.panel.Panel;
 import org.apache.wicket.markup.parser.XmlTag;
 import org.apache.wicket.model.IModel;
+import org.apache.wicket.request.IRequestCycle;
+import org.apache.wicket.request.IRequestHandler;
+import org.apache.wicket.request.cycle.RequestCycle;
+import org.apache.wicket.request.http.WebResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Plots a list of {@link Series} with flot.
+ * <p>
+ * By default, the points of all series are written into the page. For large series,
+ * {@link #setLazyLoading(boolean) lazy loading} renders the page without points and lets the
+ * browser fetch them with a separate request, reduced to the width of the plot in pixels. The
+ * series are then only loaded from the model for that request and never kept in the page.
+ */
 public class FlotPanel extends Panel
 {
 	/** Required by {@link Serializable} */
@@ -43,6 +60,11 @@ public class FlotPanel extends Panel
 
 	private final Map<String, Map<String, Object>> options = new HashMap<String, Map<String, Object>>();
 	private boolean showTooltip = false;
+	private boolean lazyLoading = false;
+	private int maxPoints = 0;
+	private Downsampling downsampling = Downsampling.LTTB;
+
+	private final DataBehavior dataBehavior;
 
 	public FlotPanel(final String id, final IModel<List<Series>> model)
 	{
@@ -83,6 +105,8 @@ public class FlotPanel extends Panel
 				tag.setType(XmlTag.TagType.OPEN);
 			}
 		});
+
+		add(dataBehavior = new DataBehavior());
 	}
 
 	/**
@@ -102,23 +126,18 @@ public class FlotPanel extends Panel
 			// final String options =
 // "{ lines: { show: true }, points: { show: true }, selection: { mode: \"xy\" }, grid: { hoverable: true, clickable: true }, xaxis: { mode: 'time', min: 1243807200000, max: 1246312800000, timeformat: '%d.%m.%y' }, yaxis: { min: 0, max: 15 }}";
 
-			@SuppressWarnings("unchecked")
-			final List<Series> data = (List<Series>)getDefaultModelObject();
-
-			final StringBuffer strData = new StringBuffer();
-			strData.append("[");
-			for (Series dataEntry : data)
-			{
-				strData.append(dataEntry.toString());
-				strData.append(", ");
-			}
-			if (data.size() > 0)
-				strData.setLength(strData.length() - 2);
-			strData.append("]");
+			final StringBuilder strData = new StringBuilder();
+			if (lazyLoading)
+				new SeriesWriter(strData).writeSeriesList(getSeries(), false);
+			else
+				new SeriesWriter(strData).writeSeriesList(downsample(getSeries(), maxPoints), true);
 
 			String strOptions = mapToString(options);
 
-			return String.format(str, strData, strOptions, (showTooltip ? "true" : "false"));
+			String dataUrl = lazyLoading ? "\"" + dataBehavior.getCallbackUrl() + "\"" : "null";
+
+			return String.format(str, strData, strOptions, (showTooltip ? "true" : "false"),
+				dataUrl);
 		}
 		catch (IOException e)
 		{
@@ -126,6 +145,41 @@ public class FlotPanel extends Panel
 		}
 	}
 
+	@SuppressWarnings("unchecked")
+	private List<Series> getSeries()
+	{
+		return (List<Series>)getDefaultModelObject();
+	}
+
+	/**
+	 * Reduces every series to at most {@code threshold} points.
+	 * 
+	 * @param threshold
+	 *            The maximum number of points per series, {@code 0} or less to keep all.
+	 */
+	private List<Series> downsample(final List<Series> seriesList, final int threshold)
+	{
+		if (threshold <= 0)
+			return seriesList;
+
+		final List<Series> result = new ArrayList<Series>(seriesList.size());
+		for (Series series : seriesList)
+			result.add(series.downsample(threshold, downsampling));
+		return result;
+	}
+
+	/**
+	 * @return The maximum number of points per series for a plot of the given width.
+	 */
+	private int getThreshold(final int width)
+	{
+		// min-max keeps two points per pixel
+		int threshold = downsampling == Downsampling.MIN_MAX ? width * 2 : width;
+		if (maxPoints > 0 && (threshold <= 0 || maxPoints < threshold))
+			threshold = maxPoints;
+		return threshold;
+	}
+
 	private static String mapToString(final Map<?, ?> map)
 	{
 		final StringBuilder str = new StringBuilder();
@@ -296,6 +350,52 @@ public class FlotPanel extends Panel
 		options.get("grid").put("hoverable", hoverable);
 	}
 
+	/**
+	 * Lets the browser load the points of the series with a separate request once the page is
+	 * shown. The series are reduced to the width of the plot in pixels.
+	 */
+	public void setLazyLoading(boolean lazyLoading)
+	{
+		this.lazyLoading = lazyLoading;
+	}
+
+	public boolean isLazyLoading()
+	{
+		return lazyLoading;
+	}
+
+	/**
+	 * Limits the number of points written for each series. With {@link #setLazyLoading(boolean)
+	 * lazy loading}, the series are reduced to the width of the plot anyway, this limit then only
+	 * applies if it is smaller.
+	 * 
+	 * @param maxPoints
+	 *            The maximum number of points per series, {@code 0} to write all points.
+	 */
+	public void setMaxPoints(int maxPoints)
+	{
+		this.maxPoints = maxPoints;
+	}
+
+	public int getMaxPoints()
+	{
+		return maxPoints;
+	}
+
+	/**
+	 * @param downsampling
+	 *            The algorithm used to reduce series with more points than can be shown.
+	 */
+	public void setDownsampling(Downsampling downsampling)
+	{
+		this.downsampling = downsampling;
+	}
+
+	public Downsampling getDownsampling()
+	{
+		return downsampling;
+	}
+
 	public void showTooltip(boolean showTooltip)
 	{
 		this.showTooltip = showTooltip;
@@ -344,4 +444,51 @@ public class FlotPanel extends Panel
 
 		return str.toString();
 	}
+
+	/**
+	 * Answers the request for the points of a lazily loaded plot with a JSON array holding the
+	 * points of every series.
+	 */
+	private class DataBehavior extends AbstractAjaxBehavior
+	{
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public void onRequest()
+		{
+			final int width = RequestCycle.get()
+				.getRequest()
+				.getQueryParameters()
+				.getParameterValue("width")
+				.toInt(0);
+			final List<Series> data = downsample(getSeries(), getThreshold(width));
+
+			RequestCycle.get().scheduleRequestHandlerAfterCurrent(new IRequestHandler()
+			{
+				@Override
+				public void respond(IRequestCycle requestCycle)
+				{
+					final WebResponse response = (WebResponse)requestCycle.getResponse();
+					response.setContentType("application/json; charset=UTF-8");
+					response.disableCaching();
+					try
+					{
+						final Writer writer = new OutputStreamWriter(response.getOutputStream(),
+							StandardCharsets.UTF_8);
+						new SeriesWriter(writer).writeDataList(data);
+						writer.flush();
+					}
+					catch (IOException e)
+					{
+						throw new RuntimeException("Unable to write the flot data", e);
+					}
+				}
+
+				@Override
+				public void detach(IRequestCycle requestCycle)
+				{
+				}
+			});
+		}
+	}
 }
@@ -17,10 +17,21 @@ var flotTarget = $("#FlotPanel_drawingArea");
 var flotData = %s;
 var flotOptions = %s;
 var showTooltip = %s;
+var flotDataUrl = %s;
 
 $(function () {
     var plot = $.plot(flotTarget, flotData, flotOptions);
 
+    if (flotDataUrl) {
+        // Fetch the points, reduced to the width of the plot
+        $.getJSON(flotDataUrl + "&width=" + flotTarget.width(), function (data) {
+            for (var i = 0; i < data.length && i < flotData.length; i++) {
+                flotData[i].data = data[i];
+            }
+            plot = $.plot(flotTarget, flotData, flotOptions);
+        });
+    }
+
     $(window).bind("resize", function () {
     	// I don't know why but we have to set the parent div's size manually!
     	flotTarget.width(flotTarget.parent().width());
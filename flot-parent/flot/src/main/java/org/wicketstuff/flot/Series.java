@@ -15,35 +15,37 @@
  */
 package org.wicketstuff.flot;
 
+import java.io.IOException;
 import java.io.Serializable;
-import java.util.ArrayList;
+import java.util.AbstractList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import org.joda.time.DateTime;
 
+/**
+ * A series of points plotted by a {@link FlotPanel}. The coordinates are kept in two primitive
+ * arrays, so large series neither need an object per point nor blow up the serialized page.
+ * 
+ * @see Downsampling
+ * @see SeriesWriter
+ */
 public class Series implements Serializable
 {
 	/** Required by {@link Serializable} */
-	private static final long serialVersionUID = 1L;
-
-	private static final Logger LOGGER = LoggerFactory.getLogger(Series.class);
+	private static final long serialVersionUID = 2L;
 
 	String label;
 	Color color;
 	Set<GraphType> graphTypes;
-	List<DataSet> data;
+	final double[] x;
+	final double[] y;
 
 	public Series(List<DataSet> data, String label, Color color, Set<GraphType> graphTypes)
 	{
-		this.label = label;
-		this.color = color;
-		this.graphTypes = new HashSet<GraphType>(graphTypes);
-		this.data = new ArrayList<DataSet>(data);
+		this(xOf(data), yOf(data), label, color, graphTypes);
 	}
 
 	public Series(List<DataSet> data, String label, Color color, GraphType... graphTypes)
@@ -51,55 +53,171 @@ public class Series implements Serializable
 		this(data, label, color, new HashSet<GraphType>(Arrays.asList(graphTypes)));
 	}
 
+	/**
+	 * Creates a series from the coordinates of its points. The arrays are copied.
+	 * 
+	 * @param x
+	 *            The x coordinates.
+	 * @param y
+	 *            The y coordinates, of the same length as {@code x}.
+	 */
+	public Series(double[] x, double[] y, String label, Color color, GraphType... graphTypes)
+	{
+		this(x.clone(), y.clone(), label, color,
+			new HashSet<GraphType>(Arrays.asList(graphTypes)));
+	}
+
+	/**
+	 * Creates a time series. Flot expects time values as milliseconds since the epoch, which is
+	 * what {@link DateTime#getMillis()} returns.
+	 * 
+	 * @param time
+	 *            The time of each point in milliseconds.
+	 * @param y
+	 *            The values, of the same length as {@code time}.
+	 */
+	public Series(long[] time, double[] y, String label, Color color, GraphType... graphTypes)
+	{
+		this(toDoubles(time), y.clone(), label, color,
+			new HashSet<GraphType>(Arrays.asList(graphTypes)));
+	}
+
+	private Series(double[] x, double[] y, String label, Color color, Set<GraphType> graphTypes)
+	{
+		if (x.length != y.length)
+			throw new IllegalArgumentException("x and y must have the same length: " + x.length +
+				" != " + y.length);
+		this.label = label;
+		this.color = color;
+		this.graphTypes = new HashSet<GraphType>(graphTypes);
+		this.x = x;
+		this.y = y;
+	}
+
 	public String getLabel()
 	{
 		return label;
 	}
 
-	public List<DataSet> getData()
+	public Color getColor()
 	{
-		return Collections.unmodifiableList(data);
+		return color;
 	}
 
-	@Override
-	public String toString()
+	/**
+	 * @return The number of points.
+	 */
+	public int size()
+	{
+		return x.length;
+	}
+
+	public double getX(int index)
 	{
-		StringBuffer str = new StringBuffer();
-		str.append("{data: [");
-		for (DataSet dataSet : getData())
+		return x[index];
+	}
+
+	public double getY(int index)
+	{
+		return y[index];
+	}
+
+	/**
+	 * Returns a view of the points of this series. Every access creates a new {@link DataSet}, use
+	 * {@link #getX(int)} and {@link #getY(int)} for large series.
+	 */
+	public List<DataSet> getData()
+	{
+		return new AbstractList<DataSet>()
 		{
-			str.append(dataSet.toString());
-			str.append(", ");
-		}
-		// Remove last ", "
-		if (getData().size() > 0)
-			str.setLength(str.length() - 2);
-		str.append("], label: \"" + getLabel() + "\", color: \"" + color.html() + "\"");
+			@Override
+			public DataSet get(int index)
+			{
+				return new DataSet(x[index], y[index]);
+			}
+
+			@Override
+			public int size()
+			{
+				return x.length;
+			}
+		};
+	}
 
-		if (graphTypes.size() > 0)
-			str.append(", ");
+	/**
+	 * Reduces this series to at most {@code threshold} points.
+	 * 
+	 * @param threshold
+	 *            The maximum number of points, usually derived from the width of the plot in
+	 *            pixels.
+	 * @param downsampling
+	 *            The algorithm choosing the points to keep.
+	 * @return This series if it is small enough already, a reduced copy otherwise.
+	 */
+	public Series downsample(int threshold, Downsampling downsampling)
+	{
+		if (x.length <= threshold)
+			return this;
 
-		for (GraphType graphType : graphTypes)
+		final int[] indices = downsampling.select(x, y, threshold);
+		final double[] newX = new double[indices.length];
+		final double[] newY = new double[indices.length];
+		for (int i = 0; i < indices.length; i++)
 		{
-			str.append(graphType);
-			str.append(", ");
+			newX[i] = x[indices[i]];
+			newY[i] = y[indices[i]];
 		}
+		return new Series(newX, newY, label, color, graphTypes);
+	}
 
-		if (graphTypes.size() > 0)
+	@Override
+	public String toString()
+	{
+		StringBuilder str = new StringBuilder();
+		try
 		{
-			str.setLength(str.length() - 2);
-			str.append("}");
+			new SeriesWriter(str).writeSeries(this, true);
+		}
+		catch (IOException e)
+		{
+			// StringBuilder does not throw
+			throw new IllegalStateException(e);
 		}
-
-		LOGGER.info("Series: " + str);
-
 		return str.toString();
 	}
 
 	public Series addDataSet(DataSet dataSet, Color color)
 	{
-		List<DataSet> newData = new ArrayList<DataSet>(data);
-		newData.add(dataSet);
-		return new Series(newData, label, color, graphTypes);
+		final double[] newX = Arrays.copyOf(x, x.length + 1);
+		final double[] newY = Arrays.copyOf(y, y.length + 1);
+		newX[x.length] = dataSet.getX();
+		newY[y.length] = dataSet.getY();
+		return new Series(newX, newY, label, color, graphTypes);
+	}
+
+	private static double[] xOf(List<DataSet> data)
+	{
+		final double[] x = new double[data.size()];
+		int i = 0;
+		for (DataSet dataSet : data)
+			x[i++] = dataSet.getX();
+		return x;
+	}
+
+	private static double[] yOf(List<DataSet> data)
+	{
+		final double[] y = new double[data.size()];
+		int i = 0;
+		for (DataSet dataSet : data)
+			y[i++] = dataSet.getY();
+		return y;
+	}
+
+	private static double[] toDoubles(long[] values)
+	{
+		final double[] result = new double[values.length];
+		for (int i = 0; i < values.length; i++)
+			result[i] = values[i];
+		return result;
 	}
 }
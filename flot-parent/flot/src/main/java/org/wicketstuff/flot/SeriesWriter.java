@@ -0,0 +1,176 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.flot;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Writes series straight to a writer or buffer, point by point, without building intermediate
+ * strings.
+ * <p>
+ * The points of a series are written as JSON, {@code [[x, y], ...]}, so they can be sent as the
+ * response of an Ajax request. The options of a series, like its label and graph types, are
+ * written as a JavaScript object literal for the script rendered by {@link FlotPanel}.
+ */
+public class SeriesWriter
+{
+	private final Appendable out;
+
+	public SeriesWriter(Appendable out)
+	{
+		this.out = out;
+	}
+
+	/**
+	 * Writes a list of series as a JavaScript array.
+	 *
+	 * @param withData
+	 *            Whether to write the points or leave the data of every series empty, to be loaded
+	 *            later.
+	 */
+	public void writeSeriesList(List<Series> seriesList, boolean withData) throws IOException
+	{
+		out.append('[');
+		for (int i = 0; i < seriesList.size(); i++)
+		{
+			if (i > 0)
+				out.append(", ");
+			writeSeries(seriesList.get(i), withData);
+		}
+		out.append(']');
+	}
+
+	/**
+	 * Writes a series as a JavaScript object as expected by flot.
+	 *
+	 * @param withData
+	 *            Whether to write the points or an empty array.
+	 */
+	public void writeSeries(Series series, boolean withData) throws IOException
+	{
+		out.append("{data: ");
+		if (withData)
+			writeData(series);
+		else
+			out.append("[]");
+
+		out.append(", label: ");
+		writeString(series.getLabel());
+		if (series.getColor() != null)
+		{
+			out.append(", color: ");
+			writeString(series.getColor().html());
+		}
+
+		for (GraphType graphType : series.graphTypes)
+		{
+			out.append(", ");
+			out.append(graphType.toString());
+		}
+		out.append('}');
+	}
+
+	/**
+	 * Writes the points of a list of series as a JSON array with one element per series.
+	 */
+	public void writeDataList(List<Series> seriesList) throws IOException
+	{
+		out.append('[');
+		for (int i = 0; i < seriesList.size(); i++)
+		{
+			if (i > 0)
+				out.append(',');
+			writeData(seriesList.get(i));
+		}
+		out.append(']');
+	}
+
+	/**
+	 * Writes the points of a series as a JSON array of {@code [x, y]} pairs.
+	 */
+	public void writeData(Series series) throws IOException
+	{
+		final double[] x = series.x;
+		final double[] y = series.y;
+		out.append('[');
+		for (int i = 0; i < x.length; i++)
+		{
+			if (i > 0)
+				out.append(',');
+			out.append('[');
+			writeNumber(x[i]);
+			out.append(',');
+			writeNumber(y[i]);
+			out.append(']');
+		}
+		out.append(']');
+	}
+
+	/**
+	 * Writes a number. Integral values, like time stamps, are written without a fraction. Values
+	 * that are not a number are written as {@code null}, which flot draws as a gap.
+	 */
+	private void writeNumber(double value) throws IOException
+	{
+		if (Double.isNaN(value) || Double.isInfinite(value))
+			out.append("null");
+		else if (value == Math.rint(value) && Math.abs(value) < 1e15)
+			out.append(Long.toString((long)value));
+		else
+			out.append(Double.toString(value));
+	}
+
+	private void writeString(String value) throws IOException
+	{
+		if (value == null)
+		{
+			out.append("null");
+			return;
+		}
+		out.append('"');
+		for (int i = 0; i < value.length(); i++)
+		{
+			final char c = value.charAt(i);
+			switch (c)
+			{
+				case '"' :
+					out.append("\\\"");
+					break;
+				case '\\' :
+					out.append("\\\\");
+					break;
+				case '\n' :
+					out.append("\\n");
+					break;
+				case '\r' :
+					out.append("\\r");
+					break;
+				case '\t' :
+					out.append("\\t");
+					break;
+				case '/' :
+					// keeps "</script>" in labels from ending the script tag
+					out.append("\\/");
+					break;
+				default :
+					if (c < 0x20)
+						out.append(String.format("\\u%04x", (int)c));
+					else
+						out.append(c);
+			}
+		}
+		out.append('"');
+	}
+}
@@ -0,0 +1,185 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.flot;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class DownsamplingTest
+{
+	private static final int SIZE = 1000;
+
+	@Test
+	public void keepsFirstAndLastPoint()
+	{
+		final double[] y = wave(SIZE);
+		for (Downsampling downsampling : Downsampling.values())
+		{
+			for (int threshold : new int[] { 1, 2, 3, 4, 5, 10, 100, SIZE - 1 })
+			{
+				final int[] indices = downsampling.select(xs(SIZE), y, threshold);
+				assertEquals(downsampling + " " + threshold, 0, indices[0]);
+				assertEquals(downsampling + " " + threshold, SIZE - 1,
+					indices[indices.length - 1]);
+			}
+		}
+	}
+
+	@Test
+	public void keepsAtMostThresholdPointsInOrder()
+	{
+		final double[] y = wave(SIZE);
+		for (Downsampling downsampling : Downsampling.values())
+		{
+			for (int threshold : new int[] { 4, 5, 10, 99, 100, SIZE - 1 })
+			{
+				final int[] indices = downsampling.select(xs(SIZE), y, threshold);
+				assertTrue(downsampling + " " + threshold, indices.length <= threshold);
+				assertAscending(indices);
+			}
+		}
+	}
+
+	@Test
+	public void keepsAllPointsIfThresholdIsNotBelowSize()
+	{
+		final double[] y = wave(10);
+		final int[] all = { 0, 1, 2, 3, 4, 5, 6, 7, 8, 9 };
+		for (Downsampling downsampling : Downsampling.values())
+		{
+			assertArrayEquals(all, downsampling.select(xs(10), y, 10));
+			assertArrayEquals(all, downsampling.select(xs(10), y, 11));
+		}
+
+		final Series series = new Series(xs(10), y, "s", null);
+		assertSame(series, series.downsample(10, Downsampling.LTTB));
+		assertSame(series, series.downsample(20, Downsampling.MIN_MAX));
+	}
+
+	@Test
+	public void handlesEmptyAndSinglePointSeries()
+	{
+		for (Downsampling downsampling : Downsampling.values())
+		{
+			assertArrayEquals(new int[0], downsampling.select(new double[0], new double[0], 0));
+			assertArrayEquals(new int[] { 0 },
+				downsampling.select(new double[] { 1 }, new double[] { 2 }, 0));
+		}
+	}
+
+	@Test
+	public void minMaxKeepsSpikes()
+	{
+		final double[] y = new double[SIZE];
+		y[123] = 100;
+		y[789] = -100;
+
+		final int[] indices = Downsampling.MIN_MAX.select(xs(SIZE), y, 10);
+
+		assertTrue(contains(indices, 123));
+		assertTrue(contains(indices, 789));
+	}
+
+	@Test
+	public void lttbKeepsSpikes()
+	{
+		final double[] y = new double[SIZE];
+		y[500] = 100;
+
+		assertTrue(contains(Downsampling.LTTB.select(xs(SIZE), y, 10), 500));
+	}
+
+	@Test
+	public void keepsGaps()
+	{
+		final double[] y = wave(SIZE);
+		y[400] = Double.NaN;
+		y[401] = Double.NaN;
+		y[700] = Double.POSITIVE_INFINITY;
+		for (Downsampling downsampling : Downsampling.values())
+		{
+			final int[] indices = downsampling.select(xs(SIZE), y, 20);
+			assertTrue(downsampling.name(), contains(indices, 400));
+			assertTrue(downsampling.name(), contains(indices, 700));
+			assertTrue(downsampling.name(), indices.length <= 20);
+			assertAscending(indices);
+		}
+	}
+
+	@Test
+	public void handlesSeriesOfGaps()
+	{
+		final double[] y = new double[SIZE];
+		Arrays.fill(y, Double.NaN);
+		for (Downsampling downsampling : Downsampling.values())
+		{
+			final int[] indices = downsampling.select(xs(SIZE), y, 10);
+			assertEquals(0, indices[0]);
+			assertEquals(SIZE - 1, indices[indices.length - 1]);
+			assertTrue(indices.length <= 10);
+			assertAscending(indices);
+		}
+	}
+
+	@Test
+	public void downsampledSeriesKeepsOptions()
+	{
+		final Series series = new Series(xs(SIZE), wave(SIZE), "label", Color.RED,
+			new LineGraphType(null, null, null));
+
+		final Series downsampled = series.downsample(50, Downsampling.LTTB);
+
+		assertEquals(50, downsampled.size());
+		assertEquals("label", downsampled.getLabel());
+		assertSame(Color.RED, downsampled.getColor());
+		assertEquals(series.getX(0), downsampled.getX(0), 0);
+		assertEquals(series.getY(SIZE - 1), downsampled.getY(49), 0);
+	}
+
+	private static double[] xs(int size)
+	{
+		final double[] x = new double[size];
+		for (int i = 0; i < size; i++)
+			x[i] = i;
+		return x;
+	}
+
+	private static double[] wave(int size)
+	{
+		final double[] y = new double[size];
+		for (int i = 0; i < size; i++)
+			y[i] = Math.sin(i / 10.0) * i;
+		return y;
+	}
+
+	private static boolean contains(int[] indices, int index)
+	{
+		for (int i : indices)
+			if (i == index)
+				return true;
+		return false;
+	}
+
+	private static void assertAscending(int[] indices)
+	{
+		for (int i = 1; i < indices.length; i++)
+			assertTrue(indices[i - 1] + " < " + indices[i], indices[i - 1] < indices[i]);
+	}
+}
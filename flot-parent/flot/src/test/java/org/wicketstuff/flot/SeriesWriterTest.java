@@ -0,0 +1,86 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.flot;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class SeriesWriterTest
+{
+	@Test
+	public void writesDataAsJson() throws IOException
+	{
+		final Series series = new Series(new double[] { 1, 2.5, 1e15 }, new double[] { -3,
+				0.125, Double.NaN }, "s", null);
+
+		final StringBuilder out = new StringBuilder();
+		new SeriesWriter(out).writeData(series);
+
+		assertEquals("[[1,-3],[2.5,0.125],[1.0E15,null]]", out.toString());
+	}
+
+	@Test
+	public void writesTimeSeriesWithoutFraction() throws IOException
+	{
+		final Series series = new Series(new long[] { 1262304000000L }, new double[] { 1 },
+			"s", null);
+
+		final StringBuilder out = new StringBuilder();
+		new SeriesWriter(out).writeData(series);
+
+		assertEquals("[[1262304000000,1]]", out.toString());
+	}
+
+	@Test
+	public void writesDataList() throws IOException
+	{
+		final Series first = new Series(new double[] { 1 }, new double[] { 2 }, "a", null);
+		final Series empty = new Series(new double[0], new double[0], "b", null);
+
+		final StringBuilder out = new StringBuilder();
+		new SeriesWriter(out).writeDataList(Arrays.asList(first, empty));
+
+		assertEquals("[[[1,2]],[]]", out.toString());
+	}
+
+	@Test
+	public void writesSeriesOptions() throws IOException
+	{
+		final Series series = new Series(new double[] { 1 }, new double[] { 2 }, "a\"b</script>",
+			Color.RED, new LineGraphType(2.0, null, null));
+
+		final StringBuilder out = new StringBuilder();
+		new SeriesWriter(out).writeSeries(series, true);
+
+		assertEquals(
+			"{data: [[1,2]], label: \"a\\\"b<\\/script>\", color: \"#FF0000\", lines: {show: true, lineWidth: 2.0}}",
+			out.toString());
+	}
+
+	@Test
+	public void writesSeriesListWithoutData() throws IOException
+	{
+		final Series first = new Series(new double[] { 1 }, new double[] { 2 }, null, null);
+		final Series second = new Series(new double[] { 3 }, new double[] { 4 }, "x\n", null);
+
+		final StringBuilder out = new StringBuilder();
+		new SeriesWriter(out).writeSeriesList(Arrays.asList(first, second), false);
+
+		assertEquals("[{data: [], label: null}, {data: [], label: \"x\\n\"}]", out.toString());
+	}
+}
@@ -6,4 +6,15 @@ public interface GaeApplication
 {
 
 	IDataStoreEvictionStrategy getEvictionStrategy();
+
+	/**
+	 * Store pages outside of the HTTP session, so only their ids are replicated with the session.
+	 * The eviction strategy is not used then.
+	 *
+	 * @return backing store for the pages, {@code null} to store pages in the session
+	 */
+	default IBackingStore getBackingStore()
+	{
+		return null;
+	}
 }
@@ -23,18 +23,30 @@ public class GaeInitializer implements IInitializer
 		ISerializer serializer = new GaeObjectSerializer(application.getApplicationKey());
 		application.getFrameworkSettings().setSerializer(serializer);
 
-		// save older version of pages in the HttpSession
+		// save older version of pages in the HttpSession or, if available, a backing store
 		final IDataStoreEvictionStrategy evictionStrategy;
+		IBackingStore backingStore = null;
 		if (application instanceof GaeApplication)
 		{
 			evictionStrategy = ((GaeApplication)application).getEvictionStrategy();
+			backingStore = ((GaeApplication)application).getBackingStore();
 		}
 		else
 		{
 			evictionStrategy = new PageNumberEvictionStrategy(10);
 		}
 
-		application.setPageManagerProvider(new GaePageManagerProvider(application, evictionStrategy));
+		if (backingStore != null)
+		{
+			// no asynchronous writes because they need a thread
+			application.setPageManagerProvider(new GaePageManagerProvider(application,
+				backingStore, false));
+		}
+		else
+		{
+			application.setPageManagerProvider(new GaePageManagerProvider(application,
+				evictionStrategy));
+		}
 
 		// disable file cleaning because it starts a new thread
 		application.getResourceSettings().setFileCleaner(null);
@@ -12,6 +12,11 @@ import org.apache.wicket.pageStore.memory.HttpSessionDataStore;
 import org.apache.wicket.pageStore.memory.IDataStoreEvictionStrategy;
 import org.apache.wicket.serialize.ISerializer;
 
+/**
+ * Stores pages either in the HTTP session, or - if created with an {@link IBackingStore} - only
+ * their ids, with the pages written to the backing store. The latter is usable outside of Google
+ * AppEngine too.
+ */
 public class GaePageManagerProvider extends DefaultPageManagerProvider
 {
 
@@ -19,6 +24,10 @@ public class GaePageManagerProvider extends DefaultPageManagerProvider
 
 	private final IDataStoreEvictionStrategy evictionStrategy;
 
+	private final IBackingStore backingStore;
+
+	private final boolean asynchronous;
+
 	public GaePageManagerProvider(Application application,
 		IDataStoreEvictionStrategy evictionStrategy)
 	{
@@ -26,12 +35,33 @@ public class GaePageManagerProvider extends DefaultPageManagerProvider
 
 		this.application = application;
 		this.evictionStrategy = evictionStrategy;
+		this.backingStore = null;
+		this.asynchronous = false;
+	}
+
+	/**
+	 * @param backingStore
+	 *            stores the pages outside of the session
+	 * @param asynchronous
+	 *            write to the backing store in a separate thread, not possible on the legacy
+	 *            AppEngine runtime
+	 * @see SessionIndexedDataStore
+	 */
+	public GaePageManagerProvider(Application application, IBackingStore backingStore,
+		boolean asynchronous)
+	{
+		super(application);
+
+		this.application = application;
+		this.evictionStrategy = null;
+		this.backingStore = backingStore;
+		this.asynchronous = asynchronous;
 	}
 
 	@Override
 	public IPageManager apply(IPageManagerContext pageManagerContext)
 	{
-		IDataStore dataStore = new HttpSessionDataStore(pageManagerContext, evictionStrategy);
+		IDataStore dataStore = newDataStore(pageManagerContext);
 
 		int cacheSize = application.getStoreSettings().getInmemoryCacheSize();
 		ISerializer pageSerializer = application.getFrameworkSettings().getSerializer();
@@ -39,4 +69,21 @@ public class GaePageManagerProvider extends DefaultPageManagerProvider
 		return new PageStoreManager(application.getName(), pageStore, pageManagerContext);
 
 	}
+
+	protected IDataStore newDataStore(IPageManagerContext pageManagerContext)
+	{
+		if (backingStore == null)
+		{
+			return new HttpSessionDataStore(pageManagerContext, evictionStrategy);
+		}
+
+		SessionIndexedDataStore dataStore = new SessionIndexedDataStore(pageManagerContext,
+			backingStore);
+		if (asynchronous)
+		{
+			dataStore.setAsynchronous(application.getStoreSettings()
+				.getAsynchronousQueueCapacity());
+		}
+		return dataStore;
+	}
 }
@@ -0,0 +1,56 @@
+package org.wicketstuff.gae;
+
+/**
+ * Stores serialized pages outside of the HTTP session for {@link SessionIndexedDataStore}.
+ * <p>
+ * Implementations may drop pages at any time, e.g. to stay within their capacity; a missing page
+ * is treated as expired. Adapt a memcache-like service to store pages shared by all nodes, or use
+ * {@link OffHeapRingBufferStore} as a local stand-in.
+ */
+public interface IBackingStore
+{
+	/**
+	 * @param sessionId
+	 * @param pageId
+	 * @return the serialized page or {@code null} if not (or no longer) stored
+	 */
+	byte[] get(String sessionId, int pageId);
+
+	/**
+	 * Store a serialized page, replacing an earlier version.
+	 *
+	 * @param sessionId
+	 * @param pageId
+	 * @param data
+	 */
+	void put(String sessionId, int pageId, byte[] data);
+
+	/**
+	 * Remove a single page.
+	 *
+	 * @param sessionId
+	 * @param pageId
+	 */
+	void remove(String sessionId, int pageId);
+
+	/**
+	 * Remove all pages of a session. Called when the session is unbound, i.e. possibly outside of
+	 * a request.
+	 *
+	 * @param sessionId
+	 */
+	void remove(String sessionId);
+
+	/**
+	 * Is the store shared by all nodes of a cluster. If not, the pages touched in the last request
+	 * are still replicated with the session, to survive a failover.
+	 *
+	 * @return {@code true} if shared
+	 */
+	boolean isReplicated();
+
+	/**
+	 * Release all resources.
+	 */
+	void destroy();
+}
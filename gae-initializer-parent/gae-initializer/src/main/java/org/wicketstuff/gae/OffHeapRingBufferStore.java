@@ -0,0 +1,214 @@
+package org.wicketstuff.gae;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.apache.wicket.util.lang.Args;
+import org.apache.wicket.util.lang.Bytes;
+
+/**
+ * A local {@link IBackingStore} writing pages into a fixed size direct buffer, i.e. off the Java
+ * heap. The buffer is used as a ring: when it is full, the oldest pages are overwritten, so the
+ * store never holds more than its capacity in bytes.
+ */
+public class OffHeapRingBufferStore implements IBackingStore
+{
+	private final ByteBuffer buffer;
+
+	private final int capacity;
+
+	/** slots in the order they were written, the oldest first */
+	private final Deque<Slot> slots = new ArrayDeque<>();
+
+	private final Map<Key, Slot> index = new HashMap<>();
+
+	/** position of the next write */
+	private int head;
+
+	/**
+	 * @param capacity
+	 *            the size of the buffer, at most 2 GB
+	 */
+	public OffHeapRingBufferStore(Bytes capacity)
+	{
+		Args.notNull(capacity, "capacity");
+		Args.withinRange(1L, (long)Integer.MAX_VALUE, capacity.bytes(), "capacity");
+
+		this.capacity = (int)capacity.bytes();
+		buffer = ByteBuffer.allocateDirect(this.capacity);
+	}
+
+	@Override
+	public synchronized byte[] get(String sessionId, int pageId)
+	{
+		Slot slot = index.get(new Key(sessionId, pageId));
+		if (slot == null)
+		{
+			return null;
+		}
+
+		byte[] data = new byte[slot.length];
+		ByteBuffer view = buffer.duplicate();
+		view.position(slot.offset);
+		view.get(data);
+		return data;
+	}
+
+	@Override
+	public synchronized void put(String sessionId, int pageId, byte[] data)
+	{
+		Key key = new Key(sessionId, pageId);
+		remove(key);
+
+		int length = data.length;
+		if (length > capacity)
+		{
+			// never fits
+			return;
+		}
+
+		int offset = head + length <= capacity ? head : 0;
+		while (!slots.isEmpty() && isInTheWay(slots.peekFirst(), offset, length))
+		{
+			Slot oldest = slots.removeFirst();
+			if (oldest.key != null)
+			{
+				index.remove(oldest.key);
+			}
+		}
+
+		ByteBuffer view = buffer.duplicate();
+		view.position(offset);
+		view.put(data);
+
+		Slot slot = new Slot(key, offset, length);
+		slots.addLast(slot);
+		index.put(key, slot);
+		head = offset + length;
+	}
+
+	/**
+	 * Does the oldest slot occupy the space needed for a new slot. If the new slot wraps around to
+	 * the start of the buffer, the unused space at the end of the buffer is freed too.
+	 */
+	private boolean isInTheWay(Slot oldest, int offset, int length)
+	{
+		if (offset == head)
+		{
+			return oldest.offset >= head && oldest.offset < head + length;
+		}
+		return oldest.offset >= head || oldest.offset < length;
+	}
+
+	@Override
+	public synchronized void remove(String sessionId, int pageId)
+	{
+		remove(new Key(sessionId, pageId));
+	}
+
+	private void remove(Key key)
+	{
+		Slot slot = index.remove(key);
+		if (slot != null)
+		{
+			// the space is reclaimed when the ring wraps around
+			slot.key = null;
+		}
+	}
+
+	@Override
+	public synchronized void remove(String sessionId)
+	{
+		Iterator<Map.Entry<Key, Slot>> iterator = index.entrySet().iterator();
+		while (iterator.hasNext())
+		{
+			Map.Entry<Key, Slot> entry = iterator.next();
+			if (entry.getKey().sessionId.equals(sessionId))
+			{
+				entry.getValue().key = null;
+				iterator.remove();
+			}
+		}
+	}
+
+	/**
+	 * @return the number of stored pages
+	 */
+	public synchronized int size()
+	{
+		return index.size();
+	}
+
+	/**
+	 * @return the capacity in bytes
+	 */
+	public int getCapacity()
+	{
+		return capacity;
+	}
+
+	@Override
+	public boolean isReplicated()
+	{
+		return false;
+	}
+
+	@Override
+	public synchronized void destroy()
+	{
+		slots.clear();
+		index.clear();
+		head = 0;
+	}
+
+	private static class Key
+	{
+		private final String sessionId;
+
+		private final int pageId;
+
+		private Key(String sessionId, int pageId)
+		{
+			this.sessionId = sessionId;
+			this.pageId = pageId;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return 31 * sessionId.hashCode() + pageId;
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (obj instanceof Key)
+			{
+				Key other = (Key)obj;
+				return pageId == other.pageId && sessionId.equals(other.sessionId);
+			}
+			return false;
+		}
+	}
+
+	private static class Slot
+	{
+		/** {@code null} if the page was removed */
+		private Key key;
+
+		private final int offset;
+
+		private final int length;
+
+		private Slot(Key key, int offset, int length)
+		{
+			this.key = key;
+			this.offset = offset;
+			this.length = length;
+		}
+	}
+}
@@ -0,0 +1,272 @@
+package org.wicketstuff.gae;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.wicket.page.IPageManagerContext;
+import org.apache.wicket.pageStore.IDataStore;
+import org.apache.wicket.util.lang.Args;
+import org.apache.wicket.util.lang.Bytes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A data store that keeps only the ids and sizes of the pages in the HTTP session, while the
+ * serialized pages are written to an {@link IBackingStore}. This keeps the session small, so
+ * replicating it is cheap.
+ * <p>
+ * The pages of a session are limited by count and bytes. Writes to the backing store can be
+ * asynchronous: they are queued to a single writer thread, in the order of the requests, pages
+ * waiting to be written are served from the queue. Asynchronous writes need a thread, i.e. are not possible on the legacy
+ * Google AppEngine runtime.
+ */
+public class SessionIndexedDataStore implements IDataStore
+{
+	private static final Logger log = LoggerFactory.getLogger(SessionIndexedDataStore.class);
+
+	private static final String INDEX_KEY = SessionIndexedDataStore.class.getName() + ":index";
+
+	private final IPageManagerContext pageManagerContext;
+
+	private final IBackingStore backingStore;
+
+	private final ConcurrentMap<String, byte[]> pending = new ConcurrentHashMap<>();
+
+	private ExecutorService writer;
+
+	private int maxPages = 20;
+
+	private long maxBytes = Bytes.megabytes(5).bytes();
+
+	public SessionIndexedDataStore(IPageManagerContext pageManagerContext,
+		IBackingStore backingStore)
+	{
+		this.pageManagerContext = Args.notNull(pageManagerContext, "pageManagerContext");
+		this.backingStore = Args.notNull(backingStore, "backingStore");
+	}
+
+	/**
+	 * Write to the backing store asynchronously.
+	 *
+	 * @param capacity
+	 *            the number of writes that may be queued, if the queue is full the request thread
+	 *            waits, so later writes of a page never overtake earlier ones
+	 * @return this
+	 */
+	public SessionIndexedDataStore setAsynchronous(int capacity)
+	{
+		Args.withinRange(1, Integer.MAX_VALUE, capacity, "capacity");
+
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+			new ArrayBlockingQueue<Runnable>(capacity), runnable -> {
+				Thread thread = new Thread(runnable, "Wicket-SessionIndexedDataStore");
+				thread.setDaemon(true);
+				return thread;
+			}, (runnable, pool) -> {
+				if (pool.isShutdown())
+				{
+					throw new RejectedExecutionException("writer is shut down");
+				}
+				try
+				{
+					pool.getQueue().put(runnable);
+				}
+				catch (InterruptedException ex)
+				{
+					Thread.currentThread().interrupt();
+					throw new RejectedExecutionException(ex);
+				}
+			});
+		writer = executor;
+		return this;
+	}
+
+	/**
+	 * Limit the pages kept per session, the oldest pages are dropped first.
+	 *
+	 * @param maxPages
+	 *            maximum number of pages
+	 * @param maxBytes
+	 *            maximum size of all pages
+	 * @return this
+	 */
+	public SessionIndexedDataStore setLimits(int maxPages, Bytes maxBytes)
+	{
+		Args.withinRange(1, Integer.MAX_VALUE, maxPages, "maxPages");
+		Args.notNull(maxBytes, "maxBytes");
+
+		this.maxPages = maxPages;
+		this.maxBytes = maxBytes.bytes();
+		return this;
+	}
+
+	@Override
+	public byte[] getData(String sessionId, int id)
+	{
+		SessionPageIndex index = getIndex(false);
+		if (index == null || !index.contains(id))
+		{
+			return null;
+		}
+
+		byte[] data = pending.get(key(sessionId, id));
+		if (data == null)
+		{
+			data = backingStore.get(sessionId, id);
+			if (data == null)
+			{
+				// dropped by the backing store
+				index.remove(id);
+				pageManagerContext.setSessionAttribute(INDEX_KEY, index);
+			}
+		}
+		return data;
+	}
+
+	@Override
+	public void storeData(String sessionId, int id, byte[] data)
+	{
+		SessionPageIndex index = getIndex(true);
+		for (Integer evicted : index.add(id, data.length, maxPages, maxBytes))
+		{
+			remove(sessionId, evicted);
+		}
+		// mark the session as changed
+		pageManagerContext.setSessionAttribute(INDEX_KEY, index);
+
+		final String key = key(sessionId, id);
+		if (writer == null)
+		{
+			backingStore.put(sessionId, id, data);
+		}
+		else
+		{
+			pending.put(key, data);
+			try
+			{
+				writer.execute(() -> {
+					try
+					{
+						backingStore.put(sessionId, id, data);
+					}
+					catch (RuntimeException ex)
+					{
+						log.error("Cannot store page " + id + " of session " + sessionId, ex);
+					}
+					finally
+					{
+						pending.remove(key, data);
+					}
+				});
+			}
+			catch (RejectedExecutionException ex)
+			{
+				pending.remove(key, data);
+				throw ex;
+			}
+		}
+	}
+
+	@Override
+	public void removeData(String sessionId, int id)
+	{
+		SessionPageIndex index = getIndex(false);
+		if (index != null && index.remove(id))
+		{
+			pageManagerContext.setSessionAttribute(INDEX_KEY, index);
+		}
+		remove(sessionId, id);
+	}
+
+	private void remove(String sessionId, int id)
+	{
+		pending.remove(key(sessionId, id));
+		if (writer == null)
+		{
+			backingStore.remove(sessionId, id);
+		}
+		else
+		{
+			writer.execute(() -> backingStore.remove(sessionId, id));
+		}
+	}
+
+	/**
+	 * Called when the session is unbound, so the index is not available anymore.
+	 */
+	@Override
+	public void removeData(String sessionId)
+	{
+		String prefix = sessionId + ":";
+		pending.keySet().removeIf(key -> key.startsWith(prefix));
+		if (writer == null)
+		{
+			backingStore.remove(sessionId);
+		}
+		else
+		{
+			writer.execute(() -> backingStore.remove(sessionId));
+		}
+	}
+
+	@Override
+	public void destroy()
+	{
+		if (writer != null)
+		{
+			writer.shutdown();
+			try
+			{
+				if (!writer.awaitTermination(30, TimeUnit.SECONDS))
+				{
+					log.warn("Pending writes did not finish in time");
+				}
+			}
+			catch (InterruptedException ex)
+			{
+				Thread.currentThread().interrupt();
+			}
+		}
+		pending.clear();
+		backingStore.destroy();
+	}
+
+	@Override
+	public boolean isReplicated()
+	{
+		return backingStore.isReplicated();
+	}
+
+	/**
+	 * The session index must be accessed in the request thread, so this store can't be wrapped
+	 * into an {@link org.apache.wicket.pageStore.AsynchronousDataStore}. Writes to the backing
+	 * store are asynchronous instead, see {@link #setAsynchronous(int)}.
+	 */
+	@Override
+	public final boolean canBeAsynchronous()
+	{
+		return false;
+	}
+
+	private SessionPageIndex getIndex(boolean create)
+	{
+		SessionPageIndex index = (SessionPageIndex)pageManagerContext.getSessionAttribute(INDEX_KEY);
+		if (index == null && create)
+		{
+			pageManagerContext.bind();
+			index = new SessionPageIndex();
+			pageManagerContext.setSessionAttribute(INDEX_KEY, index);
+		}
+		return index;
+	}
+
+	private static String key(String sessionId, int id)
+	{
+		return sessionId + ":" + id;
+	}
+}
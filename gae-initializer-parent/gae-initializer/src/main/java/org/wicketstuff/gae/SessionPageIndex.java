@@ -0,0 +1,74 @@
+package org.wicketstuff.gae;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.wicket.util.io.IClusterable;
+
+/**
+ * The ids and sizes of the pages of a session, kept in the session instead of the pages
+ * themselves.
+ *
+ * @see SessionIndexedDataStore
+ */
+class SessionPageIndex implements IClusterable
+{
+	private static final long serialVersionUID = 1L;
+
+	/** page sizes by id, the oldest first */
+	private final LinkedHashMap<Integer, Integer> pages = new LinkedHashMap<>();
+
+	private long bytes;
+
+	/**
+	 * Add a page, evicting the oldest pages if the limits are exceeded.
+	 *
+	 * @return ids of the evicted pages
+	 */
+	synchronized List<Integer> add(int pageId, int size, int maxPages, long maxBytes)
+	{
+		remove(pageId);
+		pages.put(pageId, size);
+		bytes += size;
+
+		List<Integer> evicted = new ArrayList<>();
+		Iterator<Map.Entry<Integer, Integer>> iterator = pages.entrySet().iterator();
+		while (pages.size() > 1 && (pages.size() > maxPages || bytes > maxBytes))
+		{
+			Map.Entry<Integer, Integer> oldest = iterator.next();
+			bytes -= oldest.getValue();
+			evicted.add(oldest.getKey());
+			iterator.remove();
+		}
+		return evicted;
+	}
+
+	synchronized boolean contains(int pageId)
+	{
+		return pages.containsKey(pageId);
+	}
+
+	synchronized boolean remove(int pageId)
+	{
+		Integer size = pages.remove(pageId);
+		if (size != null)
+		{
+			bytes -= size;
+			return true;
+		}
+		return false;
+	}
+
+	synchronized int size()
+	{
+		return pages.size();
+	}
+
+	synchronized long getBytes()
+	{
+		return bytes;
+	}
+}
@@ -0,0 +1,127 @@
+package org.wicketstuff.gae;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.apache.wicket.util.lang.Bytes;
+import org.junit.Test;
+
+public class OffHeapRingBufferStoreTest
+{
+	private final OffHeapRingBufferStore store = new OffHeapRingBufferStore(Bytes.bytes(10));
+
+	@Test
+	public void putAndGet()
+	{
+		store.put("s1", 1, data(1, 4));
+		store.put("s2", 1, data(2, 3));
+
+		assertArrayEquals(data(1, 4), store.get("s1", 1));
+		assertArrayEquals(data(2, 3), store.get("s2", 1));
+		assertNull(store.get("s1", 2));
+		assertEquals(2, store.size());
+	}
+
+	@Test
+	public void putReplacesPage()
+	{
+		store.put("s1", 1, data(1, 4));
+		store.put("s1", 1, data(2, 2));
+
+		assertArrayEquals(data(2, 2), store.get("s1", 1));
+		assertEquals(1, store.size());
+	}
+
+	@Test
+	public void wrapsAroundEvictingOldestPages()
+	{
+		store.put("s1", 1, data(1, 4));
+		store.put("s1", 2, data(2, 4));
+		// doesn't fit at the end, overwrites page 1 at the start
+		store.put("s1", 3, data(3, 4));
+
+		assertNull(store.get("s1", 1));
+		assertArrayEquals(data(2, 4), store.get("s1", 2));
+		assertArrayEquals(data(3, 4), store.get("s1", 3));
+
+		// overwrites page 2
+		store.put("s1", 4, data(4, 4));
+
+		assertNull(store.get("s1", 2));
+		assertArrayEquals(data(3, 4), store.get("s1", 3));
+		assertArrayEquals(data(4, 4), store.get("s1", 4));
+		assertEquals(2, store.size());
+	}
+
+	@Test
+	public void wrapAroundFreesEndOfBuffer()
+	{
+		store.put("s1", 1, data(1, 3));
+		store.put("s1", 2, data(2, 3));
+		store.put("s1", 3, data(3, 4));
+		// overwrites page 1 and 2 at the start
+		store.put("s1", 4, data(4, 5));
+
+		assertNull(store.get("s1", 2));
+		assertArrayEquals(data(3, 4), store.get("s1", 3));
+
+		// doesn't fit behind page 4, the end with page 3 is dropped
+		store.put("s1", 5, data(5, 6));
+
+		assertNull(store.get("s1", 3));
+		assertNull(store.get("s1", 4));
+		assertArrayEquals(data(5, 6), store.get("s1", 5));
+		assertEquals(1, store.size());
+	}
+
+	@Test
+	public void removedPagesAreOverwritten()
+	{
+		store.put("s1", 1, data(1, 5));
+		store.put("s2", 1, data(2, 5));
+		store.remove("s1", 1);
+
+		assertNull(store.get("s1", 1));
+		assertEquals(1, store.size());
+
+		store.put("s1", 2, data(3, 5));
+		assertArrayEquals(data(2, 5), store.get("s2", 1));
+		assertArrayEquals(data(3, 5), store.get("s1", 2));
+	}
+
+	@Test
+	public void removeSession()
+	{
+		store.put("s1", 1, data(1, 2));
+		store.put("s1", 2, data(2, 2));
+		store.put("s2", 1, data(3, 2));
+
+		store.remove("s1");
+
+		assertNull(store.get("s1", 1));
+		assertNull(store.get("s1", 2));
+		assertArrayEquals(data(3, 2), store.get("s2", 1));
+		assertEquals(1, store.size());
+	}
+
+	@Test
+	public void ignoresPagesLargerThanCapacity()
+	{
+		store.put("s1", 1, data(1, 4));
+		store.put("s1", 2, data(2, 11));
+
+		assertNull(store.get("s1", 2));
+		assertArrayEquals(data(1, 4), store.get("s1", 1));
+	}
+
+	private static byte[] data(int value, int length)
+	{
+		byte[] data = new byte[length];
+		for (int i = 0; i < length; i++)
+		{
+			data[i] = (byte)(value * 16 + i);
+		}
+		return data;
+	}
+}
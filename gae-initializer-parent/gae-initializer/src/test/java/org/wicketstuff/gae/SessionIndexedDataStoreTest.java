@@ -0,0 +1,171 @@
+package org.wicketstuff.gae;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.wicket.page.IPageManagerContext;
+import org.apache.wicket.util.lang.Bytes;
+import org.junit.Test;
+
+public class SessionIndexedDataStoreTest
+{
+	private static final String SESSION_ID = "session";
+
+	private final TestContext context = new TestContext();
+
+	@Test
+	public void storesPagesInBackingStore()
+	{
+		OffHeapRingBufferStore backingStore = new OffHeapRingBufferStore(Bytes.kilobytes(1));
+		SessionIndexedDataStore store = new SessionIndexedDataStore(context, backingStore);
+
+		store.storeData(SESSION_ID, 1, new byte[] { 1 });
+
+		assertArrayEquals(new byte[] { 1 }, backingStore.get(SESSION_ID, 1));
+		assertArrayEquals(new byte[] { 1 }, store.getData(SESSION_ID, 1));
+		assertEquals(1, context.index().size());
+	}
+
+	@Test
+	public void evictsPagesBeyondLimits()
+	{
+		OffHeapRingBufferStore backingStore = new OffHeapRingBufferStore(Bytes.kilobytes(1));
+		SessionIndexedDataStore store = new SessionIndexedDataStore(context, backingStore)
+			.setLimits(2, Bytes.kilobytes(1));
+
+		store.storeData(SESSION_ID, 1, new byte[] { 1 });
+		store.storeData(SESSION_ID, 2, new byte[] { 2 });
+		store.storeData(SESSION_ID, 3, new byte[] { 3 });
+
+		assertNull(store.getData(SESSION_ID, 1));
+		assertNull(backingStore.get(SESSION_ID, 1));
+		assertEquals(2, context.index().size());
+	}
+
+	@Test
+	public void pageDroppedByBackingStoreIsRemovedFromIndex()
+	{
+		OffHeapRingBufferStore backingStore = new OffHeapRingBufferStore(Bytes.kilobytes(1));
+		SessionIndexedDataStore store = new SessionIndexedDataStore(context, backingStore);
+		store.storeData(SESSION_ID, 1, new byte[] { 1 });
+		store.storeData(SESSION_ID, 2, new byte[] { 2 });
+		backingStore.remove(SESSION_ID, 1);
+		int writes = context.indexWrites;
+
+		assertNull(store.getData(SESSION_ID, 1));
+		assertEquals(1, context.index().size());
+		// the changed index is replicated
+		assertEquals(writes + 1, context.indexWrites);
+	}
+
+	@Test
+	public void asynchronousWritesKeepOrder() throws Exception
+	{
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		List<Byte> written = Collections.synchronizedList(new ArrayList<>());
+		OffHeapRingBufferStore backingStore = new OffHeapRingBufferStore(Bytes.kilobytes(1))
+		{
+			@Override
+			public void put(String sessionId, int pageId, byte[] data)
+			{
+				started.countDown();
+				try
+				{
+					release.await(5, TimeUnit.SECONDS);
+				}
+				catch (InterruptedException ex)
+				{
+					Thread.currentThread().interrupt();
+				}
+				written.add(data[0]);
+				super.put(sessionId, pageId, data);
+			}
+		};
+		SessionIndexedDataStore store = new SessionIndexedDataStore(context, backingStore)
+			.setAsynchronous(1);
+		try
+		{
+			store.storeData(SESSION_ID, 1, new byte[] { 1 });
+			assertTrue(started.await(5, TimeUnit.SECONDS));
+			store.storeData(SESSION_ID, 1, new byte[] { 2 });
+
+			// the queue is full, waits for the writer
+			Thread third = new Thread(() -> store.storeData(SESSION_ID, 1, new byte[] { 3 }));
+			third.start();
+			third.join(200);
+			assertTrue(third.isAlive());
+
+			release.countDown();
+			third.join(5000);
+		}
+		finally
+		{
+			store.destroy();
+		}
+
+		assertEquals(Arrays.asList((byte)1, (byte)2, (byte)3), written);
+	}
+
+	/**
+	 * Keeps the session attributes, counting the writes of the index.
+	 */
+	private static class TestContext implements IPageManagerContext
+	{
+		private final Map<String, Serializable> attributes = new HashMap<>();
+
+		private int indexWrites;
+
+		@Override
+		public void setRequestData(Object data)
+		{
+		}
+
+		@Override
+		public Object getRequestData()
+		{
+			return null;
+		}
+
+		@Override
+		public void setSessionAttribute(String key, Serializable value)
+		{
+			indexWrites++;
+			attributes.put(key, value);
+		}
+
+		@Override
+		public Serializable getSessionAttribute(String key)
+		{
+			return attributes.get(key);
+		}
+
+		@Override
+		public void bind()
+		{
+		}
+
+		@Override
+		public String getSessionId()
+		{
+			return SESSION_ID;
+		}
+
+		private SessionPageIndex index()
+		{
+			return (SessionPageIndex)attributes.values().iterator().next();
+		}
+	}
+}
@@ -0,0 +1,71 @@
+package org.wicketstuff.gae;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+public class SessionPageIndexTest
+{
+	private final SessionPageIndex index = new SessionPageIndex();
+
+	@Test
+	public void evictsOldestPagesByCount()
+	{
+		assertEquals(Collections.emptyList(), index.add(1, 10, 2, 1000));
+		assertEquals(Collections.emptyList(), index.add(2, 10, 2, 1000));
+		assertEquals(Arrays.asList(1), index.add(3, 10, 2, 1000));
+
+		assertFalse(index.contains(1));
+		assertTrue(index.contains(2));
+		assertTrue(index.contains(3));
+		assertEquals(20, index.getBytes());
+	}
+
+	@Test
+	public void evictsOldestPagesByBytes()
+	{
+		index.add(1, 40, 10, 100);
+		index.add(2, 40, 10, 100);
+
+		assertEquals(Arrays.asList(1, 2), index.add(3, 90, 10, 100));
+		assertEquals(1, index.size());
+		assertEquals(90, index.getBytes());
+	}
+
+	@Test
+	public void keepsNewestPageEvenIfTooLarge()
+	{
+		index.add(1, 10, 10, 100);
+
+		assertEquals(Arrays.asList(1), index.add(2, 200, 10, 100));
+		assertTrue(index.contains(2));
+		assertEquals(200, index.getBytes());
+	}
+
+	@Test
+	public void addingPageAgainMakesItNewest()
+	{
+		index.add(1, 10, 2, 1000);
+		index.add(2, 10, 2, 1000);
+		index.add(1, 30, 2, 1000);
+
+		assertEquals(Arrays.asList(2), index.add(3, 10, 2, 1000));
+		assertEquals(40, index.getBytes());
+	}
+
+	@Test
+	public void remove()
+	{
+		index.add(1, 10, 2, 1000);
+
+		assertTrue(index.remove(1));
+		assertFalse(index.remove(1));
+		assertEquals(0, index.size());
+		assertEquals(0, index.getBytes());
+	}
+}
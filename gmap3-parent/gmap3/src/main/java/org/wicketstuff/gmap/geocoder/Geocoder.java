@@ -23,6 +23,7 @@ import java.net.URL;
 import java.net.URLEncoder;
 
 import com.github.openjson.JSONException;
+import org.apache.wicket.Application;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.wicketstuff.gmap.GMap;
@@ -51,6 +52,10 @@ public class Geocoder implements Serializable
     // Constants
     public static final String OUTPUT_XML = "xml";
     public static final String OUTPUT_JSON = "json";
+    /**
+     * The default base URL of the geocoding service
+     */
+    public static final String DEFAULT_ENDPOINT = "http://maps.googleapis.com/maps/api/geocode/";
     private final String output = OUTPUT_JSON;
     /**
      * Result-Object of a geocoder request
@@ -58,6 +63,15 @@ public class Geocoder implements Serializable
     private GeocoderResult geocoderResult;
     private ObjectMapper objectMapper;
     private String apiKey = null;
+    private String endpoint = DEFAULT_ENDPOINT;
+    /**
+     * The shared service doing the lookups, not kept when serialized
+     */
+    private transient GeocoderService service;
+    /**
+     * Whether lookups are done by a service, after deserialization by the one of the application
+     */
+    private boolean serviced;
 
 
     /**
@@ -90,6 +104,25 @@ public class Geocoder implements Serializable
         this.apiKey = apiKey;
     }
 
+    /**
+     * <b>Service Constructor.</b><br/>
+     * Lookups are done by the given, usually application wide, service, which caches results
+     * and coalesces identical lookups.<br/>
+     * The service is not serialized with this geocoder. After deserialization, lookups are done by
+     * the service {@link GeocoderService#bind(Application) bound} to the current application, or
+     * sent to the endpoint of the service directly if there is none.
+     *
+     * @param service the geocoding service
+     */
+    public Geocoder(GeocoderService service)
+    {
+        // a copy, the mapper of the service caches deserializers which are not serializable
+        this(service.getObjectMapper().copy(), service.getApiKey());
+        this.endpoint = service.getEndpoint();
+        this.service = service;
+        this.serviced = true;
+    }
+
     /**
      * Decode an response of an geocoder request to POJOs.<br/>
      * Following the successful mapping from JSON to POJO<br/>
@@ -123,20 +156,32 @@ public class Geocoder implements Serializable
             LOGGER.error("Upps. Panic!", ioe);
         }
 
-        GeocoderStatus status = geocoderResult.getStatus();
+        return firstLocation(geocoderResult);
+    }
+
+    /**
+     * @param result
+     *            - a geocoder result
+     * @return the location of the first hit
+     * @throws GeocoderException
+     *             - When GeocoderStatus unequal to {@link GeocoderStatus#OK}
+     */
+    static GLatLng firstLocation(GeocoderResult result) throws GeocoderException
+    {
+        GeocoderStatus status = result.getStatus();
 
         if (status != GeocoderStatus.OK)
         {
             throw new GeocoderException(status);
         }
 
-        if (geocoderResult.getResults().length < 1)
+        if (result.getResults().length < 1)
         {
             throw new IllegalStateException(
                 "GecoderStatus return GeocoderStatus.OK but size of the results was less then 1");
         }
         // Only return the first Element
-        return geocoderResult.getResults()[0].getGeometry().getLocation();
+        return result.getResults()[0].getGeometry().getLocation();
     }
 
     /**
@@ -147,7 +192,13 @@ public class Geocoder implements Serializable
      */
     public String encode(final String address)
     {
-        StringBuilder sb = new StringBuilder("http://maps.googleapis.com/maps/api/geocode/");
+        return encode(endpoint, output, apiKey, address);
+    }
+
+    static String encode(final String endpoint, final String output, final String apiKey,
+        final String address)
+    {
+        StringBuilder sb = new StringBuilder(endpoint);
         sb.append(output);
         sb.append("?");
         if (apiKey != null)
@@ -160,6 +211,15 @@ public class Geocoder implements Serializable
         return sb.toString();
     }
 
+    private GeocoderService getService()
+    {
+        if (service == null && serviced && Application.exists())
+        {
+            service = GeocoderService.get(Application.get());
+        }
+        return service;
+    }
+
     /**
      * Invoke a geocoder request to the GoogleMaps API.<br/>
      * Only return the first element of {@link #geocoderResult} to be backward compatible.<br/>
@@ -173,6 +233,12 @@ public class Geocoder implements Serializable
      */
     public GLatLng geocode(final String address) throws IOException
     {
+        GeocoderService service = getService();
+        if (service != null)
+        {
+            geocoderResult = service.geocode(address);
+            return firstLocation(geocoderResult);
+        }
         InputStream is = invokeService(encode(address));
         if (is != null)
         {
@@ -208,7 +274,7 @@ public class Geocoder implements Serializable
      * @param value
      * @return
      */
-    private String urlEncode(final String value)
+    private static String urlEncode(final String value)
     {
         try
         {
@@ -220,6 +286,24 @@ public class Geocoder implements Serializable
         }
     }
 
+    /**
+     * Set the base URL of the geocoding service, e.g. to use a local stub in tests.
+     *
+     * @param endpoint
+     *            - base URL, ending with a slash
+     * @return this geocoder
+     */
+    public Geocoder setEndpoint(String endpoint)
+    {
+        this.endpoint = endpoint;
+        return this;
+    }
+
+    public String getEndpoint()
+    {
+        return endpoint;
+    }
+
     /**
      * Get the Result of the last geocoder Request
      * @return the result of the last geocoder request
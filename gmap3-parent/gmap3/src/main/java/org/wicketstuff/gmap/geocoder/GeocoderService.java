@@ -0,0 +1,643 @@
+/*
+ *
+ * ==============================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.wicketstuff.gmap.geocoder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.wicket.Application;
+import org.apache.wicket.MetaDataKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wicketstuff.gmap.geocoder.pojos.GeocoderResult;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Geocoding service meant to be shared by the whole application.<br/>
+ * Results are kept in a bounded cache, keyed by the normalized address and a hash of the API key,
+ * which can optionally be persisted to a local file. Concurrent lookups of the same address are
+ * coalesced into a single request.<br/>
+ * Results with the status {@link GeocoderStatus#OK} or {@link GeocoderStatus#ZERO_RESULTS} are
+ * cached, other statuses are considered temporary and returned without caching.
+ * <p>
+ * <b>Example:</b>
+ *
+ * <pre>
+ * GeocoderService service = new GeocoderService(API_KEY).setCacheFile(new File(&quot;geocodes.json&quot;));
+ * GLatLng latLng = new Geocoder(service).geocode(&quot;Frankfurt am Main&quot;);
+ * </pre>
+ *
+ * Usually there is one service per application, bound to it in {@link Application#init()}:
+ *
+ * <pre>
+ * new GeocoderService(API_KEY).bind(this);
+ * </pre>
+ *
+ * </p>
+ *
+ * @see Geocoder#Geocoder(GeocoderService)
+ */
+public class GeocoderService
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(GeocoderService.class);
+
+    /**
+     * The default maximum number of cached results
+     */
+    public static final int DEFAULT_MAX_CACHE_SIZE = 1000;
+
+    private static final MetaDataKey<GeocoderService> KEY = new MetaDataKey<GeocoderService>()
+    {
+        private static final long serialVersionUID = 1L;
+    };
+
+    private static final int DEFAULT_THREADS = 4;
+    private static final int DEFAULT_TIMEOUT_MILLIS = 10000;
+    private static final Executor DIRECT = new Executor()
+    {
+        @Override
+        public void execute(Runnable command)
+        {
+            command.run();
+        }
+    };
+    private static final Executor REJECTING = new Executor()
+    {
+        @Override
+        public void execute(Runnable command)
+        {
+            throw new RejectedExecutionException("The geocoder service is shut down");
+        }
+    };
+
+    private final String apiKey;
+    private final String apiKeyHash;
+    private final ObjectMapper objectMapper;
+    private final ConcurrentMap<String, CompletableFuture<GeocoderResult>> inFlight = new ConcurrentHashMap<>();
+    private final Map<String, GeocoderResult> cache;
+    private final Object saveLock = new Object();
+    private final AtomicBoolean savePending = new AtomicBoolean();
+
+    private volatile String endpoint = Geocoder.DEFAULT_ENDPOINT;
+    private volatile int maxCacheSize = DEFAULT_MAX_CACHE_SIZE;
+    private volatile int timeoutMillis = DEFAULT_TIMEOUT_MILLIS;
+    private volatile File cacheFile;
+    private volatile Executor executor;
+    private ExecutorService defaultExecutor;
+    private boolean shutdown;
+
+    /**
+     * @param apiKey
+     *            your Google Maps API-key
+     */
+    public GeocoderService(String apiKey)
+    {
+        this.apiKey = apiKey;
+        apiKeyHash = apiKey == null ? null : sha256(apiKey);
+        objectMapper = new ObjectMapper();
+        objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        cache = new LinkedHashMap<String, GeocoderResult>(16, 0.75f, true)
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, GeocoderResult> eldest)
+            {
+                return size() > maxCacheSize;
+            }
+        };
+    }
+
+    /**
+     * Make this the service of an application. A {@link Geocoder} created with a service uses the
+     * service of the current application after it was deserialized.
+     *
+     * @param application
+     *            - the application
+     * @return this service
+     */
+    public GeocoderService bind(Application application)
+    {
+        application.setMetaData(KEY, this);
+        return this;
+    }
+
+    /**
+     * @param application
+     *            - the application
+     * @return the service bound to the application or <code>null</code>
+     * @see #bind(Application)
+     */
+    public static GeocoderService get(Application application)
+    {
+        return application.getMetaData(KEY);
+    }
+
+    public String getApiKey()
+    {
+        return apiKey;
+    }
+
+    ObjectMapper getObjectMapper()
+    {
+        return objectMapper;
+    }
+
+    /**
+     * Set the base URL of the geocoding service, e.g. to use a local stub in tests.
+     *
+     * @param endpoint
+     *            - base URL, ending with a slash
+     * @return this service
+     */
+    public GeocoderService setEndpoint(String endpoint)
+    {
+        this.endpoint = endpoint;
+        return this;
+    }
+
+    public String getEndpoint()
+    {
+        return endpoint;
+    }
+
+    /**
+     * @param maxCacheSize
+     *            - the maximum number of cached results, the least recently used are dropped
+     * @return this service
+     */
+    public GeocoderService setMaxCacheSize(int maxCacheSize)
+    {
+        this.maxCacheSize = maxCacheSize;
+        return this;
+    }
+
+    /**
+     * @param timeoutMillis
+     *            - connect and read timeout of requests to the geocoding service
+     * @return this service
+     */
+    public GeocoderService setTimeout(int timeoutMillis)
+    {
+        this.timeoutMillis = timeoutMillis;
+        return this;
+    }
+
+    /**
+     * @param executor
+     *            - runs asynchronous lookups. By default, a small pool of daemon threads is used.
+     * @return this service
+     */
+    public GeocoderService setExecutor(Executor executor)
+    {
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * Persist the cache in a local file. Cached results are loaded from the file if it exists.
+     * New results are written in the background, results cached while a write is pending are
+     * written together with it. The API key is not stored in the file, only a hash of it.
+     *
+     * @param cacheFile
+     *            - the file or <code>null</code> to keep the cache in memory only
+     * @return this service
+     * @throws IOException
+     *             - if an existing file cannot be read
+     */
+    public GeocoderService setCacheFile(File cacheFile) throws IOException
+    {
+        this.cacheFile = cacheFile;
+        if (cacheFile != null && cacheFile.isFile())
+        {
+            Map<String, GeocoderResult> stored = objectMapper.readValue(cacheFile,
+                new TypeReference<LinkedHashMap<String, GeocoderResult>>()
+                {
+                });
+            // files of previous versions contain the plain API key
+            String legacyPrefix = apiKey + '|';
+            boolean legacy = false;
+            synchronized (cache)
+            {
+                for (Map.Entry<String, GeocoderResult> entry : stored.entrySet())
+                {
+                    String key = entry.getKey();
+                    if (apiKey != null && key.startsWith(legacyPrefix))
+                    {
+                        key = apiKeyHash + '|' + key.substring(legacyPrefix.length());
+                        legacy = true;
+                    }
+                    cache.put(key, entry.getValue());
+                }
+            }
+            if (legacy)
+            {
+                savePending.set(true);
+                saveCache();
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Write the cache to the cache file now, if results were cached since it was last written.
+     */
+    public void saveCache()
+    {
+        // waits for a write in progress, which may have taken the pending changes already
+        synchronized (saveLock)
+        {
+            if (savePending.compareAndSet(true, false))
+            {
+                save();
+            }
+        }
+    }
+
+    /**
+     * Look up an address, from the cache if possible.
+     *
+     * @param address
+     *            - the address
+     * @return the result, which may have a status other than {@link GeocoderStatus#OK}
+     * @throws IOException
+     *             - if the geocoding service cannot be reached
+     */
+    public GeocoderResult geocode(String address) throws IOException
+    {
+        // a lookup that is not already in flight is done by the calling thread
+        return await(lookup(address, DIRECT));
+    }
+
+    /**
+     * Look up an address asynchronously.
+     *
+     * @param address
+     *            - the address
+     * @return the future result
+     */
+    public CompletableFuture<GeocoderResult> geocodeAsync(String address)
+    {
+        return lookup(address, getExecutor());
+    }
+
+    /**
+     * Look up several addresses at once. The lookups run concurrently, addresses that are already
+     * cached are not requested again.
+     *
+     * @param addresses
+     *            - the addresses
+     * @return the results by address, in the order of the given addresses
+     * @throws IOException
+     *             - if the geocoding service cannot be reached
+     */
+    public Map<String, GeocoderResult> geocode(Collection<String> addresses) throws IOException
+    {
+        List<CompletableFuture<GeocoderResult>> futures = geocodeAsync(addresses);
+        Map<String, GeocoderResult> results = new LinkedHashMap<>();
+        int i = 0;
+        for (String address : addresses)
+        {
+            results.put(address, await(futures.get(i++)));
+        }
+        return results;
+    }
+
+    /**
+     * Look up several addresses asynchronously.
+     *
+     * @param addresses
+     *            - the addresses
+     * @return the future results, in the order of the given addresses
+     */
+    public List<CompletableFuture<GeocoderResult>> geocodeAsync(Collection<String> addresses)
+    {
+        List<CompletableFuture<GeocoderResult>> futures = new ArrayList<>(addresses.size());
+        for (String address : addresses)
+        {
+            futures.add(geocodeAsync(address));
+        }
+        return futures;
+    }
+
+    /**
+     * @return the number of cached results
+     */
+    public int getCacheSize()
+    {
+        synchronized (cache)
+        {
+            return cache.size();
+        }
+    }
+
+    /**
+     * Remove all cached results.
+     */
+    public void clearCache()
+    {
+        synchronized (cache)
+        {
+            cache.clear();
+        }
+    }
+
+    /**
+     * Stop the default thread pool, if it was started, and write pending changes of the cache
+     * file. Running lookups are awaited up to the timeout of requests. Later asynchronous lookups
+     * fail and later results are written to the cache file right away.
+     */
+    public void shutdown()
+    {
+        ExecutorService pool;
+        synchronized (this)
+        {
+            shutdown = true;
+            pool = defaultExecutor;
+            if (pool != null)
+            {
+                pool.shutdown();
+            }
+        }
+        if (pool != null)
+        {
+            try
+            {
+                if (!pool.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS))
+                {
+                    LOGGER.warn("Geocoder lookups still running after shutdown");
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+        saveCache();
+    }
+
+    private CompletableFuture<GeocoderResult> lookup(final String address, Executor executor)
+    {
+        final String key = cacheKey(address);
+        GeocoderResult cached;
+        synchronized (cache)
+        {
+            cached = cache.get(key);
+        }
+        if (cached != null)
+        {
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        final CompletableFuture<GeocoderResult> future = new CompletableFuture<>();
+        CompletableFuture<GeocoderResult> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null)
+        {
+            return existing;
+        }
+        // a lookup may have completed between reading the cache and registering this one
+        synchronized (cache)
+        {
+            cached = cache.get(key);
+        }
+        if (cached != null)
+        {
+            inFlight.remove(key, future);
+            future.complete(cached);
+            return future;
+        }
+        try
+        {
+            executor.execute(newLookup(key, address, future));
+        }
+        catch (RejectedExecutionException e)
+        {
+            inFlight.remove(key, future);
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private Runnable newLookup(final String key, final String address,
+        final CompletableFuture<GeocoderResult> future)
+    {
+        return new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    GeocoderResult result = fetch(address);
+                    if (isCacheable(result))
+                    {
+                        store(key, result);
+                    }
+                    future.complete(result);
+                }
+                catch (Throwable t)
+                {
+                    future.completeExceptionally(t);
+                }
+                finally
+                {
+                    inFlight.remove(key, future);
+                }
+            }
+        };
+    }
+
+    /**
+     * Request an address from the geocoding service.
+     *
+     * @param address
+     *            - the address
+     * @return the decoded response
+     * @throws IOException
+     *             - if the service cannot be reached or answers with garbage
+     */
+    protected GeocoderResult fetch(String address) throws IOException
+    {
+        URL url = new URL(Geocoder.encode(endpoint, Geocoder.OUTPUT_JSON, apiKey, address));
+        HttpURLConnection connection = (HttpURLConnection)url.openConnection();
+        connection.setConnectTimeout(timeoutMillis);
+        connection.setReadTimeout(timeoutMillis);
+        try (InputStream is = connection.getInputStream())
+        {
+            return objectMapper.readValue(is, GeocoderResult.class);
+        }
+    }
+
+    private static boolean isCacheable(GeocoderResult result)
+    {
+        return result != null &&
+            (result.getStatus() == GeocoderStatus.OK || result.getStatus() == GeocoderStatus.ZERO_RESULTS);
+    }
+
+    private void store(String key, GeocoderResult result)
+    {
+        synchronized (cache)
+        {
+            cache.put(key, result);
+        }
+        if (cacheFile != null && savePending.compareAndSet(false, true))
+        {
+            try
+            {
+                getExecutor().execute(this::saveCache);
+            }
+            catch (RejectedExecutionException e)
+            {
+                // shut down, write now
+                saveCache();
+            }
+        }
+    }
+
+    private void save()
+    {
+        File file = cacheFile;
+        if (file == null)
+        {
+            return;
+        }
+        Map<String, GeocoderResult> snapshot;
+        synchronized (cache)
+        {
+            snapshot = new LinkedHashMap<>(cache);
+        }
+        try
+        {
+            File tmp = new File(file.getPath() + ".tmp");
+            objectMapper.writeValue(tmp, snapshot);
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch (IOException e)
+        {
+            LOGGER.warn("Could not save the geocoder cache to {}", file, e);
+        }
+    }
+
+    /**
+     * @return the key of an address in the cache: a hash of the API key and the address in lower
+     *         case with collapsed white space
+     */
+    String cacheKey(String address)
+    {
+        String normalized = address.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+        return apiKeyHash == null ? normalized : apiKeyHash + '|' + normalized;
+    }
+
+    private static String sha256(String value)
+    {
+        try
+        {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(
+                value.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest)
+            {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            // every Java platform supports SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Executor getExecutor()
+    {
+        Executor result = executor;
+        if (result == null)
+        {
+            synchronized (this)
+            {
+                if (shutdown && defaultExecutor == null)
+                {
+                    return REJECTING;
+                }
+                if (defaultExecutor == null)
+                {
+                    final AtomicInteger counter = new AtomicInteger();
+                    defaultExecutor = Executors.newFixedThreadPool(DEFAULT_THREADS, runnable -> {
+                        Thread thread = new Thread(runnable, "geocoder-" + counter.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                }
+                result = defaultExecutor;
+            }
+        }
+        return result;
+    }
+
+    private static GeocoderResult await(CompletableFuture<GeocoderResult> future) throws IOException
+    {
+        try
+        {
+            return future.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the geocoder", e);
+        }
+        catch (ExecutionException e)
+        {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+            {
+                throw (IOException)cause;
+            }
+            if (cause instanceof RuntimeException)
+            {
+                throw (RuntimeException)cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+}
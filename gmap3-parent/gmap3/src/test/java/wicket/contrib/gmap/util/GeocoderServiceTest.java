@@ -0,0 +1,294 @@
+package wicket.contrib.gmap.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.wicket.core.util.lang.WicketObjects;
+import org.apache.wicket.util.tester.WicketTester;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.wicketstuff.gmap.api.GLatLng;
+import org.wicketstuff.gmap.geocoder.Geocoder;
+import org.wicketstuff.gmap.geocoder.GeocoderService;
+import org.wicketstuff.gmap.geocoder.GeocoderStatus;
+import org.wicketstuff.gmap.geocoder.pojos.GeocoderResult;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Tests {@link GeocoderService} against a local stub of the geocoding service
+ */
+@RunWith(JUnit4.class)
+public class GeocoderServiceTest
+{
+    private static final String LINZ = "{\"status\":\"OK\",\"results\":[{\"geometry\":{"
+        + "\"location\":{\"lat\":48.2572879,\"lng\":14.2923184}}}]}";
+    private static final String NOTHING = "{\"status\":\"ZERO_RESULTS\",\"results\":[]}";
+    private static final String OVER_LIMIT = "{\"status\":\"OVER_QUERY_LIMIT\",\"results\":[]}";
+
+    private HttpServer server;
+    private final AtomicInteger requests = new AtomicInteger();
+    private volatile CountDownLatch release = new CountDownLatch(0);
+    private GeocoderService service;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            requests.incrementAndGet();
+            try
+            {
+                release.await(5, TimeUnit.SECONDS);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            String query = exchange.getRequestURI().getQuery();
+            String body = query.contains("nowhere") ? NOTHING : query.contains("busy") ? OVER_LIMIT : LINZ;
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody())
+            {
+                out.write(bytes);
+            }
+        });
+        server.start();
+        service = new GeocoderService("KEY").setEndpoint(
+            "http://127.0.0.1:" + server.getAddress().getPort() + "/geocode/");
+    }
+
+    @After
+    public void tearDown()
+    {
+        service.shutdown();
+        server.stop(0);
+    }
+
+    @Test
+    public void cachesByNormalizedAddress() throws IOException
+    {
+        GeocoderResult first = service.geocode("Salzburgerstraße 205, Linz");
+        GeocoderResult second = service.geocode("  salzburgerstraße   205, LINZ ");
+
+        Assert.assertEquals(GeocoderStatus.OK, first.getStatus());
+        Assert.assertSame(first, second);
+        Assert.assertEquals(1, requests.get());
+        Assert.assertEquals(1, service.getCacheSize());
+    }
+
+    @Test
+    public void cachesZeroResultsButNotTemporaryErrors() throws IOException
+    {
+        Assert.assertEquals(GeocoderStatus.ZERO_RESULTS, service.geocode("nowhere").getStatus());
+        Assert.assertEquals(GeocoderStatus.ZERO_RESULTS, service.geocode("nowhere").getStatus());
+        Assert.assertEquals(GeocoderStatus.OVER_QUERY_LIMIT, service.geocode("busy").getStatus());
+        Assert.assertEquals(GeocoderStatus.OVER_QUERY_LIMIT, service.geocode("busy").getStatus());
+
+        Assert.assertEquals(3, requests.get());
+    }
+
+    @Test
+    public void coalescesConcurrentLookups() throws Exception
+    {
+        release = new CountDownLatch(1);
+
+        List<CompletableFuture<GeocoderResult>> futures = service.geocodeAsync(Arrays.asList("Linz",
+            "linz", "LINZ "));
+        release.countDown();
+
+        GeocoderResult result = futures.get(0).get(5, TimeUnit.SECONDS);
+        Assert.assertSame(result, futures.get(1).get(5, TimeUnit.SECONDS));
+        Assert.assertSame(result, futures.get(2).get(5, TimeUnit.SECONDS));
+        Assert.assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void batchKeepsOrder() throws IOException
+    {
+        Map<String, GeocoderResult> results = service.geocode(Arrays.asList("Linz", "nowhere"));
+
+        Assert.assertEquals(Arrays.asList("Linz", "nowhere"), Arrays.asList(results.keySet().toArray()));
+        Assert.assertEquals(GeocoderStatus.OK, results.get("Linz").getStatus());
+        Assert.assertEquals(GeocoderStatus.ZERO_RESULTS, results.get("nowhere").getStatus());
+    }
+
+    @Test
+    public void persistsCache() throws IOException
+    {
+        File file = File.createTempFile("geocoder", ".json");
+        file.delete();
+        try
+        {
+            service.setCacheFile(file);
+            service.geocode("Linz");
+            service.saveCache();
+            Assert.assertTrue(file.isFile());
+
+            GeocoderService restored = new GeocoderService("KEY").setEndpoint(service.getEndpoint())
+                .setCacheFile(file);
+            GeocoderResult result = restored.geocode("linz");
+
+            Assert.assertEquals(1, requests.get());
+            Assert.assertEquals(48.2572879, result.getResults()[0].getGeometry().getLocation().getLat(),
+                0.00001);
+        }
+        finally
+        {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void batchesCacheWrites() throws IOException
+    {
+        File file = File.createTempFile("geocoder", ".json");
+        file.delete();
+        List<Runnable> tasks = new ArrayList<>();
+        try
+        {
+            service.setExecutor(tasks::add).setCacheFile(file);
+            service.geocode("Linz");
+            service.geocode("nowhere");
+            Assert.assertEquals(1, tasks.size());
+            Assert.assertFalse(file.isFile());
+
+            tasks.get(0).run();
+            String json = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+            Assert.assertTrue(json.contains("|linz"));
+            Assert.assertTrue(json.contains("|nowhere"));
+        }
+        finally
+        {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void cacheFileDoesNotContainApiKey() throws IOException
+    {
+        File file = File.createTempFile("geocoder", ".json");
+        file.delete();
+        try
+        {
+            service.setCacheFile(file);
+            service.geocode("Linz");
+            service.saveCache();
+
+            String json = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+            Assert.assertTrue(json.contains("|linz"));
+            Assert.assertFalse(json.contains("KEY"));
+        }
+        finally
+        {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void migratesCacheFileWithApiKey() throws IOException
+    {
+        File file = File.createTempFile("geocoder", ".json");
+        try
+        {
+            Files.write(file.toPath(), ("{\"KEY|linz\":" + LINZ + "}").getBytes(StandardCharsets.UTF_8));
+            service.setCacheFile(file);
+
+            Assert.assertEquals(GeocoderStatus.OK, service.geocode("Linz").getStatus());
+            Assert.assertEquals(0, requests.get());
+            String json = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+            Assert.assertTrue(json.contains("|linz"));
+            Assert.assertFalse(json.contains("KEY"));
+        }
+        finally
+        {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void geocoderUsesService() throws IOException
+    {
+        GLatLng first = new Geocoder(service).geocode("Linz");
+        GLatLng second = new Geocoder(service).geocode("Linz");
+
+        Assert.assertEquals(14.2923184, first.getLng(), 0.00001);
+        Assert.assertEquals(first, second);
+        Assert.assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void writesCacheRightAwayAfterShutdown() throws Exception
+    {
+        File file = File.createTempFile("geocoder", ".json");
+        file.delete();
+        try
+        {
+            service.setCacheFile(file);
+            service.shutdown();
+
+            service.geocode("Linz");
+            Assert.assertTrue(file.isFile());
+            try
+            {
+                service.geocodeAsync("nowhere").get(5, TimeUnit.SECONDS);
+                Assert.fail();
+            }
+            catch (ExecutionException e)
+            {
+                Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+            }
+        }
+        finally
+        {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void deserializedGeocoderUsesServiceOfApplication() throws IOException
+    {
+        WicketTester tester = new WicketTester();
+        try
+        {
+            service.bind(tester.getApplication());
+            service.geocode("Linz");
+
+            Geocoder geocoder = WicketObjects.cloneObject(new Geocoder(service));
+            Assert.assertEquals(14.2923184, geocoder.geocode("Linz").getLng(), 0.00001);
+            Assert.assertEquals(1, requests.get());
+        }
+        finally
+        {
+            tester.destroy();
+        }
+    }
+
+    @Test
+    public void geocoderUsesEndpoint() throws IOException
+    {
+        GLatLng latLng = new Geocoder("KEY").setEndpoint(service.getEndpoint()).geocode("Linz");
+
+        Assert.assertEquals(48.2572879, latLng.getLat(), 0.00001);
+        Assert.assertEquals(1, requests.get());
+    }
+}
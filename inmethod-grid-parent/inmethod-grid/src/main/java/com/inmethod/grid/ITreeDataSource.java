@@ -0,0 +1,99 @@
+package com.inmethod.grid;
+
+import java.util.Iterator;
+
+import org.apache.wicket.model.IDetachable;
+import org.apache.wicket.model.IModel;
+import org.apache.wicket.util.io.IClusterable;
+
+import com.inmethod.grid.lazytreegrid.LazyTreeGrid;
+
+/**
+ * Interface used to provide hierarchical data to a {@link LazyTreeGrid}. Unlike a
+ * {@link javax.swing.tree.TreeModel} the tree is never held in memory, children are loaded on
+ * demand and only in the ranges that are displayed. Nodes are addressed by their id, so the grid
+ * only needs to keep the ids of expanded nodes.
+ * <p>
+ * An example of a data source backed by a table with a parent column:
+ *
+ * <pre>
+ * ITreeDataSource&lt;Folder&gt; source = new ITreeDataSource&lt;Folder&gt;() {
+ * 		public long getChildCount(String parentId) {
+ * 			return dao.countFolders(parentId); // parentId null for the top level folders
+ * 		}
+ *
+ * 		public Iterator&lt;Folder&gt; getChildren(String parentId, long first, long count) {
+ * 			return dao.getFolders(parentId, first, count).iterator();
+ * 		}
+ *
+ * 		public boolean hasChildren(Folder node) {
+ * 			return node.getChildCount() &gt; 0;
+ * 		}
+ *
+ * 		public String getId(Folder node) {
+ * 			return String.valueOf(node.getId());
+ * 		}
+ *
+ * 		public IModel&lt;Folder&gt; model(Folder object) {
+ * 			return new DetachableFolderModel(object);
+ * 		}
+ *
+ * 		public void detach() {
+ * 		}
+ * }
+ * </pre>
+ *
+ * @param <T>
+ *            node model object type
+ */
+public interface ITreeDataSource<T> extends IDetachable, IClusterable
+{
+	/**
+	 * Returns the number of children of a node.
+	 *
+	 * @param parentId
+	 *            id of the parent node or <code>null</code> for the top level nodes
+	 * @return number of children
+	 */
+	public long getChildCount(String parentId);
+
+	/**
+	 * Loads a range of the children of a node. The children must be returned in a stable order,
+	 * the same order as previous ranges.
+	 *
+	 * @param parentId
+	 *            id of the parent node or <code>null</code> for the top level nodes
+	 * @param first
+	 *            index of the first child to be loaded
+	 * @param count
+	 *            maximum number of children to be loaded
+	 * @return iterator over the loaded children
+	 */
+	public Iterator<? extends T> getChildren(String parentId, long first, long count);
+
+	/**
+	 * Returns whether a node has children, i.e. whether it can be expanded. Should not load the
+	 * children.
+	 *
+	 * @param node
+	 * @return <code>true</code> if the node has children
+	 */
+	public boolean hasChildren(T node);
+
+	/**
+	 * Returns the id of a node, unique within the tree.
+	 *
+	 * @param node
+	 * @return node id
+	 */
+	public String getId(T node);
+
+	/**
+	 * Allows wrapping the object in a model which will be set as model of the appropriate row. In
+	 * most cases the model should be detachable.
+	 *
+	 * @param object
+	 * @return model that can be used to access the object
+	 */
+	public IModel<T> model(T object);
+}
@@ -0,0 +1,163 @@
+package com.inmethod.grid.lazytreegrid;
+
+import org.apache.wicket.Component;
+import org.apache.wicket.ajax.AjaxRequestTarget;
+import org.apache.wicket.extensions.markup.html.repeater.data.sort.ISortState;
+import org.apache.wicket.markup.html.WebMarkupContainer;
+import org.apache.wicket.model.IModel;
+
+import com.inmethod.grid.ITreeDataSource;
+import com.inmethod.grid.column.AbstractColumn;
+import com.inmethod.grid.common.AbstractGrid;
+import com.inmethod.grid.common.Icons;
+import com.inmethod.icon.Icon;
+
+/**
+ * Column of {@link LazyTreeGrid} that contains the actual tree.
+ *
+ * @param <D>
+ *            data source type
+ * @param <T>
+ *            node model object type
+ */
+public abstract class LazyTreeColumn<D extends ITreeDataSource<T>, T, S>
+	extends AbstractColumn<D, T, S>
+{
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Creates instance with specified column id, header model and sort property.
+	 *
+	 * @param columnId
+	 *            column identifier - must be unique within the grid
+	 * @param headerModel
+	 *            model for column title
+	 * @param sortProperty
+	 *            optional string that will be returned by {@link ISortState} to indicate that the
+	 *            column is being sorted
+	 */
+	public LazyTreeColumn(String columnId, IModel<String> headerModel, S sortProperty)
+	{
+		super(columnId, headerModel, sortProperty);
+	}
+
+	/**
+	 * Creates instance with specified column id and header model
+	 *
+	 * @param columnId
+	 *            column identifier - must be unique within the grid
+	 * @param headerModel
+	 *            model for column title
+	 */
+	public LazyTreeColumn(String columnId, IModel<String> headerModel)
+	{
+		super(columnId, headerModel);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Component newCell(WebMarkupContainer parent, String componentId, IModel<T> rowModel)
+	{
+		if (!(parent instanceof LazyTreeGridRow))
+			throw new IllegalArgumentException("Parent must be an " + LazyTreeGridRow.class);
+		final LazyTreeGridRow<D, T, S> row = (LazyTreeGridRow<D, T, S>)parent;
+		return new LazyTreePanel<T>(componentId, rowModel, row.getLevel(), row.hasChildren())
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean isExpanded()
+			{
+				return getTreeGrid().getTreeState().isExpanded(row.getNodeId());
+			}
+
+			@Override
+			protected void onJunctionLinkClicked(AjaxRequestTarget target)
+			{
+				getTreeGrid().toggleNode(row, target);
+			}
+
+			@Override
+			protected Component newNodeComponent(String id, IModel<T> model)
+			{
+				return LazyTreeColumn.this.newNodeComponent(id, model);
+			}
+
+			@Override
+			protected Icon getIcon(IModel<T> model)
+			{
+				return LazyTreeColumn.this.getIcon(model, row.hasChildren(), isExpanded());
+			}
+		};
+	}
+
+	/**
+	 * Creates the node component.
+	 *
+	 * @param id
+	 *            component id
+	 * @param model
+	 *            model used to access the node
+	 *
+	 * @return newly created component instance
+	 */
+	protected abstract Component newNodeComponent(String id, IModel<T> model);
+
+	/**
+	 * Returns the icon for given node.
+	 *
+	 * @param model
+	 *            model used to access the node
+	 * @param hasChildren
+	 *            whether the node has children
+	 * @param expanded
+	 *            whether the node is expanded
+	 * @return icon instance or <code>null</code> if no icon should be displayed
+	 */
+	protected Icon getIcon(IModel<T> model, boolean hasChildren, boolean expanded)
+	{
+		if (!hasChildren)
+		{
+			return Icons.ITEM;
+		}
+		else if (expanded)
+		{
+			return Icons.FOLDER_OPEN;
+		}
+		else
+		{
+			return Icons.FOLDER_CLOSED;
+		}
+	}
+
+	/**
+	 * Returns the {@link LazyTreeGrid} this column belongs to.
+	 *
+	 * @return {@link LazyTreeGrid} this column belongs to.
+	 */
+	public LazyTreeGrid<D, T, S> getTreeGrid()
+	{
+		return (LazyTreeGrid<D, T, S>)getGrid();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void setGrid(AbstractGrid<D, T, S> grid)
+	{
+		if (getTreeGrid() != null && getTreeGrid() != grid)
+		{
+			throw new IllegalStateException(
+				"One LazyTreeColumn can not be used with multiple LazyTreeGrid instances");
+		}
+
+		if (grid instanceof LazyTreeGrid == false)
+		{
+			throw new IllegalStateException("LazyTreeColumn can only be added to a LazyTreeGrid.");
+		}
+		super.setGrid(grid);
+	}
+}
@@ -0,0 +1,516 @@
+package com.inmethod.grid.lazytreegrid;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.wicket.Component;
+import org.apache.wicket.ajax.AjaxRequestTarget;
+import org.apache.wicket.markup.html.WebMarkupContainer;
+import org.apache.wicket.markup.html.navigation.paging.IPageable;
+import org.apache.wicket.model.IModel;
+import org.apache.wicket.model.Model;
+
+import com.inmethod.grid.IGridColumn;
+import com.inmethod.grid.ITreeDataSource;
+import com.inmethod.grid.common.AbstractGrid;
+import com.inmethod.grid.treegrid.TreeGrid;
+
+/**
+ * Grid with a tree whose nodes are loaded on demand from an {@link ITreeDataSource}. Unlike
+ * {@link TreeGrid} the tree is never held in memory: the visible rows (top level nodes and the
+ * children of expanded nodes) are paged and only the rows of the current page are loaded and
+ * rendered. The {@link LazyTreeState} keeps just the ids of expanded nodes, so the page state
+ * stays small regardless of the size of the tree.
+ * <p>
+ * The tree is displayed by a {@link LazyTreeColumn}.
+ *
+ * @param <D>
+ *            data source type
+ * @param <T>
+ *            node model object type
+ */
+public class LazyTreeGrid<D extends ITreeDataSource<T>, T, S> extends AbstractGrid<D, T, S>
+	implements IPageable
+{
+	private static final long serialVersionUID = 1L;
+
+	private final LazyTreeState treeState;
+
+	/**
+	 * Creates a new {@link LazyTreeGrid} instance.
+	 *
+	 * @param id
+	 *            component id
+	 * @param model
+	 *            model to access the {@link ITreeDataSource} instance used to load the nodes
+	 * @param columns
+	 *            list of grid columns
+	 */
+	public LazyTreeGrid(String id, IModel<D> model, List<IGridColumn<D, T, S>> columns)
+	{
+		super(id, model, columns);
+		treeState = newTreeState();
+		((WebMarkupContainer)get("form:bodyContainer")).add(new Body("body"));
+	}
+
+	/**
+	 * Creates a new {@link LazyTreeGrid} instance.
+	 *
+	 * @param id
+	 *            component id
+	 * @param dataSource
+	 *            data source used to load the nodes
+	 * @param columns
+	 *            list of grid columns
+	 */
+	public LazyTreeGrid(String id, D dataSource, List<IGridColumn<D, T, S>> columns)
+	{
+		this(id, Model.of(dataSource), columns);
+	}
+
+	private class Body extends LazyTreeGridBody<D, T, S>
+	{
+		private static final long serialVersionUID = 1L;
+
+		private Body(String id)
+		{
+			super(id);
+		}
+
+		@Override
+		protected D getDataSource()
+		{
+			return LazyTreeGrid.this.getDataSource();
+		}
+
+		@Override
+		protected LazyTreeState getTreeState()
+		{
+			return LazyTreeGrid.this.getTreeState();
+		}
+
+		@Override
+		protected long getRowsPerPage()
+		{
+			return LazyTreeGrid.this.getRowsPerPage();
+		}
+
+		@Override
+		protected Collection<IGridColumn<D, T, S>> getActiveColumns()
+		{
+			return LazyTreeGrid.this.getActiveColumns();
+		}
+
+		@Override
+		protected boolean isItemSelected(IModel<T> itemModel)
+		{
+			return LazyTreeGrid.this.isItemSelected(itemModel);
+		}
+
+		@Override
+		protected void rowPopulated(WebMarkupContainer rowItem)
+		{
+			onRowPopulated(rowItem);
+		}
+	}
+
+	/**
+	 * Creates the tree state. Called from the constructor.
+	 *
+	 * @return new tree state
+	 */
+	protected LazyTreeState newTreeState()
+	{
+		return new LazyTreeState();
+	}
+
+	/**
+	 * Returns the tree state. After modifying the state outside of a junction link click the grid
+	 * should be updated using {@link #markAllItemsDirty()} and {@link #update()}.
+	 *
+	 * @return tree state
+	 */
+	public LazyTreeState getTreeState()
+	{
+		return treeState;
+	}
+
+	/**
+	 * Returns the {@link ITreeDataSource} instance this grid uses to load the nodes.
+	 *
+	 * @return {@link ITreeDataSource} instance
+	 */
+	public D getDataSource()
+	{
+		return (D)getDefaultModelObject();
+	}
+
+	private long rowsPerPage = 50;
+
+	/**
+	 * Sets the desired amount rows per page.
+	 *
+	 * @param rowsPerPage
+	 *            how many rows (max) should be displayed on one page
+	 * @return <code>this</code> (useful for method chaining)
+	 */
+	public LazyTreeGrid<D, T, S> setRowsPerPage(int rowsPerPage)
+	{
+		this.rowsPerPage = rowsPerPage;
+		return this;
+	}
+
+	/**
+	 * Returns the maximal amount of rows shown on one page.
+	 *
+	 * @return count of rows per page
+	 */
+	public long getRowsPerPage()
+	{
+		return rowsPerPage;
+	}
+
+	private Body getBody()
+	{
+		return (Body)get("form:bodyContainer:body");
+	}
+
+	/**
+	 * Returns the number of visible rows, i.e. the number of top level nodes and descendants of
+	 * expanded nodes.
+	 *
+	 * @return total count of visible rows
+	 */
+	public long getTotalRowCount()
+	{
+		return getBody().getTotalRowCount();
+	}
+
+	/**
+	 * @return The current page that is or will be rendered.
+	 */
+	@Override
+	public long getCurrentPage()
+	{
+		return getBody().getCurrentPage();
+	}
+
+	/**
+	 * Gets the total number of pages this pageable object has.
+	 *
+	 * @return The total number of pages this pageable object has
+	 */
+	@Override
+	public long getPageCount()
+	{
+		return getBody().getPageCount();
+	}
+
+	/**
+	 * Sets the a page that should be rendered.
+	 *
+	 * @param page
+	 *            The page that should be rendered.
+	 */
+	@Override
+	public void setCurrentPage(long page)
+	{
+		if (getBody().getCurrentPage() != page)
+		{
+			getBody().setCurrentPage(page);
+			if (isCleanSelectionOnPageChange())
+			{
+				resetSelectedItems();
+			}
+		}
+	}
+
+	/**
+	 * @return the amount of items on current page.
+	 */
+	public long getCurrentPageItemCount()
+	{
+		return getBody().getCurrentPageItemCount();
+	}
+
+	/**
+	 * Expands or collapses the node of given row. Called when the junction link is clicked.
+	 *
+	 * @param row
+	 *            row of the node
+	 * @param target
+	 *            ajax request target
+	 */
+	void toggleNode(LazyTreeGridRow<D, T, S> row, AjaxRequestTarget target)
+	{
+		LazyTreeState state = getTreeState();
+		if (state.isExpanded(row.getNodeId()))
+		{
+			state.collapse(row.getNodeId());
+		}
+		else
+		{
+			state.expand(row.getNodeId(), row.getParentId(), row.getIndex());
+		}
+		getBody().clearCache();
+		onJunctionLinkClicked(target, (IModel<T>)row.getDefaultModel());
+		target.add(this);
+	}
+
+	/**
+	 * Callback function called after user clicked on an junction link. The node has already been
+	 * expanded/collapsed (depending on previous status).
+	 *
+	 * @param target
+	 *            Request target
+	 * @param nodeModel
+	 *            model of the node for which this callback is relevant
+	 */
+	protected void onJunctionLinkClicked(AjaxRequestTarget target, IModel<T> nodeModel)
+	{
+	}
+
+	private final Set<IModel<T>> selectedItems = new HashSet<IModel<T>>();
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Collection<IModel<T>> getSelectedItems()
+	{
+		return Collections.unmodifiableSet(selectedItems);
+	}
+
+	private boolean allowSelectMultiple = true;
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isAllowSelectMultiple()
+	{
+		return allowSelectMultiple;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void setAllowSelectMultiple(boolean value)
+	{
+		allowSelectMultiple = value;
+	}
+
+	private boolean cleanSelectionOnPageChange = true;
+
+	/**
+	 * Sets whether the change of current page should clear all selected items.
+	 *
+	 * @param cleanSelectionOnPageChange
+	 *            whether the current page change should deselect all selected items
+	 * @return <code>this</code> (useful for method chaining)
+	 */
+	public LazyTreeGrid<D, T, S> setCleanSelectionOnPageChange(boolean cleanSelectionOnPageChange)
+	{
+		this.cleanSelectionOnPageChange = cleanSelectionOnPageChange;
+		return this;
+	}
+
+	/**
+	 * @return whether the current page change cleans the selection
+	 */
+	public boolean isCleanSelectionOnPageChange()
+	{
+		return cleanSelectionOnPageChange;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isItemSelected(IModel<T> itemModel)
+	{
+		return selectedItems.contains(itemModel);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void resetSelectedItems()
+	{
+		markAllItemsDirty();
+		Set<IModel<T>> oldSelected = new HashSet<IModel<T>>(selectedItems);
+		selectedItems.clear();
+		for (IModel<T> model : oldSelected)
+		{
+			onItemSelectionChanged(model, false);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void selectAllVisibleItems()
+	{
+		WebMarkupContainer body = (WebMarkupContainer)get("form:bodyContainer:body:row");
+		if (body != null)
+		{
+			for (Component component : body)
+			{
+				IModel<T> model = (IModel<T>)component.getDefaultModel();
+				selectItem(model, true);
+			}
+		}
+		markAllItemsDirty();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void selectItem(IModel<T> itemModel, boolean selected)
+	{
+		if (isAllowSelectMultiple() == false && selectedItems.size() > 0)
+		{
+			for (Iterator<IModel<T>> i = selectedItems.iterator(); i.hasNext();)
+			{
+				IModel<T> current = i.next();
+				if (current.equals(itemModel) == false)
+				{
+					i.remove();
+					onItemSelectionChanged(current, false);
+				}
+			}
+		}
+
+		if (selected && !selectedItems.contains(itemModel))
+		{
+			selectedItems.add(itemModel);
+			onItemSelectionChanged(itemModel, selected);
+		}
+		else if (!selected && selectedItems.contains(itemModel))
+		{
+			selectedItems.remove(itemModel);
+			onItemSelectionChanged(itemModel, selected);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void onItemSelectionChanged(IModel<T> item, boolean newValue)
+	{
+		markItemDirty(item);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected WebMarkupContainer findRowComponent(IModel<T> rowModel)
+	{
+		if (rowModel == null)
+		{
+			throw new IllegalArgumentException("rowModel may not be null");
+		}
+		WebMarkupContainer body = (WebMarkupContainer)get("form:bodyContainer:body:row");
+		if (body != null)
+		{
+			for (Component component : body)
+			{
+				IModel<T> model = (IModel<T>)component.getDefaultModel();
+				if (rowModel.equals(model))
+				{
+					return (WebMarkupContainer)component;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public WebMarkupContainer findParentRow(Component child)
+	{
+		return child.findParent(LazyTreeGridBody.RowItem.class);
+	}
+
+	private transient Set<IModel<T>> dirtyItems = null;
+
+	private transient boolean allDirty = false;
+
+	@Override
+	protected void onBeforeRender()
+	{
+		super.onBeforeRender();
+		dirtyItems = null;
+		allDirty = false;
+	}
+
+	/**
+	 * Marks the item from the given model as dirty. Dirty items are updated during Ajax requests
+	 * when {@link AbstractGrid#update()} method is called.
+	 *
+	 * @param itemModel
+	 *            model used to access the item
+	 */
+	@Override
+	public void markItemDirty(IModel<T> itemModel)
+	{
+		if (!allDirty)
+		{
+			if (dirtyItems == null)
+			{
+				dirtyItems = new HashSet<IModel<T>>();
+			}
+			dirtyItems.add(itemModel);
+		}
+	}
+
+	/**
+	 * Makes the next call to {@link #update()} refresh the entire grid.
+	 */
+	public void markAllItemsDirty()
+	{
+		allDirty = true;
+		dirtyItems = null;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void update()
+	{
+		AjaxRequestTarget target = getRequestCycle().find(AjaxRequestTarget.class).get();
+		if (allDirty)
+		{
+			target.add(this);
+		}
+		else if (dirtyItems != null)
+		{
+			WebMarkupContainer body = (WebMarkupContainer)get("form:bodyContainer:body:row");
+			if (body != null)
+			{
+				for (Component component : body)
+				{
+					IModel<T> model = (IModel<T>)component.getDefaultModel();
+					if (dirtyItems.contains(model))
+					{
+						target.add(component);
+					}
+				}
+			}
+		}
+		dirtyItems = null;
+	}
+}
@@ -0,0 +1,489 @@
+package com.inmethod.grid.lazytreegrid;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.wicket.markup.ComponentTag;
+import org.apache.wicket.markup.html.WebMarkupContainer;
+import org.apache.wicket.markup.html.navigation.paging.IPageable;
+import org.apache.wicket.markup.html.panel.Panel;
+import org.apache.wicket.markup.repeater.RepeatingView;
+import org.apache.wicket.model.IModel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.inmethod.grid.IGridColumn;
+import com.inmethod.grid.ITreeDataSource;
+import com.inmethod.grid.common.AttachPrelightBehavior;
+
+/**
+ * Body of {@link LazyTreeGrid}. Contains the rows of the current window of visible tree rows, i.e.
+ * the top level nodes and the children of expanded nodes in depth first order. Only the nodes of
+ * the window are loaded; to position the window the data source is only asked for the child
+ * counts of the expanded nodes.
+ *
+ * @param <D>
+ *            data source type
+ * @param <T>
+ *            node model object type
+ */
+public abstract class LazyTreeGridBody<D extends ITreeDataSource<T>, T, S> extends Panel
+	implements IPageable
+{
+	private static final long serialVersionUID = 1L;
+
+	private static final Logger log = LoggerFactory.getLogger(LazyTreeGridBody.class);
+
+	/**
+	 * How many times the rows are computed again after stale expansion state was dropped
+	 */
+	private static final int MAX_ATTEMPTS = 3;
+
+	private long currentPage;
+
+	/**
+	 * Counts computed during the current request
+	 */
+	private transient RowCounts rowCounts;
+
+	/**
+	 * Constructor
+	 *
+	 * @param id
+	 *            component id
+	 */
+	public LazyTreeGridBody(String id)
+	{
+		super(id);
+		setRenderBodyOnly(true);
+
+		add(new RepeatingView("row"));
+	}
+
+	protected abstract D getDataSource();
+
+	protected abstract LazyTreeState getTreeState();
+
+	protected abstract long getRowsPerPage();
+
+	protected abstract Collection<IGridColumn<D, T, S>> getActiveColumns();
+
+	protected abstract boolean isItemSelected(IModel<T> itemModel);
+
+	protected abstract void rowPopulated(WebMarkupContainer rowItem);
+
+	private RepeatingView getRows()
+	{
+		return (RepeatingView)get("row");
+	}
+
+	private RowCounts getRowCounts()
+	{
+		if (rowCounts == null)
+		{
+			rowCounts = new RowCounts(getDataSource(), getTreeState().getExpandedChildren());
+		}
+		return rowCounts;
+	}
+
+	/**
+	 * Forgets the counts computed during this request, e.g. after the expansion state changed.
+	 */
+	void clearCache()
+	{
+		rowCounts = null;
+	}
+
+	/**
+	 * @return the number of visible rows, i.e. the top level nodes and the descendants of expanded
+	 *         nodes
+	 */
+	long getTotalRowCount()
+	{
+		return getRowCounts().getRows(null);
+	}
+
+	/**
+	 * @return the number of rows in the current window
+	 */
+	long getCurrentPageItemCount()
+	{
+		return getRows().size();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long getCurrentPage()
+	{
+		long pageCount = getPageCount();
+		return currentPage >= pageCount ? Math.max(0, pageCount - 1) : currentPage;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void setCurrentPage(long page)
+	{
+		currentPage = page;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long getPageCount()
+	{
+		long rowsPerPage = getRowsPerPage();
+		return (getTotalRowCount() + rowsPerPage - 1) / rowsPerPage;
+	}
+
+	@Override
+	protected void onBeforeRender()
+	{
+		// the expansion state may have changed since the counts were computed
+		clearCache();
+		populateRows();
+		super.onBeforeRender();
+	}
+
+	@Override
+	protected void onDetach()
+	{
+		rowCounts = null;
+		super.onDetach();
+	}
+
+	/**
+	 * Replaces the row components with the ones of the current window.
+	 */
+	private void populateRows()
+	{
+		RepeatingView rows = getRows();
+		rows.removeAll();
+
+		List<VisibleRow<T>> visible = null;
+		for (int attempt = 0; attempt < MAX_ATTEMPTS && visible == null; attempt++)
+		{
+			try
+			{
+				long first = getCurrentPage() * getRowsPerPage();
+				visible = getRowCounts().getRows(first, getRowsPerPage());
+			}
+			catch (StaleStateException e)
+			{
+				getTreeState().collapse(e.id);
+				clearCache();
+			}
+		}
+		if (visible == null)
+		{
+			// without expanded nodes there is no state that can be stale
+			log.warn("Expansion state still does not match the data source after {} attempts, " +
+				"collapsing all nodes", MAX_ATTEMPTS);
+			getTreeState().collapseAll();
+			clearCache();
+			long first = getCurrentPage() * getRowsPerPage();
+			visible = getRowCounts().getRows(first, getRowsPerPage());
+		}
+
+		D dataSource = getDataSource();
+		long rowNumber = getCurrentPage() * getRowsPerPage();
+		for (VisibleRow<T> row : visible)
+		{
+			IModel<T> model = dataSource.model(row.node);
+			RowItem item = new RowItem(rows.newChildId(), rowNumber, model);
+			item.setOutputMarkupId(true);
+			rows.add(item);
+
+			item.add(new LazyTreeGridRow<D, T, S>("item", model, row.level, rowNumber++,
+				dataSource.getId(row.node), row.parentId, row.index, dataSource.hasChildren(row.node))
+			{
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected Collection<IGridColumn<D, T, S>> getActiveColumns()
+				{
+					return LazyTreeGridBody.this.getActiveColumns();
+				}
+			});
+			item.add(new AttachPrelightBehavior());
+			rowPopulated(item);
+		}
+	}
+
+	/**
+	 * Container of one row
+	 */
+	protected class RowItem extends WebMarkupContainer
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final long rowNumber;
+
+		protected RowItem(String id, long rowNumber, IModel<T> model)
+		{
+			super(id, model);
+			this.rowNumber = rowNumber;
+		}
+
+		/**
+		 * @return position of the row among all visible rows
+		 */
+		public long getRowNumber()
+		{
+			return rowNumber;
+		}
+
+		@Override
+		protected void onComponentTag(ComponentTag tag)
+		{
+			super.onComponentTag(tag);
+
+			CharSequence klass = rowNumber % 2 == 0 ? "imxt-even" : "imxt-odd";
+			klass = klass + " imxt-want-prelight imxt-grid-row";
+
+			if (isItemSelected((IModel<T>)getDefaultModel()))
+			{
+				klass = klass + " imxt-selected";
+			}
+
+			tag.put("class", klass);
+		}
+	}
+
+	/**
+	 * A node in the window
+	 */
+	private static final class VisibleRow<T>
+	{
+		private final T node;
+
+		private final String parentId;
+
+		private final long index;
+
+		private final int level;
+
+		private VisibleRow(T node, String parentId, long index, int level)
+		{
+			this.node = node;
+			this.parentId = parentId;
+			this.index = index;
+			this.level = level;
+		}
+	}
+
+	/**
+	 * Thrown when an expanded node is no longer at its recorded position
+	 */
+	private static final class StaleStateException extends RuntimeException
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final String id;
+
+		private StaleStateException(String id)
+		{
+			super(null, null, false, false);
+			this.id = id;
+		}
+	}
+
+	/**
+	 * Computes the number of visible rows below expanded nodes and collects the rows of a window.
+	 * Child counts are asked once per node and request.
+	 */
+	private static final class RowCounts
+	{
+		private final ITreeDataSource<?> dataSource;
+
+		private final Map<String, TreeMap<Long, String>> expandedChildren;
+
+		private final Map<String, Long> childCounts = new HashMap<String, Long>();
+
+		private final Map<String, Long> rows = new HashMap<String, Long>();
+
+		private RowCounts(ITreeDataSource<?> dataSource,
+			Map<String, TreeMap<Long, String>> expandedChildren)
+		{
+			this.dataSource = dataSource;
+			this.expandedChildren = expandedChildren;
+		}
+
+		private long getChildCount(String parentId)
+		{
+			Long count = childCounts.get(parentId);
+			if (count == null)
+			{
+				count = dataSource.getChildCount(parentId);
+				childCounts.put(parentId, count);
+			}
+			return count;
+		}
+
+		/**
+		 * Returns the expanded children of a node that are within its current child count.
+		 */
+		private Map<Long, String> getExpandedChildren(String parentId)
+		{
+			TreeMap<Long, String> children = expandedChildren.get(parentId);
+			if (children == null)
+			{
+				return Collections.emptyMap();
+			}
+			return children.headMap(getChildCount(parentId));
+		}
+
+		/**
+		 * @return the number of visible rows below an expanded node
+		 */
+		private long getRows(String parentId)
+		{
+			Long count = rows.get(parentId);
+			if (count == null)
+			{
+				long result = getChildCount(parentId);
+				for (String child : getExpandedChildren(parentId).values())
+				{
+					result += getRows(child);
+				}
+				count = result;
+				rows.put(parentId, count);
+			}
+			return count;
+		}
+
+		private <T> List<VisibleRow<T>> getRows(long first, long count)
+		{
+			Cursor<T> cursor = new Cursor<T>(first, count);
+			collect(null, 0, cursor);
+			return cursor.rows;
+		}
+
+		/**
+		 * Collects the rows of the window below a node.
+		 */
+		private <T> void collect(String parentId, int level, Cursor<T> cursor)
+		{
+			long position = 0;
+			for (Map.Entry<Long, String> entry : getExpandedChildren(parentId).entrySet())
+			{
+				long index = entry.getKey();
+				String id = entry.getValue();
+
+				// children up to and including the expanded one
+				collectRange(parentId, level, position, index + 1, cursor);
+				if (cursor.isFull())
+				{
+					return;
+				}
+				checkExpanded(parentId, index, id, cursor);
+
+				long below = getRows(id);
+				if (cursor.skip >= below)
+				{
+					cursor.skip -= below;
+				}
+				else
+				{
+					collect(id, level + 1, cursor);
+					if (cursor.isFull())
+					{
+						return;
+					}
+				}
+				position = index + 1;
+			}
+			collectRange(parentId, level, position, getChildCount(parentId), cursor);
+		}
+
+		/**
+		 * Checks the expanded node is still at its recorded index, also if it was skipped: its
+		 * descendants are counted either way.
+		 */
+		private <T> void checkExpanded(String parentId, long index, String id, Cursor<T> cursor)
+		{
+			ITreeDataSource<T> source = (ITreeDataSource<T>)dataSource;
+			T node;
+			if (cursor.last != null && cursor.last.index == index)
+			{
+				node = cursor.last.node;
+			}
+			else
+			{
+				Iterator<? extends T> children = source.getChildren(parentId, index, 1);
+				node = children.hasNext() ? children.next() : null;
+			}
+			if (node == null || !id.equals(source.getId(node)))
+			{
+				throw new StaleStateException(id);
+			}
+		}
+
+		/**
+		 * Collects the children of a node within the given range that are part of the window.
+		 */
+		private <T> void collectRange(String parentId, int level, long from, long to,
+			Cursor<T> cursor)
+		{
+			cursor.last = null;
+			long size = to - from;
+			if (cursor.skip >= size)
+			{
+				cursor.skip -= size;
+				return;
+			}
+			long first = from + cursor.skip;
+			cursor.skip = 0;
+			long count = Math.min(cursor.remaining, to - first);
+
+			Iterator<? extends T> children = ((ITreeDataSource<T>)dataSource).getChildren(
+				parentId, first, count);
+			long index = first;
+			while (children.hasNext() && index < first + count)
+			{
+				VisibleRow<T> row = new VisibleRow<T>(children.next(), parentId, index++, level);
+				cursor.rows.add(row);
+				cursor.last = row;
+				cursor.remaining--;
+			}
+		}
+	}
+
+	/**
+	 * Position within the visible rows while collecting a window
+	 */
+	private static final class Cursor<T>
+	{
+		/** rows still to be skipped before the window */
+		private long skip;
+
+		/** rows still to be collected */
+		private long remaining;
+
+		private final List<VisibleRow<T>> rows = new ArrayList<VisibleRow<T>>();
+
+		/** last row collected by the last range, if any */
+		private VisibleRow<T> last;
+
+		private Cursor(long skip, long remaining)
+		{
+			this.skip = skip;
+			this.remaining = remaining;
+		}
+
+		private boolean isFull()
+		{
+			return remaining <= 0;
+		}
+	}
+}
@@ -0,0 +1,100 @@
+package com.inmethod.grid.lazytreegrid;
+
+import org.apache.wicket.model.IModel;
+
+import com.inmethod.grid.ITreeDataSource;
+import com.inmethod.grid.treegrid.AbstractTreeGridRow;
+
+/**
+ * A row in {@link LazyTreeGrid}. Besides the level it knows the position of its node, which is
+ * recorded in the {@link LazyTreeState} when the node is expanded.
+ *
+ * @param <D>
+ *            data source type
+ * @param <T>
+ *            node model object type
+ */
+public abstract class LazyTreeGridRow<D extends ITreeDataSource<T>, T, S>
+	extends AbstractTreeGridRow<D, T, S>
+{
+	private static final long serialVersionUID = 1L;
+
+	private final long rowNumber;
+
+	private final String nodeId;
+
+	private final String parentId;
+
+	private final long index;
+
+	private final boolean hasChildren;
+
+	/**
+	 * Constructor
+	 *
+	 * @param id
+	 *            component id
+	 * @param model
+	 *            node model
+	 * @param level
+	 *            node depth level
+	 * @param rowNumber
+	 *            position of the row among all visible rows
+	 * @param nodeId
+	 *            node id
+	 * @param parentId
+	 *            parent node id or <code>null</code> for a top level node
+	 * @param index
+	 *            index of the node among the children of its parent
+	 * @param hasChildren
+	 *            whether the node can be expanded
+	 */
+	public LazyTreeGridRow(String id, IModel<T> model, int level, long rowNumber, String nodeId,
+		String parentId, long index, boolean hasChildren)
+	{
+		super(id, model, level);
+		this.rowNumber = rowNumber;
+		this.nodeId = nodeId;
+		this.parentId = parentId;
+		this.index = index;
+		this.hasChildren = hasChildren;
+	}
+
+	/**
+	 * @return node id
+	 */
+	public String getNodeId()
+	{
+		return nodeId;
+	}
+
+	/**
+	 * @return parent node id or <code>null</code> for a top level node
+	 */
+	public String getParentId()
+	{
+		return parentId;
+	}
+
+	/**
+	 * @return index of the node among the children of its parent
+	 */
+	public long getIndex()
+	{
+		return index;
+	}
+
+	/**
+	 * @return whether the node can be expanded
+	 */
+	public boolean hasChildren()
+	{
+		return hasChildren;
+	}
+
+	@Override
+	protected int getRowNumber()
+	{
+		return (int)rowNumber;
+	}
+}
@@ -0,0 +1,242 @@
+package com.inmethod.grid.lazytreegrid;
+
+import org.apache.wicket.Component;
+import org.apache.wicket.ajax.AjaxRequestTarget;
+import org.apache.wicket.ajax.markup.html.form.AjaxSubmitLink;
+import org.apache.wicket.behavior.Behavior;
+import org.apache.wicket.markup.ComponentTag;
+import org.apache.wicket.markup.html.WebMarkupContainer;
+import org.apache.wicket.markup.html.panel.Panel;
+import org.apache.wicket.model.IModel;
+import org.apache.wicket.request.Response;
+import org.apache.wicket.request.cycle.RequestCycle;
+
+import com.inmethod.icon.Icon;
+import com.inmethod.icon.IconImage;
+
+/**
+ * Represents the content of a {@link LazyTreeColumn} cell.
+ *
+ * @param <T>
+ *            node model object type
+ */
+public abstract class LazyTreePanel<T> extends Panel
+{
+	private static final long serialVersionUID = 1L;
+	private static final String JUNCTION_LINK_ID = "junctionLink";
+	private static final String NODE_COMPONENT_ID = "nodeComponent";
+
+	private final int level;
+
+	private final boolean hasChildren;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param id
+	 *            component id
+	 * @param model
+	 *            model to access the node
+	 * @param level
+	 *            node depth level
+	 * @param hasChildren
+	 *            whether the node can be expanded
+	 */
+	public LazyTreePanel(String id, IModel<T> model, int level, boolean hasChildren)
+	{
+		super(id, model);
+		this.level = level;
+		this.hasChildren = hasChildren;
+	}
+
+	@Override
+	protected void onInitialize()
+	{
+		super.onInitialize();
+
+		Component junctionLink = newJunctionLink(JUNCTION_LINK_ID);
+		junctionLink.add(new JunctionBorder(level));
+		add(junctionLink);
+
+		add(newNodeComponent(NODE_COMPONENT_ID, getDefaultNodeModel()));
+
+		IconImage icon = new IconImage("icon", new IconModel())
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public boolean isVisible()
+			{
+				return getIcon() != null;
+			}
+		};
+		icon.add(IconBorder.INSTANCE);
+		add(icon);
+	}
+
+	/**
+	 * Returns the icon component instance.
+	 *
+	 * @return icon component
+	 */
+	public IconImage getIconComponent()
+	{
+		return (IconImage)get("icon");
+	}
+
+	protected IModel<T> getDefaultNodeModel()
+	{
+		return (IModel<T>)getDefaultModel();
+	}
+
+	/**
+	 * @return whether the node is expanded
+	 */
+	protected abstract boolean isExpanded();
+
+	/**
+	 * Called after the junction link was clicked. Expected to expand or collapse the node.
+	 *
+	 * @param target
+	 *            ajax request target
+	 */
+	protected abstract void onJunctionLinkClicked(AjaxRequestTarget target);
+
+	/**
+	 * Return the icon for this node or null if no icon should be used.
+	 *
+	 * @param model
+	 *            model for the node
+	 * @return icon instance or null
+	 */
+	protected abstract Icon getIcon(IModel<T> model);
+
+	/**
+	 * Creates a new component for the given node.
+	 *
+	 * @param id
+	 *            component ID
+	 * @param model
+	 *            model that returns the node
+	 * @return component for node
+	 */
+	protected abstract Component newNodeComponent(String id, IModel<T> model);
+
+	/**
+	 * Creates the junction link. If the node has no children, the created junction link is
+	 * non-functional.
+	 *
+	 * @param id
+	 *            wicket:id of the component
+	 * @return The link component
+	 */
+	protected Component newJunctionLink(String id)
+	{
+		if (hasChildren)
+		{
+			AjaxSubmitLink link = new AjaxSubmitLink(id)
+			{
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected void onSubmit(AjaxRequestTarget target)
+				{
+					onJunctionLinkClicked(target);
+				}
+
+				@Override
+				protected void onComponentTag(ComponentTag tag)
+				{
+					super.onComponentTag(tag);
+					tag.put("class", isExpanded() ? "imxt-junction-open" : "imxt-junction-closed");
+				}
+			};
+			link.setDefaultFormProcessing(false);
+			return link;
+		}
+		else
+		{
+			return new WebMarkupContainer(id)
+			{
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected void onComponentTag(ComponentTag tag)
+				{
+					super.onComponentTag(tag);
+					tag.setName("span");
+				}
+			};
+		}
+	}
+
+	/**
+	 * Simple adapter that returns icon for this panel
+	 */
+	private class IconModel implements IModel<Icon>
+	{
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public Icon getObject()
+		{
+			return getIcon(getDefaultNodeModel());
+		}
+	}
+
+	/**
+	 * Very simple border that adds a proper <td></td> around an icon
+	 */
+	private static class IconBorder extends Behavior
+	{
+		private static final long serialVersionUID = 1L;
+
+		private static final IconBorder INSTANCE = new IconBorder();
+
+		@Override
+		public void beforeRender(Component component)
+		{
+			RequestCycle.get().getResponse().write("<td>");
+		}
+
+		@Override
+		public void afterRender(Component component)
+		{
+			RequestCycle.get().getResponse().write("</td>");
+		}
+	}
+
+	/**
+	 * Wraps the junction link (or span) with the indentation table cells.
+	 */
+	private static class JunctionBorder extends Behavior
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final int level;
+
+		private JunctionBorder(int level)
+		{
+			this.level = level;
+		}
+
+		@Override
+		public void beforeRender(Component component)
+		{
+			Response response = RequestCycle.get().getResponse();
+
+			for (int i = level - 1; i >= 0; --i)
+			{
+				response.write("<td class=\"imxt-spacer\"><span></span></td>");
+			}
+
+			response.write("<td class=\"imxt-spacer\">");
+		}
+
+		@Override
+		public void afterRender(Component component)
+		{
+			RequestCycle.get().getResponse().write("</td>");
+		}
+	}
+}
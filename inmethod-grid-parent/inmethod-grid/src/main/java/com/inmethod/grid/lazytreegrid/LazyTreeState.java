@@ -0,0 +1,196 @@
+package com.inmethod.grid.lazytreegrid;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.apache.wicket.util.io.IClusterable;
+
+import com.inmethod.grid.ITreeDataSource;
+
+/**
+ * Expansion state of a {@link LazyTreeGrid}. Only the ids of expanded nodes are kept, together with
+ * the id of their parent and their position among its children, which is all that is needed to
+ * compute the visible rows without loading the nodes.
+ * <p>
+ * If children are inserted or removed, the recorded positions of their expanded siblings may no
+ * longer be valid. Stale entries are dropped when they are detected during rendering, but
+ * {@link #childrenChanged(String)} should be called when the change is known.
+ *
+ * @see ITreeDataSource
+ */
+public class LazyTreeState implements IClusterable
+{
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Expanded node id -> position of the node
+	 */
+	private final Map<String, Position> expanded = new HashMap<String, Position>();
+
+	/**
+	 * Parent id -> (child index -> expanded child id), the same entries as {@link #expanded} indexed
+	 * by parent
+	 */
+	private final Map<String, TreeMap<Long, String>> children = new HashMap<String, TreeMap<Long, String>>();
+
+	/**
+	 * Returns whether the node with given id is expanded.
+	 *
+	 * @param id
+	 *            node id
+	 * @return <code>true</code> if the node is expanded
+	 */
+	public boolean isExpanded(String id)
+	{
+		return expanded.containsKey(id);
+	}
+
+	/**
+	 * Expands a node. A node previously expanded at the same position is collapsed.
+	 *
+	 * @param id
+	 *            node id
+	 * @param parentId
+	 *            id of the parent node or <code>null</code> for a top level node
+	 * @param index
+	 *            index of the node among the children of its parent
+	 */
+	public void expand(String id, String parentId, long index)
+	{
+		Position previous = expanded.put(id, new Position(parentId, index));
+		if (previous != null)
+		{
+			removeChild(previous, id);
+		}
+		TreeMap<Long, String> siblings = children.get(parentId);
+		if (siblings == null)
+		{
+			siblings = new TreeMap<Long, String>();
+			children.put(parentId, siblings);
+		}
+		String displaced = siblings.put(index, id);
+		if (displaced != null && !displaced.equals(id))
+		{
+			expanded.remove(displaced);
+			childrenChanged(displaced);
+		}
+	}
+
+	/**
+	 * Collapses a node. Expanded descendants are collapsed as well.
+	 *
+	 * @param id
+	 *            node id
+	 */
+	public void collapse(String id)
+	{
+		Position position = expanded.remove(id);
+		if (position != null)
+		{
+			removeChild(position, id);
+			childrenChanged(id);
+		}
+	}
+
+	/**
+	 * Collapses all nodes.
+	 */
+	public void collapseAll()
+	{
+		expanded.clear();
+		children.clear();
+	}
+
+	/**
+	 * Collapses the expanded children (and their descendants) of a node, to be called after
+	 * children of the node were inserted or removed.
+	 *
+	 * @param parentId
+	 *            id of the parent node or <code>null</code> for the top level nodes
+	 */
+	public void childrenChanged(String parentId)
+	{
+		TreeMap<Long, String> removed = children.remove(parentId);
+		if (removed != null)
+		{
+			for (String id : removed.values())
+			{
+				expanded.remove(id);
+				childrenChanged(id);
+			}
+		}
+	}
+
+	/**
+	 * @return ids of the expanded nodes
+	 */
+	public Set<String> getExpandedIds()
+	{
+		return Collections.unmodifiableSet(expanded.keySet());
+	}
+
+	/**
+	 * Returns the expanded children of a node.
+	 *
+	 * @param parentId
+	 *            id of the parent node or <code>null</code> for the top level nodes
+	 * @return child index -> child id, ordered by index
+	 */
+	TreeMap<Long, String> getExpandedChildren(String parentId)
+	{
+		TreeMap<Long, String> siblings = children.get(parentId);
+		return siblings == null ? new TreeMap<Long, String>() : new TreeMap<Long, String>(siblings);
+	}
+
+	/**
+	 * Groups the expanded nodes by their parent.
+	 *
+	 * @return parent id -> (child index -> child id)
+	 */
+	Map<String, TreeMap<Long, String>> getExpandedChildren()
+	{
+		Map<String, TreeMap<Long, String>> result = new HashMap<String, TreeMap<Long, String>>();
+		for (Map.Entry<String, TreeMap<Long, String>> entry : children.entrySet())
+		{
+			result.put(entry.getKey(), new TreeMap<Long, String>(entry.getValue()));
+		}
+		return result;
+	}
+
+	/**
+	 * Removes a node from the index of its parent.
+	 */
+	private void removeChild(Position position, String id)
+	{
+		TreeMap<Long, String> siblings = children.get(position.parentId);
+		if (siblings != null && id.equals(siblings.get(position.index)))
+		{
+			siblings.remove(position.index);
+			if (siblings.isEmpty())
+			{
+				children.remove(position.parentId);
+			}
+		}
+	}
+
+	/**
+	 * Position of an expanded node
+	 */
+	private static final class Position implements IClusterable
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final String parentId;
+
+		private final long index;
+
+		private Position(String parentId, long index)
+		{
+			this.parentId = parentId;
+			this.index = index;
+		}
+	}
+}
@@ -0,0 +1,260 @@
+package com.inmethod.grid.lazytreegrid;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.wicket.Component;
+import org.apache.wicket.MarkupContainer;
+import org.apache.wicket.markup.IMarkupResourceStreamProvider;
+import org.apache.wicket.markup.html.WebPage;
+import org.apache.wicket.markup.html.basic.Label;
+import org.apache.wicket.model.IModel;
+import org.apache.wicket.model.Model;
+import org.apache.wicket.util.resource.IResourceStream;
+import org.apache.wicket.util.resource.StringResourceStream;
+import org.apache.wicket.util.tester.WicketTester;
+import org.apache.wicket.util.visit.IVisit;
+import org.apache.wicket.util.visit.IVisitor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.inmethod.grid.IGridColumn;
+import com.inmethod.grid.ITreeDataSource;
+
+public class LazyTreeGridTest
+{
+	private WicketTester tester;
+
+	private NodeDataSource dataSource;
+
+	private LazyTreeGrid<NodeDataSource, String, String> grid;
+
+	@Before
+	public void before()
+	{
+		tester = new WicketTester();
+		dataSource = new NodeDataSource();
+		grid = newGrid(dataSource);
+	}
+
+	@After
+	public void after()
+	{
+		tester.destroy();
+	}
+
+	@Test
+	public void loadsOnlyTheNodesOfTheWindow()
+	{
+		grid.getTreeState().expand("2", null, 2);
+		grid.setCurrentPage(1);
+		render();
+
+		assertEquals(20, grid.getTotalRowCount());
+		assertEquals(Arrays.asList("2.2", "2.3", "2.4", "2.5", "2.6"), renderedNodeIds());
+		// the top level nodes before the window are skipped by their count, only the expanded one
+		// is loaded to check its position
+		assertEquals(Arrays.asList(":2+1", "2:2+5"), dataSource.loads);
+	}
+
+	@Test
+	public void expandedSubtreesCrossPageBorders()
+	{
+		grid.getTreeState().expand("2", null, 2);
+		grid.getTreeState().expand("2.9", "2", 9);
+
+		grid.setCurrentPage(0);
+		render();
+		assertEquals(30, grid.getTotalRowCount());
+		assertEquals(Arrays.asList("0", "1", "2", "2.0", "2.1"), renderedNodeIds());
+
+		grid.setCurrentPage(2);
+		render();
+		assertEquals(Arrays.asList("2.7", "2.8", "2.9", "2.9.0", "2.9.1"), renderedNodeIds());
+
+		grid.setCurrentPage(5);
+		render();
+		assertEquals(Arrays.asList("5", "6", "7", "8", "9"), renderedNodeIds());
+	}
+
+	@Test
+	public void staleExpansionStateIsCollapsed()
+	{
+		grid.getTreeState().expand("2", null, 2);
+		// the node moved to index 3
+		dataSource.topLevel.add(0, "new");
+		render();
+
+		assertFalse(grid.getTreeState().isExpanded("2"));
+		assertEquals(11, grid.getTotalRowCount());
+		assertEquals(Arrays.asList("new", "0", "1", "2", "3"), renderedNodeIds());
+	}
+
+	@Test
+	public void staleExpansionStateBeforeTheWindowIsCollapsed()
+	{
+		grid.getTreeState().expand("2", null, 2);
+		// the node moved to index 3, its rows are before the window
+		dataSource.topLevel.add(0, "new");
+		grid.setCurrentPage(2);
+		render();
+
+		assertFalse(grid.getTreeState().isExpanded("2"));
+		assertEquals(11, grid.getTotalRowCount());
+		assertEquals(Collections.singletonList("9"), renderedNodeIds());
+	}
+
+	@Test
+	public void collapsesAllNodesWhenStateStaysStale()
+	{
+		// more stale nodes in the window than attempts
+		grid.getTreeState().expand("0", null, 1);
+		grid.getTreeState().expand("1", null, 2);
+		grid.getTreeState().expand("2", null, 3);
+		grid.getTreeState().expand("3", null, 4);
+		render();
+
+		assertTrue(grid.getTreeState().getExpandedIds().isEmpty());
+		assertEquals(10, grid.getTotalRowCount());
+		assertEquals(Arrays.asList("0", "1", "2", "3", "4"), renderedNodeIds());
+	}
+
+	private void render()
+	{
+		dataSource.loads.clear();
+		tester.startPage(grid.getPage());
+		tester.assertNoErrorMessage();
+	}
+
+	private List<String> renderedNodeIds()
+	{
+		final List<String> ids = new ArrayList<String>();
+		grid.visitChildren(LazyTreeGridRow.class, new IVisitor<LazyTreeGridRow<?, ?, ?>, Void>()
+		{
+			@Override
+			public void component(LazyTreeGridRow<?, ?, ?> row, IVisit<Void> visit)
+			{
+				ids.add(row.getNodeId());
+				visit.dontGoDeeper();
+			}
+		});
+		assertEquals(ids.size(), grid.getCurrentPageItemCount());
+		return ids;
+	}
+
+	private static LazyTreeGrid<NodeDataSource, String, String> newGrid(NodeDataSource dataSource)
+	{
+		List<IGridColumn<NodeDataSource, String, String>> columns = new ArrayList<IGridColumn<NodeDataSource, String, String>>();
+		columns.add(new LazyTreeColumn<NodeDataSource, String, String>("node", Model.of("Node"))
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected Component newNodeComponent(String id, IModel<String> model)
+			{
+				return new Label(id, model);
+			}
+		});
+		LazyTreeGrid<NodeDataSource, String, String> grid = new LazyTreeGrid<NodeDataSource, String, String>(
+			"grid", dataSource, columns);
+		grid.setRowsPerPage(5);
+		new TestPage().add(grid);
+		return grid;
+	}
+
+	public static class TestPage extends WebPage implements IMarkupResourceStreamProvider
+	{
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public IResourceStream getMarkupResourceStream(MarkupContainer container,
+			Class<?> containerClass)
+		{
+			return new StringResourceStream("<html><body><div wicket:id=\"grid\"></div></body></html>");
+		}
+	}
+
+	/**
+	 * Ten top level nodes, each with ten children with ten children, e.g. "2", "2.9" and "2.9.0".
+	 * Records the loaded ranges.
+	 */
+	private static class NodeDataSource implements ITreeDataSource<String>
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final List<String> topLevel = new ArrayList<String>();
+
+		private final List<String> loads = new ArrayList<String>();
+
+		private NodeDataSource()
+		{
+			for (int i = 0; i < 10; i++)
+			{
+				topLevel.add(String.valueOf(i));
+			}
+		}
+
+		private List<String> children(String parentId)
+		{
+			if (parentId == null)
+			{
+				return topLevel;
+			}
+			List<String> children = new ArrayList<String>();
+			if (parentId.split("\\.").length < 3)
+			{
+				for (int i = 0; i < 10; i++)
+				{
+					children.add(parentId + "." + i);
+				}
+			}
+			return children;
+		}
+
+		@Override
+		public long getChildCount(String parentId)
+		{
+			return children(parentId).size();
+		}
+
+		@Override
+		public Iterator<? extends String> getChildren(String parentId, long first, long count)
+		{
+			loads.add((parentId == null ? "" : parentId) + ":" + first + "+" + count);
+			List<String> children = children(parentId);
+			return children.subList((int)first,
+				(int)Math.min(children.size(), first + count)).iterator();
+		}
+
+		@Override
+		public boolean hasChildren(String node)
+		{
+			return !children(node).isEmpty();
+		}
+
+		@Override
+		public String getId(String node)
+		{
+			return node;
+		}
+
+		@Override
+		public IModel<String> model(String object)
+		{
+			return Model.of(object);
+		}
+
+		@Override
+		public void detach()
+		{
+		}
+	}
+}
@@ -0,0 +1,109 @@
+package com.inmethod.grid.lazytreegrid;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.wicket.core.util.lang.WicketObjects;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LazyTreeStateTest
+{
+	private LazyTreeState state;
+
+	@Before
+	public void before()
+	{
+		state = new LazyTreeState();
+		state.expand("1", null, 1);
+		state.expand("3", null, 3);
+		state.expand("1.2", "1", 2);
+		state.expand("1.2.0", "1.2", 0);
+		state.expand("3.0", "3", 0);
+	}
+
+	@Test
+	public void groupsExpandedChildrenByParent()
+	{
+		assertEquals(Arrays.asList("1", "3"), values(state.getExpandedChildren(null)));
+		assertEquals(Arrays.asList("1.2"), values(state.getExpandedChildren("1")));
+		assertTrue(state.getExpandedChildren("2").isEmpty());
+
+		Map<String, TreeMap<Long, String>> all = state.getExpandedChildren();
+		assertEquals(new HashSet<String>(Arrays.asList(null, "1", "1.2", "3")), all.keySet());
+		assertEquals("1.2.0", all.get("1.2").get(0L));
+	}
+
+	@Test
+	public void collapsesDescendants()
+	{
+		state.collapse("1");
+
+		assertEquals(new HashSet<String>(Arrays.asList("3", "3.0")), state.getExpandedIds());
+		assertEquals(Arrays.asList("3"), values(state.getExpandedChildren(null)));
+		assertTrue(state.getExpandedChildren("1").isEmpty());
+		assertFalse(state.getExpandedChildren().containsKey("1.2"));
+	}
+
+	@Test
+	public void childrenChangedCollapsesExpandedChildren()
+	{
+		state.childrenChanged(null);
+
+		assertTrue(state.getExpandedIds().isEmpty());
+		assertTrue(state.getExpandedChildren().isEmpty());
+	}
+
+	@Test
+	public void expandingAgainMovesTheNode()
+	{
+		state.expand("1", null, 4);
+
+		assertEquals(Arrays.asList("3", "1"), values(state.getExpandedChildren(null)));
+		assertTrue(state.isExpanded("1.2"));
+	}
+
+	@Test
+	public void expandingAtTheSamePositionReplacesTheNode()
+	{
+		state.expand("new", null, 1);
+
+		assertEquals(Arrays.asList("new", "3"), values(state.getExpandedChildren(null)));
+		assertFalse(state.isExpanded("1"));
+		assertFalse(state.isExpanded("1.2"));
+		assertFalse(state.isExpanded("1.2.0"));
+	}
+
+	@Test
+	public void copiesAreNotAffectedByChanges()
+	{
+		TreeMap<Long, String> children = state.getExpandedChildren(null);
+		state.collapseAll();
+
+		assertEquals(Arrays.asList("1", "3"), values(children));
+		assertTrue(state.getExpandedChildren(null).isEmpty());
+	}
+
+	@Test
+	public void serializes()
+	{
+		LazyTreeState copy = WicketObjects.cloneObject(state);
+
+		assertEquals(state.getExpandedIds(), copy.getExpandedIds());
+		copy.collapse("3");
+		assertEquals(Arrays.asList("1"), values(copy.getExpandedChildren(null)));
+	}
+
+	private static List<String> values(TreeMap<Long, String> map)
+	{
+		return new ArrayList<String>(map.values());
+	}
+}
@@ -20,8 +20,11 @@ import java.util.ServiceLoader;
 
 import org.apache.wicket.Application;
 import org.apache.wicket.IInitializer;
+import org.apache.wicket.protocol.http.WebApplication;
 import org.apache.wicket.request.cycle.IRequestCycleListener;
 import org.wicketstuff.jamon.component.MonitoringRepositoryKey;
+import org.wicketstuff.jamon.histogram.LatencyHistogramRegistry;
+import org.wicketstuff.jamon.histogram.LatencyHistogramRegistryKey;
 import org.wicketstuff.jamon.monitor.JamonRepository;
 import org.wicketstuff.jamon.monitor.MonitoringRepository;
 import org.wicketstuff.jamon.request.cycle.JamonAwareRequestCycleListener;
@@ -40,23 +43,57 @@ import org.wicketstuff.jamon.request.cycle.JamonAwareRequestCycleListener;
  * folder 'META-INF/services'. File content needs to be the fully qualified classname of this
  * {@link IInitializer}
  * 
+ * If the filter init parameter {@value #HISTOGRAMS_PARAMETER} is set to <code>true</code>, request
+ * durations are recorded into a {@link LatencyHistogramRegistry} instead of JAMon. The histograms
+ * report percentiles, are shown on the JamonAdminPage and are exported as an MBean. The number of
+ * labels with their own histogram can be set by the filter init parameter
+ * {@value #MAX_LABELS_PARAMETER}, it defaults to {@link LatencyHistogramRegistry#DEFAULT_MAX_LABELS}.
+ * 
  * @author rene-d-menoto
  */
 public class JamonInitializer implements IInitializer
 {
 
+	public static final String HISTOGRAMS_PARAMETER = "jamon.histograms";
+
+	public static final String MAX_LABELS_PARAMETER = "jamon.histograms.maxLabels";
+
 	@Override
 	public void destroy(Application application)
 	{
-		return;
+		LatencyHistogramRegistry histograms = application.getMetaData(LatencyHistogramRegistryKey.KEY);
+		if (histograms != null)
+		{
+			histograms.unregisterMBean();
+		}
 	}
 
 	@Override
 	public void init(Application application)
 	{
 		application.setMetaData(MonitoringRepositoryKey.KEY, new JamonRepository());
+		LatencyHistogramRegistry histograms = null;
+		if (isHistogramsEnabled(application))
+		{
+			histograms = new LatencyHistogramRegistry(getMaxLabels((WebApplication)application));
+			histograms.registerMBean(application.getName());
+			application.setMetaData(LatencyHistogramRegistryKey.KEY, histograms);
+		}
 		application.getRequestCycleListeners()
-			.add(new JamonAwareRequestCycleListener(application, true));
+			.add(new JamonAwareRequestCycleListener(application, true, histograms));
+	}
+
+	private int getMaxLabels(WebApplication application)
+	{
+		String maxLabels = application.getInitParameter(MAX_LABELS_PARAMETER);
+		return maxLabels == null ? LatencyHistogramRegistry.DEFAULT_MAX_LABELS
+			: Integer.parseInt(maxLabels.trim());
+	}
+
+	private boolean isHistogramsEnabled(Application application)
+	{
+		return application instanceof WebApplication &&
+			Boolean.parseBoolean(((WebApplication)application).getInitParameter(HISTOGRAMS_PARAMETER));
 	}
 
 }
\ No newline at end of file
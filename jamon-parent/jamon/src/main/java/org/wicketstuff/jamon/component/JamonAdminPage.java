@@ -20,11 +20,13 @@ import static org.wicketstuff.jamon.component.JamonMonitorTable.DEFAULT_ROWS_PER
 
 import org.apache.wicket.markup.html.WebPage;
 import org.apache.wicket.request.mapper.parameter.PageParameters;
+import org.wicketstuff.jamon.histogram.LatencyHistogramRegistryKey;
 import org.wicketstuff.jamon.monitor.AlwaysHitedMonitorSpecification;
 
 
 /**
- * Main page of the JAMon admin interface. The monitors are shown in a Pageable table.
+ * Main page of the JAMon admin interface. The monitors are shown in a Pageable table. If request
+ * durations are recorded into latency histograms, their percentiles are shown in a second table.
  * 
  * @author lars
  *
@@ -39,6 +41,8 @@ public class JamonAdminPage extends WebPage
 
 	public static final String PATH_TO_MONITOR_DETAILS = "monitorDetails";
 
+	public static final String PATH_TO_LATENCY_TABLE = "latencyHistograms";
+
 	public JamonAdminPage()
 	{
 		this(null);
@@ -63,6 +67,14 @@ public class JamonAdminPage extends WebPage
 		add(new JamonMonitorTable(PATH_TO_STATISTICS_TABLE,
 			new AlwaysHitedMonitorSpecification(), rowsPerPage));
 		add(new EmptyMarkupContainer(PATH_TO_MONITOR_DETAILS));
+		if (getApplication().getMetaData(LatencyHistogramRegistryKey.KEY) != null)
+		{
+			add(new LatencyHistogramTable(PATH_TO_LATENCY_TABLE, rowsPerPage));
+		}
+		else
+		{
+			add(new EmptyMarkupContainer(PATH_TO_LATENCY_TABLE).setVisible(false));
+		}
 	}
 
 }
\ No newline at end of file
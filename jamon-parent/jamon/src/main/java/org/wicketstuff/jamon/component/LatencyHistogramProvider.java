@@ -0,0 +1,72 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.jamon.component;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.wicket.Application;
+import org.apache.wicket.extensions.markup.html.repeater.data.sort.SortOrder;
+import org.apache.wicket.extensions.markup.html.repeater.util.SortableDataProvider;
+import org.apache.wicket.model.IModel;
+import org.wicketstuff.jamon.histogram.LatencyHistogramRegistry;
+import org.wicketstuff.jamon.histogram.LatencyHistogramRegistryKey;
+import org.wicketstuff.jamon.histogram.LatencySnapshot;
+
+
+/**
+ * {@link SortableDataProvider} for the snapshots of the {@link LatencyHistogramRegistry} of the
+ * application.
+ */
+@SuppressWarnings("serial")
+public class LatencyHistogramProvider extends SortableDataProvider<LatencySnapshot, String>
+{
+	public LatencyHistogramProvider()
+	{
+		setSort("label", SortOrder.ASCENDING);
+	}
+
+	public Iterator<LatencySnapshot> iterator(long first, long count)
+	{
+		List<LatencySnapshot> snapshots = getRegistry().getSnapshots();
+		final String sortProperty = this.getSort().getProperty();
+		final boolean ascending = this.getSort().isAscending();
+		Collections.sort(snapshots, new PropertyModelObjectComparator(ascending, sortProperty));
+		long toIndex = Math.min(snapshots.size(), first + count);
+		if (first > toIndex)
+		{
+			return Collections.emptyIterator();
+		}
+		return snapshots.subList((int)first, (int)toIndex).iterator();
+	}
+
+	public IModel<LatencySnapshot> model(LatencySnapshot object)
+	{
+		return new ThrowAwayModel<LatencySnapshot>(object);
+	}
+
+	public long size()
+	{
+		return getRegistry().getLabelCount();
+	}
+
+	private LatencyHistogramRegistry getRegistry()
+	{
+		return Application.get().getMetaData(LatencyHistogramRegistryKey.KEY);
+	}
+}
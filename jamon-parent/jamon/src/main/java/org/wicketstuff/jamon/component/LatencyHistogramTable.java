@@ -0,0 +1,72 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.jamon.component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.wicket.extensions.markup.html.repeater.data.table.DefaultDataTable;
+import org.apache.wicket.extensions.markup.html.repeater.data.table.IColumn;
+import org.apache.wicket.extensions.markup.html.repeater.data.table.PropertyColumn;
+import org.apache.wicket.markup.repeater.Item;
+import org.apache.wicket.model.IModel;
+import org.apache.wicket.model.ResourceModel;
+import org.wicketstuff.jamon.histogram.LatencySnapshot;
+
+/**
+ * {@link DefaultDataTable} that will create a row with the latency percentiles of each label
+ * recorded in the {@link org.wicketstuff.jamon.histogram.LatencyHistogramRegistry}.
+ */
+@SuppressWarnings("serial")
+public class LatencyHistogramTable extends DefaultDataTable<LatencySnapshot, String>
+{
+	public LatencyHistogramTable(String id, long maxRowsPerPage)
+	{
+		super(id, createColumns(), new LatencyHistogramProvider(), (int)maxRowsPerPage);
+		setOutputMarkupId(true);
+		setMarkupId(id);
+	}
+
+	private static List<IColumn<LatencySnapshot, String>> createColumns()
+	{
+		List<IColumn<LatencySnapshot, String>> cols = new ArrayList<IColumn<LatencySnapshot, String>>();
+		cols.add(createColumn("label", "label"));
+		cols.add(createColumn("hits", "count"));
+		cols.add(createColumn("average", "mean"));
+		cols.add(createColumn("p50", "p50"));
+		cols.add(createColumn("p99", "p99"));
+		cols.add(createColumn("p999", "p999"));
+		cols.add(createColumn("min", "min"));
+		cols.add(createColumn("max", "max"));
+		return cols;
+	}
+
+	@Override
+	protected Item<LatencySnapshot> newRowItem(String id, int index, IModel<LatencySnapshot> model)
+	{
+		Item<LatencySnapshot> rowItem = super.newRowItem(id, index, model);
+		return IndexBasedMouseOverMouseOutSupport.add(rowItem, rowItem.getIndex());
+	}
+
+	private static PropertyColumn<LatencySnapshot, String> createColumn(String resourceKey,
+		String propertyName)
+	{
+		return new PropertyColumn<LatencySnapshot, String>(
+			new ResourceModel(String.format("wicket.jamon.%s", resourceKey)), propertyName,
+			propertyName);
+	}
+}
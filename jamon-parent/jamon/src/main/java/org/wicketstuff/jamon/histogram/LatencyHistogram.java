@@ -0,0 +1,197 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.jamon.histogram;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of latencies in nanoseconds. Values are counted in log-linear buckets: below
+ * {@value #SUB_BUCKET_COUNT} ns every value has its own bucket, above that every power of two is
+ * split into {@value #SUB_BUCKET_COUNT} buckets, so reported percentiles are at most about 3% off.
+ * Values above {@link #MAX_TRACKABLE_NANOS} (about 18 minutes) are counted in the last bucket.
+ * <p>
+ * Recording does not lock. The counters are striped by thread so that concurrent requests
+ * rarely write to the same cache line; the stripes are only merged when a snapshot is taken.
+ */
+public class LatencyHistogram
+{
+	static final int SUB_BUCKET_BITS = 5;
+
+	static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+	static final int MAX_EXPONENT = 40;
+
+	public static final long MAX_TRACKABLE_NANOS = (1L << (MAX_EXPONENT + 1)) - 1;
+
+	static final int BUCKET_COUNT = bucketIndex(MAX_TRACKABLE_NANOS) + 1;
+
+	private static final int STRIPE_COUNT = stripeCount();
+
+	private final AtomicLongArray[] stripes;
+
+	private final LongAdder totalNanos = new LongAdder();
+
+	private final AtomicLong minNanos = new AtomicLong(Long.MAX_VALUE);
+
+	private final AtomicLong maxNanos = new AtomicLong();
+
+	public LatencyHistogram()
+	{
+		stripes = new AtomicLongArray[STRIPE_COUNT];
+		for (int i = 0; i < STRIPE_COUNT; i++)
+		{
+			stripes[i] = new AtomicLongArray(BUCKET_COUNT);
+		}
+	}
+
+	/**
+	 * Records a single latency. Negative values are ignored.
+	 * 
+	 * @param nanos
+	 *            the latency in nanoseconds
+	 */
+	public void record(long nanos)
+	{
+		if (nanos < 0)
+		{
+			return;
+		}
+		int stripe = (int)Thread.currentThread().getId() & (STRIPE_COUNT - 1);
+		stripes[stripe].incrementAndGet(bucketIndex(Math.min(nanos, MAX_TRACKABLE_NANOS)));
+		totalNanos.add(nanos);
+		long max;
+		while (nanos > (max = maxNanos.get()) && !maxNanos.compareAndSet(max, nanos))
+		{
+		}
+		long min;
+		while (nanos < (min = minNanos.get()) && !minNanos.compareAndSet(min, nanos))
+		{
+		}
+	}
+
+	/**
+	 * Records a latency given in any time unit.
+	 * 
+	 * @param duration
+	 *            the latency
+	 * @param unit
+	 *            the unit of the duration
+	 */
+	public void record(long duration, TimeUnit unit)
+	{
+		record(unit.toNanos(duration));
+	}
+
+	/**
+	 * Merges the stripes into a snapshot. Values recorded while the snapshot is taken may or may
+	 * not be part of it.
+	 * 
+	 * @param label
+	 *            the label of the snapshot
+	 * @return the snapshot
+	 */
+	public LatencySnapshot snapshot(String label)
+	{
+		long[] counts = new long[BUCKET_COUNT];
+		long count = 0;
+		for (AtomicLongArray stripe : stripes)
+		{
+			for (int i = 0; i < BUCKET_COUNT; i++)
+			{
+				long value = stripe.get(i);
+				counts[i] += value;
+				count += value;
+			}
+		}
+		long max = maxNanos.get();
+		long min = count == 0 ? 0 : minNanos.get();
+		return new LatencySnapshot(label, count, count == 0 ? 0 : totalNanos.sum() / count, min,
+			max, valueAtPercentile(counts, count, 50d, max),
+			valueAtPercentile(counts, count, 99d, max), valueAtPercentile(counts, count, 99.9d, max));
+	}
+
+	/**
+	 * Sets all counters back to zero. Values recorded concurrently may be partly lost.
+	 */
+	public void reset()
+	{
+		for (AtomicLongArray stripe : stripes)
+		{
+			for (int i = 0; i < BUCKET_COUNT; i++)
+			{
+				stripe.set(i, 0);
+			}
+		}
+		totalNanos.reset();
+		maxNanos.set(0);
+		minNanos.set(Long.MAX_VALUE);
+	}
+
+	private static long valueAtPercentile(long[] counts, long count, double percentile, long max)
+	{
+		if (count == 0)
+		{
+			return 0;
+		}
+		long rank = Math.max(1, (long)Math.ceil(percentile / 100d * count));
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++)
+		{
+			seen += counts[i];
+			if (seen >= rank)
+			{
+				return Math.min(highestValueOf(i), max);
+			}
+		}
+		return max;
+	}
+
+	static int bucketIndex(long value)
+	{
+		if (value < SUB_BUCKET_COUNT)
+		{
+			return (int)value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int shift = exponent - SUB_BUCKET_BITS;
+		return (shift + 1) * SUB_BUCKET_COUNT + (int)(value >>> shift) - SUB_BUCKET_COUNT;
+	}
+
+	static long lowestValueOf(int index)
+	{
+		if (index < SUB_BUCKET_COUNT)
+		{
+			return index;
+		}
+		int shift = index / SUB_BUCKET_COUNT - 1;
+		return (long)(SUB_BUCKET_COUNT + index % SUB_BUCKET_COUNT) << shift;
+	}
+
+	static long highestValueOf(int index)
+	{
+		return lowestValueOf(index + 1) - 1;
+	}
+
+	private static int stripeCount()
+	{
+		int processors = Math.min(Runtime.getRuntime().availableProcessors(), 8);
+		return Integer.highestOneBit(Math.max(processors, 1) * 2 - 1);
+	}
+}
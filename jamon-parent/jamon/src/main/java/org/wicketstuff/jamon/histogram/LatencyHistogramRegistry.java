@@ -0,0 +1,290 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.jamon.histogram;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.wicket.WicketRuntimeException;
+
+/**
+ * Holds a {@link LatencyHistogram} per monitor label. Labels are interned to ids once, so that
+ * recording a request only needs a lookup of its source and target names and never builds the
+ * label string again.
+ * <p>
+ * Every histogram takes several tens of kilobytes, so the number of labels is capped. Once the
+ * cap is reached, all further labels are recorded into a single histogram labeled
+ * {@value #OVERFLOW_LABEL}.
+ */
+public class LatencyHistogramRegistry implements LatencyHistogramRegistryMXBean
+{
+	/**
+	 * The default maximum number of labels, not counting {@value #OVERFLOW_LABEL}.
+	 */
+	public static final int DEFAULT_MAX_LABELS = 256;
+
+	/**
+	 * The label of the histogram that records the labels beyond the maximum.
+	 */
+	public static final String OVERFLOW_LABEL = "(other)";
+
+	private static final String NO_SOURCE = "";
+
+	private final int maxLabels;
+
+	private volatile int overflowId = -1;
+
+	private final ConcurrentMap<String, ConcurrentMap<String, Integer>> idsByTarget = new ConcurrentHashMap<String, ConcurrentMap<String, Integer>>();
+
+	private final Object internLock = new Object();
+
+	private volatile String[] labels = new String[0];
+
+	private volatile LatencyHistogram[] histograms = new LatencyHistogram[0];
+
+	private ObjectName objectName;
+
+	/**
+	 * Creates a registry for up to {@value #DEFAULT_MAX_LABELS} labels.
+	 */
+	public LatencyHistogramRegistry()
+	{
+		this(DEFAULT_MAX_LABELS);
+	}
+
+	/**
+	 * Creates a registry with a maximum number of labels.
+	 * 
+	 * @param maxLabels
+	 *            the maximum number of labels with their own histogram
+	 */
+	public LatencyHistogramRegistry(int maxLabels)
+	{
+		if (maxLabels < 1)
+		{
+			throw new IllegalArgumentException("maxLabels must be positive: " + maxLabels);
+		}
+		this.maxLabels = maxLabels;
+	}
+
+	/**
+	 * @return the maximum number of labels with their own histogram
+	 */
+	public int getMaxLabels()
+	{
+		return maxLabels;
+	}
+
+	/**
+	 * Returns the id of a label, registering it if it is new.
+	 * 
+	 * @param label
+	 *            the monitor label
+	 * @return the id of the label
+	 */
+	public int labelId(String label)
+	{
+		return labelId(null, label);
+	}
+
+	/**
+	 * Returns the id of the label <code>source -> target</code>, registering it if it is new.
+	 * 
+	 * @param source
+	 *            where the request originated from or <code>null</code> to label the target only
+	 * @param target
+	 *            what was rendered
+	 * @return the id of the label
+	 */
+	public int labelId(String source, String target)
+	{
+		ConcurrentMap<String, Integer> idsBySource = idsByTarget.get(target);
+		if (idsBySource != null)
+		{
+			Integer id = idsBySource.get(source == null ? NO_SOURCE : source);
+			if (id != null)
+			{
+				return id;
+			}
+		}
+		int overflow = overflowId;
+		if (overflow >= 0)
+		{
+			// the registry is full, unknown labels are not interned anymore
+			return overflow;
+		}
+		return intern(source, target);
+	}
+
+	private int intern(String source, String target)
+	{
+		synchronized (internLock)
+		{
+			String sourceKey = source == null ? NO_SOURCE : source;
+			ConcurrentMap<String, Integer> idsBySource = idsByTarget.get(target);
+			Integer id = idsBySource == null ? null : idsBySource.get(sourceKey);
+			if (id != null)
+			{
+				return id;
+			}
+			if (labels.length - (overflowId < 0 ? 0 : 1) >= maxLabels)
+			{
+				// the label is not remembered, so the maps stay bounded as well
+				if (overflowId < 0)
+				{
+					overflowId = addLabel(OVERFLOW_LABEL);
+				}
+				return overflowId;
+			}
+			if (idsBySource == null)
+			{
+				idsBySource = new ConcurrentHashMap<String, Integer>();
+				idsByTarget.put(target, idsBySource);
+			}
+			id = addLabel(source == null ? target : source + " -> " + target);
+			idsBySource.put(sourceKey, id);
+			return id;
+		}
+	}
+
+	private int addLabel(String label)
+	{
+		int id = labels.length;
+		String[] newLabels = Arrays.copyOf(labels, id + 1);
+		newLabels[id] = label;
+		LatencyHistogram[] newHistograms = Arrays.copyOf(histograms, id + 1);
+		newHistograms[id] = new LatencyHistogram();
+		// publish the arrays before the id, readers only ever look up ids they got from the map
+		labels = newLabels;
+		histograms = newHistograms;
+		return id;
+	}
+
+	/**
+	 * Records a latency for a label id.
+	 * 
+	 * @param labelId
+	 *            an id returned by {@link #labelId(String, String)}
+	 * @param nanos
+	 *            the latency in nanoseconds
+	 */
+	public void record(int labelId, long nanos)
+	{
+		histograms[labelId].record(nanos);
+	}
+
+	public String getLabel(int labelId)
+	{
+		return labels[labelId];
+	}
+
+	public LatencySnapshot snapshot(int labelId)
+	{
+		return histograms[labelId].snapshot(labels[labelId]);
+	}
+
+	@Override
+	public int getLabelCount()
+	{
+		return labels.length;
+	}
+
+	@Override
+	public List<LatencySnapshot> getSnapshots()
+	{
+		String[] currentLabels = labels;
+		LatencyHistogram[] currentHistograms = histograms;
+		List<LatencySnapshot> snapshots = new ArrayList<LatencySnapshot>(currentLabels.length);
+		for (int i = 0; i < currentLabels.length; i++)
+		{
+			snapshots.add(currentHistograms[i].snapshot(currentLabels[i]));
+		}
+		return snapshots;
+	}
+
+	@Override
+	public void reset()
+	{
+		for (LatencyHistogram histogram : histograms)
+		{
+			histogram.reset();
+		}
+	}
+
+	/**
+	 * Registers this registry with the platform MBean server.
+	 * 
+	 * @param name
+	 *            the name of the application, used to tell the registries of several applications
+	 *            apart
+	 */
+	public synchronized void registerMBean(String name)
+	{
+		try
+		{
+			ObjectName newName = new ObjectName("org.wicketstuff.jamon:type=LatencyHistograms,name=" +
+				ObjectName.quote(name));
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			if (server.isRegistered(newName))
+			{
+				server.unregisterMBean(newName);
+			}
+			server.registerMBean(this, newName);
+			objectName = newName;
+		}
+		catch (JMException e)
+		{
+			throw new WicketRuntimeException("Unable to register latency histograms for " + name, e);
+		}
+	}
+
+	/**
+	 * Removes this registry from the platform MBean server if it was registered.
+	 */
+	public synchronized void unregisterMBean()
+	{
+		if (objectName == null)
+		{
+			return;
+		}
+		try
+		{
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+		}
+		catch (JMException e)
+		{
+			throw new WicketRuntimeException("Unable to unregister " + objectName, e);
+		}
+		finally
+		{
+			objectName = null;
+		}
+	}
+
+	synchronized ObjectName getObjectName()
+	{
+		return objectName;
+	}
+}
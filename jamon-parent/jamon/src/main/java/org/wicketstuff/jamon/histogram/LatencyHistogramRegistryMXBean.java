@@ -0,0 +1,41 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.jamon.histogram;
+
+import java.util.List;
+
+/**
+ * Management interface of a {@link LatencyHistogramRegistry}. The snapshots are exposed as open
+ * data so that any JMX console or metrics agent polling the platform MBean server can read them.
+ */
+public interface LatencyHistogramRegistryMXBean
+{
+	/**
+	 * @return the number of labels that have been recorded
+	 */
+	int getLabelCount();
+
+	/**
+	 * @return the current statistics of every label
+	 */
+	List<LatencySnapshot> getSnapshots();
+
+	/**
+	 * Sets all histograms back to zero. The labels are kept.
+	 */
+	void reset();
+}
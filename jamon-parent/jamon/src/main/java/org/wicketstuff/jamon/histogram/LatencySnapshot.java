@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.jamon.histogram;
+
+import java.io.Serializable;
+
+/**
+ * Immutable statistics of a {@link LatencyHistogram} at a point in time. All durations are
+ * reported in milliseconds.
+ */
+public class LatencySnapshot implements Serializable
+{
+	private static final long serialVersionUID = 1L;
+
+	private static final double NANOS_PER_MILLI = 1000000d;
+
+	private final String label;
+
+	private final long count;
+
+	private final long meanNanos;
+
+	private final long minNanos;
+
+	private final long maxNanos;
+
+	private final long p50Nanos;
+
+	private final long p99Nanos;
+
+	private final long p999Nanos;
+
+	LatencySnapshot(String label, long count, long meanNanos, long minNanos, long maxNanos,
+		long p50Nanos, long p99Nanos, long p999Nanos)
+	{
+		this.label = label;
+		this.count = count;
+		this.meanNanos = meanNanos;
+		this.minNanos = minNanos;
+		this.maxNanos = maxNanos;
+		this.p50Nanos = p50Nanos;
+		this.p99Nanos = p99Nanos;
+		this.p999Nanos = p999Nanos;
+	}
+
+	public String getLabel()
+	{
+		return label;
+	}
+
+	public long getCount()
+	{
+		return count;
+	}
+
+	public double getMean()
+	{
+		return toMillis(meanNanos);
+	}
+
+	public double getMin()
+	{
+		return toMillis(minNanos);
+	}
+
+	public double getMax()
+	{
+		return toMillis(maxNanos);
+	}
+
+	/**
+	 * @return the median latency
+	 */
+	public double getP50()
+	{
+		return toMillis(p50Nanos);
+	}
+
+	public double getP99()
+	{
+		return toMillis(p99Nanos);
+	}
+
+	public double getP999()
+	{
+		return toMillis(p999Nanos);
+	}
+
+	private static double toMillis(long nanos)
+	{
+		return nanos / NANOS_PER_MILLI;
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format("%s: count=%d, mean=%.3fms, p50=%.3fms, p99=%.3fms, p999=%.3fms, max=%.3fms",
+			label, count, getMean(), getP50(), getP99(), getP999(), getMax());
+	}
+}
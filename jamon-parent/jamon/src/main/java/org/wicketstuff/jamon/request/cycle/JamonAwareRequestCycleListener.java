@@ -27,6 +27,8 @@ import org.apache.wicket.core.request.handler.BufferedResponseRequestHandler;
 import org.apache.wicket.core.request.handler.IPageClassRequestHandler;
 import org.apache.wicket.core.request.handler.ListenerRequestHandler;
 
+import org.wicketstuff.jamon.histogram.LatencyHistogramRegistry;
+
 import com.jamonapi.Monitor;
 
 
@@ -59,18 +61,38 @@ import com.jamonapi.Monitor;
 public class JamonAwareRequestCycleListener extends AbstractRequestCycleListener
 {
 
-	private static final String DELIMETER = ":";
+	private static final char DELIMETER = ':';
 	private final boolean includeSourceNameInMonitorLabel;
+	private final LatencyHistogramRegistry histograms;
 
 	public JamonAwareRequestCycleListener(Application app, boolean includeSourceNameInMonitorLabel)
+	{
+		this(app, includeSourceNameInMonitorLabel, null);
+	}
+
+	/**
+	 * Construct.
+	 * 
+	 * @param app
+	 *            the application
+	 * @param includeSourceNameInMonitorLabel
+	 *            whether or not to include the name of the source in the Monitors label.
+	 * @param histograms
+	 *            the histograms to record request durations into instead of the JAMon
+	 *            {@link com.jamonapi.MonitorFactory}, or <code>null</code> to use JAMon.
+	 */
+	public JamonAwareRequestCycleListener(Application app, boolean includeSourceNameInMonitorLabel,
+		LatencyHistogramRegistry histograms)
 	{
 		this.includeSourceNameInMonitorLabel = includeSourceNameInMonitorLabel;
+		this.histograms = histograms;
 	}
 
 	@Override
 	public void onBeginRequest(RequestCycle cycle)
 	{
-		JamonMonitoredRequestCycleContext.registerTo(cycle, includeSourceNameInMonitorLabel);
+		JamonMonitoredRequestCycleContext.registerTo(cycle, includeSourceNameInMonitorLabel,
+			histograms);
 		getContextOf(cycle).startTimeRequest();
 		super.onBeginRequest(cycle);
 	}
@@ -197,16 +219,13 @@ public class JamonAwareRequestCycleListener extends AbstractRequestCycleListener
 	 */
 	private String getRelativePath(ListenerRequestHandler handler)
 	{
-
 		String relativePath = handler.getComponentPath();
-		String[] parts = relativePath.split(DELIMETER);
-		if (parts.length > 3)
+		int start = relativePath.length();
+		for (int parts = 0; parts < 3 && start >= 0; parts++)
 		{
-			relativePath = new StringBuilder(parts[parts.length - 3]).append(DELIMETER)
-				.append(parts[parts.length - 2]).append(DELIMETER).append(parts[parts.length - 1])
-				.toString();
+			start = relativePath.lastIndexOf(DELIMETER, start - 1);
 		}
-		return relativePath;
+		return start < 0 ? relativePath : relativePath.substring(start + 1);
 	}
 
 	/*
@@ -19,6 +19,7 @@ package org.wicketstuff.jamon.request.cycle;
 import org.apache.wicket.request.component.IRequestablePage;
 import org.apache.wicket.request.cycle.RequestCycle;
 import org.wicketstuff.jamon.component.JamonAdminPage;
+import org.wicketstuff.jamon.histogram.LatencyHistogramRegistry;
 
 import com.jamonapi.Monitor;
 import com.jamonapi.MonitorFactory;
@@ -57,11 +58,18 @@ public class JamonMonitoredRequestCycleContext
 
 	static final String UNIT = "ms.";
 
+	private static final double NANOS_PER_MILLI = 1000000d;
+
 	/**
-	 * At what time did the request start.
+	 * At what time did the request start, as given by {@link System#nanoTime()}.
 	 */
 	private long startTimeRequest;
 
+	/**
+	 * Has {@link #startTimeRequest()} been called.
+	 */
+	private boolean started;
+
 	/**
 	 * The source from where the request originated. This will typically be in the form of
 	 * PageName.component. Where component is the name of the component that was clicked.
@@ -79,6 +87,12 @@ public class JamonMonitoredRequestCycleContext
 	 */
 	private final boolean includeSourceNameInMonitorLabel;
 
+	/**
+	 * The histograms to record the duration into, or <code>null</code> to add it to the JAMon
+	 * {@link MonitorFactory}.
+	 */
+	private final LatencyHistogramRegistry histograms;
+
 	/**
 	 * Should we ignore this request cycle as it involves the {@link JamonAdminPage} itself?
 	 */
@@ -91,16 +105,36 @@ public class JamonMonitoredRequestCycleContext
 	 *            whether or not to include the name of the {@link #source} in the Monitors label.
 	 */
 	public JamonMonitoredRequestCycleContext(boolean includeSourceNameInMonitorLabel)
+	{
+		this(includeSourceNameInMonitorLabel, null);
+	}
+
+	/**
+	 * Construct.
+	 * 
+	 * @param includeSourceNameInMonitorLabel
+	 *            whether or not to include the name of the {@link #source} in the Monitors label.
+	 * @param histograms
+	 *            the histograms to record the duration into, or <code>null</code> to use JAMon.
+	 */
+	public JamonMonitoredRequestCycleContext(boolean includeSourceNameInMonitorLabel,
+		LatencyHistogramRegistry histograms)
 	{
 		this.includeSourceNameInMonitorLabel = includeSourceNameInMonitorLabel;
-		this.startTimeRequest = 0;
+		this.histograms = histograms;
 	}
 
 	public static void registerTo(RequestCycle cycle, boolean includeSourceNameInMonitorLabel)
+	{
+		registerTo(cycle, includeSourceNameInMonitorLabel, null);
+	}
+
+	public static void registerTo(RequestCycle cycle, boolean includeSourceNameInMonitorLabel,
+		LatencyHistogramRegistry histograms)
 	{
 		RequestCycle requestCycle = cycle == null ? RequestCycle.get() : cycle;
 		requestCycle.setMetaData(JamonMonitoredRequestCycleContextKey.KEY,
-			new JamonMonitoredRequestCycleContext(includeSourceNameInMonitorLabel));
+			new JamonMonitoredRequestCycleContext(includeSourceNameInMonitorLabel, histograms));
 	}
 
 	public static JamonMonitoredRequestCycleContext get(RequestCycle cycle)
@@ -111,7 +145,8 @@ public class JamonMonitoredRequestCycleContext
 
 	public final void startTimeRequest()
 	{
-		this.startTimeRequest = System.currentTimeMillis();
+		this.startTimeRequest = System.nanoTime();
+		this.started = true;
 	}
 
 	public final void stopTimeRequest()
@@ -154,32 +189,26 @@ public class JamonMonitoredRequestCycleContext
 
 	private void calculateDurationAndAddToMonitor()
 	{
-		if (this.startTimeRequest != 0 && !dontMonitorThisRequest)
+		if (started && !dontMonitorThisRequest)
 		{
-			long duration = System.currentTimeMillis() - startTimeRequest;
-			if (includeSourceNameInMonitorLabel)
+			long duration = System.nanoTime() - startTimeRequest;
+			boolean labelWithSource = includeSourceNameInMonitorLabel && source != null &&
+				!source.equals(target);
+			if (histograms != null)
 			{
-				MonitorFactory.add(createLabel(), UNIT, duration);
+				String targetName = String.valueOf(target);
+				int labelId = labelWithSource ? histograms.labelId(source, targetName)
+					: histograms.labelId(targetName);
+				histograms.record(labelId, duration);
 			}
 			else
 			{
-				MonitorFactory.add(String.format("%s", target), UNIT, duration);
+				String label = labelWithSource ? source + " -> " + target : String.valueOf(target);
+				MonitorFactory.add(label, UNIT, duration / NANOS_PER_MILLI);
 			}
 		}
 	}
 
-	private String createLabel()
-	{
-		if (source == null || source.equals(target))
-		{
-			return String.format("%s", target);
-		}
-		else
-		{
-			return String.format("%s -> %s", source, target);
-		}
-	}
-
 	public final void dontMonitorThisRequest()
 	{
 		this.dontMonitorThisRequest = true;
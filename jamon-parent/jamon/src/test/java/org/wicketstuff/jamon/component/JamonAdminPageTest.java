@@ -22,6 +22,8 @@ import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.wicketstuff.jamon.component.JamonAdminPage;
+import org.wicketstuff.jamon.histogram.LatencyHistogramRegistry;
+import org.wicketstuff.jamon.histogram.LatencyHistogramRegistryKey;
 import org.wicketstuff.jamon.monitor.JamonRepository;
 
 import com.jamonapi.MonitorFactory;
@@ -68,4 +70,23 @@ public class JamonAdminPageTest
 		Assert.assertTrue(
 			wicketTester.getTagsByWicketId("linkText").get(1).getValue().equals("mon1"));
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void shouldRenderLatencyHistogramsIfRegistered()
+	{
+		LatencyHistogramRegistry histograms = new LatencyHistogramRegistry();
+		histograms.record(histograms.labelId("HomePage"), 2000000L);
+		wicketTester.getApplication().setMetaData(LatencyHistogramRegistryKey.KEY, histograms);
+		wicketTester.startPage(new JamonAdminPage());
+		wicketTester.assertRenderedPage(JamonAdminPage.class);
+		wicketTester.assertVisible(JamonAdminPage.PATH_TO_LATENCY_TABLE);
+		wicketTester.assertContains("HomePage");
+	}
+
+	@Test
+	public void shouldHideLatencyHistogramsIfNotRegistered()
+	{
+		wicketTester.startPage(new JamonAdminPage());
+		wicketTester.assertInvisible(JamonAdminPage.PATH_TO_LATENCY_TABLE);
+	}
+}
@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.jamon.histogram;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+import org.junit.Test;
+
+
+public class LatencyHistogramRegistryTest
+{
+
+	@Test
+	public void shouldInternLabelsOnce()
+	{
+		LatencyHistogramRegistry registry = new LatencyHistogramRegistry();
+		int homePage = registry.labelId("HomePage");
+		int fromLink = registry.labelId("AjaxPage.ajaxLink", "HomePage");
+
+		assertNotEquals(homePage, fromLink);
+		assertEquals(homePage, registry.labelId(null, "HomePage"));
+		assertEquals(fromLink, registry.labelId("AjaxPage.ajaxLink", "HomePage"));
+		assertEquals("HomePage", registry.getLabel(homePage));
+		assertEquals("AjaxPage.ajaxLink -> HomePage", registry.getLabel(fromLink));
+		assertEquals(2, registry.getLabelCount());
+	}
+
+	@Test
+	public void shouldRecordPerLabel()
+	{
+		LatencyHistogramRegistry registry = new LatencyHistogramRegistry();
+		int first = registry.labelId("first");
+		int second = registry.labelId("second");
+		registry.record(first, 1000000L);
+		registry.record(first, 2000000L);
+		registry.record(second, 3000000L);
+
+		assertEquals(2, registry.snapshot(first).getCount());
+		assertEquals(1, registry.snapshot(second).getCount());
+		assertEquals(2, registry.getSnapshots().size());
+	}
+
+	@Test
+	public void shouldRecordLabelsBeyondTheMaximumIntoOneHistogram()
+	{
+		LatencyHistogramRegistry registry = new LatencyHistogramRegistry(2);
+		int first = registry.labelId("first");
+		int second = registry.labelId("source", "second");
+		int third = registry.labelId("third");
+		int fourth = registry.labelId("source", "fourth");
+
+		assertNotEquals(first, third);
+		assertNotEquals(second, third);
+		assertEquals(third, fourth);
+		assertEquals(LatencyHistogramRegistry.OVERFLOW_LABEL, registry.getLabel(third));
+		assertEquals(first, registry.labelId("first"));
+		assertEquals(second, registry.labelId("source", "second"));
+		assertEquals(3, registry.getLabelCount());
+
+		registry.record(third, 1000000L);
+		registry.record(fourth, 2000000L);
+		assertEquals(2, registry.snapshot(third).getCount());
+	}
+
+	@Test
+	public void shouldExportSnapshotsAsMBean() throws Exception
+	{
+		LatencyHistogramRegistry registry = new LatencyHistogramRegistry();
+		registry.record(registry.labelId("HomePage"), 1000000L);
+		registry.registerMBean("test");
+		ObjectName name = registry.getObjectName();
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try
+		{
+			assertEquals(1, server.getAttribute(name, "LabelCount"));
+			CompositeData[] snapshots = (CompositeData[])server.getAttribute(name, "Snapshots");
+			assertEquals("HomePage", snapshots[0].get("label"));
+			assertEquals(1L, snapshots[0].get("count"));
+		}
+		finally
+		{
+			registry.unregisterMBean();
+		}
+		assertFalse(server.isRegistered(name));
+		assertTrue(registry.getObjectName() == null);
+	}
+}
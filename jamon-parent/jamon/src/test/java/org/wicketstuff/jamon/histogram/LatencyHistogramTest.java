@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.jamon.histogram;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+
+public class LatencyHistogramTest
+{
+
+	@Test
+	public void shouldMapEveryValueToABucketThatContainsIt()
+	{
+		for (long value = 0; value < 1L << 20; value += 7)
+		{
+			int index = LatencyHistogram.bucketIndex(value);
+			assertTrue(LatencyHistogram.lowestValueOf(index) <= value);
+			assertTrue(LatencyHistogram.highestValueOf(index) >= value);
+		}
+		assertEquals(LatencyHistogram.BUCKET_COUNT - 1,
+			LatencyHistogram.bucketIndex(LatencyHistogram.MAX_TRACKABLE_NANOS));
+	}
+
+	@Test
+	public void shouldReportPercentilesWithinBucketPrecision()
+	{
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int millis = 1; millis <= 1000; millis++)
+		{
+			histogram.record(millis, TimeUnit.MILLISECONDS);
+		}
+		LatencySnapshot snapshot = histogram.snapshot("test");
+
+		assertEquals(1000, snapshot.getCount());
+		assertEquals(500.5d, snapshot.getMean(), 0.001d);
+		assertEquals(1d, snapshot.getMin(), 0.001d);
+		assertEquals(1000d, snapshot.getMax(), 0.001d);
+		assertEquals(500d, snapshot.getP50(), 500d * 0.035d);
+		assertEquals(990d, snapshot.getP99(), 990d * 0.035d);
+		assertEquals(999d, snapshot.getP999(), 999d * 0.035d);
+	}
+
+	@Test
+	public void shouldReportZeroWhenEmpty()
+	{
+		LatencySnapshot snapshot = new LatencyHistogram().snapshot("empty");
+
+		assertEquals(0, snapshot.getCount());
+		assertEquals(0d, snapshot.getMin(), 0d);
+		assertEquals(0d, snapshot.getP999(), 0d);
+	}
+
+	@Test
+	public void shouldNotLoseConcurrentlyRecordedValues() throws InterruptedException
+	{
+		final LatencyHistogram histogram = new LatencyHistogram();
+		final int threads = 8;
+		final int valuesPerThread = 10000;
+		final CountDownLatch done = new CountDownLatch(threads);
+		for (int i = 0; i < threads; i++)
+		{
+			new Thread()
+			{
+				@Override
+				public void run()
+				{
+					for (int value = 0; value < valuesPerThread; value++)
+					{
+						histogram.record(value);
+					}
+					done.countDown();
+				}
+			}.start();
+		}
+		done.await();
+
+		assertEquals(threads * valuesPerThread, histogram.snapshot("test").getCount());
+	}
+
+	@Test
+	public void shouldResetAllCounters()
+	{
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(5, TimeUnit.MILLISECONDS);
+		histogram.reset();
+
+		assertEquals(0, histogram.snapshot("test").getCount());
+		assertEquals(0d, histogram.snapshot("test").getMax(), 0d);
+	}
+}
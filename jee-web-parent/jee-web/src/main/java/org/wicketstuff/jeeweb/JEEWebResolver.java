@@ -20,8 +20,21 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.UnsupportedEncodingException;
+import java.io.Writer;
 import java.net.MalformedURLException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
@@ -35,6 +48,7 @@ import javax.servlet.http.HttpServletResponseWrapper;
 import org.apache.wicket.Application;
 import org.apache.wicket.Component;
 import org.apache.wicket.MarkupContainer;
+import org.apache.wicket.MetaDataKey;
 import org.apache.wicket.WicketRuntimeException;
 import org.apache.wicket.markup.ComponentTag;
 import org.apache.wicket.markup.MarkupException;
@@ -44,7 +58,9 @@ import org.apache.wicket.markup.parser.XmlTag;
 import org.apache.wicket.markup.parser.filter.WicketTagIdentifier;
 import org.apache.wicket.markup.resolver.IComponentResolver;
 import org.apache.wicket.protocol.http.WebApplication;
+import org.apache.wicket.request.Response;
 import org.apache.wicket.request.cycle.RequestCycle;
+import org.apache.wicket.response.StringResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -64,7 +80,14 @@ import org.slf4j.LoggerFactory;
  * <code><pre>&lt;wicket:jsp file="/de/test/jspwicket/TestPage.jsp"&gt;&lt;/wicket:jsp&gt;</pre></code>
  * or
  * <code><pre>&lt;wicket:servlet path="/de/test/jspwicket/Servlet"&gt;&lt;/wicket:servlet&gt;</pre></code>
- * or <code><pre>&lt;wicket:jsf file="/Page.xhtml"&gt;&lt;/wicket:jsf&gt;</pre></code> <b>Links:</b><br>
+ * or <code><pre>&lt;wicket:jsf file="/Page.xhtml"&gt;&lt;/wicket:jsf&gt;</pre></code>
+ * By default the output of the include is collected and then written to the page. With
+ * {@link #setStreaming(boolean)} it is written to the response of the page while the resource is
+ * included, through a pooled buffer. Includes whose output only depends on some request parameters
+ * can be marked as cacheable, the output is then rendered once per resource and values of the
+ * declared parameters (see {@link #clearFragmentCache()}):
+ * <code><pre>&lt;wicket:jsp file="/menu.jsp" cacheable="true" params="lang,section"&gt;&lt;/wicket:jsp&gt;</pre></code>
+ * <b>Links:</b><br>
  * https://cwiki.apache.org/confluence/display/WICKET/Including+JSP+files+in+ HTML+templates<br>
  * http://apache-wicket.1842946.n4.nabble.com/Wicket-1-5-and-JSP-servlet- wrapping-td4407174.html<br>
  * <br>
@@ -82,6 +105,19 @@ public class JEEWebResolver implements IComponentResolver
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(JEEWebResolver.class);
 
+	/**
+	 * Maximum number of cached fragments per application, the least recently used fragment is
+	 * dropped when it is exceeded
+	 */
+	private static final int MAX_CACHED_FRAGMENTS = 1000;
+
+	private static final MetaDataKey<FragmentCache> FRAGMENT_CACHE_KEY = new MetaDataKey<FragmentCache>()
+	{
+		private static final long serialVersionUID = 1L;
+	};
+
+	private boolean streaming;
+
 	// Registration of the tag identifier
 	static
 	{
@@ -108,7 +144,7 @@ public class JEEWebResolver implements IComponentResolver
 					throw new MarkupException(
 						"Wrong format of <wicket:jsp file='/foo.jsp'>: attribute 'file' is missing");
 				}
-				return new ServletAndJspFileContainer(file, Type.JSP);
+				return newContainer(wtag, file, Type.JSP);
 			}
 			else if ("jsf".equalsIgnoreCase(wtag.getName()))
 			{
@@ -118,7 +154,7 @@ public class JEEWebResolver implements IComponentResolver
 					throw new MarkupException(
 						"Wrong format of <wicket:jsf file='/foo.xhtml'>: attribute 'file' is missing");
 				}
-				return new ServletAndJspFileContainer(file, Type.JSF);
+				return newContainer(wtag, file, Type.JSF);
 			}
 			else if ("servlet".equalsIgnoreCase(wtag.getName()))
 			{
@@ -128,12 +164,101 @@ public class JEEWebResolver implements IComponentResolver
 					throw new MarkupException(
 						"Wrong format of <wicket:servlet path='/Test'>: attribute 'path' is missing");
 				}
-				return new ServletAndJspFileContainer(path, Type.SERVLET);
+				return newContainer(wtag, path, Type.SERVLET);
 			}
 		}
 		return null;
 	}
 
+	/**
+	 * Creates the container of a tag, applying the include options
+	 */
+	private ServletAndJspFileContainer newContainer(WicketTag wtag, String resource, Type type)
+	{
+		String[] params = null;
+		if (wtag.getAttributes().getBoolean("cacheable"))
+		{
+			String paramNames = wtag.getAttributes().getString("params");
+			params = paramNames == null || paramNames.trim().isEmpty() ? new String[0]
+				: paramNames.trim().split("\\s*,\\s*");
+		}
+		return new ServletAndJspFileContainer(resource, type, streaming, params);
+	}
+
+	/**
+	 * Sets if the output of includes is written to the response while the resource is included,
+	 * instead of being collected first.
+	 * 
+	 * @param streaming
+	 *            if includes are streamed
+	 * @return the resolver
+	 */
+	public JEEWebResolver setStreaming(boolean streaming)
+	{
+		this.streaming = streaming;
+		return this;
+	}
+
+	/**
+	 * @return if includes are streamed
+	 */
+	public boolean isStreaming()
+	{
+		return streaming;
+	}
+
+	/**
+	 * Removes all fragments of cacheable includes of the current application, e.g. after the
+	 * included resources changed.
+	 */
+	public static void clearFragmentCache()
+	{
+		Application.get().setMetaData(FRAGMENT_CACHE_KEY, null);
+	}
+
+	/**
+	 * @return the fragment cache of the current application
+	 */
+	private static FragmentCache getFragmentCache()
+	{
+		Application application = Application.get();
+		FragmentCache cache = application.getMetaData(FRAGMENT_CACHE_KEY);
+		if (cache == null)
+		{
+			synchronized (FRAGMENT_CACHE_KEY)
+			{
+				cache = application.getMetaData(FRAGMENT_CACHE_KEY);
+				if (cache == null)
+				{
+					cache = new FragmentCache();
+					application.setMetaData(FRAGMENT_CACHE_KEY, cache);
+				}
+			}
+		}
+		return cache;
+	}
+
+	/**
+	 * The fragments of cacheable includes by resource and parameter values, in access order so the
+	 * least recently used fragment is dropped beyond {@link JEEWebResolver#MAX_CACHED_FRAGMENTS}.
+	 * Access is synchronized on the cache.
+	 */
+	private static class FragmentCache extends LinkedHashMap<String, String>
+	{
+		private static final long serialVersionUID = 1L;
+
+		FragmentCache()
+		{
+			super(16, 0.75f, true);
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, String> eldest)
+		{
+			return size() > MAX_CACHED_FRAGMENTS;
+		}
+	}
+
 	/**
 	 * The JSP container which contains the JSP output and renders it to the Wicket HTML page
 	 */
@@ -146,11 +271,21 @@ public class JEEWebResolver implements IComponentResolver
 
 		private final Type type;
 
-		public ServletAndJspFileContainer(String resource, Type type)
+		private final boolean streaming;
+
+		/**
+		 * names of the request parameters the output depends on, null if not cacheable
+		 */
+		private final String[] cacheParams;
+
+		public ServletAndJspFileContainer(String resource, Type type, boolean streaming,
+			String[] cacheParams)
 		{
 			super(resource);
 			this.resource = resource;
 			this.type = type;
+			this.streaming = streaming;
+			this.cacheParams = cacheParams;
 		}
 
 		/**
@@ -173,9 +308,10 @@ public class JEEWebResolver implements IComponentResolver
 
 			// Get the everything required to include the jsp file
 			RequestCycle cycle = getRequestCycle();
-			ServletRequest request = (HttpServletRequest)cycle.getRequest().getContainerRequest();
-			JSPIncludeHttpServletResponseWrapper response = new JSPIncludeHttpServletResponseWrapper(
-				(HttpServletResponse)cycle.getResponse().getContainerResponse());
+			HttpServletRequest request = (HttpServletRequest)cycle.getRequest()
+				.getContainerRequest();
+			HttpServletResponse containerResponse = (HttpServletResponse)cycle.getResponse()
+				.getContainerResponse();
 			ServletContext context = ((WebApplication)Application.get()).getServletContext();
 
 			// Handle a missing jsp file
@@ -183,12 +319,30 @@ public class JEEWebResolver implements IComponentResolver
 
 			try
 			{
-				// include the JSP file by the given request / response
-				context.getRequestDispatcher(resource).include(request, response);
+				if (cacheParams != null)
+				{
+					// replace the component tag body with the cached output
+					replaceComponentTagBody(markupStream, openTag,
+						getCachedOutput(context, request, containerResponse));
+				}
+				else if (streaming)
+				{
+					// write the output of the include to the page as it is produced
+					include(context, request, containerResponse, getResponse());
+					replaceComponentTagBody(markupStream, openTag, null);
+				}
+				else
+				{
+					JSPIncludeHttpServletResponseWrapper response = new JSPIncludeHttpServletResponseWrapper(
+						containerResponse);
+
+					// include the JSP file by the given request / response
+					context.getRequestDispatcher(resource).include(request, response);
 
-				// replace the component tag body with the result of the JSP
-				// output
-				replaceComponentTagBody(markupStream, openTag, response.getOutput());
+					// replace the component tag body with the result of the JSP
+					// output
+					replaceComponentTagBody(markupStream, openTag, response.getOutput());
+				}
 			}
 			catch (ServletException | IOException e)
 			{
@@ -197,6 +351,63 @@ public class JEEWebResolver implements IComponentResolver
 
 		}
 
+		/**
+		 * Includes the resource, writing its output to the given response through a pooled
+		 * buffer.
+		 */
+		private void include(ServletContext context, HttpServletRequest request,
+			HttpServletResponse containerResponse, Response target) throws ServletException,
+			IOException
+		{
+			IncludeBuffer buffer = IncludeBuffer.borrow(target);
+			try
+			{
+				context.getRequestDispatcher(resource).include(request,
+					new StreamingIncludeHttpServletResponseWrapper(containerResponse, buffer));
+				buffer.finish();
+			}
+			finally
+			{
+				buffer.release();
+			}
+		}
+
+		/**
+		 * Returns the output of the include for the current values of the declared parameters,
+		 * including the resource only if it is not cached yet.
+		 */
+		private String getCachedOutput(ServletContext context, HttpServletRequest request,
+			HttpServletResponse containerResponse) throws ServletException, IOException
+		{
+			StringBuilder key = new StringBuilder(type.name()).append(':').append(resource);
+			for (String param : cacheParams)
+			{
+				key.append('\0')
+					.append(param)
+					.append('=')
+					.append(Arrays.toString(request.getParameterValues(param)));
+			}
+
+			FragmentCache cache = getFragmentCache();
+			String output;
+			synchronized (cache)
+			{
+				output = cache.get(key.toString());
+			}
+			if (output == null)
+			{
+				StringResponse capture = new StringResponse();
+				include(context, request, containerResponse, capture);
+				output = capture.toString();
+
+				synchronized (cache)
+				{
+					cache.put(key.toString(), output);
+				}
+			}
+			return output;
+		}
+
 		/**
 		 * Handles missing files.
 		 * 
@@ -343,6 +554,290 @@ public class JEEWebResolver implements IComponentResolver
 		}
 	}
 
+	/**
+	 * A buffer passing the output of an include to a Wicket {@link Response}. Characters are
+	 * collected in a fixed array and written in chunks, bytes are decoded with
+	 * {@value #SERVLET_AND_JSP_ENCODING} first. The buffers are pooled, so an include does not
+	 * allocate buffers growing with its output.
+	 */
+	private static class IncludeBuffer extends Writer
+	{
+		private static final int BUFFER_SIZE = 8192;
+
+		private static final int MAX_POOLED = 32;
+
+		private static final Queue<IncludeBuffer> POOL = new ConcurrentLinkedQueue<>();
+
+		private static final AtomicInteger POOLED = new AtomicInteger();
+
+		private final char[] chars = new char[BUFFER_SIZE];
+
+		private final CharBuffer charBuffer = CharBuffer.wrap(chars);
+
+		private final ByteBuffer byteBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+		private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+			.onMalformedInput(CodingErrorAction.REPLACE)
+			.onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+		private Response target;
+
+		/**
+		 * Takes a buffer from the pool, or creates one if the pool is empty
+		 */
+		static IncludeBuffer borrow(Response target)
+		{
+			IncludeBuffer buffer = POOL.poll();
+			if (buffer == null)
+			{
+				buffer = new IncludeBuffer();
+			}
+			else
+			{
+				POOLED.decrementAndGet();
+			}
+			buffer.target = target;
+			return buffer;
+		}
+
+		/**
+		 * Resets the buffer and returns it to the pool
+		 */
+		void release()
+		{
+			target = null;
+			charBuffer.clear();
+			byteBuffer.clear();
+			decoder.reset();
+			if (POOLED.incrementAndGet() <= MAX_POOLED)
+			{
+				POOL.offer(this);
+			}
+			else
+			{
+				POOLED.decrementAndGet();
+			}
+		}
+
+		@Override
+		public void write(int c)
+		{
+			drainBytes();
+			if (!charBuffer.hasRemaining())
+			{
+				flushChars();
+			}
+			charBuffer.put((char)c);
+		}
+
+		@Override
+		public void write(char[] cbuf, int off, int len)
+		{
+			drainBytes();
+			if (len > charBuffer.remaining())
+			{
+				flushChars();
+				if (len > charBuffer.remaining())
+				{
+					target.write(CharBuffer.wrap(cbuf, off, len));
+					return;
+				}
+			}
+			charBuffer.put(cbuf, off, len);
+		}
+
+		@Override
+		public void write(String str, int off, int len)
+		{
+			drainBytes();
+			if (len > charBuffer.remaining())
+			{
+				flushChars();
+				if (len > charBuffer.remaining())
+				{
+					target.write(str.subSequence(off, off + len));
+					return;
+				}
+			}
+			charBuffer.put(str, off, off + len);
+		}
+
+		/**
+		 * Decodes pending bytes, so output of the writer and the stream stays in order
+		 */
+		private void drainBytes()
+		{
+			if (byteBuffer.position() > 0)
+			{
+				decode(false);
+			}
+		}
+
+		/**
+		 * Adds a byte to be decoded
+		 */
+		void writeByte(int b)
+		{
+			if (!byteBuffer.hasRemaining())
+			{
+				decode(false);
+			}
+			byteBuffer.put((byte)b);
+		}
+
+		/**
+		 * Adds bytes to be decoded
+		 */
+		void writeBytes(byte[] b, int off, int len)
+		{
+			while (len > 0)
+			{
+				if (!byteBuffer.hasRemaining())
+				{
+					decode(false);
+				}
+				int count = Math.min(len, byteBuffer.remaining());
+				byteBuffer.put(b, off, count);
+				off += count;
+				len -= count;
+			}
+		}
+
+		/**
+		 * Decodes the collected bytes into the character buffer, keeping an incomplete trailing
+		 * character unless it is the end of the input
+		 */
+		private void decode(boolean endOfInput)
+		{
+			byteBuffer.flip();
+			CoderResult result;
+			do
+			{
+				result = decoder.decode(byteBuffer, charBuffer, endOfInput);
+				if (result.isOverflow())
+				{
+					flushChars();
+				}
+			}
+			while (result.isOverflow());
+			byteBuffer.compact();
+		}
+
+		private void flushChars()
+		{
+			if (charBuffer.position() > 0)
+			{
+				target.write(CharBuffer.wrap(chars, 0, charBuffer.position()));
+				charBuffer.clear();
+			}
+		}
+
+		@Override
+		public void flush()
+		{
+			drainBytes();
+			flushChars();
+		}
+
+		/**
+		 * Writes all remaining output of the include
+		 */
+		void finish()
+		{
+			decode(true);
+			while (decoder.flush(charBuffer).isOverflow())
+			{
+				flushChars();
+			}
+			flushChars();
+		}
+
+		@Override
+		public void close()
+		{
+			flush();
+		}
+	}
+
+	/**
+	 * The ServletOutputStream passing the bytes written by an include to an {@link IncludeBuffer}
+	 */
+	private static class IncludeBufferServletOutputStream extends ServletOutputStream
+	{
+		private final IncludeBuffer buffer;
+
+		public IncludeBufferServletOutputStream(IncludeBuffer buffer)
+		{
+			this.buffer = buffer;
+		}
+
+		@Override
+		public void write(int param) throws IOException
+		{
+			buffer.writeByte(param);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException
+		{
+			buffer.writeBytes(b, off, len);
+		}
+
+		@Override
+		public void flush() throws IOException
+		{
+			buffer.flush();
+		}
+	}
+
+	/**
+	 * This HttpServletResponseWrapper passes the output of an include to an
+	 * {@link IncludeBuffer}. Flushing only flushes the buffer, the wrapped response is not
+	 * committed.
+	 */
+	private static class StreamingIncludeHttpServletResponseWrapper extends
+		HttpServletResponseWrapper
+	{
+		private final IncludeBuffer buffer;
+
+		private ServletOutputStream outputStream;
+
+		private PrintWriter printWriter;
+
+		public StreamingIncludeHttpServletResponseWrapper(HttpServletResponse response,
+			IncludeBuffer buffer)
+		{
+			super(response);
+			this.buffer = buffer;
+		}
+
+		@Override
+		public ServletOutputStream getOutputStream()
+		{
+			if (outputStream == null)
+			{
+				outputStream = new IncludeBufferServletOutputStream(buffer);
+			}
+			return outputStream;
+		}
+
+		@Override
+		public PrintWriter getWriter() throws IOException
+		{
+			if (printWriter == null)
+			{
+				printWriter = new PrintWriter(buffer);
+			}
+			return printWriter;
+		}
+
+		@Override
+		public void flushBuffer() throws IOException
+		{
+			buffer.flush();
+		}
+	}
+
 	/**
 	 * If the markup container is a jsp or a servlet
 	 */
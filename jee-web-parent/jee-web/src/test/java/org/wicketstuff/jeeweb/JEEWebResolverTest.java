@@ -17,8 +17,14 @@
 package org.wicketstuff.jeeweb;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.servlet.RequestDispatcher;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServlet;
 
 import org.apache.wicket.protocol.http.mock.MockServletContext;
@@ -57,6 +63,144 @@ public class JEEWebResolverTest
 		Assert.assertTrue(lastResponse.contains("INCLUDE OF RESOURCE: /TestJSP.jsp"));
 	}
 
+	@Test
+	public void testServletsAndJSPsAreStreamed() throws Exception
+	{
+		TestApplication testApplication = new TestApplication(true);
+		MockServletContext mockServletContext = new MockServletContext(testApplication, new File(
+			"src/test/webapp").getCanonicalPath());
+
+		mockServletContext.addServlet("/TestServlet", new HttpServlet()
+		{
+		});
+
+		wicketTester = new WicketTester(testApplication, mockServletContext);
+		wicketTester.startPage(TestServletAndJSPPage.class);
+		String lastResponse = wicketTester.getLastResponseAsString();
+		int servlet = lastResponse.indexOf("INCLUDE OF RESOURCE: /TestServlet");
+		int jsp = lastResponse.indexOf("INCLUDE OF RESOURCE: /TestJSP.jsp");
+		Assert.assertTrue(servlet > lastResponse.indexOf("<body>"));
+		Assert.assertTrue(jsp > servlet);
+		Assert.assertTrue(lastResponse.indexOf("</body>") > jsp);
+	}
+
+	@Test
+	public void testCacheableIncludeIsRenderedOncePerParameters() throws Exception
+	{
+		final AtomicInteger includes = new AtomicInteger();
+		TestApplication testApplication = new TestApplication();
+		MockServletContext mockServletContext = new MockServletContext(testApplication, new File(
+			"src/test/webapp").getCanonicalPath())
+		{
+			@Override
+			public RequestDispatcher getRequestDispatcher(String name)
+			{
+				final RequestDispatcher dispatcher = super.getRequestDispatcher(name);
+				return new RequestDispatcher()
+				{
+					@Override
+					public void include(ServletRequest request, ServletResponse response)
+						throws ServletException, IOException
+					{
+						includes.incrementAndGet();
+						dispatcher.include(request, response);
+					}
+
+					@Override
+					public void forward(ServletRequest request, ServletResponse response)
+						throws ServletException, IOException
+					{
+						dispatcher.forward(request, response);
+					}
+				};
+			}
+		};
+
+		mockServletContext.addServlet("/TestServlet", new HttpServlet()
+		{
+		});
+
+		wicketTester = new WicketTester(testApplication, mockServletContext);
+		wicketTester.startPage(TestCacheablePage.class);
+		Assert.assertTrue(wicketTester.getLastResponseAsString().contains(
+			"INCLUDE OF RESOURCE: /TestServlet"));
+		wicketTester.startPage(TestCacheablePage.class);
+		Assert.assertTrue(wicketTester.getLastResponseAsString().contains(
+			"INCLUDE OF RESOURCE: /TestServlet"));
+		Assert.assertEquals(1, includes.get());
+
+		wicketTester.getRequest().setParameter("p", "other");
+		wicketTester.startPage(TestCacheablePage.class);
+		Assert.assertEquals(2, includes.get());
+
+		wicketTester.getRequest().setParameter("p", "other");
+		wicketTester.startPage(TestCacheablePage.class);
+		Assert.assertEquals(2, includes.get());
+	}
+
+	@Test
+	public void testStreamedMultiByteCharactersAcrossBufferBoundary() throws Exception
+	{
+		StringBuilder padding = new StringBuilder();
+		for (int i = 0; i < 8191; i++)
+		{
+			padding.append('a');
+		}
+		final String bytes = padding + "\u00fc\u20ac\ud83d\ude00";
+		final String chars = "|\u00e4\u00f6\u00fc";
+
+		TestApplication testApplication = new TestApplication(true);
+		MockServletContext mockServletContext = new MockServletContext(testApplication, new File(
+			"src/test/webapp").getCanonicalPath())
+		{
+			@Override
+			public RequestDispatcher getRequestDispatcher(String name)
+			{
+				if (!"/TestServlet".equals(name))
+				{
+					return super.getRequestDispatcher(name);
+				}
+				return new RequestDispatcher()
+				{
+					@Override
+					public void include(ServletRequest request, ServletResponse response)
+						throws ServletException, IOException
+					{
+						// the first character after the padding is split by the 8 KiB buffer
+						byte[] encoded = bytes.getBytes(StandardCharsets.UTF_8);
+						response.getOutputStream().write(encoded, 0, 8192);
+						for (int i = 8192; i < 8195; i++)
+						{
+							response.getOutputStream().write(encoded[i]);
+						}
+						response.getOutputStream().write(encoded, 8195, encoded.length - 8195);
+						response.getWriter().write(chars);
+						response.getWriter().flush();
+					}
+
+					@Override
+					public void forward(ServletRequest request, ServletResponse response)
+						throws ServletException, IOException
+					{
+						throw new UnsupportedOperationException();
+					}
+				};
+			}
+		};
+
+		mockServletContext.addServlet("/TestServlet", new HttpServlet()
+		{
+		});
+
+		wicketTester = new WicketTester(testApplication, mockServletContext);
+		wicketTester.startPage(TestServletAndJSPPage.class);
+		String lastResponse = wicketTester.getLastResponseAsString();
+		Assert.assertTrue(lastResponse.contains(bytes + chars));
+		Assert.assertFalse(lastResponse.contains("\ufffd"));
+		Assert.assertTrue(lastResponse.indexOf("INCLUDE OF RESOURCE: /TestJSP.jsp") > lastResponse
+			.indexOf(chars));
+	}
+
 	@Test(expected = org.apache.wicket.WicketRuntimeException.class)
 	public void testJSPRequestIsFailingIfNotExist() throws Exception
 	{
@@ -22,6 +22,17 @@ import org.wicketstuff.jeeweb.JEEWebResolver;
 
 public class TestApplication extends WebApplication
 {
+	private final boolean streaming;
+
+	public TestApplication()
+	{
+		this(false);
+	}
+
+	public TestApplication(boolean streaming)
+	{
+		this.streaming = streaming;
+	}
 
 	@Override
 	public Class<? extends Page> getHomePage()
@@ -32,7 +43,7 @@ public class TestApplication extends WebApplication
 	@Override
 	protected void init()
 	{
-		getPageSettings().addComponentResolver(new JEEWebResolver());
+		getPageSettings().addComponentResolver(new JEEWebResolver().setStreaming(streaming));
 		getMarkupSettings().setStripWicketTags(true);
 	}
 
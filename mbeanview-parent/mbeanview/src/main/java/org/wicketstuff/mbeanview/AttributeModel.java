@@ -1,6 +1,8 @@
 package org.wicketstuff.mbeanview;
 
 import java.lang.reflect.InvocationTargetException;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
 
 import javax.management.Attribute;
 import javax.management.MBeanAttributeInfo;
@@ -21,12 +23,25 @@ public class AttributeModel extends LoadableDetachableModel<Object>
 
 	private final ObjectName objectName;
 
+	private final AttributeValuesModel values;
+
 	public AttributeModel(IModel<MBeanServer> server, ObjectName objectName,
 		MBeanAttributeInfo attribute)
+	{
+		this(server, objectName, attribute, null);
+	}
+
+	/**
+	 * @param values
+	 *            optional values of all attributes, read in bulk
+	 */
+	public AttributeModel(IModel<MBeanServer> server, ObjectName objectName,
+		MBeanAttributeInfo attribute, AttributeValuesModel values)
 	{
 		this.server = server;
 		this.objectName = objectName;
 		this.attribute = attribute;
+		this.values = values;
 	}
 
 	@Override
@@ -34,9 +49,29 @@ public class AttributeModel extends LoadableDetachableModel<Object>
 	{
 		if (attribute.isReadable())
 		{
+			if (values != null)
+			{
+				Map<String, Object> map = values.getObject();
+				if (map == null)
+				{
+					onError(values.getFailure());
+					return null;
+				}
+				if (map.containsKey(attribute.getName()))
+				{
+					return map.get(attribute.getName());
+				}
+				// failed attributes are missing in bulk, so read again for the failure
+			}
+
 			try
 			{
-				return server.getObject().getAttribute(objectName, attribute.getName());
+				return MBeanServerIndex.get(server.getObject()).getAttribute(objectName,
+					attribute.getName());
+			}
+			catch (TimeoutException ex)
+			{
+				onError(new TimeoutException("Timeout reading " + attribute.getName()));
 			}
 			catch (Exception ex)
 			{
@@ -52,6 +87,13 @@ public class AttributeModel extends LoadableDetachableModel<Object>
 		try
 		{
 			server.getObject().setAttribute(objectName, attribute);
+
+			// read again on next access
+			detach();
+			if (values != null)
+			{
+				values.detach();
+			}
 		}
 		catch (Exception ex)
 		{
@@ -79,9 +121,14 @@ public class AttributeModel extends LoadableDetachableModel<Object>
 		}
 	}
 
-	public void detach()
+	@Override
+	protected void onDetach()
 	{
 		server.detach();
+		if (values != null)
+		{
+			values.detach();
+		}
 	}
 
 	protected void onError(Throwable throwable)
@@ -0,0 +1,81 @@
+package org.wicketstuff.mbeanview;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.wicket.model.IModel;
+import org.apache.wicket.model.LoadableDetachableModel;
+
+/**
+ * Reads all readable attributes of an MBean with a single call, to be shared by the
+ * {@link AttributeModel}s of the attributes.
+ *
+ * @see MBeanServerIndex#getAttributes(ObjectName, String[])
+ */
+public class AttributeValuesModel extends LoadableDetachableModel<Map<String, Object>>
+{
+	private static final long serialVersionUID = 1L;
+
+	private final IModel<MBeanServer> server;
+
+	private final ObjectName objectName;
+
+	private final String[] names;
+
+	private transient Exception failure;
+
+	public AttributeValuesModel(IModel<MBeanServer> server, ObjectName objectName,
+		MBeanAttributeInfo[] attributes)
+	{
+		this.server = server;
+		this.objectName = objectName;
+
+		List<String> names = new ArrayList<>();
+		for (MBeanAttributeInfo attribute : attributes)
+		{
+			if (attribute.isReadable())
+			{
+				names.add(attribute.getName());
+			}
+		}
+		this.names = names.toArray(new String[names.size()]);
+	}
+
+	/**
+	 * @return the values by attribute name, {@code null} if reading failed
+	 */
+	@Override
+	protected Map<String, Object> load()
+	{
+		failure = null;
+		try
+		{
+			return MBeanServerIndex.get(server.getObject()).getAttributes(objectName, names);
+		}
+		catch (Exception ex)
+		{
+			failure = ex;
+			return null;
+		}
+	}
+
+	/**
+	 * @return the failure of the last reading, if any
+	 */
+	public Exception getFailure()
+	{
+		return failure;
+	}
+
+	@Override
+	protected void onDetach()
+	{
+		failure = null;
+		server.detach();
+	}
+}
@@ -59,6 +59,9 @@ public class AttributeValuesPanel extends Panel
 		Form<Void> form = new Form<Void>("form");
 		add(form);
 
+		final AttributeValuesModel values = new AttributeValuesModel(server, objectName,
+			beanAttributeInfos);
+
 		ListView<MBeanAttributeInfo> attributes = new ListView<MBeanAttributeInfo>("attributes", Arrays.asList(beanAttributeInfos))
 		{
 
@@ -71,7 +74,7 @@ public class AttributeValuesPanel extends Panel
 
 				item.add(new Label("name", info.getName()));
 
-				final AttributeModel model = new AttributeModel(server, objectName, info)
+				final AttributeModel model = new AttributeModel(server, objectName, info, values)
 				{
 					@Override
 					protected void onError(Throwable throwable)
@@ -0,0 +1,390 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.mbeanview;
+
+import java.lang.ref.WeakReference;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.JMException;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerDelegate;
+import javax.management.MBeanServerNotification;
+import javax.management.MalformedObjectNameException;
+import javax.management.Notification;
+import javax.management.NotificationListener;
+import javax.management.ObjectName;
+import javax.management.relation.MBeanServerNotificationFilter;
+
+/**
+ * Caches the names of the registered MBeans per domain and their {@link MBeanInfo}s for an
+ * {@link MBeanServer}. The cache is kept up to date by listening to the registration
+ * notifications of the {@link MBeanServerDelegate}, so expanding a tree node doesn't query the
+ * server again.
+ * <p>
+ * Attributes are read with a timeout, so a hanging MBean can't block the rendering of a page.
+ * Reads run on a small shared pool of threads. After {@value #MAX_TIMEOUTS} consecutive timeouts
+ * an MBean isn't read anymore until it is registered again, so hanging MBeans can't occupy all
+ * threads of the pool.
+ *
+ * @see #get(MBeanServer)
+ */
+public class MBeanServerIndex implements NotificationListener
+{
+	private static final Map<MBeanServer, MBeanServerIndex> INDEXES = new WeakHashMap<>();
+
+	/**
+	 * Number of consecutive timeouts after which an MBean isn't read anymore.
+	 */
+	public static final int MAX_TIMEOUTS = 3;
+
+	private static final int MAX_THREADS = 4;
+
+	private static final int MAX_QUEUED_READS = 100;
+
+	private static final AtomicInteger THREADS = new AtomicInteger();
+
+	private static final ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(MAX_THREADS,
+		MAX_THREADS, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(MAX_QUEUED_READS), runnable -> {
+			Thread thread = new Thread(runnable, "mbeanview-" + THREADS.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+
+	static
+	{
+		EXECUTOR.allowCoreThreadTimeOut(true);
+	}
+
+	private final WeakReference<MBeanServer> server;
+
+	private final ConcurrentMap<String, Set<ObjectName>> names = new ConcurrentHashMap<>();
+
+	private final ConcurrentMap<ObjectName, MBeanInfo> infos = new ConcurrentHashMap<>();
+
+	private final ConcurrentMap<ObjectName, AtomicInteger> timeouts = new ConcurrentHashMap<>();
+
+	private final boolean listening;
+
+	private volatile Duration attributeTimeout = Duration.ofSeconds(10);
+
+	/**
+	 * Get the index of a server, creating it on first access.
+	 *
+	 * @param server
+	 *            server to get index for
+	 * @return index
+	 */
+	public static MBeanServerIndex get(MBeanServer server)
+	{
+		synchronized (INDEXES)
+		{
+			return INDEXES.computeIfAbsent(server, MBeanServerIndex::new);
+		}
+	}
+
+	private MBeanServerIndex(MBeanServer server)
+	{
+		this.server = new WeakReference<>(server);
+
+		boolean listening;
+		try
+		{
+			MBeanServerNotificationFilter filter = new MBeanServerNotificationFilter();
+			filter.enableAllObjectNames();
+			server.addNotificationListener(MBeanServerDelegate.DELEGATE_NAME, this, filter, null);
+			listening = true;
+		}
+		catch (JMException | RuntimeException ex)
+		{
+			// without notifications nothing can be cached
+			listening = false;
+		}
+		this.listening = listening;
+	}
+
+	private MBeanServer getServer()
+	{
+		MBeanServer server = this.server.get();
+		if (server == null)
+		{
+			throw new IllegalStateException("server was garbage collected");
+		}
+		return server;
+	}
+
+	/**
+	 * Is the index kept up to date by notifications, i.e. does it cache anything.
+	 *
+	 * @return {@code true} if caching
+	 */
+	public boolean isCaching()
+	{
+		return listening;
+	}
+
+	/**
+	 * Get the timeout for reading attributes.
+	 *
+	 * @return timeout
+	 */
+	public Duration getAttributeTimeout()
+	{
+		return attributeTimeout;
+	}
+
+	/**
+	 * Set the timeout for reading attributes, {@link Duration#ZERO} to wait forever.
+	 *
+	 * @param attributeTimeout
+	 *            timeout
+	 * @return this
+	 */
+	public MBeanServerIndex setAttributeTimeout(Duration attributeTimeout)
+	{
+		if (attributeTimeout == null || attributeTimeout.isNegative())
+		{
+			throw new IllegalArgumentException("timeout must not be negative");
+		}
+		this.attributeTimeout = attributeTimeout;
+		return this;
+	}
+
+	/**
+	 * Get the names of all MBeans in a domain. The domain is queried on first access only.
+	 *
+	 * @param domain
+	 *            domain
+	 * @return names
+	 * @throws MalformedObjectNameException
+	 *             if the domain is not valid
+	 */
+	public Set<ObjectName> getNames(String domain) throws MalformedObjectNameException
+	{
+		if (!listening)
+		{
+			return getServer().queryNames(new ObjectName(domain + ":*"), null);
+		}
+		return new LinkedHashSet<>(getDomainNames(domain));
+	}
+
+	private Set<ObjectName> getDomainNames(String domain) throws MalformedObjectNameException
+	{
+		Set<ObjectName> domainNames = names.get(domain);
+		if (domainNames == null)
+		{
+			ObjectName pattern = new ObjectName(domain + ":*");
+			domainNames = names.computeIfAbsent(domain, key -> {
+				Set<ObjectName> set = ConcurrentHashMap.newKeySet();
+				set.addAll(getServer().queryNames(pattern, null));
+				return set;
+			});
+		}
+		return domainNames;
+	}
+
+	/**
+	 * Get the info of an MBean. Infos are cached until the MBean is unregistered, unless the MBean
+	 * declares them mutable.
+	 *
+	 * @param name
+	 *            name of MBean
+	 * @return info
+	 * @throws JMException
+	 */
+	public MBeanInfo getMBeanInfo(ObjectName name) throws JMException
+	{
+		MBeanInfo info = infos.get(name);
+		if (info == null)
+		{
+			info = getServer().getMBeanInfo(name);
+			if (listening && isImmutable(info))
+			{
+				infos.put(name, info);
+			}
+		}
+		return info;
+	}
+
+	private boolean isImmutable(MBeanInfo info)
+	{
+		return !"false".equals(String.valueOf(info.getDescriptor().getFieldValue("immutableInfo")));
+	}
+
+	/**
+	 * Read several attributes of an MBean at once. Attributes that can't be read are missing in
+	 * the result.
+	 *
+	 * @param name
+	 *            name of MBean
+	 * @param attributes
+	 *            names of attributes
+	 * @return values by attribute name
+	 * @throws JMException
+	 * @throws TimeoutException
+	 *             if reading took longer than the attribute timeout or the MBean timed out too
+	 *             often before
+	 */
+	public Map<String, Object> getAttributes(ObjectName name, String[] attributes)
+		throws JMException, TimeoutException
+	{
+		AttributeList list = withTimeout(name, () -> getServer().getAttributes(name, attributes));
+
+		Map<String, Object> values = new HashMap<>();
+		for (Attribute attribute : list.asList())
+		{
+			values.put(attribute.getName(), attribute.getValue());
+		}
+		return values;
+	}
+
+	/**
+	 * Read a single attribute of an MBean.
+	 *
+	 * @param name
+	 *            name of MBean
+	 * @param attribute
+	 *            name of attribute
+	 * @return value
+	 * @throws JMException
+	 * @throws TimeoutException
+	 *             if reading took longer than the attribute timeout or the MBean timed out too
+	 *             often before
+	 */
+	public Object getAttribute(ObjectName name, String attribute)
+		throws JMException, TimeoutException
+	{
+		return withTimeout(name, () -> getServer().getAttribute(name, attribute));
+	}
+
+	private <T> T withTimeout(ObjectName name, Callable<T> callable)
+		throws JMException, TimeoutException
+	{
+		Duration timeout = attributeTimeout;
+		if (timeout.isZero())
+		{
+			try
+			{
+				return callable.call();
+			}
+			catch (JMException | RuntimeException ex)
+			{
+				throw ex;
+			}
+			catch (Exception ex)
+			{
+				throw new IllegalStateException(ex);
+			}
+		}
+
+		AtomicInteger count = timeouts.get(name);
+		if (count != null && count.get() >= MAX_TIMEOUTS)
+		{
+			throw new TimeoutException(name + " timed out " + count.get() + " times");
+		}
+
+		Future<T> future;
+		try
+		{
+			future = EXECUTOR.submit(callable);
+		}
+		catch (RejectedExecutionException ex)
+		{
+			throw new TimeoutException("too many pending reads");
+		}
+		try
+		{
+			T result = future.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+			timeouts.remove(name);
+			return result;
+		}
+		catch (InterruptedException ex)
+		{
+			future.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(ex);
+		}
+		catch (TimeoutException ex)
+		{
+			future.cancel(true);
+			timeouts.computeIfAbsent(name, key -> new AtomicInteger()).incrementAndGet();
+			throw ex;
+		}
+		catch (ExecutionException ex)
+		{
+			Throwable cause = ex.getCause();
+			if (cause instanceof JMException)
+			{
+				throw (JMException)cause;
+			}
+			else if (cause instanceof RuntimeException)
+			{
+				throw (RuntimeException)cause;
+			}
+			else if (cause instanceof Error)
+			{
+				throw (Error)cause;
+			}
+			throw new IllegalStateException(cause);
+		}
+	}
+
+	@Override
+	public void handleNotification(Notification notification, Object handback)
+	{
+		if (notification instanceof MBeanServerNotification)
+		{
+			ObjectName name = ((MBeanServerNotification)notification).getMBeanName();
+
+			if (MBeanServerNotification.REGISTRATION_NOTIFICATION.equals(notification.getType()))
+			{
+				// waits for a concurrent initial query of the domain
+				names.computeIfPresent(name.getDomain(), (domain, set) -> {
+					set.add(name);
+					return set;
+				});
+			}
+			else if (MBeanServerNotification.UNREGISTRATION_NOTIFICATION.equals(notification.getType()))
+			{
+				infos.remove(name);
+				timeouts.remove(name);
+				names.computeIfPresent(name.getDomain(), (domain, set) -> {
+					set.remove(name);
+					return set;
+				});
+			}
+		}
+	}
+}
@@ -22,11 +22,14 @@ import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
+import java.util.Set;
 import java.util.TreeSet;
 
 import javax.management.MBeanAttributeInfo;
@@ -276,8 +279,7 @@ public class MBeansPanel extends Panel
 		{
 			List<KeyPath> paths = new ArrayList<>();
 
-			for (ObjectName objectName : getModel().getObject().queryNames(null,
-				new ObjectName(this.name + ":*")))
+			for (ObjectName objectName : getIndex().getNames(name))
 			{
 				KeyPath path = new KeyPath();
 				for (Entry<String, String> entry : objectName.getKeyPropertyList().entrySet())
@@ -287,54 +289,71 @@ public class MBeansPanel extends Panel
 				paths.add(path);
 			}
 
-			return createKeyNodes(name + ":", paths);
+			return createKeyNodes(name, new KeyPath(), paths);
 		}
+	}
 
-		/**
-		 * @see < a href="https://blogs.oracle.com/lmalventosa/entry/jconsole_mbeans_tab_mbean_tree">JConsole MBean tree</>
-		 */
-		private List<MbeanNode> createKeyNodes(String query, List<KeyPath> paths) throws Exception
-		{
-			Map<Key, List<KeyPath>> head2Tails = new HashMap<>();
+	private MBeanServerIndex getIndex()
+	{
+		return MBeanServerIndex.get(getModel().getObject());
+	}
 
-			for (KeyPath path : paths)
-			{
-				Key head = path.head();
+	/**
+	 * Create the nodes for the next key of the given paths. The nodes keep their tails to create
+	 * their own children when expanded.
+	 * 
+	 * @see < a href="https://blogs.oracle.com/lmalventosa/entry/jconsole_mbeans_tab_mbean_tree">JConsole MBean tree</>
+	 */
+	private List<MbeanNode> createKeyNodes(String domain, KeyPath prefix, List<KeyPath> paths)
+		throws Exception
+	{
+		Map<Key, List<KeyPath>> head2Tails = new HashMap<>();
+		Set<Key> instances = new HashSet<>();
 
-				List<KeyPath> tails = head2Tails.get(head);
-				if (tails == null)
-				{
-					tails = new ArrayList<>();
-					head2Tails.put(head, tails);
-				}
+		for (KeyPath path : paths)
+		{
+			Key head = path.head();
 
-				KeyPath tail = path.tail();
-				if (tail.isEmpty() == false)
-				{
-					tails.add(tail);
-				}
+			List<KeyPath> tails = head2Tails.get(head);
+			if (tails == null)
+			{
+				tails = new ArrayList<>();
+				head2Tails.put(head, tails);
 			}
 
-			List<MbeanNode> children = new ArrayList<>();
-
-			for (Key head : new TreeSet<>(head2Tails.keySet()))
+			KeyPath tail = path.tail();
+			if (tail.isEmpty())
+			{
+				// the path is the complete name of an instance
+				instances.add(head);
+			}
+			else
 			{
-				KeyNode child = new KeyNode(head);
+				tails.add(tail);
+			}
+		}
+
+		List<MbeanNode> children = new ArrayList<>();
 
-				children.add(child);
+		for (Key head : new TreeSet<>(head2Tails.keySet()))
+		{
+			KeyPath path = prefix.append(head);
 
-				String temp = query + (query.endsWith(":") ? "" : ",") + head;
-				for (ObjectInstance instance : getModel().getObject().queryMBeans(null,
-					new ObjectName(temp)))
+			ObjectName objectName = null;
+			if (instances.contains(head))
+			{
+				Hashtable<String, String> properties = new Hashtable<>();
+				for (Key key : path)
 				{
-					child.setInstance(instance);
+					properties.put(key.name, key.value);
 				}
-
-				child.getChildren().addAll(createKeyNodes(temp, head2Tails.get(head)));
+				objectName = new ObjectName(domain, properties);
 			}
 
-			return children;
+			children.add(new KeyNode(domain, head, path, objectName, head2Tails.get(head)));
 		}
+
+		return children;
 	}
 
 	private class KeyPath extends TreeSet<Key>
@@ -453,45 +472,91 @@ public class MBeansPanel extends Panel
 	private class KeyNode extends MbeanNode
 	{
 
+		private String domain;
+
 		private Key key;
 
+		// all keys up to and including this node's key
+		private KeyPath path;
+
 		// optional instance for this key
+		private ObjectName objectName;
+
 		private ObjectInstance instance;
 
-		public KeyNode(Key key)
+		// tails of child keys, until children are created
+		private List<KeyPath> tails;
+
+		public KeyNode(String domain, Key key, KeyPath path, ObjectName objectName,
+			List<KeyPath> tails)
 		{
+			this.domain = domain;
 			this.key = key;
+			this.path = path;
+			this.objectName = objectName;
+			this.tails = tails;
 		}
 
-		public void setInstance(ObjectInstance instance) throws Exception
+		private ObjectInstance getInstance() throws Exception
 		{
-			this.instance = instance;
-
-			MBeanInfo info = getModel().getObject().getMBeanInfo(instance.getObjectName());
-
-			MBeanAttributeInfo[] attributes = info.getAttributes();
-			if (attributes.length > 0)
+			if (instance == null)
 			{
-				getChildren().add(new AttributesNode(instance, attributes));
+				MBeanInfo info = getIndex().getMBeanInfo(objectName);
+				instance = new ObjectInstance(objectName, info.getClassName());
 			}
+			return instance;
+		}
+
+		@Override
+		protected List<MbeanNode> createChildren() throws Exception
+		{
+			List<MbeanNode> children = new ArrayList<>();
 
-			MBeanOperationInfo[] operations = info.getOperations();
-			if (operations.length > 0)
+			if (objectName != null)
 			{
-				getChildren().add(new OperationsNode(instance, operations));
+				ObjectInstance instance = getInstance();
+				MBeanInfo info = getIndex().getMBeanInfo(objectName);
+
+				MBeanAttributeInfo[] attributes = info.getAttributes();
+				if (attributes.length > 0)
+				{
+					children.add(new AttributesNode(instance, attributes));
+				}
+
+				MBeanOperationInfo[] operations = info.getOperations();
+				if (operations.length > 0)
+				{
+					children.add(new OperationsNode(instance, operations));
+				}
+
+				MBeanNotificationInfo[] notifications = info.getNotifications();
+				if (notifications.length > 0)
+				{
+					children.add(new NotificationsNode(instance, notifications));
+				}
 			}
 
-			MBeanNotificationInfo[] notifications = info.getNotifications();
-			if (notifications.length > 0)
+			children.addAll(createKeyNodes(domain, path, tails));
+			tails = null;
+
+			return children;
+		}
+
+		@Override
+		public boolean hasChildren()
+		{
+			if (tails != null)
 			{
-				getChildren().add(new NotificationsNode(instance, notifications));
+				// not expanded yet
+				return objectName != null || tails.isEmpty() == false;
 			}
+			return super.hasChildren();
 		}
 
 		@Override
 		public String getStyleClass()
 		{
-			if (instance == null) {
+			if (objectName == null) {
 				return null;
 			} else {
 				return "tree-folder-instance";
@@ -507,8 +572,15 @@ public class MBeansPanel extends Panel
 		@Override
 		public Component newView(String wicketId)
 		{
-			if (instance != null) {
-				return new InstancePanel(wicketId, getModel(), instance);
+			if (objectName != null) {
+				try
+				{
+					return new InstancePanel(wicketId, getModel(), getInstance());
+				}
+				catch (Exception e)
+				{
+					return new FailureNode(e).newView(wicketId);
+				}
 			}
 			return super.newView(wicketId);
 		}
@@ -0,0 +1,225 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.mbeanview;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.JMException;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MBeanServerIndexTest
+{
+	private MBeanServer server;
+
+	private MBeanServerIndex index;
+
+	private final CountDownLatch release = new CountDownLatch(1);
+
+	@Before
+	public void before()
+	{
+		server = MBeanServerFactory.newMBeanServer();
+		index = MBeanServerIndex.get(server);
+	}
+
+	@After
+	public void after()
+	{
+		release.countDown();
+	}
+
+	@Test
+	public void registrationUpdatesQueriedDomain() throws JMException
+	{
+		ObjectName first = new ObjectName("test:type=First");
+		ObjectName second = new ObjectName("test:type=Second");
+		register(first, new Sample(1));
+
+		assertTrue(index.isCaching());
+		assertEquals(1, index.getNames("test").size());
+
+		register(second, new Sample(2));
+		assertTrue(index.getNames("test").contains(first));
+		assertTrue(index.getNames("test").contains(second));
+
+		server.unregisterMBean(first);
+		assertFalse(index.getNames("test").contains(first));
+		assertTrue(index.getNames("test").contains(second));
+	}
+
+	@Test
+	public void registrationInOtherDomainIsQueriedLater() throws JMException
+	{
+		ObjectName name = new ObjectName("test:type=First");
+		index.getNames("test");
+
+		ObjectName other = new ObjectName("other:type=First");
+		register(other, new Sample(1));
+
+		assertFalse(index.getNames("test").contains(other));
+		assertTrue(index.getNames("other").contains(other));
+
+		register(name, new Sample(1));
+		assertTrue(index.getNames("test").contains(name));
+	}
+
+	@Test
+	public void unregistrationDropsInfo() throws JMException
+	{
+		ObjectName name = new ObjectName("test:type=First");
+		register(name, new Sample(1));
+
+		MBeanInfo info = index.getMBeanInfo(name);
+		assertSame(info, index.getMBeanInfo(name));
+
+		server.unregisterMBean(name);
+		register(name, new Hanging());
+		assertEquals(Hanging.class.getName(), index.getMBeanInfo(name).getClassName());
+	}
+
+	@Test
+	public void stopsReadingMBeanThatKeepsTimingOut() throws JMException, TimeoutException
+	{
+		ObjectName name = new ObjectName("test:type=Hanging");
+		Hanging hanging = new Hanging();
+		register(name, hanging);
+		index.setAttributeTimeout(Duration.ofMillis(50));
+
+		for (int i = 0; i < MBeanServerIndex.MAX_TIMEOUTS; i++)
+		{
+			assertTimeout(name);
+		}
+		assertEquals(MBeanServerIndex.MAX_TIMEOUTS, hanging.reads.get());
+
+		assertTimeout(name);
+		assertEquals(MBeanServerIndex.MAX_TIMEOUTS, hanging.reads.get());
+
+		// registered again
+		release.countDown();
+		server.unregisterMBean(name);
+		register(name, hanging);
+		assertEquals(Integer.valueOf(42), index.getAttribute(name, "Value"));
+	}
+
+	@Test
+	public void successfulReadResetsTimeouts() throws JMException, TimeoutException
+	{
+		ObjectName name = new ObjectName("test:type=Hanging");
+		Hanging hanging = new Hanging();
+		register(name, hanging);
+		index.setAttributeTimeout(Duration.ofMillis(50));
+
+		for (int i = 0; i < MBeanServerIndex.MAX_TIMEOUTS - 1; i++)
+		{
+			assertTimeout(name);
+		}
+		release.countDown();
+		assertEquals(Integer.valueOf(42), index.getAttributes(name, new String[] { "Value" })
+			.get("Value"));
+
+		assertEquals(Integer.valueOf(42), index.getAttribute(name, "Value"));
+	}
+
+	private void assertTimeout(ObjectName name) throws JMException
+	{
+		try
+		{
+			index.getAttribute(name, "Value");
+			fail();
+		}
+		catch (TimeoutException expected)
+		{
+		}
+	}
+
+	private void register(ObjectName name, Sample mbean) throws JMException
+	{
+		server.registerMBean(new StandardMBean(mbean, SampleMBean.class), name);
+	}
+
+	private void register(ObjectName name, Hanging mbean) throws JMException
+	{
+		server.registerMBean(new StandardMBean(mbean, HangingMBean.class), name);
+	}
+
+	public interface SampleMBean
+	{
+		int getValue();
+	}
+
+	private static class Sample implements SampleMBean
+	{
+		private final int value;
+
+		Sample(int value)
+		{
+			this.value = value;
+		}
+
+		@Override
+		public int getValue()
+		{
+			return value;
+		}
+	}
+
+	public interface HangingMBean
+	{
+		int getValue();
+	}
+
+	/**
+	 * Blocks reads until released.
+	 */
+	private class Hanging implements HangingMBean
+	{
+		private final AtomicInteger reads = new AtomicInteger();
+
+		@Override
+		public int getValue()
+		{
+			reads.incrementAndGet();
+			try
+			{
+				release.await(5, TimeUnit.SECONDS);
+			}
+			catch (InterruptedException ex)
+			{
+				Thread.currentThread().interrupt();
+			}
+			return 42;
+		}
+	}
+}
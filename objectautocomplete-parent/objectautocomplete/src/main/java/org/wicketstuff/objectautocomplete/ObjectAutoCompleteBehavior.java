@@ -86,6 +86,9 @@ public class ObjectAutoCompleteBehavior<O> extends AbstractAutoCompleteBehavior
 	// whether search should be triggered on paste event
 	private final boolean searchOnPaste;
 
+	// optional stateless resource serving the choices
+	private final ResourceReference choicesResource;
+
 	<I extends Serializable> ObjectAutoCompleteBehavior(Component pObjectElement,
 		ObjectAutoCompleteBuilder<O, I> pBuilder)
 	{
@@ -103,6 +106,7 @@ public class ObjectAutoCompleteBehavior<O> extends AbstractAutoCompleteBehavior
 		choicesProvider = pBuilder.choicesProvider;
 		searchOnPaste = pBuilder.searchOnPaste;
 		delay = pBuilder.delay;
+		choicesResource = pBuilder.choicesResource;
 	}
 
 	/**
@@ -192,7 +196,7 @@ public class ObjectAutoCompleteBehavior<O> extends AbstractAutoCompleteBehavior
 		response.render(JavaScriptHeaderItem.forReference(OBJECTAUTOCOMPLETE_JS));
 		final String id = getComponent().getMarkupId();
 		String initJS = String.format("new Wicketstuff.ObjectAutoComplete('%s','%s','%s',%s);", id,
-			objectElement.getMarkupId(), getCallbackUrl(), getSettings());
+			objectElement.getMarkupId(), getChoicesUrl(), getSettings());
 		response.render(OnDomReadyHeaderItem.forScript(initJS));
 	}
 
@@ -244,11 +248,24 @@ public class ObjectAutoCompleteBehavior<O> extends AbstractAutoCompleteBehavior
 		return choicesProvider.getChoices(input);
 	}
 
+	/**
+	 * @return the url to fetch the choices from, the stateless resource if configured
+	 */
+	private CharSequence getChoicesUrl()
+	{
+		if (choicesResource != null)
+		{
+			return getComponent().urlFor(choicesResource, null);
+		}
+		return getCallbackUrl();
+	}
+
 	// Create settings
 	private CharSequence getSettings()
 	{
 		StringBuilder builder = new StringBuilder(constructSettingsJS());
-		if (choiceTagName != null || alignment != null || width != 0)
+		if (choiceTagName != null || alignment != null || width != 0 || delay != 0 ||
+			searchOnPaste || choicesResource != null)
 		{
 			// remove trailing "}"
 			builder.setLength(builder.length() - 1);
@@ -275,6 +292,10 @@ public class ObjectAutoCompleteBehavior<O> extends AbstractAutoCompleteBehavior
 			{
 				builder.append(",searchOnPaste: true");
 			}
+			if (choicesResource != null)
+			{
+				builder.append(",stateless: true");
+			}
 			builder.append("}");
 		}
 		return builder;
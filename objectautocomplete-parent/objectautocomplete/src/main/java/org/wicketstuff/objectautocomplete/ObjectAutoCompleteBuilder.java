@@ -97,6 +97,9 @@ public class ObjectAutoCompleteBuilder<O, I extends Serializable>
 	// Width (in px) for the drop down element
 	int width;
 
+	// Mounted resource serving the choices instead of the behavior, see ObjectAutoCompleteResource
+	ResourceReference choicesResource;
+
 	// Alignment for the drop down panel
 	enum Alignment
 	{
@@ -290,6 +293,21 @@ public class ObjectAutoCompleteBuilder<O, I extends Serializable>
 		return this;
 	}
 
+	/**
+	 * Fetch the choices from a mounted {@link ObjectAutoCompleteResource} instead of the
+	 * behavior, so typing does not load and lock the page. The choices provider and renderer of
+	 * this builder are not used for the choices then.
+	 *
+	 * @param pChoicesResource
+	 *            reference to the mounted resource
+	 * @return this
+	 */
+	public ObjectAutoCompleteBuilder<O, I> choicesResource(ResourceReference pChoicesResource)
+	{
+		this.choicesResource = pChoicesResource;
+		return this;
+	}
+
 
 	// ==========================================================================================================
 	// Builder methods
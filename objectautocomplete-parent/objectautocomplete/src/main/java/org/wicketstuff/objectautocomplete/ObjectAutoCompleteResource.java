@@ -0,0 +1,258 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.objectautocomplete;
+
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.wicket.extensions.ajax.markup.html.autocomplete.IAutoCompleteRenderer;
+import org.apache.wicket.request.resource.AbstractResource;
+import org.apache.wicket.response.StringResponse;
+import org.apache.wicket.util.lang.Args;
+import org.apache.wicket.util.time.Duration;
+
+/**
+ * Stateless resource serving the choices of an {@link ObjectAutoCompleteField}. Unlike the
+ * behavior's callback it does not need the page, so requests for choices neither load nor lock
+ * the page. Mount it once at application init and pass it to
+ * {@link ObjectAutoCompleteBuilder#choicesResource(org.apache.wicket.request.resource.ResourceReference)}:
+ *
+ * <pre>
+ * mountResource(&quot;/cars&quot;, new ResourceReference(&quot;cars&quot;)
+ * {
+ * 	private final ObjectAutoCompleteResource&lt;Car&gt; resource = new ObjectAutoCompleteResource&lt;Car&gt;(
+ * 		carProvider).setCacheDuration(Duration.minutes(1));
+ *
+ * 	public IResource getResource()
+ * 	{
+ * 		return resource;
+ * 	}
+ * });
+ * </pre>
+ *
+ * The provider and renderer are shared by all requests and must be thread safe.
+ *
+ * @param <O>
+ *            type of the objects to choose from
+ */
+public class ObjectAutoCompleteResource<O> extends AbstractResource
+{
+	private static final long serialVersionUID = 1L;
+
+	private final AutoCompletionChoicesProvider<O> choicesProvider;
+
+	private final IAutoCompleteRenderer<O> renderer;
+
+	private Duration cacheDuration = Duration.NONE;
+
+	private int maxCachedTerms = 1000;
+
+	/**
+	 * Rendered choices per input. Iterates from the least recently used input, which is evicted
+	 * once {@link #maxCachedTerms} is exceeded. Access is synchronized on the map.
+	 */
+	private final Map<String, CachedChoices> cache = new LinkedHashMap<String, CachedChoices>(16,
+		0.75f, true)
+	{
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, CachedChoices> eldest)
+		{
+			return size() > maxCachedTerms;
+		}
+	};
+
+	/**
+	 * Renders the choices with an {@link ObjectAutoCompleteRenderer} using the "id" property.
+	 *
+	 * @param choicesProvider
+	 *            provider of the choices
+	 */
+	public ObjectAutoCompleteResource(AutoCompletionChoicesProvider<O> choicesProvider)
+	{
+		this(choicesProvider, new ObjectAutoCompleteRenderer<O>());
+	}
+
+	/**
+	 * @param choicesProvider
+	 *            provider of the choices
+	 * @param renderer
+	 *            renderer of the choices
+	 */
+	public ObjectAutoCompleteResource(AutoCompletionChoicesProvider<O> choicesProvider,
+		IAutoCompleteRenderer<O> renderer)
+	{
+		this.choicesProvider = Args.notNull(choicesProvider, "choicesProvider");
+		this.renderer = Args.notNull(renderer, "renderer");
+	}
+
+	/**
+	 * Sets how long the rendered choices for an input are reused, {@link Duration#NONE} to ask the
+	 * provider for every request.
+	 *
+	 * @param cacheDuration
+	 * @return this
+	 */
+	public ObjectAutoCompleteResource<O> setCacheDuration(Duration cacheDuration)
+	{
+		this.cacheDuration = Args.notNull(cacheDuration, "cacheDuration");
+		clearCache();
+		return this;
+	}
+
+	/**
+	 * Sets the number of inputs whose choices are cached.
+	 *
+	 * @param maxCachedTerms
+	 * @return this
+	 */
+	public ObjectAutoCompleteResource<O> setMaxCachedTerms(int maxCachedTerms)
+	{
+		this.maxCachedTerms = Args.withinRange(1, Integer.MAX_VALUE, maxCachedTerms,
+			"maxCachedTerms");
+		synchronized (cache)
+		{
+			Iterator<String> iterator = cache.keySet().iterator();
+			while (cache.size() > maxCachedTerms)
+			{
+				iterator.next();
+				iterator.remove();
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * Discards all cached choices, e.g. after they changed.
+	 */
+	public void clearCache()
+	{
+		synchronized (cache)
+		{
+			cache.clear();
+		}
+	}
+
+	@Override
+	protected ResourceResponse newResourceResponse(Attributes attributes)
+	{
+		String input = attributes.getRequest()
+			.getRequestParameters()
+			.getParameterValue("q")
+			.toString("");
+
+		final String encoding = attributes.getRequest().getCharset() != null
+			? attributes.getRequest().getCharset().name() : "UTF-8";
+		final byte[] choices = getChoices(input).getBytes(Charset.forName(encoding));
+
+		ResourceResponse response = new ResourceResponse();
+		response.setContentType("text/xml");
+		response.setTextEncoding(encoding);
+		response.setContentLength(choices.length);
+		response.disableCaching();
+		response.setWriteCallback(new WriteCallback()
+		{
+			@Override
+			public void writeData(Attributes attributes)
+			{
+				attributes.getResponse().write(choices);
+			}
+		});
+		return response;
+	}
+
+	private String getChoices(String input)
+	{
+		if (cacheDuration.getMilliseconds() <= 0)
+		{
+			return render(input);
+		}
+
+		long now = now();
+		synchronized (cache)
+		{
+			CachedChoices cached = cache.get(input);
+			if (cached != null && cached.expires >= now)
+			{
+				return cached.markup;
+			}
+		}
+
+		String markup = render(input);
+		synchronized (cache)
+		{
+			cache.put(input, new CachedChoices(markup, now + cacheDuration.getMilliseconds()));
+		}
+		return markup;
+	}
+
+	/**
+	 * Renders the choices for an input the same way as {@link ObjectAutoCompleteBehavior}.
+	 *
+	 * @param input
+	 * @return the markup of the choices
+	 */
+	private String render(String input)
+	{
+		StringResponse response = new StringResponse();
+		Iterator<O> choices = choicesProvider.getChoices(input);
+		renderer.renderHeader(response);
+		int rendered = 0;
+		while (choices.hasNext())
+		{
+			renderer.render(choices.next(), response, input);
+			rendered++;
+		}
+		renderer.renderFooter(response, rendered);
+		return response.toString();
+	}
+
+	/**
+	 * @return the current time in milliseconds, for expiring cached choices
+	 */
+	long now()
+	{
+		return System.currentTimeMillis();
+	}
+
+	/**
+	 * @return the number of inputs with cached choices
+	 */
+	int getCachedCount()
+	{
+		synchronized (cache)
+		{
+			return cache.size();
+		}
+	}
+
+	private static final class CachedChoices
+	{
+		private final String markup;
+
+		private final long expires;
+
+		private CachedChoices(String markup, long expires)
+		{
+			this.markup = markup;
+			this.expires = expires;
+		}
+	}
+}
@@ -4,24 +4,55 @@ if (typeof(Wicketstuff) == "undefined") {
 
 Wicketstuff.ObjectAutoComplete=function(elementId, objectElementId, callbackUrl, cfg) {
 
+  // number of the latest request, responses to older ones are ignored
+  var requestNr = 0;
+  // request in flight when fetching from a stateless resource
+  var pendingRequest = null;
+
   return new Wicketstuff.DropDownList(elementId, updateChoices, updateValue, cfg);
 
   // ===============================================================================
 
   function updateChoices(dropDown,elementId) {
     var value = Wicket.DOM.get(elementId).value;
+    var nr = ++requestNr;
 
-    var url = callbackUrl + "&q=" + (encodeURIComponent ? encodeURIComponent(value) : escape(value));
-    Wicket.Ajax.get({
-        u: url,
-        wr: false,
-        dt: 'text',
-        ch : "wicket-autocomplete|d",
-        sh : [doUpdateChoices]
-    });
+    var url = callbackUrl + (callbackUrl.indexOf("?") < 0 ? "?" : "&") + "q=" + (encodeURIComponent ? encodeURIComponent(value) : escape(value));
+    if (cfg.stateless) {
+      // the choices no longer matching the input are not needed anymore
+      if (pendingRequest != null) {
+        pendingRequest.abort();
+      }
+      pendingRequest = jQuery.ajax({
+        url: url,
+        dataType: 'text',
+        cache: false,
+        success: function(data) {
+          doUpdateChoices(null, null, data);
+        },
+        complete: function(jqXHR) {
+          if (pendingRequest === jqXHR) {
+            pendingRequest = null;
+          }
+        }
+      });
+    } else {
+      Wicket.Ajax.get({
+          u: url,
+          wr: false,
+          dt: 'text',
+          ch : "wicket-autocomplete|d",
+          sh : [doUpdateChoices]
+      });
+    }
 
     function doUpdateChoices(attrs, jqXHR, data, textStatus) {
 
+      // a newer request has been made in the meanwhile
+      if (nr != requestNr) {
+        return;
+      }
+
         // check if the input hasn't been cleared in the meanwhile
       var input = Wicket.DOM.get(elementId);
       if (!cfg.showListOnEmptyInput && (input.value == null || input.value == "")) {
@@ -0,0 +1,184 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.objectautocomplete;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.wicket.util.tester.WicketTester;
+import org.apache.wicket.util.time.Duration;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link ObjectAutoCompleteResource}
+ */
+public class ObjectAutoCompleteResourceTest
+{
+	private static final List<String> CITIES = Arrays.asList("Zürich", "Zug", "Basel");
+
+	private WicketTester tester;
+
+	private AtomicInteger queries;
+
+	private long now;
+
+	private ObjectAutoCompleteResource<String> resource;
+
+	@Before
+	public void setUp()
+	{
+		tester = new WicketTester();
+		queries = new AtomicInteger();
+		now = 1000L;
+		resource = new ObjectAutoCompleteResource<String>(new AutoCompletionChoicesProvider<String>()
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public Iterator<String> getChoices(String input)
+			{
+				queries.incrementAndGet();
+				List<String> choices = new ArrayList<String>();
+				for (String city : CITIES)
+				{
+					if (city.startsWith(input))
+					{
+						choices.add(city);
+					}
+				}
+				return choices.iterator();
+			}
+		}, new ObjectAutoCompleteRenderer<String>()
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected String getIdValue(String object)
+			{
+				return object.toLowerCase();
+			}
+		})
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			long now()
+			{
+				return now;
+			}
+		};
+	}
+
+	@After
+	public void tearDown()
+	{
+		tester.destroy();
+	}
+
+	@Test
+	public void rendersChoices()
+	{
+		String markup = request("Z");
+
+		Assert.assertEquals("text/xml; charset=UTF-8", tester.getContentTypeFromResponseHeader());
+		Assert.assertEquals(
+			"<ul><li idvalue=\"zürich\" textvalue=\"Zürich\">Zürich</li><li idvalue=\"zug\" textvalue=\"Zug\">Zug</li></ul>",
+			markup);
+		Assert.assertEquals(markup.getBytes(StandardCharsets.UTF_8).length,
+			tester.getLastResponse().getBinaryContent().length);
+		Assert.assertEquals(String.valueOf(tester.getLastResponse().getBinaryContent().length),
+			tester.getLastResponse().getHeader("Content-Length"));
+	}
+
+	@Test
+	public void rendersEveryRequestWithoutCacheDuration()
+	{
+		request("Z");
+		request("Z");
+
+		Assert.assertEquals(2, queries.get());
+		Assert.assertEquals(0, resource.getCachedCount());
+	}
+
+	@Test
+	public void reusesChoicesUntilExpired()
+	{
+		resource.setCacheDuration(Duration.seconds(10));
+
+		String markup = request("Z");
+		now += 10000L;
+		Assert.assertEquals(markup, request("Z"));
+		Assert.assertEquals(1, queries.get());
+
+		now += 1L;
+		Assert.assertEquals(markup, request("Z"));
+		Assert.assertEquals(2, queries.get());
+	}
+
+	@Test
+	public void cachesPerInput()
+	{
+		resource.setCacheDuration(Duration.seconds(10));
+
+		request("Z");
+		Assert.assertEquals("<ul><li idvalue=\"basel\" textvalue=\"Basel\">Basel</li></ul>",
+			request("B"));
+		request("Z");
+		request("B");
+
+		Assert.assertEquals(2, queries.get());
+		Assert.assertEquals(2, resource.getCachedCount());
+	}
+
+	@Test
+	public void dropsLeastRecentlyUsedInput()
+	{
+		resource.setCacheDuration(Duration.seconds(10)).setMaxCachedTerms(2);
+
+		request("Z");
+		request("B");
+		request("Z");
+		// evicts "B", the least recently used
+		request("Zu");
+		Assert.assertEquals(3, queries.get());
+		Assert.assertEquals(2, resource.getCachedCount());
+
+		request("Z");
+		Assert.assertEquals(3, queries.get());
+		request("B");
+		Assert.assertEquals(4, queries.get());
+
+		resource.setMaxCachedTerms(1);
+		Assert.assertEquals(1, resource.getCachedCount());
+		request("B");
+		Assert.assertEquals(4, queries.get());
+	}
+
+	private String request(String input)
+	{
+		tester.getRequest().setParameter("q", input);
+		tester.startResource(resource);
+		return new String(tester.getLastResponse().getBinaryContent(), StandardCharsets.UTF_8);
+	}
+}
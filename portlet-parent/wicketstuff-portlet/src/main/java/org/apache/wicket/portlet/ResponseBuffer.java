@@ -0,0 +1,285 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.wicket.portlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.SequenceInputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Buffers the output of a portlet response in fixed size chunks taken from a pool shared by all
+ * responses, so a growing buffer never copies what was already written. Once the buffer exceeds
+ * its memory limit, the content is spilled to a file and further output is written through a
+ * single chunk. A spilled buffer is sent with {@link FileChannel#transferTo}.
+ * <p>
+ * The chunks and the spill file are only released by {@link #reset()}, {@link #close()} or one of
+ * the {@code writeToAndClose} methods, so a buffer must always be closed by its owner.
+ *
+ * @see ResponseState
+ */
+class ResponseBuffer extends OutputStream {
+	static final int CHUNK_SIZE = 8 * 1024;
+	private static final int MAX_POOLED_CHUNKS = 512;
+
+	private static final Queue<byte[]> pool = new ConcurrentLinkedQueue<byte[]>();
+	private static final AtomicInteger poolSize = new AtomicInteger();
+
+	/**
+	 * Creates the file to spill a buffer to
+	 */
+	interface IFileFactory {
+		File newFile();
+	}
+
+	private final long memoryLimit;
+	private final IFileFactory fileFactory;
+	private final ResponseBufferMetrics metrics;
+
+	private final List<byte[]> chunks = new ArrayList<byte[]>();
+	private byte[] current;
+	private int position;
+	private long size;
+
+	private File file;
+	private FileChannel channel;
+
+	ResponseBuffer(long memoryLimit, IFileFactory fileFactory, ResponseBufferMetrics metrics) {
+		this.memoryLimit = memoryLimit;
+		this.fileFactory = fileFactory;
+		this.metrics = metrics;
+		metrics.onBufferCreated();
+	}
+
+	long size() {
+		return size;
+	}
+
+	boolean isSpilled() {
+		return channel != null;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		if (current == null || position == CHUNK_SIZE) {
+			nextChunk();
+		}
+		current[position++] = (byte) b;
+		size++;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		while (len > 0) {
+			if (current == null || position == CHUNK_SIZE) {
+				nextChunk();
+			}
+			int n = Math.min(len, CHUNK_SIZE - position);
+			System.arraycopy(b, off, current, position, n);
+			position += n;
+			size += n;
+			off += n;
+			len -= n;
+		}
+	}
+
+	/**
+	 * Makes room for more output: takes another chunk from the pool, spills to a file if that
+	 * would exceed the memory limit, or writes the full chunk to the file if already spilled.
+	 */
+	private void nextChunk() throws IOException {
+		if (channel != null) {
+			drain();
+		}
+		else if (current != null && (long) (chunks.size() + 1) * CHUNK_SIZE > memoryLimit) {
+			spill();
+		}
+		else {
+			current = acquire();
+			chunks.add(current);
+			position = 0;
+		}
+	}
+
+	private void spill() throws IOException {
+		file = fileFactory.newFile();
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		ByteBuffer[] buffers = new ByteBuffer[chunks.size()];
+		for (int i = 0; i < buffers.length; i++) {
+			buffers[i] = ByteBuffer.wrap(chunks.get(i), 0, i == buffers.length - 1 ? position : CHUNK_SIZE);
+		}
+		writeFully(buffers);
+
+		// keep the last chunk to collect further output
+		for (int i = 0; i < chunks.size() - 1; i++) {
+			release(chunks.get(i));
+		}
+		chunks.clear();
+		chunks.add(current);
+		position = 0;
+		metrics.onSpill(size);
+	}
+
+	/**
+	 * Writes the output collected in the current chunk to the file.
+	 */
+	private void drain() throws IOException {
+		if (position > 0) {
+			writeFully(new ByteBuffer[] { ByteBuffer.wrap(current, 0, position) });
+			position = 0;
+		}
+	}
+
+	private void writeFully(ByteBuffer[] buffers) throws IOException {
+		for (ByteBuffer buffer : buffers) {
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		}
+	}
+
+	/**
+	 * Writes the content of this buffer to a stream and releases the buffer.
+	 */
+	void writeToAndClose(OutputStream outputStream) throws IOException {
+		try {
+			if (channel != null) {
+				drain();
+				WritableByteChannel target = Channels.newChannel(outputStream);
+				long transferred = 0;
+				while (transferred < size) {
+					transferred += channel.transferTo(transferred, size - transferred, target);
+				}
+			}
+			else {
+				for (int i = 0; i < chunks.size(); i++) {
+					outputStream.write(chunks.get(i), 0, i == chunks.size() - 1 ? position : CHUNK_SIZE);
+				}
+			}
+		}
+		finally {
+			reset();
+		}
+	}
+
+	/**
+	 * Decodes the content of this buffer, writes it to a writer and releases the buffer.
+	 */
+	void writeToAndClose(Writer writer, Charset charset) throws IOException {
+		try {
+			Reader reader = new InputStreamReader(openInputStream(), charset);
+			char[] buf = new char[CHUNK_SIZE];
+			int count;
+			while ((count = reader.read(buf)) > 0) {
+				writer.write(buf, 0, count);
+			}
+		}
+		finally {
+			reset();
+		}
+	}
+
+	private InputStream openInputStream() throws IOException {
+		if (channel != null) {
+			drain();
+			channel.position(0);
+			return Channels.newInputStream(channel);
+		}
+		List<InputStream> streams = new ArrayList<InputStream>(chunks.size());
+		for (int i = 0; i < chunks.size(); i++) {
+			streams.add(new ByteArrayInputStream(chunks.get(i), 0, i == chunks.size() - 1 ? position : CHUNK_SIZE));
+		}
+		return new SequenceInputStream(Collections.enumeration(streams));
+	}
+
+	/**
+	 * Discards the content, returns the chunks to the pool and deletes the spill file.
+	 */
+	void reset() {
+		for (byte[] chunk : chunks) {
+			release(chunk);
+		}
+		chunks.clear();
+		current = null;
+		position = 0;
+		size = 0;
+
+		if (channel != null) {
+			try {
+				channel.close();
+			}
+			catch (Exception e) {
+			}
+			channel = null;
+		}
+
+		if (file != null) {
+			try {
+				file.delete();
+			}
+			catch (Exception e) {
+			}
+			file = null;
+		}
+	}
+
+	@Override
+	public void close() {
+		reset();
+	}
+
+	private byte[] acquire() {
+		byte[] chunk = pool.poll();
+		if (chunk == null) {
+			metrics.onChunkAllocated();
+			return new byte[CHUNK_SIZE];
+		}
+		poolSize.decrementAndGet();
+		return chunk;
+	}
+
+	private static void release(byte[] chunk) {
+		if (poolSize.incrementAndGet() <= MAX_POOLED_CHUNKS) {
+			pool.offer(chunk);
+		}
+		else {
+			poolSize.decrementAndGet();
+		}
+	}
+
+	static int getPooledChunkCount() {
+		return poolSize.get();
+	}
+}
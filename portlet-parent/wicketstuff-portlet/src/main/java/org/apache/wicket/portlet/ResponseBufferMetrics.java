@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.wicket.portlet;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters about the buffering of portlet responses, shared by all {@link ResponseState}s. A high
+ * spill rate means the memory limit of the buffers is too low for the rendered portlets.
+ *
+ * @see ResponseState#getBufferMetrics()
+ */
+public class ResponseBufferMetrics {
+	private final LongAdder buffers = new LongAdder();
+	private final LongAdder spills = new LongAdder();
+	private final LongAdder spilledBytes = new LongAdder();
+	private final LongAdder allocatedChunks = new LongAdder();
+
+	void onBufferCreated() {
+		buffers.increment();
+	}
+
+	void onSpill(long bytes) {
+		spills.increment();
+		spilledBytes.add(bytes);
+	}
+
+	void onChunkAllocated() {
+		allocatedChunks.increment();
+	}
+
+	/**
+	 * @return The number of response buffers created
+	 */
+	public long getBufferCount() {
+		return buffers.sum();
+	}
+
+	/**
+	 * @return The number of response buffers spilled to a file
+	 */
+	public long getSpillCount() {
+		return spills.sum();
+	}
+
+	/**
+	 * @return The number of bytes buffered in memory at the time buffers were spilled
+	 */
+	public long getSpilledBytes() {
+		return spilledBytes.sum();
+	}
+
+	/**
+	 * @return The ratio of spilled to created buffers
+	 */
+	public double getSpillRate() {
+		long count = buffers.sum();
+		return count == 0 ? 0.0 : (double) spills.sum() / count;
+	}
+
+	/**
+	 * @return The number of chunks allocated because the pool was empty
+	 */
+	public long getAllocatedChunkCount() {
+		return allocatedChunks.sum();
+	}
+
+	/**
+	 * @return The number of chunks currently waiting in the pool
+	 */
+	public int getPooledChunkCount() {
+		return ResponseBuffer.getPooledChunkCount();
+	}
+}
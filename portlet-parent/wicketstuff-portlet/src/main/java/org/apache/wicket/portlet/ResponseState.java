@@ -16,25 +16,12 @@
  */
 package org.apache.wicket.portlet;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.CharArrayReader;
-import java.io.CharArrayWriter;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
-import java.io.Reader;
-import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Locale;
@@ -59,10 +46,10 @@ import javax.servlet.http.Cookie;
  */
 public class ResponseState {
 	private static final String AJAX_LOCATION_HEADER_NAME = "Ajax-Location";
-	private static final int INITIAL_BUFFER_SIZE = 8 * 1024;
 	private static final int MEMORY_BUFFER_SIZE = 64 * 1024;
-	private static final String DEFAULT_CHARSET = "UTF-8";
+	private static final Charset BUFFER_CHARSET = StandardCharsets.UTF_8;
 	private static final AtomicLong index = new AtomicLong();
+	private static final ResponseBufferMetrics bufferMetrics = new ResponseBufferMetrics();
 
 	private final boolean isActionResponse;
 	private final boolean isEventResponse;
@@ -75,8 +62,8 @@ public class ResponseState {
 	private boolean flushed;
 	private File responseBufferFolder;
 
-	private ByteOutputBuffer byteOutputBuffer;
-	private CharOutputBuffer charOutputBuffer;
+	private ResponseBuffer byteOutputBuffer;
+	private ResponseBuffer charOutputBuffer;
 	private ServletOutputStream outputStream;
 	private PrintWriter printWriter;
 	private HashMap<String, ArrayList<String>> headers;
@@ -116,6 +103,22 @@ public class ResponseState {
 		defaultLocale = isMimeResponse ? ((MimeResponse) response).getLocale() : null;
 	}
 
+	/**
+	 * @return Counters about the buffering of all portlet responses
+	 */
+	public static ResponseBufferMetrics getBufferMetrics() {
+		return bufferMetrics;
+	}
+
+	private ResponseBuffer newResponseBuffer() {
+		return new ResponseBuffer(MEMORY_BUFFER_SIZE, new ResponseBuffer.IFileFactory() {
+			@Override
+			public File newFile() {
+				return getResponseBufferFile();
+			}
+		}, bufferMetrics);
+	}
+
 	private ArrayList<String> getHeaderList(String name, boolean create) {
 		if (headers == null) {
 			headers = new HashMap<String, ArrayList<String>>();
@@ -397,7 +400,7 @@ public class ResponseState {
 			if (printWriter != null) {
 				throw new IllegalStateException("getWriter() has already been called on this response");
 			}
-			byteOutputBuffer = new ByteOutputBuffer();
+			byteOutputBuffer = newResponseBuffer();
 			outputStream = new ServletOutputStream() {
 				@Override
 				public void write(int b) throws IOException {
@@ -409,6 +412,21 @@ public class ResponseState {
 						}
 					}
 				}
+
+				@Override
+				public void write(byte[] b, int off, int len) throws IOException {
+					if (!closed) {
+						if (contentLength > -1) {
+							// drop everything beyond the content length
+							len = (int) Math.min(len, contentLength - byteOutputBuffer.size());
+						}
+						byteOutputBuffer.write(b, off, len);
+						if ((contentLength) > -1 && (byteOutputBuffer.size() >= contentLength)) {
+							committed = true;
+							closed = true;
+						}
+					}
+				}
 			};
 		}
 		return outputStream;
@@ -431,8 +449,9 @@ public class ResponseState {
 			if (outputStream != null) {
 				throw new IllegalStateException("getOutputStream() has already been called on this response");
 			}
-			charOutputBuffer = new CharOutputBuffer();
-			printWriter = new PrintWriter(charOutputBuffer);
+			// characters are encoded as they are written, see flushAndClose() for the encoding of the response
+			charOutputBuffer = newResponseBuffer();
+			printWriter = new PrintWriter(new OutputStreamWriter(charOutputBuffer, BUFFER_CHARSET));
 		}
 		return printWriter;
 	}
@@ -565,21 +584,7 @@ public class ResponseState {
 	}
 
 	public void clear() {
-		if (printWriter != null) {
-			printWriter.close();
-			charOutputBuffer.reset();
-			printWriter = null;
-		}
-
-		if (outputStream != null) {
-			try {
-				outputStream.close();
-			}
-			catch (IOException e) {
-			}
-			outputStream = null;
-			byteOutputBuffer.reset();
-		}
+		release();
 
 		headers = null;
 		cookies = null;
@@ -601,6 +606,15 @@ public class ResponseState {
 			throw new IllegalStateException("Response has been already flushed and closed.");
 		}
 		flushed = true;
+		try {
+			writeResponse();
+		}
+		finally {
+			release();
+		}
+	}
+
+	private void writeResponse() throws IOException {
 
 		if (cookies != null) {
 			for (Cookie cookie : cookies) {
@@ -679,18 +693,38 @@ public class ResponseState {
 			}
 			else if (printWriter != null) {
 				printWriter.flush();
-				charOutputBuffer.writeToAndClose(mimeResponse.getWriter());
+				// the portal encodes what is written to its writer
+				charOutputBuffer.writeToAndClose(mimeResponse.getWriter(), BUFFER_CHARSET);
 			}
 		}
+	}
 
-		if (outputStream != null) {
-			outputStream.close();
-			outputStream = null;
-		}
+	/**
+	 * Closes the output of this response and returns its buffers, discarding what was not
+	 * written yet. Called by {@link #flushAndClose()} and by {@link WicketPortlet} once the
+	 * request is processed; a released response state can't be written to anymore.
+	 */
+	public void release() {
 		if (printWriter != null) {
 			printWriter.close();
 			printWriter = null;
 		}
+		if (outputStream != null) {
+			try {
+				outputStream.close();
+			}
+			catch (IOException e) {
+			}
+			outputStream = null;
+		}
+		if (charOutputBuffer != null) {
+			charOutputBuffer.reset();
+			charOutputBuffer = null;
+		}
+		if (byteOutputBuffer != null) {
+			byteOutputBuffer.reset();
+			byteOutputBuffer = null;
+		}
 	}
 
 	private File getResponseBufferFolder() {
@@ -719,264 +753,4 @@ public class ResponseState {
 	private File getResponseBufferFile() {
 		return new File(getResponseBufferFolder(), "response-buffer" + index.getAndIncrement());
 	}
-
-	private class CharOutputBuffer extends CharArrayWriter {
-		private File file;
-
-		private Writer fileWriter;
-
-		public CharOutputBuffer() {
-			super(INITIAL_BUFFER_SIZE);
-		}
-
-		private boolean useFile(int pos) {
-			return (fileWriter != null) || (pos > MEMORY_BUFFER_SIZE);
-		}
-
-		private Writer getFileWriter() throws IOException {
-			if (fileWriter == null) {
-				file = getResponseBufferFile();
-				fileWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), DEFAULT_CHARSET));
-				fileWriter.write(buf, 0, count);
-			}
-			return fileWriter;
-		}
-
-		@Override
-		public void write(int c) {
-			if (useFile(count + 1)) {
-				try {
-					getFileWriter().write(c);
-					count++;
-				}
-				catch (IOException e) {
-					throw new IllegalStateException("Cannot write cache file.", e);
-				}
-			}
-			else {
-				super.write(c);
-			}
-		}
-
-		@Override
-		public void write(char[] c, int off, int len) {
-			if (useFile(count + len)) {
-				try {
-					getFileWriter().write(c, off, len);
-					count += len;
-				}
-				catch (IOException e) {
-					throw new IllegalStateException("Cannot write cache file.", e);
-				}
-			}
-			else {
-				super.write(c, off, len);
-			}
-		}
-
-		@Override
-		public void write(String str, int off, int len) {
-			if (useFile(count + 1)) {
-				try {
-					getFileWriter().write(str, off, len);
-					count += len;
-				}
-				catch (IOException e) {
-					throw new IllegalStateException("Cannot write cache file.", e);
-				}
-			}
-			else {
-				super.write(str, off, len);
-			}
-		}
-
-		public void writeToAndClose(Writer writer) throws IOException {
-			try {
-				Reader reader;
-
-				if (fileWriter != null) {
-					try {
-						fileWriter.close();
-					}
-					catch (Exception e) {
-					}
-
-					reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), DEFAULT_CHARSET));
-				}
-				else {
-					reader = new CharArrayReader(buf, 0, count);
-				}
-
-				try {
-					int count;
-					while ((count = reader.read(buf)) > 0) {
-						writer.write(buf, 0, count);
-					}
-				}
-				finally {
-					if (reader != null) {
-						try {
-							reader.close();
-						}
-						catch (Exception e) {
-						}
-					}
-				}
-			}
-			finally {
-				buf = null;
-				reset();
-			}
-		}
-
-		@Override
-		public void reset() {
-			super.reset();
-
-			if (fileWriter != null) {
-				try {
-					fileWriter.close();
-					fileWriter = null;
-				}
-				catch (Exception e) {
-				}
-			}
-
-			if (file != null) {
-				try {
-					file.delete();
-					file = null;
-				}
-				catch (Exception e) {
-				}
-			}
-		}
-		
-		@Override
-		protected void finalize() throws Throwable {
-			reset();
-		}
-	}
-
-	private class ByteOutputBuffer extends ByteArrayOutputStream {
-		private File file;
-
-		private OutputStream fileOutputStream;
-
-		public ByteOutputBuffer() {
-			super(INITIAL_BUFFER_SIZE);
-		}
-
-		private boolean useFile(int pos) {
-			return (fileOutputStream != null) || (pos > MEMORY_BUFFER_SIZE);
-		}
-
-		private OutputStream getFileWriter() throws IOException {
-			if (fileOutputStream == null) {
-				file = getResponseBufferFile();
-				fileOutputStream = new BufferedOutputStream(new FileOutputStream(file));
-				fileOutputStream.write(buf, 0, count);
-			}
-			return fileOutputStream;
-		}
-
-		@Override
-		public void write(int b) {
-			if (useFile(count + 1)) {
-				try {
-					getFileWriter().write(b);
-					count++;
-				}
-				catch (IOException e) {
-					throw new IllegalStateException("Cannot write cache file.", e);
-				}
-			}
-			else {
-				super.write(b);
-			}
-		}
-
-		@Override
-		public void write(byte[] b, int off, int len) {
-			if (useFile(count + len)) {
-				try {
-					getFileWriter().write(b, off, len);
-					count += len;
-				}
-				catch (IOException e) {
-					throw new IllegalStateException("Cannot write cache file.", e);
-				}
-			}
-			else {
-				super.write(b, off, len);
-			}
-		}
-
-		public void writeToAndClose(OutputStream outputStream) throws IOException {
-			try {
-				InputStream inputStream;
-
-				if (fileOutputStream != null) {
-					try {
-						fileOutputStream.close();
-					}
-					catch (Exception e) {
-					}
-
-					inputStream = new BufferedInputStream(new FileInputStream(file));
-				}
-				else {
-					inputStream = new ByteArrayInputStream(buf, 0, count);
-				}
-
-				try {
-					int count;
-					while ((count = inputStream.read(buf)) > 0) {
-						outputStream.write(buf, 0, count);
-					}
-				}
-				finally {
-					if (inputStream != null) {
-						try {
-							inputStream.close();
-						}
-						catch (Exception e) {
-						}
-					}
-				}
-			}
-			finally {
-				buf = null;
-				reset();
-			}
-		}
-
-		@Override
-		public void reset() {
-			super.reset();
-
-			if (fileOutputStream != null) {
-				try {
-					fileOutputStream.close();
-					fileOutputStream = null;
-				}
-				catch (Exception e) {
-				}
-			}
-
-			if (file != null) {
-				try {
-					file.delete();
-					file = null;
-				}
-				catch (Exception e) {
-				}
-			}
-		}
-		
-		@Override
-		protected void finalize() throws Throwable {
-			reset();
-		}
-	}
 }
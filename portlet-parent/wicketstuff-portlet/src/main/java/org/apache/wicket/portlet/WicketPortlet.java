@@ -546,32 +546,38 @@ public class WicketPortlet extends GenericPortlet {
 		final ResponseState responseState = new ResponseState(request, response, responseBufferFolder);
 		request.setAttribute(RESPONSE_STATE_ATTR, responseState);
 
-		// need to record the effective wicket url of the rendered result, so
-		// that the subsequent
-		// portlet 'view' requests can delegate to wicket to render the correct
-		// location/wicket url.
-		if (responseState.isActionResponse()) {
-			// create the request dispatcher, to delegate the request to the
-			// wicket filter
-			final PortletRequestDispatcher rd = getPortletContext().getRequestDispatcher(wicketURL);
-
-			if (rd != null) {
-				// delegate to wicket filter - this is where the magic happens
-				rd.include(request, response);
-				// String newWicketURL = getWicketURL(request, pageType,
-				// getDefaultPage(pageType));
-				LOG.debug("wicket filter inclusion complete");
-				processActionResponseState(wicketURL, request, (ActionResponse) response, responseState);
-			}
-			else {
-				// FIXME - throw exception?
-				// no-op for now
+		try {
+			// need to record the effective wicket url of the rendered result, so
+			// that the subsequent
+			// portlet 'view' requests can delegate to wicket to render the correct
+			// location/wicket url.
+			if (responseState.isActionResponse()) {
+				// create the request dispatcher, to delegate the request to the
+				// wicket filter
+				final PortletRequestDispatcher rd = getPortletContext().getRequestDispatcher(wicketURL);
+
+				if (rd != null) {
+					// delegate to wicket filter - this is where the magic happens
+					rd.include(request, response);
+					// String newWicketURL = getWicketURL(request, pageType,
+					// getDefaultPage(pageType));
+					LOG.debug("wicket filter inclusion complete");
+					processActionResponseState(wicketURL, request, (ActionResponse) response, responseState);
+				}
+				else {
+					// FIXME - throw exception?
+					// no-op for now
+				}
 			}
+			else if (responseState.isMimeResponse())
+				processMimeResponseRequest(wicketURL, request, (MimeResponse) response, responseState);
+			else
+				LOG.warn("Unsupported Portlet lifecycle: {}", request.getAttribute(PortletRequest.LIFECYCLE_PHASE));
+		}
+		finally {
+			// return the buffers of responses that were not flushed, e.g. after a redirect loop
+			responseState.release();
 		}
-		else if (responseState.isMimeResponse())
-			processMimeResponseRequest(wicketURL, request, (MimeResponse) response, responseState);
-		else
-			LOG.warn("Unsupported Portlet lifecycle: {}", request.getAttribute(PortletRequest.LIFECYCLE_PHASE));
 		if (LOG.isDebugEnabled()) {
 			wicketURL = getWicketURL(request, pageType, getDefaultPage(pageType));
 			LOG.debug("end of request, wicket url: " + wicketURL);
@@ -0,0 +1,201 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.wicket.portlet;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ResponseBufferTest {
+	private static final int CHUNK_SIZE = ResponseBuffer.CHUNK_SIZE;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private ResponseBufferMetrics metrics;
+	private File spillFile;
+	private ResponseBuffer buffer;
+
+	@Before
+	public void before() {
+		metrics = new ResponseBufferMetrics();
+		buffer = newBuffer(4 * CHUNK_SIZE);
+	}
+
+	@After
+	public void after() {
+		buffer.close();
+	}
+
+	@Test
+	public void keepsSmallContentInMemory() throws IOException {
+		byte[] content = content(100);
+		buffer.write(content);
+
+		assertEquals(100, buffer.size());
+		assertFalse(buffer.isSpilled());
+		assertArrayEquals(content, writeTo(buffer));
+	}
+
+	@Test
+	public void keepsContentAcrossChunks() throws IOException {
+		byte[] content = content(3 * CHUNK_SIZE + 17);
+		buffer.write(content, 0, CHUNK_SIZE - 1);
+		buffer.write(content[CHUNK_SIZE - 1]);
+		buffer.write(content, CHUNK_SIZE, content.length - CHUNK_SIZE);
+
+		assertFalse(buffer.isSpilled());
+		assertArrayEquals(content, writeTo(buffer));
+	}
+
+	@Test
+	public void keepsContentOfExactlyOneChunk() throws IOException {
+		byte[] content = content(CHUNK_SIZE);
+		buffer.write(content);
+
+		assertArrayEquals(content, writeTo(buffer));
+	}
+
+	@Test
+	public void spillsToFileBeyondMemoryLimit() throws IOException {
+		byte[] content = content(10 * CHUNK_SIZE + 3);
+		buffer.write(content);
+
+		assertTrue(buffer.isSpilled());
+		assertTrue(spillFile.exists());
+		assertEquals(1, metrics.getSpillCount());
+		assertEquals(4 * CHUNK_SIZE, metrics.getSpilledBytes());
+		assertArrayEquals(content, writeTo(buffer));
+		assertFalse(spillFile.exists());
+	}
+
+	@Test
+	public void decodesToWriter() throws IOException {
+		StringBuilder text = new StringBuilder();
+		while (text.length() < 3 * CHUNK_SIZE) {
+			// multi byte characters end up split between chunks
+			text.append("ä€😀x");
+		}
+		buffer.write(text.toString().getBytes(StandardCharsets.UTF_8));
+
+		StringWriter writer = new StringWriter();
+		buffer.writeToAndClose(writer, StandardCharsets.UTF_8);
+
+		assertEquals(text.toString(), writer.toString());
+		assertEquals(0, buffer.size());
+	}
+
+	@Test
+	public void decodesSpilledContentToWriter() throws IOException {
+		buffer = newBuffer(CHUNK_SIZE);
+		String text = new String(new char[5 * CHUNK_SIZE]).replace('\0', 'ü');
+		buffer.write(text.getBytes(StandardCharsets.UTF_8));
+		assertTrue(buffer.isSpilled());
+
+		StringWriter writer = new StringWriter();
+		buffer.writeToAndClose(writer, StandardCharsets.UTF_8);
+
+		assertEquals(text, writer.toString());
+		assertFalse(spillFile.exists());
+	}
+
+	@Test
+	public void resetDiscardsContent() throws IOException {
+		buffer.write(content(2 * CHUNK_SIZE));
+		buffer.reset();
+		buffer.write(content(5));
+
+		assertEquals(5, buffer.size());
+		assertArrayEquals(content(5), writeTo(buffer));
+	}
+
+	@Test
+	public void reusesPooledChunks() throws IOException {
+		// fill the pool with the chunks of one buffer
+		buffer.write(content(3 * CHUNK_SIZE));
+		buffer.close();
+		int pooled = metrics.getPooledChunkCount();
+		assertTrue(pooled >= 3);
+
+		long allocated = metrics.getAllocatedChunkCount();
+		buffer = newBuffer(4 * CHUNK_SIZE);
+		buffer.write(content(3 * CHUNK_SIZE));
+
+		assertEquals(allocated, metrics.getAllocatedChunkCount());
+		assertEquals(pooled - 3, metrics.getPooledChunkCount());
+
+		buffer.close();
+		assertEquals(pooled, metrics.getPooledChunkCount());
+	}
+
+	@Test
+	public void spillingReturnsChunksToPool() throws IOException {
+		buffer.close();
+		int pooled = metrics.getPooledChunkCount();
+		buffer = newBuffer(2 * CHUNK_SIZE);
+		buffer.write(content(6 * CHUNK_SIZE));
+
+		// two chunks were taken, the first went back when spilling, the second stages the output
+		assertEquals(Math.max(0, pooled - 2) + 1, metrics.getPooledChunkCount());
+
+		buffer.close();
+		assertEquals(Math.max(pooled, 2), metrics.getPooledChunkCount());
+	}
+
+	private ResponseBuffer newBuffer(long memoryLimit) {
+		return new ResponseBuffer(memoryLimit, new ResponseBuffer.IFileFactory() {
+			@Override
+			public File newFile() {
+				try {
+					spillFile = folder.newFile();
+				}
+				catch (IOException e) {
+					throw new IllegalStateException(e);
+				}
+				return spillFile;
+			}
+		}, metrics);
+	}
+
+	private static byte[] writeTo(ResponseBuffer buffer) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		buffer.writeToAndClose(out);
+		assertEquals(0, buffer.size());
+		return out.toByteArray();
+	}
+
+	private static byte[] content(int length) {
+		byte[] content = new byte[length];
+		for (int i = 0; i < length; i++) {
+			content[i] = (byte) (i * 31 + i / 7);
+		}
+		return content;
+	}
+}
@@ -0,0 +1,162 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.wicket.portlet;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Locale;
+
+import javax.portlet.PortletRequest;
+import javax.portlet.RenderResponse;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ResponseStateTest {
+	private static final int CHUNK_SIZE = ResponseBuffer.CHUNK_SIZE;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final StringWriter portalWriter = new StringWriter();
+	private final ByteArrayOutputStream portalStream = new ByteArrayOutputStream();
+	private boolean portalWriterObtained;
+	private boolean portalStreamObtained;
+
+	private ResponseState state;
+
+	@Before
+	public void before() {
+		state = new ResponseState(newRenderRequest(), newRenderResponse(), folder.getRoot());
+	}
+
+	@Test
+	public void writerOutputGoesToPortalWriter() throws IOException {
+		String text = "<p>Grüße €</p>";
+		state.getWriter().write(text);
+
+		state.flushAndClose();
+
+		assertEquals(text, portalWriter.toString());
+		assertFalse(portalStreamObtained);
+	}
+
+	@Test
+	public void streamOutputGoesToPortalStream() throws IOException {
+		byte[] content = new byte[2 * CHUNK_SIZE + 1];
+		content[CHUNK_SIZE] = 42;
+		state.getOutputStream().write(content);
+
+		state.flushAndClose();
+
+		assertArrayEquals(content, portalStream.toByteArray());
+		assertFalse(portalWriterObtained);
+	}
+
+	@Test
+	public void flushAndCloseReleasesBuffersOfRedirect() throws IOException {
+		int pooled = ResponseState.getBufferMetrics().getPooledChunkCount();
+		state.getOutputStream().write(new byte[3 * CHUNK_SIZE]);
+		state.sendRedirect("/elsewhere");
+
+		state.flushAndClose();
+
+		assertEquals(0, portalStream.size());
+		assertEquals(Math.max(pooled, 3), ResponseState.getBufferMetrics().getPooledChunkCount());
+	}
+
+	@Test
+	public void releaseReturnsBuffersOfUnflushedResponse() throws IOException {
+		int pooled = ResponseState.getBufferMetrics().getPooledChunkCount();
+		state.getWriter().write(new String(new char[2 * CHUNK_SIZE]).replace('\0', 'x'));
+
+		state.release();
+
+		assertEquals(Math.max(pooled, 2), ResponseState.getBufferMetrics().getPooledChunkCount());
+		assertEquals("", portalWriter.toString());
+	}
+
+	@Test
+	public void clearDiscardsOutput() throws IOException {
+		state.getWriter().write("discarded");
+		state.clear();
+		state.getWriter().write("kept");
+
+		state.flushAndClose();
+
+		assertEquals("kept", portalWriter.toString());
+	}
+
+	private static PortletRequest newRenderRequest() {
+		return proxy(PortletRequest.class, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				if ("getAttribute".equals(method.getName()) && PortletRequest.LIFECYCLE_PHASE.equals(args[0])) {
+					return PortletRequest.RENDER_PHASE;
+				}
+				return null;
+			}
+		});
+	}
+
+	private RenderResponse newRenderResponse() {
+		return proxy(RenderResponse.class, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				String name = method.getName();
+				if ("getLocale".equals(name)) {
+					return Locale.ENGLISH;
+				}
+				if ("getCharacterEncoding".equals(name)) {
+					return "UTF-8";
+				}
+				if ("getWriter".equals(name)) {
+					if (portalStreamObtained) {
+						throw new IllegalStateException("getPortletOutputStream() was called");
+					}
+					portalWriterObtained = true;
+					return new PrintWriter(portalWriter, true);
+				}
+				if ("getPortletOutputStream".equals(name)) {
+					if (portalWriterObtained) {
+						throw new IllegalStateException("getWriter() was called");
+					}
+					portalStreamObtained = true;
+					return (OutputStream) portalStream;
+				}
+				return null;
+			}
+		});
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+		return (T) Proxy.newProxyInstance(ResponseStateTest.class.getClassLoader(), new Class<?>[] { type }, handler);
+	}
+}
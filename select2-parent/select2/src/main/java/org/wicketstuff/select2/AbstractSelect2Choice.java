@@ -363,30 +363,15 @@ public abstract class AbstractSelect2Choice<T, M> extends AbstractTextComponent<
 		// 0-based
 		page -= 1;
 
-		Response<T> response = new Response<>();
-		provider.query(term, page, response);
-
 		// jsonize and write out the choices to the response
 
 		OutputStreamWriter out = new OutputStreamWriter(outputStream, request.getCharset());
-		JSONStringer json = new JSONStringer();
 
 		try
 		{
-			json.object();
-			json.key("items").array();
-			for (T item : response) 
-			{
-				json.object();
-				provider.toJson(item, json);
-				json.endObject();
-			}
-			json.endArray();
-			json.key("more").value(response.getHasMore()).endObject();
-			
-			out.write(json.toString());
+			out.write(generateJSON(provider, term, page));
 		}
-		catch (JSONException | IOException e) 
+		catch (IOException e) 
 		{
 			throw new RuntimeException("Could not write Json response", e);
 		}
@@ -410,6 +395,42 @@ public abstract class AbstractSelect2Choice<T, M> extends AbstractTextComponent<
 		}
 	}
 
+	/**
+	 * Queries the provider and converts the matching choices to JSON.
+	 *
+	 * @param provider
+	 * @param term
+	 *            search term
+	 * @param page
+	 *            0-based page
+	 * @return the JSON expected by Select2
+	 */
+	static <T> String generateJSON(ChoiceProvider<T> provider, String term, int page)
+	{
+		Response<T> response = new Response<>();
+		provider.query(term, page, response);
+
+		JSONStringer json = new JSONStringer();
+		try
+		{
+			json.object();
+			json.key("items").array();
+			for (T item : response) 
+			{
+				json.object();
+				provider.toJson(item, json);
+				json.endObject();
+			}
+			json.endArray();
+			json.key("more").value(response.getHasMore()).endObject();
+		}
+		catch (JSONException e) 
+		{
+			throw new RuntimeException("Could not write Json response", e);
+		}
+		return json.toString();
+	}
+
 	@Override
 	public void onRequest()
 	{
@@ -0,0 +1,224 @@
+package org.wicketstuff.select2;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.wicket.util.lang.Args;
+
+/**
+ * A {@link ChoiceProvider} for a fixed collection of choices, matching the words of the search
+ * term against the beginnings of the words of the display values. An in-memory index of the
+ * words makes a query a few binary searches instead of a scan of all choices, so one instance can
+ * serve many requests, e.g. from a {@link JsonChoiceResource}.
+ * <p>
+ * A choice matches if every word of the term is the beginning of one of its words, ignoring case:
+ * "new y" matches "New York". Matches are returned in the order of the choices. The index is
+ * built on the first query and is immutable, so queries are thread-safe.
+ * </p>
+ *
+ * @param <T>
+ *            type of choice object
+ */
+public abstract class IndexedChoiceProvider<T> extends ChoiceProvider<T>
+{
+	private static final long serialVersionUID = 1L;
+
+	private final List<T> choices;
+
+	private final int pageSize;
+
+	private transient volatile Index index;
+
+	/**
+	 * Constructor
+	 *
+	 * @param choices
+	 *            the choices, copied
+	 * @param pageSize
+	 *            number of choices returned per query
+	 */
+	public IndexedChoiceProvider(Collection<? extends T> choices, int pageSize)
+	{
+		this.choices = new ArrayList<>(Args.notNull(choices, "choices"));
+		this.pageSize = Args.withinRange(1, Integer.MAX_VALUE, pageSize, "pageSize");
+	}
+
+	/**
+	 * Constructor with a page size of 10
+	 *
+	 * @param choices
+	 *            the choices, copied
+	 */
+	public IndexedChoiceProvider(Collection<? extends T> choices)
+	{
+		this(choices, 10);
+	}
+
+	/**
+	 * Splits a text into the words to index or to search for.
+	 *
+	 * @param text
+	 *            display value or search term
+	 * @return the words, lower case
+	 */
+	protected String[] getWords(String text)
+	{
+		return text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+");
+	}
+
+	@Override
+	public void query(String term, int page, Response<T> response)
+	{
+		Index idx = getIndex();
+		BitSet matches = null;
+		if (term != null)
+		{
+			for (String word : getWords(term))
+			{
+				if (word.isEmpty())
+				{
+					continue;
+				}
+				BitSet wordMatches = idx.find(word);
+				if (matches == null)
+				{
+					matches = wordMatches;
+				}
+				else
+				{
+					matches.and(wordMatches);
+				}
+			}
+		}
+		if (matches == null)
+		{
+			// no term, all choices
+			matches = new BitSet(choices.size());
+			matches.set(0, choices.size());
+		}
+
+		int skip = page * pageSize;
+		int i = matches.nextSetBit(0);
+		for (; i >= 0 && skip > 0; i = matches.nextSetBit(i + 1))
+		{
+			skip--;
+		}
+		for (; i >= 0 && response.size() < pageSize; i = matches.nextSetBit(i + 1))
+		{
+			response.add(choices.get(i));
+		}
+		response.setHasMore(i >= 0);
+	}
+
+	@Override
+	public Collection<T> toChoices(Collection<String> ids)
+	{
+		Map<String, T> byId = getIndex().byId;
+		List<T> result = new ArrayList<>(ids.size());
+		for (String id : ids)
+		{
+			T choice = byId.get(id);
+			if (choice != null)
+			{
+				result.add(choice);
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public void detach()
+	{
+	}
+
+	private Index getIndex()
+	{
+		Index result = index;
+		if (result == null)
+		{
+			synchronized (this)
+			{
+				result = index;
+				if (result == null)
+				{
+					index = result = new Index();
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * The sorted words of all display values and the choice each one belongs to.
+	 */
+	private final class Index
+	{
+		private final String[] words;
+
+		private final int[] owners;
+
+		private final Map<String, T> byId;
+
+		private Index()
+		{
+			byId = new HashMap<>(choices.size() * 2);
+			List<String> entries = new ArrayList<>(choices.size() * 2);
+			for (int i = 0; i < choices.size(); i++)
+			{
+				T choice = choices.get(i);
+				byId.put(getIdValue(choice), choice);
+				for (String word : getWords(getDisplayValue(choice)))
+				{
+					if (!word.isEmpty())
+					{
+						// owner appended, so equal words stay grouped
+						entries.add(word + '\0' + i);
+					}
+				}
+			}
+			String[] sorted = entries.toArray(new String[entries.size()]);
+			Arrays.sort(sorted);
+
+			words = new String[sorted.length];
+			owners = new int[sorted.length];
+			for (int i = 0; i < sorted.length; i++)
+			{
+				int separator = sorted[i].lastIndexOf('\0');
+				words[i] = sorted[i].substring(0, separator);
+				owners[i] = Integer.parseInt(sorted[i].substring(separator + 1));
+			}
+		}
+
+		/**
+		 * @return the choices having a word starting with the prefix
+		 */
+		private BitSet find(String prefix)
+		{
+			BitSet result = new BitSet(choices.size());
+			int i = Arrays.binarySearch(words, prefix);
+			if (i < 0)
+			{
+				i = -i - 1;
+			}
+			else
+			{
+				// binary search finds any of equal words
+				while (i > 0 && words[i - 1].equals(prefix))
+				{
+					i--;
+				}
+			}
+			for (; i < words.length && words[i].startsWith(prefix); i++)
+			{
+				result.set(owners[i]);
+			}
+			return result;
+		}
+	}
+}
@@ -0,0 +1,241 @@
+package org.wicketstuff.select2;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.wicket.request.IRequestParameters;
+import org.apache.wicket.request.resource.AbstractResource;
+import org.apache.wicket.util.lang.Args;
+import org.apache.wicket.util.time.Duration;
+
+/**
+ * A stateless resource answering the queries of Select2 components in stateless mode, see
+ * {@link Settings#setStateless(boolean)}. Queries neither touch the page nor the session, so they
+ * are not serialized with other requests of the same session.
+ * <p>
+ * The results can be cached per term and page for a while, e.g. for a provider whose choices
+ * rarely change:
+ *
+ * <pre>
+ * mountResource(CATEGORIES_JSON, new JsonResourceReference&lt;Category&gt;(&quot;categories&quot;)
+ * {
+ * 	protected ChoiceProvider&lt;Category&gt; getChoiceProvider()
+ * 	{
+ * 		return CategoriesChoiceProvider.getInstance();
+ * 	}
+ *
+ * 	protected JsonChoiceResource&lt;Category&gt; newResource()
+ * 	{
+ * 		return super.newResource().setCacheDuration(Duration.minutes(5));
+ * 	}
+ * });
+ * </pre>
+ *
+ * </p>
+ *
+ * @param <T>
+ *            type of choice object
+ * @see JsonResourceReference
+ * @see IndexedChoiceProvider
+ */
+public class JsonChoiceResource<T> extends AbstractResource
+{
+	private static final long serialVersionUID = 1L;
+
+	private final ChoiceProvider<T> provider;
+
+	private String queryParam = Settings.DEFAULT_QUERY_PARAM;
+
+	private Duration cacheDuration = Duration.NONE;
+
+	private int maxCachedTerms = 1000;
+
+	/**
+	 * Results per page and term, in access order so the least recently requested results are
+	 * dropped first. Guarded by itself.
+	 */
+	private final Map<String, CachedResult> cache = new LinkedHashMap<String, CachedResult>(16,
+		0.75f, true)
+	{
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, CachedResult> eldest)
+		{
+			return size() > maxCachedTerms;
+		}
+	};
+
+	/**
+	 * Constructor
+	 *
+	 * @param provider
+	 *            provider of the choices, shared by all requests
+	 */
+	public JsonChoiceResource(ChoiceProvider<T> provider)
+	{
+		this.provider = provider;
+	}
+
+	/**
+	 * @return the provider queried
+	 */
+	protected ChoiceProvider<T> getChoiceProvider()
+	{
+		return provider;
+	}
+
+	/**
+	 * Sets the parameter holding the search term, it has to match
+	 * {@link Settings#setQueryParam(String)} of the components.
+	 *
+	 * @param queryParam
+	 * @return {@code this} for chaining
+	 */
+	public JsonChoiceResource<T> setQueryParam(String queryParam)
+	{
+		this.queryParam = Args.notEmpty(queryParam, "queryParam");
+		return this;
+	}
+
+	/**
+	 * Sets how long the results of a term are reused, {@link Duration#NONE} to query the provider
+	 * for every request.
+	 *
+	 * @param cacheDuration
+	 * @return {@code this} for chaining
+	 */
+	public JsonChoiceResource<T> setCacheDuration(Duration cacheDuration)
+	{
+		this.cacheDuration = Args.notNull(cacheDuration, "cacheDuration");
+		clearCache();
+		return this;
+	}
+
+	/**
+	 * Sets the number of results kept, one per term and page. Beyond it the least recently
+	 * requested results are dropped.
+	 *
+	 * @param maxCachedTerms
+	 * @return {@code this} for chaining
+	 */
+	public JsonChoiceResource<T> setMaxCachedTerms(int maxCachedTerms)
+	{
+		this.maxCachedTerms = Args.withinRange(1, Integer.MAX_VALUE, maxCachedTerms,
+			"maxCachedTerms");
+		synchronized (cache)
+		{
+			Iterator<String> iterator = cache.keySet().iterator();
+			while (cache.size() > maxCachedTerms)
+			{
+				iterator.next();
+				iterator.remove();
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * Discards all cached results, e.g. after the choices changed.
+	 */
+	public void clearCache()
+	{
+		synchronized (cache)
+		{
+			cache.clear();
+		}
+	}
+
+	@Override
+	protected ResourceResponse newResourceResponse(Attributes attributes)
+	{
+		IRequestParameters params = attributes.getRequest().getRequestParameters();
+		String term = params.getParameterValue(queryParam).toOptionalString();
+		// select2 uses 1-based paging, but in wicket world we are used to 0-based
+		int page = params.getParameterValue("page").toInt(1) - 1;
+
+		final byte[] json = getJSON(term, page);
+
+		ResourceResponse response = new ResourceResponse();
+		response.setContentType("application/json");
+		response.setTextEncoding(StandardCharsets.UTF_8.name());
+		response.setContentLength(json.length);
+		response.disableCaching();
+		response.setWriteCallback(new WriteCallback()
+		{
+			@Override
+			public void writeData(Attributes attributes)
+			{
+				attributes.getResponse().write(json);
+			}
+		});
+		return response;
+	}
+
+	private byte[] getJSON(String term, int page)
+	{
+		if (cacheDuration.getMilliseconds() <= 0)
+		{
+			return query(term, page);
+		}
+
+		String key = page + ":" + (term == null ? "" : term);
+		long now = now();
+		synchronized (cache)
+		{
+			CachedResult cached = cache.get(key);
+			if (cached != null && cached.expires >= now)
+			{
+				return cached.json;
+			}
+		}
+
+		// query without holding the lock, concurrent requests for the same term may both do so
+		byte[] json = query(term, page);
+		synchronized (cache)
+		{
+			cache.put(key, new CachedResult(json, now + cacheDuration.getMilliseconds()));
+		}
+		return json;
+	}
+
+	private byte[] query(String term, int page)
+	{
+		return AbstractSelect2Choice.generateJSON(getChoiceProvider(), term, page)
+			.getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @return the current time in milliseconds, for expiring cached results
+	 */
+	long now()
+	{
+		return System.currentTimeMillis();
+	}
+
+	/**
+	 * @return the number of cached results
+	 */
+	int getCachedCount()
+	{
+		synchronized (cache)
+		{
+			return cache.size();
+		}
+	}
+
+	private static final class CachedResult
+	{
+		private final byte[] json;
+
+		private final long expires;
+
+		private CachedResult(byte[] json, long expires)
+		{
+			this.json = json;
+			this.expires = expires;
+		}
+	}
+}
@@ -1,16 +1,7 @@
 package org.wicketstuff.select2;
 
-import java.io.ByteArrayOutputStream;
-import java.io.UnsupportedEncodingException;
-
-import org.apache.wicket.WicketRuntimeException;
 import org.apache.wicket.request.resource.IResource;
 import org.apache.wicket.request.resource.ResourceReference;
-import org.apache.wicket.request.resource.ResourceStreamResource;
-import org.apache.wicket.util.resource.StringResourceStream;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
 
 /**
  * A resource that serves JSON for stateless . You have to mount at application init like. E.g.
@@ -45,7 +36,7 @@ public abstract class JsonResourceReference<T> extends ResourceReference
 {
 	private static final long serialVersionUID = 1L;
 
-	private static Logger logger = LoggerFactory.getLogger(JsonResourceReference.class);
+	private transient volatile JsonChoiceResource<T> resource;
 
 	public JsonResourceReference(String name)
 	{
@@ -55,19 +46,40 @@ public abstract class JsonResourceReference<T> extends ResourceReference
 	@Override
 	public IResource getResource() 
 	{
-		ByteArrayOutputStream webResponse = new ByteArrayOutputStream();
-		AbstractSelect2Choice.generateJSON(getChoiceProvider(), webResponse);
-		StringResourceStream resourceStream;
-		try
+		// one resource for all requests, so its cache is shared
+		JsonChoiceResource<T> result = resource;
+		if (result == null)
 		{
-			resourceStream = new StringResourceStream(webResponse.toString("UTF-8"), "application/json");
+			synchronized (this)
+			{
+				result = resource;
+				if (result == null)
+				{
+					resource = result = newResource();
+				}
+			}
 		}
-		catch (UnsupportedEncodingException e)
+		return result;
+	}
+
+	/**
+	 * Creates the resource answering the queries, override to configure it, e.g. to cache results
+	 * with {@link JsonChoiceResource#setCacheDuration(org.apache.wicket.util.time.Duration)}.
+	 * 
+	 * @return the resource
+	 */
+	protected JsonChoiceResource<T> newResource()
+	{
+		return new JsonChoiceResource<T>(null)
 		{
-			logger.error("getResource", e);
-			throw new WicketRuntimeException(e);
-		}
-		return new ResourceStreamResource(resourceStream);
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected ChoiceProvider<T> getChoiceProvider()
+			{
+				return JsonResourceReference.this.getChoiceProvider();
+			}
+		};
 	}
 
 	/**
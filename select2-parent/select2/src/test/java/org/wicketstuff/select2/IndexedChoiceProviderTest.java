@@ -0,0 +1,128 @@
+package org.wicketstuff.select2;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.wicket.util.tester.WicketTester;
+import org.apache.wicket.util.time.Duration;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link IndexedChoiceProvider} and {@link JsonChoiceResource}
+ */
+public class IndexedChoiceProviderTest
+{
+	private WicketTester wicketTester;
+
+	private CountryProvider provider;
+
+	@Before
+	public void setUp()
+	{
+		wicketTester = new WicketTester();
+		provider = new CountryProvider(3);
+	}
+
+	@After
+	public void tearDown()
+	{
+		wicketTester.destroy();
+	}
+
+	@Test
+	public void matchesPrefixesOfWords()
+	{
+		Response<Country> response = new Response<>();
+		provider.query("isl", 0, response);
+		Assert.assertEquals(Arrays.asList(Country.BV, Country.VG, Country.KY), response.getResults());
+		Assert.assertTrue(response.getHasMore());
+
+		response = new Response<>();
+		provider.query("BRIT vir", 0, response);
+		Assert.assertEquals(Collections.singletonList(Country.VG), response.getResults());
+		Assert.assertFalse(response.getHasMore());
+
+		response = new Response<>();
+		provider.query("xyz", 0, response);
+		Assert.assertTrue(response.getResults().isEmpty());
+	}
+
+	@Test
+	public void pagesMatches()
+	{
+		Response<Country> response = new Response<>();
+		provider.query("", 1, response);
+		Assert.assertEquals(Arrays.asList(Country.AS, Country.AD, Country.AO), response.getResults());
+		Assert.assertTrue(response.getHasMore());
+	}
+
+	@Test
+	public void convertsIds()
+	{
+		Assert.assertEquals(Arrays.asList(Country.BR, Country.CA),
+			provider.toChoices(Arrays.asList("BR", "unknown", "CA")));
+	}
+
+	@Test
+	public void resourceCachesResults()
+	{
+		final AtomicInteger queries = new AtomicInteger();
+		JsonChoiceResource<Country> resource = new JsonChoiceResource<Country>(
+			new CountryProvider(10)
+			{
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				public void query(String term, int page, Response<Country> response)
+				{
+					queries.incrementAndGet();
+					super.query(term, page, response);
+				}
+			}).setCacheDuration(Duration.minutes(1));
+
+		wicketTester.getRequest().setParameter(Settings.DEFAULT_QUERY_PARAM, "chi");
+		wicketTester.startResource(resource);
+		Assert.assertEquals("application/json; charset=UTF-8",
+			wicketTester.getContentTypeFromResponseHeader());
+		String json = wicketTester.getLastResponseAsString();
+		Assert.assertEquals(
+			"{\"items\":[{\"id\":\"CL\",\"text\":\"Chile\"},{\"id\":\"CN\",\"text\":\"China\"}],\"more\":false}",
+			json);
+
+		wicketTester.getRequest().setParameter(Settings.DEFAULT_QUERY_PARAM, "chi");
+		wicketTester.startResource(resource);
+		Assert.assertEquals(json, wicketTester.getLastResponseAsString());
+		Assert.assertEquals(1, queries.get());
+
+		resource.clearCache();
+		wicketTester.getRequest().setParameter(Settings.DEFAULT_QUERY_PARAM, "chi");
+		wicketTester.startResource(resource);
+		Assert.assertEquals(2, queries.get());
+	}
+
+	private static class CountryProvider extends IndexedChoiceProvider<Country>
+	{
+		private static final long serialVersionUID = 1L;
+
+		private CountryProvider(int pageSize)
+		{
+			super(Arrays.asList(Country.values()), pageSize);
+		}
+
+		@Override
+		public String getDisplayValue(Country object)
+		{
+			return object.getDisplayName();
+		}
+
+		@Override
+		public String getIdValue(Country object)
+		{
+			return object.name();
+		}
+	}
+}
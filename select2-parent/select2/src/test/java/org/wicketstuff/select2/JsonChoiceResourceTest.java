@@ -0,0 +1,171 @@
+package org.wicketstuff.select2;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.wicket.util.tester.WicketTester;
+import org.apache.wicket.util.time.Duration;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link JsonChoiceResource}
+ */
+public class JsonChoiceResourceTest
+{
+	private WicketTester wicketTester;
+
+	private List<String> queries;
+
+	private long now;
+
+	private JsonChoiceResource<String> resource;
+
+	@Before
+	public void setUp()
+	{
+		wicketTester = new WicketTester();
+		queries = new ArrayList<>();
+		now = 1000L;
+		resource = new JsonChoiceResource<String>(new ChoiceProvider<String>()
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public String getDisplayValue(String object)
+			{
+				return object;
+			}
+
+			@Override
+			public String getIdValue(String object)
+			{
+				return object.toLowerCase();
+			}
+
+			@Override
+			public void query(String term, int page, Response<String> response)
+			{
+				queries.add(page + ":" + term);
+				response.add(term + " " + page);
+				response.setHasMore(page == 0);
+			}
+
+			@Override
+			public Collection<String> toChoices(Collection<String> ids)
+			{
+				return ids;
+			}
+		})
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			long now()
+			{
+				return now;
+			}
+		};
+	}
+
+	@After
+	public void tearDown()
+	{
+		wicketTester.destroy();
+	}
+
+	@Test
+	public void writesUtf8Json()
+	{
+		String json = request("Zürich", 1);
+
+		Assert.assertEquals("application/json; charset=UTF-8",
+			wicketTester.getContentTypeFromResponseHeader());
+		Assert.assertEquals(
+			"{\"items\":[{\"id\":\"zürich 0\",\"text\":\"Zürich 0\"}],\"more\":true}", json);
+		Assert.assertEquals(String.valueOf(json.getBytes(StandardCharsets.UTF_8).length),
+			wicketTester.getLastResponse().getHeader("Content-Length"));
+	}
+
+	@Test
+	public void queriesEveryRequestWithoutCacheDuration()
+	{
+		request("a", 1);
+		request("a", 1);
+
+		Assert.assertEquals(2, queries.size());
+		Assert.assertEquals(0, resource.getCachedCount());
+	}
+
+	@Test
+	public void reusesResultsUntilExpired()
+	{
+		resource.setCacheDuration(Duration.seconds(10));
+
+		String json = request("a", 1);
+		now += 10000L;
+		Assert.assertEquals(json, request("a", 1));
+		Assert.assertEquals(1, queries.size());
+
+		now += 1L;
+		Assert.assertEquals(json, request("a", 1));
+		Assert.assertEquals(2, queries.size());
+	}
+
+	@Test
+	public void cachesPerTermAndPage()
+	{
+		resource.setCacheDuration(Duration.seconds(10));
+
+		request("a", 1);
+		Assert.assertEquals("{\"items\":[{\"id\":\"a 1\",\"text\":\"a 1\"}],\"more\":false}",
+			request("a", 2));
+		request("b", 1);
+		request("a", 1);
+		request("a", 2);
+		request("b", 1);
+
+		Assert.assertEquals(3, queries.size());
+		Assert.assertEquals(3, resource.getCachedCount());
+		Assert.assertTrue(queries.contains("0:a"));
+		Assert.assertTrue(queries.contains("1:a"));
+		Assert.assertTrue(queries.contains("0:b"));
+	}
+
+	@Test
+	public void dropsLeastRecentlyUsedResults()
+	{
+		resource.setCacheDuration(Duration.seconds(10)).setMaxCachedTerms(2);
+
+		request("a", 1);
+		request("b", 1);
+		request("a", 1);
+		// evicts "b", the least recently used
+		request("c", 1);
+		Assert.assertEquals(3, queries.size());
+		Assert.assertEquals(2, resource.getCachedCount());
+
+		request("a", 1);
+		Assert.assertEquals(3, queries.size());
+		request("b", 1);
+		Assert.assertEquals(4, queries.size());
+
+		resource.setMaxCachedTerms(1);
+		Assert.assertEquals(1, resource.getCachedCount());
+		request("b", 1);
+		Assert.assertEquals(4, queries.size());
+	}
+
+	private String request(String term, int page)
+	{
+		wicketTester.getRequest().setParameter(Settings.DEFAULT_QUERY_PARAM, term);
+		wicketTester.getRequest().setParameter("page", String.valueOf(page));
+		wicketTester.startResource(resource);
+		return new String(wicketTester.getLastResponse().getBinaryContent(),
+			StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,175 @@
+/**
+ * Copyright (C)
+ * 	2008 Jeremy Thomerson <jeremy@thomersonfamily.com>
+ * 	2012 Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.pageserializer.common.analyze.sampling;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.wicket.util.lang.Args;
+import org.wicketstuff.pageserializer.common.analyze.sampling.SerializationHistogram.Entry;
+
+/**
+ * thread safe registry summing up the histograms of all sampled serializations, to be read by a
+ * monitoring page, a JMX bean or a metrics reporter
+ * <p>
+ * paths containing repeater item ids are unbounded, so the number of paths is limited, the bytes of
+ * further paths are only counted by {@link #getDroppedPathBytes()}
+ */
+public class HistogramRegistry implements ISerializationHistogramProcessor
+{
+	private final int maxPaths;
+
+	private final LongAdder serializations = new LongAdder();
+	private final LongAdder bytes = new LongAdder();
+	private final LongAdder droppedPathBytes = new LongAdder();
+	private final ConcurrentMap<Class<?>, Totals> types = new ConcurrentHashMap<Class<?>, Totals>();
+	private final ConcurrentMap<String, Totals> paths = new ConcurrentHashMap<String, Totals>();
+
+	/**
+	 * registry with at most 1000 paths
+	 */
+	public HistogramRegistry()
+	{
+		this(1000);
+	}
+
+	/**
+	 * @param maxPaths maximum number of paths
+	 */
+	public HistogramRegistry(int maxPaths)
+	{
+		this.maxPaths = Args.withinRange(0, Integer.MAX_VALUE, maxPaths, "maxPaths");
+	}
+
+	@Override
+	public void process(SerializationHistogram histogram)
+	{
+		serializations.increment();
+		bytes.add(histogram.size());
+
+		for (Map.Entry<Class<?>, Entry> e : histogram.types().entrySet())
+		{
+			Totals totals = types.get(e.getKey());
+			if (totals == null)
+			{
+				totals = types.computeIfAbsent(e.getKey(), key -> new Totals());
+			}
+			totals.add(e.getValue());
+		}
+
+		for (Map.Entry<String, Entry> e : histogram.paths().entrySet())
+		{
+			Totals totals = paths.get(e.getKey());
+			if (totals == null && paths.size() < maxPaths)
+			{
+				totals = paths.computeIfAbsent(e.getKey(), key -> new Totals());
+			}
+			if (totals != null)
+				totals.add(e.getValue());
+			else
+				droppedPathBytes.add(e.getValue().bytes());
+		}
+	}
+
+	/**
+	 * @return number of processed serializations
+	 */
+	public long getSerializations()
+	{
+		return serializations.sum();
+	}
+
+	/**
+	 * @return bytes of all processed serializations
+	 */
+	public long getBytes()
+	{
+		return bytes.sum();
+	}
+
+	/**
+	 * @return bytes of the paths exceeding the limit
+	 */
+	public long getDroppedPathBytes()
+	{
+		return droppedPathBytes.sum();
+	}
+
+	/**
+	 * @return snapshot of the histogram by type
+	 */
+	public Map<Class<?>, Entry> getTypes()
+	{
+		return snapshot(types);
+	}
+
+	/**
+	 * @return snapshot of the histogram by path
+	 */
+	public Map<String, Entry> getPaths()
+	{
+		return snapshot(paths);
+	}
+
+	/**
+	 * start over
+	 */
+	public void reset()
+	{
+		serializations.reset();
+		bytes.reset();
+		droppedPathBytes.reset();
+		types.clear();
+		paths.clear();
+	}
+
+	private static <K> Map<K, Entry> snapshot(Map<K, Totals> source)
+	{
+		Map<K, Entry> map = new HashMap<K, Entry>();
+		for (Map.Entry<K, Totals> e : source.entrySet())
+		{
+			map.put(e.getKey(), e.getValue().snapshot());
+		}
+		return map;
+	}
+
+	private static class Totals
+	{
+		final LongAdder count = new LongAdder();
+		final LongAdder instances = new LongAdder();
+		final LongAdder bytes = new LongAdder();
+
+		void add(Entry entry)
+		{
+			count.add(entry.count());
+			instances.add(entry.instances());
+			bytes.add(entry.bytes());
+		}
+
+		Entry snapshot()
+		{
+			return new Entry(count.sum(), instances.sum(), bytes.sum());
+		}
+	}
+}
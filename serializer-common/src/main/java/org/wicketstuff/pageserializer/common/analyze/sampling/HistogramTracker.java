@@ -0,0 +1,149 @@
+/**
+ * Copyright (C)
+ * 	2008 Jeremy Thomerson <jeremy@thomersonfamily.com>
+ * 	2012 Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.pageserializer.common.analyze.sampling;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.wicketstuff.pageserializer.common.analyze.IObjectLabelizer;
+import org.wicketstuff.pageserializer.common.analyze.sampling.SerializationHistogram.Entry;
+
+/**
+ * histogram builder, counts the bytes between the positions of the serialization events into the
+ * entries of the innermost object, so no tree is built
+ * 
+ * @see org.wicketstuff.pageserializer.common.analyze.AnalyzingSerializationListener
+ */
+class HistogramTracker
+{
+	private final IObjectLabelizer labelizer;
+	private final IdentityIdMap ids = new IdentityIdMap();
+	private final Map<Class<?>, Entry> types = new HashMap<Class<?>, Entry>();
+	private final Map<String, Entry> paths = new HashMap<String, Entry>();
+
+	// stack of open objects, index 0 is the root of the serialization
+	private Class<?>[] stackTypes = new Class<?>[32];
+	private Entry[] stackTypeEntries = new Entry[32];
+	private String[] stackPaths = new String[32];
+	private Entry[] stackPathEntries = new Entry[32];
+	private int depth = 0;
+
+	private int lastPosition = 0;
+
+	HistogramTracker(IObjectLabelizer labelizer)
+	{
+		this.labelizer = labelizer;
+	}
+
+	void newItem(int position, Object object)
+	{
+		addBytes(position);
+
+		Class<?> type = object.getClass();
+		boolean isNew = ids.putIfAbsent(object) < 0;
+
+		Entry typeEntry = getOrCreate(types, type);
+		typeEntry.count++;
+		if (isNew)
+			typeEntry.instances++;
+
+		String path = stackPaths[depth];
+		Entry pathEntry = stackPathEntries[depth];
+		String label = labelizer.labelFor(object);
+		if (label != null)
+		{
+			path = path == null ? label : path + ":" + label;
+			pathEntry = getOrCreate(paths, path);
+			pathEntry.count++;
+			if (isNew)
+				pathEntry.instances++;
+		}
+
+		push(type, typeEntry, path, pathEntry);
+	}
+
+	void closeItem(int position, Object object)
+	{
+		if (depth == 0 || stackTypes[depth] != object.getClass())
+			throw new IllegalArgumentException("type does not match " +
+				(depth == 0 ? null : stackTypes[depth]) + "!=" + object.getClass());
+
+		addBytes(position);
+
+		stackTypes[depth] = null;
+		stackTypeEntries[depth] = null;
+		stackPaths[depth] = null;
+		stackPathEntries[depth] = null;
+		depth--;
+	}
+
+	int size()
+	{
+		return lastPosition;
+	}
+
+	SerializationHistogram end(Object object)
+	{
+		return new SerializationHistogram(object.getClass(), lastPosition, types, paths);
+	}
+
+	private void addBytes(int position)
+	{
+		int diff = position - lastPosition;
+		lastPosition = position;
+
+		Entry typeEntry = stackTypeEntries[depth];
+		if (typeEntry != null)
+			typeEntry.bytes += diff;
+		Entry pathEntry = stackPathEntries[depth];
+		if (pathEntry != null)
+			pathEntry.bytes += diff;
+	}
+
+	private void push(Class<?> type, Entry typeEntry, String path, Entry pathEntry)
+	{
+		depth++;
+		if (depth == stackTypes.length)
+		{
+			int length = stackTypes.length * 2;
+			stackTypes = Arrays.copyOf(stackTypes, length);
+			stackTypeEntries = Arrays.copyOf(stackTypeEntries, length);
+			stackPaths = Arrays.copyOf(stackPaths, length);
+			stackPathEntries = Arrays.copyOf(stackPathEntries, length);
+		}
+		stackTypes[depth] = type;
+		stackTypeEntries[depth] = typeEntry;
+		stackPaths[depth] = path;
+		stackPathEntries[depth] = pathEntry;
+	}
+
+	private static <K> Entry getOrCreate(Map<K, Entry> map, K key)
+	{
+		Entry entry = map.get(key);
+		if (entry == null)
+		{
+			entry = new Entry();
+			map.put(key, entry);
+		}
+		return entry;
+	}
+}
@@ -0,0 +1,46 @@
+/**
+ * Copyright (C)
+ * 	2008 Jeremy Thomerson <jeremy@thomersonfamily.com>
+ * 	2012 Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.pageserializer.common.analyze.sampling;
+
+/**
+ * decides which serialized pages are analyzed
+ * 
+ * @see Samplers
+ */
+public interface ISampler
+{
+	/**
+	 * called before serialization, pages not tracked cost nearly nothing
+	 * 
+	 * @param object object to be serialized
+	 * @return true if the serialization should be tracked
+	 */
+	boolean track(Object object);
+
+	/**
+	 * called after a tracked serialization
+	 * 
+	 * @param object serialized object
+	 * @param size serialized size in bytes
+	 * @return true if the histogram of this serialization should be processed
+	 */
+	boolean report(Object object, int size);
+}
@@ -0,0 +1,118 @@
+/**
+ * Copyright (C)
+ * 	2008 Jeremy Thomerson <jeremy@thomersonfamily.com>
+ * 	2012 Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.pageserializer.common.analyze.sampling;
+
+/**
+ * object ids by identity, an open addressing table on {@link System#identityHashCode(Object)}
+ * without boxing or entry objects, for the objects of a single serialization, not thread safe
+ * 
+ * @see org.wicketstuff.pageserializer.common.analyze.ObjectIdFactory
+ */
+class IdentityIdMap
+{
+	private Object[] keys;
+	private int[] ids;
+	private int size;
+
+	IdentityIdMap()
+	{
+		this(256);
+	}
+
+	IdentityIdMap(int expectedSize)
+	{
+		int capacity = 16;
+		while (capacity < expectedSize * 2)
+		{
+			capacity <<= 1;
+		}
+		keys = new Object[capacity];
+		ids = new int[capacity];
+	}
+
+	/**
+	 * gets the id of an object, new objects get the next id
+	 * 
+	 * @param value object
+	 * @return id, -1 if the object is new, then its id is {@link #size()} - 1
+	 */
+	int putIfAbsent(Object value)
+	{
+		int mask = keys.length - 1;
+		int index = hash(value) & mask;
+		Object key;
+		while ((key = keys[index]) != null)
+		{
+			if (key == value)
+			{
+				return ids[index];
+			}
+			index = (index + 1) & mask;
+		}
+
+		keys[index] = value;
+		ids[index] = size++;
+		if (size * 2 > keys.length)
+		{
+			resize();
+		}
+		return -1;
+	}
+
+	/**
+	 * @return number of distinct objects
+	 */
+	int size()
+	{
+		return size;
+	}
+
+	private void resize()
+	{
+		Object[] oldKeys = keys;
+		int[] oldIds = ids;
+		keys = new Object[oldKeys.length * 2];
+		ids = new int[oldKeys.length * 2];
+
+		int mask = keys.length - 1;
+		for (int i = 0; i < oldKeys.length; i++)
+		{
+			Object key = oldKeys[i];
+			if (key != null)
+			{
+				int index = hash(key) & mask;
+				while (keys[index] != null)
+				{
+					index = (index + 1) & mask;
+				}
+				keys[index] = key;
+				ids[index] = oldIds[i];
+			}
+		}
+	}
+
+	private static int hash(Object value)
+	{
+		// spread the bits, identity hash codes are not well distributed in the lower bits
+		int h = System.identityHashCode(value) * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+}
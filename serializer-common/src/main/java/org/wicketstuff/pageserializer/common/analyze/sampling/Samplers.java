@@ -0,0 +1,133 @@
+/**
+ * Copyright (C)
+ * 	2008 Jeremy Thomerson <jeremy@thomersonfamily.com>
+ * 	2012 Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.pageserializer.common.analyze.sampling;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.wicket.util.lang.Args;
+import org.apache.wicket.util.lang.Bytes;
+
+/**
+ * sampler utility class
+ */
+public final class Samplers
+{
+	private Samplers()
+	{
+		// no instance
+	}
+
+	/**
+	 * every serialization
+	 * 
+	 * @return sampler
+	 */
+	public static ISampler all()
+	{
+		return everyNth(1);
+	}
+
+	/**
+	 * every nth serialization, the others are not tracked at all
+	 * 
+	 * @param n 1 for every serialization
+	 * @return sampler
+	 */
+	public static ISampler everyNth(final int n)
+	{
+		Args.withinRange(1, Integer.MAX_VALUE, n, "n");
+
+		final AtomicLong counter = new AtomicLong();
+		return new ISampler()
+		{
+			@Override
+			public boolean track(Object object)
+			{
+				return counter.getAndIncrement() % n == 0;
+			}
+
+			@Override
+			public boolean report(Object object, int size)
+			{
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * serializations of at least a minimum size, as the size is known only afterwards every
+	 * serialization is tracked
+	 * 
+	 * @param minSize minimum size
+	 * @return sampler
+	 */
+	public static ISampler minSize(Bytes minSize)
+	{
+		Args.notNull(minSize, "minSize");
+
+		final long min = minSize.bytes();
+		return new ISampler()
+		{
+			@Override
+			public boolean track(Object object)
+			{
+				return true;
+			}
+
+			@Override
+			public boolean report(Object object, int size)
+			{
+				return size >= min;
+			}
+		};
+	}
+
+	/**
+	 * every nth serialization and all serializations of at least a minimum size, every
+	 * serialization is tracked
+	 * 
+	 * @param n 1 for every serialization
+	 * @param minSize minimum size
+	 * @return sampler
+	 */
+	public static ISampler everyNthOrMinSize(final int n, Bytes minSize)
+	{
+		Args.withinRange(1, Integer.MAX_VALUE, n, "n");
+		Args.notNull(minSize, "minSize");
+
+		final long min = minSize.bytes();
+		final AtomicLong counter = new AtomicLong();
+		return new ISampler()
+		{
+			@Override
+			public boolean track(Object object)
+			{
+				return true;
+			}
+
+			@Override
+			public boolean report(Object object, int size)
+			{
+				return counter.getAndIncrement() % n == 0 || size >= min;
+			}
+		};
+	}
+}
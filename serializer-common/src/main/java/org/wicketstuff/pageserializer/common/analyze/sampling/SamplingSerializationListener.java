@@ -0,0 +1,102 @@
+/**
+ * Copyright (C)
+ * 	2008 Jeremy Thomerson <jeremy@thomersonfamily.com>
+ * 	2012 Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.pageserializer.common.analyze.sampling;
+
+import org.wicketstuff.pageserializer.common.analyze.ComponentIdAsLabel;
+import org.wicketstuff.pageserializer.common.analyze.IObjectLabelizer;
+import org.wicketstuff.pageserializer.common.listener.ThreadLocalContextSerializationListener;
+
+/**
+ * low overhead alternative to
+ * {@link org.wicketstuff.pageserializer.common.analyze.AnalyzingSerializationListener} which can
+ * stay enabled in production: only sampled serializations are tracked, and instead of an object
+ * tree only histograms by type and by label path are built, the labelizer is called once per
+ * object
+ * 
+ * @see Samplers
+ * @see HistogramRegistry
+ */
+public class SamplingSerializationListener extends
+	ThreadLocalContextSerializationListener<HistogramTracker>
+{
+	private final IObjectLabelizer labelizer;
+	private final ISampler sampler;
+	private final ISerializationHistogramProcessor histogramProcessor;
+
+	/**
+	 * creates an listener which builds histograms by type and by component path
+	 * 
+	 * @param sampler selects the serializations
+	 * @param histogramProcessor histogram processor
+	 */
+	public SamplingSerializationListener(ISampler sampler,
+		ISerializationHistogramProcessor histogramProcessor)
+	{
+		this(new ComponentIdAsLabel(), sampler, histogramProcessor);
+	}
+
+	/**
+	 * creates an listener which builds histograms from sampled serializations
+	 * 
+	 * @param labelizer a hook for path creation
+	 * @param sampler selects the serializations
+	 * @param histogramProcessor histogram processor
+	 */
+	public SamplingSerializationListener(IObjectLabelizer labelizer, ISampler sampler,
+		ISerializationHistogramProcessor histogramProcessor)
+	{
+		this.labelizer = labelizer;
+		this.sampler = sampler;
+		this.histogramProcessor = histogramProcessor;
+	}
+
+	@Override
+	protected HistogramTracker createContext(Object object)
+	{
+		return sampler.track(object) ? new HistogramTracker(labelizer) : null;
+	}
+
+	@Override
+	protected void begin(HistogramTracker tracker, Object object)
+	{
+	}
+
+	@Override
+	protected void before(HistogramTracker tracker, int position, Object object)
+	{
+		if (tracker != null && object != null)
+			tracker.newItem(position, object);
+	}
+
+	@Override
+	protected void after(HistogramTracker tracker, int position, Object object)
+	{
+		if (tracker != null && object != null)
+			tracker.closeItem(position, object);
+	}
+
+	@Override
+	protected void end(HistogramTracker tracker, Object object, Exception exception)
+	{
+		if (tracker != null && exception == null && sampler.report(object, tracker.size()))
+			histogramProcessor.process(tracker.end(object));
+	}
+}
@@ -0,0 +1,146 @@
+/**
+ * Copyright (C)
+ * 	2008 Jeremy Thomerson <jeremy@thomersonfamily.com>
+ * 	2012 Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.pageserializer.common.analyze.sampling;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * byte histograms of one serialization, by type and by label path
+ * 
+ * @see SamplingSerializationListener
+ */
+public class SerializationHistogram
+{
+	private final Class<?> type;
+	private final int size;
+	private final Map<Class<?>, Entry> types;
+	private final Map<String, Entry> paths;
+
+	SerializationHistogram(Class<?> type, int size, Map<Class<?>, Entry> types,
+		Map<String, Entry> paths)
+	{
+		this.type = type;
+		this.size = size;
+		this.types = Collections.unmodifiableMap(types);
+		this.paths = Collections.unmodifiableMap(paths);
+	}
+
+	/**
+	 * type of the serialized object
+	 * 
+	 * @return type
+	 */
+	public Class<?> type()
+	{
+		return type;
+	}
+
+	/**
+	 * serialized size
+	 * 
+	 * @return size in bytes
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * histogram by type, the bytes of an entry are written by objects of this type without their
+	 * children
+	 * 
+	 * @return immutable
+	 */
+	public Map<Class<?>, Entry> types()
+	{
+		return types;
+	}
+
+	/**
+	 * histogram by label path, i.e. the component path if labeled with
+	 * {@link org.wicketstuff.pageserializer.common.analyze.ComponentIdAsLabel}, the bytes of an
+	 * entry are written by the labeled object and all unlabeled objects below
+	 * 
+	 * @return immutable
+	 */
+	public Map<String, Entry> paths()
+	{
+		return paths;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "SerializationHistogram(" + type + "," + size + " bytes)";
+	}
+
+	/**
+	 * histogram entry
+	 */
+	public static class Entry
+	{
+		long count;
+		long instances;
+		long bytes;
+
+		Entry()
+		{
+		}
+
+		Entry(long count, long instances, long bytes)
+		{
+			this.count = count;
+			this.instances = instances;
+			this.bytes = bytes;
+		}
+
+		/**
+		 * @return how often an object was written
+		 */
+		public long count()
+		{
+			return count;
+		}
+
+		/**
+		 * @return number of distinct objects
+		 */
+		public long instances()
+		{
+			return instances;
+		}
+
+		/**
+		 * @return size in bytes
+		 */
+		public long bytes()
+		{
+			return bytes;
+		}
+
+		@Override
+		public String toString()
+		{
+			return "Entry(" + count + "," + instances + "," + bytes + ")";
+		}
+	}
+}
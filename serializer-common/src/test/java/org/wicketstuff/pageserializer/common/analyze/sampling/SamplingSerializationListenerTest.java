@@ -0,0 +1,128 @@
+/**
+ * Copyright (C)
+ * 	2008 Jeremy Thomerson <jeremy@thomersonfamily.com>
+ * 	2012 Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.pageserializer.common.analyze.sampling;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.wicket.util.lang.Bytes;
+import org.junit.Assert;
+import org.junit.Test;
+import org.wicketstuff.pageserializer.common.analyze.IObjectLabelizer;
+
+public class SamplingSerializationListenerTest
+{
+	private final IObjectLabelizer labelizer = new IObjectLabelizer()
+	{
+		@Override
+		public String labelFor(Object object)
+		{
+			return object instanceof String ? (String)object : null;
+		}
+	};
+
+	@Test
+	public void testHistograms()
+	{
+		Object a = "a";
+		Object b = 1;
+		Object c = "c";
+
+		HistogramRegistry registry = new HistogramRegistry();
+		SamplingSerializationListener listener = new SamplingSerializationListener(labelizer,
+			Samplers.all(), registry);
+
+		listener.begin(a);
+		listener.before(0, a);
+		listener.before(12, b);
+		listener.after(14, b);
+		listener.before(16, c);
+		listener.before(17, b);
+		listener.after(20, b);
+		listener.after(24, c);
+		listener.after(30, a);
+		listener.end(a, null);
+
+		Assert.assertEquals("serializations", 1, registry.getSerializations());
+		Assert.assertEquals("bytes", 30, registry.getBytes());
+
+		SerializationHistogram.Entry strings = registry.getTypes().get(String.class);
+		Assert.assertEquals("count", 2, strings.count());
+		Assert.assertEquals("instances", 2, strings.instances());
+		Assert.assertEquals("size", 12 + 2 + 6 + 1 + 4, strings.bytes());
+
+		SerializationHistogram.Entry integers = registry.getTypes().get(Integer.class);
+		Assert.assertEquals("count", 2, integers.count());
+		Assert.assertEquals("instances", 1, integers.instances());
+		Assert.assertEquals("size", 2 + 3, integers.bytes());
+
+		Assert.assertEquals("size", 12 + 2 + 2 + 6, registry.getPaths().get("a").bytes());
+		Assert.assertEquals("size", 1 + 3 + 4, registry.getPaths().get("a:c").bytes());
+	}
+
+	@Test
+	public void testSampling()
+	{
+		final List<SerializationHistogram> histograms = new ArrayList<SerializationHistogram>();
+		ISerializationHistogramProcessor processor = new ISerializationHistogramProcessor()
+		{
+			@Override
+			public void process(SerializationHistogram histogram)
+			{
+				histograms.add(histogram);
+			}
+		};
+
+		SamplingSerializationListener everyThird = new SamplingSerializationListener(labelizer,
+			Samplers.everyNth(3), processor);
+		for (int i = 0; i < 7; i++)
+		{
+			serialize(everyThird, 10);
+		}
+		Assert.assertEquals("sampled", 3, histograms.size());
+
+		histograms.clear();
+		SamplingSerializationListener large = new SamplingSerializationListener(labelizer,
+			Samplers.minSize(Bytes.bytes(100)), processor);
+		serialize(large, 10);
+		serialize(large, 100);
+		serialize(large, 50);
+		Assert.assertEquals("sampled", 1, histograms.size());
+		Assert.assertEquals("size", 100, histograms.get(0).size());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnbalanced()
+	{
+		HistogramTracker tracker = new HistogramTracker(labelizer);
+		tracker.newItem(0, "a");
+		tracker.closeItem(2, 1);
+	}
+
+	private static void serialize(SamplingSerializationListener listener, int size)
+	{
+		Object root = new Object();
+		listener.begin(root);
+		listener.before(0, root);
+		listener.after(size, root);
+		listener.end(root, null);
+	}
+}
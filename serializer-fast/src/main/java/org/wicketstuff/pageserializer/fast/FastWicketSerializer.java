@@ -35,6 +35,8 @@ public class FastWicketSerializer implements ISerializer
 
 	private ISerializationListener listener;
 
+	private ListenerAdapter listenerAdapter;
+
 	/**
 	 * Build a Fast serializer with a default sensible configuration.
 	 */
@@ -69,7 +71,7 @@ public class FastWicketSerializer implements ISerializer
 
 			if (listener != null)
 			{
-				out.setListener(new ListenerAdapter(listener));
+				out.setListener(listenerAdapter);
 				listener.begin(object);
 			}
 			out.writeObject(object);
@@ -101,6 +103,7 @@ public class FastWicketSerializer implements ISerializer
 	public FastWicketSerializer setListener(ISerializationListener listener)
 	{
 		this.listener = listener;
+		this.listenerAdapter = listener != null ? new ListenerAdapter(listener) : null;
 		return this;
 	}
 
@@ -20,6 +20,38 @@
  */
 package org.wicketstuff.pageserializer.fast2;
 
+import java.nio.ByteBuffer;
+
+import org.apache.wicket.AttributeModifier;
+import org.apache.wicket.behavior.AttributeAppender;
+import org.apache.wicket.markup.html.TransparentWebMarkupContainer;
+import org.apache.wicket.markup.html.WebMarkupContainer;
+import org.apache.wicket.markup.html.basic.Label;
+import org.apache.wicket.markup.html.basic.MultiLineLabel;
+import org.apache.wicket.markup.html.form.Button;
+import org.apache.wicket.markup.html.form.CheckBox;
+import org.apache.wicket.markup.html.form.DropDownChoice;
+import org.apache.wicket.markup.html.form.Form;
+import org.apache.wicket.markup.html.form.HiddenField;
+import org.apache.wicket.markup.html.form.PasswordTextField;
+import org.apache.wicket.markup.html.form.TextArea;
+import org.apache.wicket.markup.html.form.TextField;
+import org.apache.wicket.markup.html.internal.HtmlHeaderContainer;
+import org.apache.wicket.markup.html.link.BookmarkablePageLink;
+import org.apache.wicket.markup.html.link.ExternalLink;
+import org.apache.wicket.markup.html.list.ListItem;
+import org.apache.wicket.markup.html.list.ListItemModel;
+import org.apache.wicket.markup.html.panel.EmptyPanel;
+import org.apache.wicket.markup.html.panel.FeedbackPanel;
+import org.apache.wicket.markup.html.panel.Fragment;
+import org.apache.wicket.model.CompoundPropertyModel;
+import org.apache.wicket.model.Model;
+import org.apache.wicket.model.PropertyModel;
+import org.apache.wicket.model.ResourceModel;
+import org.apache.wicket.model.StringResourceModel;
+import org.apache.wicket.model.util.ListModel;
+import org.apache.wicket.request.mapper.parameter.INamedParameters;
+import org.apache.wicket.request.mapper.parameter.PageParameters;
 import org.apache.wicket.serialize.ISerializer;
 import org.nustaq.serialization.FSTConfiguration;
 import org.nustaq.serialization.FSTObjectOutput;
@@ -33,10 +65,28 @@ import org.wicketstuff.pageserializer.common.listener.ISerializationListener;
 public class Fast2WicketSerializer implements ISerializer
 {
 
+	/**
+	 * Wicket classes found in most pages, registered by {@link #getWicketFSTConfiguration()} so
+	 * their names are not written. Append only: the position of a class is its id in the
+	 * serialized data.
+	 */
+	private static final Class<?>[] WICKET_CLASSES = { WebMarkupContainer.class,
+			TransparentWebMarkupContainer.class, HtmlHeaderContainer.class, Label.class,
+			MultiLineLabel.class, BookmarkablePageLink.class, ExternalLink.class, ListItem.class,
+			ListItemModel.class, EmptyPanel.class, Fragment.class, FeedbackPanel.class,
+			Form.class, TextField.class, TextArea.class, PasswordTextField.class,
+			HiddenField.class, CheckBox.class, DropDownChoice.class, Button.class, Model.class,
+			ListModel.class, PropertyModel.class, CompoundPropertyModel.class,
+			ResourceModel.class, StringResourceModel.class, PageParameters.class,
+			INamedParameters.NamedPair.class, INamedParameters.Type.class,
+			AttributeModifier.class, AttributeAppender.class };
+
 	private final FSTConfiguration fastSerializationConfig;
 
 	private ISerializationListener listener;
 
+	private ListenerAdapter listenerAdapter;
+
 	/**
 	 * Build a Fast2 serializer with a default sensible configuration.
 	 */
@@ -60,8 +110,53 @@ public class Fast2WicketSerializer implements ISerializer
 		return config;
 	}
 
+	/**
+	 * A configuration for page stores: the names of common Wicket classes are not written, and
+	 * FST's unsafe based binary coder is used where available. Data written by this configuration
+	 * can't be read by the default configuration, and only on platforms of the same byte order.
+	 */
+	public static final FSTConfiguration getWicketFSTConfiguration()
+	{
+		FSTConfiguration config;
+		try
+		{
+			config = FSTConfiguration.createFastBinaryConfiguration();
+		}
+		catch (RuntimeException | LinkageError e)
+		{
+			// no sun.misc.Unsafe, e.g. on Android
+			config = FSTConfiguration.createDefaultConfiguration();
+		}
+		config.setForceSerializable(false);
+		config.registerClass(WICKET_CLASSES);
+		return config;
+	}
+
 	@Override
 	public byte[] serialize(Object object)
+	{
+		return write(object).getCopyOfWrittenBuffer();
+	}
+
+	/**
+	 * Serializes an object without copying the written bytes. The buffer belongs to the output of
+	 * the current thread and is overwritten by its next serialization, so the bytes have to be
+	 * consumed before, e.g. written to a file channel by a page store.
+	 * 
+	 * @param object
+	 *            the object to serialize
+	 * @return a read only view of the written bytes
+	 */
+	public ByteBuffer serializeToBuffer(Object object)
+	{
+		FSTObjectOutput out = write(object);
+		return ByteBuffer.wrap(out.getBuffer(), 0, out.getWritten()).asReadOnlyBuffer();
+	}
+
+	/**
+	 * Writes to the output FST keeps for the current thread.
+	 */
+	private FSTObjectOutput write(Object object)
 	{
 		Exception exception = null;
 
@@ -71,13 +166,13 @@ public class Fast2WicketSerializer implements ISerializer
 
 			if (listener != null)
 			{
-				out.setListener(new ListenerAdapter(listener));
+				out.setListener(listenerAdapter);
 				listener.begin(object);
 			}
 			out.writeObject(object);
 			out.setListener(null);
 
-			return out.getCopyOfWrittenBuffer();
+			return out;
 		}
 		catch (Exception e)
 		{
@@ -103,6 +198,7 @@ public class Fast2WicketSerializer implements ISerializer
 	public Fast2WicketSerializer setListener(ISerializationListener listener)
 	{
 		this.listener = listener;
+		this.listenerAdapter = listener != null ? new ListenerAdapter(listener) : null;
 		return this;
 	}
 
@@ -20,6 +20,8 @@
  */
 package org.wicketstuff.pageserializer.fast2;
 
+import java.nio.ByteBuffer;
+
 import org.apache.wicket.request.mapper.parameter.PageParameters;
 import org.apache.wicket.serialize.ISerializer;
 import org.apache.wicket.util.tester.WicketTester;
@@ -116,6 +118,52 @@ public class Fast2SerializerTest
 		pageSerializer.serialize(page);
 	}
 
+	@Test
+	public void wicketConfigurationWritesLessBytes()
+	{
+		SamplePage page = tester.startPage(SamplePage.class,
+				new PageParameters().add("Test", "asString"));
+
+		Fast2WicketSerializer defaultSerializer = new Fast2WicketSerializer();
+		Fast2WicketSerializer wicketSerializer = new Fast2WicketSerializer(
+				Fast2WicketSerializer.getWicketFSTConfiguration());
+
+		byte[] defaultData = defaultSerializer.serialize(page);
+		byte[] data = wicketSerializer.serialize(page);
+		Assert.assertTrue("The data should be smaller: " + data.length + " < "
+				+ defaultData.length, data.length < defaultData.length);
+
+		Object object = wicketSerializer.deserialize(data);
+		Assert.assertTrue(
+				"The deserialized page must be of type SamplePage. Type: " + object.getClass(),
+				object instanceof SamplePage);
+	}
+
+	@Test
+	public void bufferIsNotCopied()
+	{
+		SamplePage page = tester.startPage(SamplePage.class,
+				new PageParameters().add("Test", "asString"));
+
+		Fast2WicketSerializer serializer = new Fast2WicketSerializer();
+		byte[] data = serializer.serialize(page);
+
+		ByteBuffer buffer = serializer.serializeToBuffer(page);
+		Assert.assertEquals(ByteBuffer.wrap(data), buffer);
+
+		byte[] bytes = new byte[buffer.remaining()];
+		buffer.duplicate().get(bytes);
+		Assert.assertTrue(serializer.deserialize(bytes) instanceof SamplePage);
+
+		// the view shares the output of the thread, the next serialization writes over its bytes
+		byte[] other = serializer.serialize("other");
+		Assert.assertTrue(other.length < data.length);
+		serializer.serializeToBuffer("other");
+		ByteBuffer overwritten = buffer.duplicate();
+		overwritten.limit(other.length);
+		Assert.assertEquals(ByteBuffer.wrap(other), overwritten);
+	}
+
 	private ISerializer getAndCheckSerializer()
 	{
 		ISerializer pageSerializer = tester.getApplication().getFrameworkSettings().getSerializer();
@@ -38,8 +38,10 @@ import org.apache.wicket.util.lang.Args;
 import org.apache.wicket.util.lang.Bytes;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.wicketstuff.pageserializer.kryo2.registration.ClassRegistrationTable;
 
 import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.KryoException;
 import com.esotericsoftware.kryo.Serializer;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
@@ -76,8 +78,16 @@ public class KryoSerializer implements ISerializer
 	 */
 	private static final Bytes DEFAULT_BUFFER_SIZE = Bytes.megabytes(10L);
 
+	/**
+	 * Marks data written with a {@link ClassRegistrationTable}, followed by the table version. As
+	 * the first bytes of data written without a table it would be a class id above 150 million.
+	 */
+	private static final int REGISTRATIONS_HEADER = 0xFFFFFF4B;
+
 	private final Bytes bufferSize;
 
+	private final ClassRegistrationTable registrations;
+
 	/**
 	 * Store a per thread Kryo instance (as Kryo is 
 	 * not thread safe).
@@ -98,9 +108,26 @@ public class KryoSerializer implements ISerializer
 	 * @param bufferSize The buffer size;
 	 */
 	public KryoSerializer(final Bytes bufferSize)
+	{
+		this(bufferSize, null);
+	}
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param bufferSize The buffer size;
+	 * @param registrations The classes to write as ids instead of names, see
+	 *            {@link ClassRegistrationTable#load(ClassLoader)}; may be {@code null}
+	 */
+	public KryoSerializer(final Bytes bufferSize, final ClassRegistrationTable registrations)
 	{
 		this.bufferSize = Args.notNull(bufferSize, "bufferSize");
+		this.registrations = registrations;
 		LOG.debug("Buffer size: '{}'", bufferSize);
+		if (registrations != null)
+		{
+			LOG.debug("Class registrations: version {}", registrations.version());
+		}
 	}
 
 	/**
@@ -132,6 +159,11 @@ public class KryoSerializer implements ISerializer
 		LOG.debug("Going to serialize: '{}'", object);
 		Output buffer = getBuffer(object);
 		try {
+			if (registrations != null)
+			{
+				buffer.writeInt(REGISTRATIONS_HEADER);
+				buffer.writeInt(registrations.version(), true);
+			}
 			getKryo().writeClassAndObject(buffer, object);
 			byte[] data = buffer.toBytes();
 			if (data == null)
@@ -153,6 +185,20 @@ public class KryoSerializer implements ISerializer
 	public Object deserialize(byte[] data)
 	{
 		Input buffer = new Input(data);
+		if (data.length > 4 && buffer.readInt() == REGISTRATIONS_HEADER)
+		{
+			int version = buffer.readInt(true);
+			int loaded = registrations != null ? registrations.version() : 0;
+			if (version > loaded)
+			{
+				throw new KryoException("Data was written with class registrations version " +
+					version + ", but version " + loaded + " is loaded");
+			}
+		}
+		else
+		{
+			buffer.setPosition(0);
+		}
 		Object object = getKryo().readClassAndObject(buffer);
 		LOG.debug("Deserialized: '{}'", object);
 
@@ -215,6 +261,11 @@ public class KryoSerializer implements ISerializer
 		kryo.register(Label.class);
 		kryo.register(ListView.class);
 
+		if (registrations != null)
+		{
+			registrations.register(kryo);
+		}
+
 		init(kryo);
 	}
 
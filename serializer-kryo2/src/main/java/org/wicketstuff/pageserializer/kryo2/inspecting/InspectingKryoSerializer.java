@@ -23,6 +23,7 @@ package org.wicketstuff.pageserializer.kryo2.inspecting;
 import org.apache.wicket.util.lang.Bytes;
 import org.wicketstuff.pageserializer.common.listener.ISerializationListener;
 import org.wicketstuff.pageserializer.kryo2.KryoSerializer;
+import org.wicketstuff.pageserializer.kryo2.registration.ClassRegistrationTable;
 
 import com.esotericsoftware.kryo.Kryo;
 
@@ -45,7 +46,22 @@ public class InspectingKryoSerializer extends KryoSerializer
 	 */
 	public InspectingKryoSerializer(Bytes size, ISerializationListener serializingListener)
 	{
-		super(size);
+		this(size, null, serializingListener);
+	}
+
+	/**
+	 * 
+	 * @param size
+	 *            buffer size, write will fail if buffer is to small
+	 * @param registrations
+	 *            classes written as ids, may be null
+	 * @param serializingListener
+	 *            serialization listener
+	 */
+	public InspectingKryoSerializer(Bytes size, ClassRegistrationTable registrations,
+		ISerializationListener serializingListener)
+	{
+		super(size, registrations);
 		this.serializingListener = serializingListener;
 	}
 
@@ -0,0 +1,252 @@
+/**
+ * Copyright (C)
+ * 	2008 Jeremy Thomerson <jeremy@thomersonfamily.com>
+ * 	2012 Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.pageserializer.kryo2.registration;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.esotericsoftware.kryo.Kryo;
+
+/**
+ * A table of stable Kryo class ids, generated at build time by the
+ * {@link KryoRegistrationProcessor}. Registered classes are written as a small id instead of
+ * their name.
+ * <p>
+ * The table is append only: ids are never changed or reused, classes that are gone keep their
+ * id. So the highest id is the version of the table, and a page can be read with every table of
+ * at least the version the page was written with. Ids start at {@link #FIRST_ID}, so they don't
+ * collide with the classes registered by the serializer itself.
+ * <p>
+ * Format, one class per line:
+ * 
+ * <pre>
+ * # comment
+ * 1000=com.example.HomePage
+ * 1001=com.example.Person
+ * </pre>
+ */
+public class ClassRegistrationTable
+{
+	private static final Logger LOG = LoggerFactory.getLogger(ClassRegistrationTable.class);
+
+	/**
+	 * The class path location of the generated table
+	 */
+	public static final String LOCATION = "META-INF/wicketstuff/kryo-registrations";
+
+	/**
+	 * The first id of the table
+	 */
+	public static final int FIRST_ID = 1000;
+
+	private final SortedMap<Integer, String> classNames = new TreeMap<Integer, String>();
+
+	private final Map<String, Integer> ids = new HashMap<String, Integer>();
+
+	/**
+	 * Adds a class, if not already contained.
+	 * 
+	 * @param className
+	 *            the binary name of the class
+	 * @return the id of the class
+	 */
+	public int add(String className)
+	{
+		Integer id = ids.get(className);
+		if (id == null)
+		{
+			id = classNames.isEmpty() ? FIRST_ID : classNames.lastKey() + 1;
+			put(id, className);
+		}
+		return id;
+	}
+
+	private void put(int id, String className)
+	{
+		if (id < FIRST_ID)
+		{
+			throw new IllegalArgumentException("Id " + id + " of " + className + " is below " +
+				FIRST_ID);
+		}
+		if (ids.containsKey(className) || classNames.containsKey(id))
+		{
+			throw new IllegalArgumentException("Duplicate registration " + id + "=" + className);
+		}
+		classNames.put(id, className);
+		ids.put(className, id);
+	}
+
+	/**
+	 * @return the highest id, {@code 0} for an empty table
+	 */
+	public int version()
+	{
+		return classNames.isEmpty() ? 0 : classNames.lastKey();
+	}
+
+	/**
+	 * @return the class names by id
+	 */
+	public SortedMap<Integer, String> getClassNames()
+	{
+		return Collections.unmodifiableSortedMap(classNames);
+	}
+
+	/**
+	 * Registers all classes of the table, classes which can't be loaded are skipped.
+	 * 
+	 * @param kryo
+	 *            the {@link Kryo} instance to configure
+	 */
+	public void register(Kryo kryo)
+	{
+		for (Map.Entry<Integer, String> entry : classNames.entrySet())
+		{
+			Class<?> type;
+			try
+			{
+				type = Class.forName(entry.getValue(), false, kryo.getClassLoader());
+			}
+			catch (ClassNotFoundException | LinkageError e)
+			{
+				LOG.debug("Skipping registration {}={}: {}", entry.getKey(), entry.getValue(),
+					e.toString());
+				continue;
+			}
+			kryo.register(type, entry.getKey());
+		}
+	}
+
+	/**
+	 * Writes the table.
+	 * 
+	 * @param writer
+	 *            the target
+	 * @throws IOException
+	 */
+	public void write(Writer writer) throws IOException
+	{
+		writer.write("# Kryo class registrations, append only: never change or reuse an id\n");
+		for (Map.Entry<Integer, String> entry : classNames.entrySet())
+		{
+			writer.write(entry.getKey() + "=" + entry.getValue() + "\n");
+		}
+		writer.flush();
+	}
+
+	/**
+	 * Reads a table.
+	 * 
+	 * @param reader
+	 *            the source
+	 * @return the table
+	 * @throws IOException
+	 *             if the source is not a valid table
+	 */
+	public static ClassRegistrationTable read(Reader reader) throws IOException
+	{
+		ClassRegistrationTable table = new ClassRegistrationTable();
+		BufferedReader lines = new BufferedReader(reader);
+		String line;
+		int number = 0;
+		while ((line = lines.readLine()) != null)
+		{
+			number++;
+			line = line.trim();
+			if (line.isEmpty() || line.startsWith("#"))
+			{
+				continue;
+			}
+
+			int separator = line.indexOf('=');
+			try
+			{
+				table.put(Integer.parseInt(line.substring(0, separator).trim()),
+					line.substring(separator + 1).trim());
+			}
+			catch (IndexOutOfBoundsException | IllegalArgumentException e)
+			{
+				throw new IOException("Invalid registration in line " + number + ": " + line, e);
+			}
+		}
+		return table;
+	}
+
+	/**
+	 * Loads the table generated at {@link #LOCATION}.
+	 * 
+	 * @param classLoader
+	 *            the class loader to load the table from
+	 * @return the table, empty if there is none
+	 * @throws IllegalStateException
+	 *             if there is more than one table or it can't be read
+	 */
+	public static ClassRegistrationTable load(ClassLoader classLoader)
+	{
+		List<URL> urls = new ArrayList<URL>();
+		try
+		{
+			Enumeration<URL> resources = classLoader.getResources(LOCATION);
+			while (resources.hasMoreElements())
+			{
+				urls.add(resources.nextElement());
+			}
+
+			if (urls.isEmpty())
+			{
+				LOG.warn("No class registration table found at {}", LOCATION);
+				return new ClassRegistrationTable();
+			}
+			if (urls.size() > 1)
+			{
+				// the ids of tables generated independently overlap
+				throw new IllegalStateException("More than one class registration table found: " +
+					urls);
+			}
+
+			try (Reader reader = new InputStreamReader(urls.get(0).openStream(),
+				StandardCharsets.UTF_8))
+			{
+				return read(reader);
+			}
+		}
+		catch (IOException e)
+		{
+			throw new IllegalStateException("Cannot read class registration table " + urls, e);
+		}
+	}
+}
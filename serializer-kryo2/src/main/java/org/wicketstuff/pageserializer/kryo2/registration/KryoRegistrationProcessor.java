@@ -0,0 +1,178 @@
+/**
+ * Copyright (C)
+ * 	2008 Jeremy Thomerson <jeremy@thomersonfamily.com>
+ * 	2012 Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.pageserializer.kryo2.registration;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedOptions;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+/**
+ * Generates the {@link ClassRegistrationTable} of an application at build time. All concrete
+ * serializable classes compiled, i.e. components, models and domain classes, are added to the
+ * table. The processor is registered as a service and runs when this jar is on the compile class
+ * path, but does nothing unless the table file is configured:
+ * 
+ * <pre>
+ * &lt;compilerArgs&gt;
+ *   &lt;arg&gt;-Awicketstuff.kryo.registrations=${project.basedir}/src/main/kryo-registrations&lt;/arg&gt;
+ * &lt;/compilerArgs&gt;
+ * </pre>
+ * 
+ * The table file is updated with new classes and copied to {@link ClassRegistrationTable#LOCATION}.
+ * Keep it under version control, so the ids stay stable across builds and deployments. Anonymous
+ * and local classes are not visible to annotation processors, they are still written by name.
+ * Other classes, e.g. of libraries, can be appended to the file by hand.
+ */
+@SupportedAnnotationTypes("*")
+@SupportedOptions(KryoRegistrationProcessor.TABLE_OPTION)
+public class KryoRegistrationProcessor extends AbstractProcessor
+{
+	/**
+	 * The option for the path of the table file
+	 */
+	public static final String TABLE_OPTION = "wicketstuff.kryo.registrations";
+
+	private final Set<String> classNames = new TreeSet<String>();
+
+	@Override
+	public SourceVersion getSupportedSourceVersion()
+	{
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv)
+	{
+		String tableFile = processingEnv.getOptions().get(TABLE_OPTION);
+		if (tableFile == null)
+		{
+			return false;
+		}
+
+		for (Element element : roundEnv.getRootElements())
+		{
+			collect(element);
+		}
+		if (roundEnv.processingOver() && !classNames.isEmpty())
+		{
+			writeTable(Paths.get(tableFile));
+		}
+		return false;
+	}
+
+	private void collect(Element element)
+	{
+		if (element.getKind() == ElementKind.CLASS || element.getKind() == ElementKind.ENUM)
+		{
+			TypeElement type = (TypeElement)element;
+			if (!type.getModifiers().contains(Modifier.ABSTRACT) && isSerializable(type))
+			{
+				classNames.add(processingEnv.getElementUtils().getBinaryName(type).toString());
+			}
+		}
+		for (Element enclosed : element.getEnclosedElements())
+		{
+			if (enclosed.getKind().isClass())
+			{
+				collect(enclosed);
+			}
+		}
+	}
+
+	private boolean isSerializable(TypeElement type)
+	{
+		TypeMirror serializable = processingEnv.getElementUtils()
+			.getTypeElement("java.io.Serializable")
+			.asType();
+		return processingEnv.getTypeUtils().isAssignable(
+			processingEnv.getTypeUtils().erasure(type.asType()), serializable);
+	}
+
+	private void writeTable(Path tableFile)
+	{
+		try
+		{
+			ClassRegistrationTable table = new ClassRegistrationTable();
+			if (Files.exists(tableFile))
+			{
+				try (Reader reader = Files.newBufferedReader(tableFile, StandardCharsets.UTF_8))
+				{
+					table = ClassRegistrationTable.read(reader);
+				}
+			}
+
+			int version = table.version();
+			for (String className : classNames)
+			{
+				table.add(className);
+			}
+
+			StringWriter content = new StringWriter();
+			table.write(content);
+			if (table.version() != version || !Files.exists(tableFile))
+			{
+				if (tableFile.getParent() != null)
+				{
+					Files.createDirectories(tableFile.getParent());
+				}
+				Files.write(tableFile, content.toString().getBytes(StandardCharsets.UTF_8));
+				processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE,
+					"Kryo class registrations updated to version " + table.version() + ": " +
+						tableFile);
+			}
+
+			FileObject file = processingEnv.getFiler().createResource(
+				StandardLocation.CLASS_OUTPUT, "", ClassRegistrationTable.LOCATION);
+			try (Writer writer = new OutputStreamWriter(file.openOutputStream(),
+				StandardCharsets.UTF_8))
+			{
+				writer.write(content.toString());
+			}
+		}
+		catch (IOException e)
+		{
+			processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+				"Unable to write Kryo class registrations " + tableFile + ": " + e);
+		}
+	}
+}
@@ -0,0 +1,106 @@
+/**
+ * Copyright (C)
+ * 	2008 Jeremy Thomerson <jeremy@thomersonfamily.com>
+ * 	2012 Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.pageserializer.kryo2;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.wicket.request.mapper.parameter.PageParameters;
+import org.apache.wicket.util.lang.Bytes;
+import org.apache.wicket.util.tester.WicketTester;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.wicketstuff.pageserializer.kryo2.pages.SamplePage;
+import org.wicketstuff.pageserializer.kryo2.registration.ClassRegistrationTable;
+
+/**
+ * JMH benchmark of {@link KryoSerializer} with and without the {@link ClassRegistrationTable}
+ * generated for the test classes. The page sizes are printed at setup. Run with
+ * {@link #main(String[])} from the test classpath.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class KryoSerializerBenchmark
+{
+	@Param({ "false", "true" })
+	private boolean registered;
+
+	private WicketTester tester;
+
+	private SamplePage page;
+
+	private KryoSerializer serializer;
+
+	private byte[] data;
+
+	@Setup
+	public void setUp()
+	{
+		tester = new WicketTester();
+		page = tester.startPage(SamplePage.class, new PageParameters().add("Test", "asString"));
+
+		ClassRegistrationTable registrations = registered
+			? ClassRegistrationTable.load(getClass().getClassLoader()) : null;
+		serializer = new KryoSerializer(Bytes.megabytes(1), registrations);
+		data = serializer.serialize(page);
+		System.out.println("Page size (registered=" + registered + "): " + data.length + " bytes");
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		tester.destroy();
+	}
+
+	@Benchmark
+	public byte[] serialize()
+	{
+		return serializer.serialize(page);
+	}
+
+	@Benchmark
+	public Object deserialize()
+	{
+		return serializer.deserialize(data);
+	}
+
+	public static void main(String[] args) throws RunnerException
+	{
+		new Runner(new OptionsBuilder().include(KryoSerializerBenchmark.class.getSimpleName())
+			.build()).run();
+	}
+}
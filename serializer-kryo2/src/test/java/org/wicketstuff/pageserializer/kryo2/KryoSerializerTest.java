@@ -27,8 +27,10 @@ import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import org.apache.wicket.util.lang.Bytes;
 import org.wicketstuff.pageserializer.kryo2.pages.NotSerializablePage;
 import org.wicketstuff.pageserializer.kryo2.pages.SamplePage;
+import org.wicketstuff.pageserializer.kryo2.registration.ClassRegistrationTable;
 
 import com.esotericsoftware.kryo.KryoException;
 
@@ -118,6 +120,38 @@ public class KryoSerializerTest
 		byte[] data = pageSerializer.serialize(page);
 	}
 
+	@Test
+	public void registeredClassesAreWrittenAsIds()
+	{
+		SamplePage page = tester.startPage(SamplePage.class,
+			new PageParameters().add("Test", "asString"));
+
+		ClassRegistrationTable table = ClassRegistrationTable.load(getClass().getClassLoader());
+		KryoSerializer registered = new KryoSerializer(Bytes.megabytes(1), table);
+		KryoSerializer unregistered = new KryoSerializer(Bytes.megabytes(1));
+
+		byte[] data = registered.serialize(page);
+		byte[] legacyData = unregistered.serialize(page);
+		Assert.assertTrue("The data should be smaller: " + data.length + " < " + legacyData.length,
+			data.length < legacyData.length);
+
+		Assert.assertTrue(registered.deserialize(data) instanceof SamplePage);
+		// pages written before the table was introduced stay readable
+		Assert.assertTrue(registered.deserialize(legacyData) instanceof SamplePage);
+	}
+
+	@Test(expected = KryoException.class)
+	public void newerRegistrationsAreRejected()
+	{
+		SamplePage page = tester.startPage(SamplePage.class,
+			new PageParameters().add("Test", "asString"));
+
+		ClassRegistrationTable table = ClassRegistrationTable.load(getClass().getClassLoader());
+		byte[] data = new KryoSerializer(Bytes.megabytes(1), table).serialize(page);
+
+		new KryoSerializer(Bytes.megabytes(1), new ClassRegistrationTable()).deserialize(data);
+	}
+
 	private ISerializer getAndCheckSerializer()
 	{
 		ISerializer pageSerializer = tester.getApplication().getFrameworkSettings().getSerializer();
@@ -0,0 +1,70 @@
+/**
+ * Copyright (C)
+ * 	2008 Jeremy Thomerson <jeremy@thomersonfamily.com>
+ * 	2012 Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.pageserializer.kryo2.registration;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.wicketstuff.pageserializer.kryo2.pages.ListViewPage;
+
+public class ClassRegistrationTableTest
+{
+	@Test
+	public void idsAreAppended() throws IOException
+	{
+		ClassRegistrationTable table = new ClassRegistrationTable();
+		Assert.assertEquals(0, table.version());
+		Assert.assertEquals(1000, table.add("a.A"));
+		Assert.assertEquals(1001, table.add("a.B"));
+		Assert.assertEquals(1000, table.add("a.A"));
+
+		StringWriter writer = new StringWriter();
+		table.write(writer);
+
+		ClassRegistrationTable read = ClassRegistrationTable.read(new StringReader(
+			writer.toString() + "1005=a.C\n"));
+		Assert.assertEquals(1005, read.version());
+		Assert.assertEquals(1006, read.add("a.D"));
+		Assert.assertEquals("a.B", read.getClassNames().get(1001));
+	}
+
+	@Test(expected = IOException.class)
+	public void duplicateClassIsRejected() throws IOException
+	{
+		ClassRegistrationTable.read(new StringReader("1000=a.A\n1001=a.A\n"));
+	}
+
+	@Test(expected = IOException.class)
+	public void idBelowFirstIdIsRejected() throws IOException
+	{
+		ClassRegistrationTable.read(new StringReader("10=a.A\n"));
+	}
+
+	@Test
+	public void generatedTableIsLoaded()
+	{
+		ClassRegistrationTable table = ClassRegistrationTable.load(getClass().getClassLoader());
+		Assert.assertTrue(table.getClassNames().containsValue(ListViewPage.class.getName()));
+	}
+}
@@ -16,20 +16,27 @@
  */
 package org.wicketstuff.shiro.wicket.page.store;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
-import java.util.TreeMap;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+import org.apache.shiro.session.Session;
 import org.apache.wicket.util.io.IClusterable;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 /**
+ * The index of the pages a {@link SessionPageStore} keeps in a session. The serialized pages are
+ * not part of the cache: each one lives in its own session attribute, so that storing a page only
+ * replicates that page and this small index instead of every page of the session.
+ * <p/>
+ * The index is ordered by access. Storing a page evicts the least recently used pages once the
+ * number of pages or their total size exceeds the limits; the most recently stored page is always
+ * kept.
+ * <p/>
  * continues effort started by Richard Wilkinson (<a
  * href="http://www.nabble.com/file/p18280052/TerracottaPageStore.java">to support TerraCotta</a>,
  * but the architecture has been separated into multiple classes, along with other
@@ -42,108 +49,239 @@ public class PageCache implements IClusterable
 {
 	private static final long serialVersionUID = 1L;
 
-	private static final Logger LOG = LoggerFactory.getLogger(PageCache.class);
+	/**
+	 * The size in bytes of each page, in access order. Not final, so that it can be initialized
+	 * when an index written by an older version is read.
+	 */
+	private LinkedHashMap<Integer, Integer> pageSizes = newPageSizes();
 
-	private final ReentrantReadWriteLock rwl = new ReentrantReadWriteLock();
-	private final Lock read = rwl.readLock();
-	private final Lock write = rwl.writeLock();
+	private int maxPages;
 
-	private final LinkedHashMap<Integer, SerializedPageWrapper> pages = new LinkedHashMap<Integer, SerializedPageWrapper>();
-	private final TreeMap<Integer, Integer> pageKeys = new TreeMap<Integer, Integer>();
+	private long maxBytes;
 
-	private final AtomicInteger id = new AtomicInteger(Integer.MIN_VALUE);
+	private long totalBytes;
 
-	private final int MAX_SIZE;
+	/**
+	 * The last entry of {@link #pageSizes}, to tell cheaply whether a read changes the order.
+	 */
+	private transient Integer mostRecentPageId;
 
-	public PageCache(final int maxSize)
+	/**
+	 * @param maxPages
+	 *            the maximum number of pages, {@link SessionPageStore#DEFAULT_MAX_PAGES} for no
+	 *            limit
+	 */
+	public PageCache(final int maxPages)
 	{
-		MAX_SIZE = maxSize;
+		this(maxPages, SessionPageStore.DEFAULT_MAX_BYTES);
 	}
 
-	public boolean containsPage(final int pageId)
+	/**
+	 * @param maxPages
+	 *            the maximum number of pages, {@link SessionPageStore#DEFAULT_MAX_PAGES} for no
+	 *            limit
+	 * @param maxBytes
+	 *            the maximum total size of the serialized pages,
+	 *            {@link SessionPageStore#DEFAULT_MAX_BYTES} for no limit
+	 */
+	public PageCache(final int maxPages, final long maxBytes)
 	{
-		read.lock();
-		try
-		{
-			return pageKeys.containsKey(pageId);
-		}
-		finally
-		{
-			read.unlock();
-		}
+		this.maxPages = maxPages;
+		this.maxBytes = maxBytes;
+	}
+
+	public synchronized boolean containsPage(final int pageId)
+	{
+		return pageSizes.containsKey(pageId);
 	}
 
+	/**
+	 * Marks a page as most recently used.
+	 * 
+	 * @param pageId
+	 * @return {@code true} if the page is in the cache
+	 */
+	public synchronized boolean touchPage(final int pageId)
+	{
+		if (pageSizes.get(pageId) == null)
+			return false;
+		mostRecentPageId = pageId;
+		return true;
+	}
+
+	/**
+	 * @param pageId
+	 * @return {@code true} if the page is the most recently used one, i.e. touching it would not
+	 *         change the index
+	 */
+	public synchronized boolean isMostRecentlyUsed(final int pageId)
+	{
+		return mostRecentPageId != null && mostRecentPageId == pageId;
+	}
+
+	/**
+	 * @param pageId
+	 * @return {@code true} if the page was in the cache
+	 */
+	public synchronized boolean removePage(final int pageId)
+	{
+		final Integer size = pageSizes.remove(pageId);
+		if (size == null)
+			return false;
+		totalBytes -= size;
+		if (mostRecentPageId != null && mostRecentPageId == pageId)
+			mostRecentPageId = findMostRecentPageId();
+		return true;
+	}
+
+	/**
+	 * Returns a page of the current Shiro session and marks it as most recently used.
+	 * 
+	 * @param pageId
+	 * @return the page or {@code null} if it is not in the current session
+	 * @deprecated pages are stored in session attributes of their own, use
+	 *             {@link SessionPageStore#getPage(String, int)}
+	 */
+	@Deprecated
 	public SerializedPageWrapper getPage(final int pageId)
 	{
-		read.lock();
-		try
-		{
-			return pages.get(pageId);
-		}
-		finally
-		{
-			read.unlock();
-		}
+		final Session session = SessionPageStore.getCurrentSession();
+		final PageCacheManager pcc = SessionPageStore.getPageCacheManager(session, this);
+		return pcc != null ? SessionPageStore.readPage(session, pcc, pageId) : null;
 	}
 
+	/**
+	 * Removes a page from this index and from the current Shiro session.
+	 * 
+	 * @param pageId
+	 * @deprecated use {@link SessionPageStore#removePage(String, int)}, or
+	 *             {@link #removePage(int)} to only update the index
+	 */
+	@Deprecated
 	public void removePage(final Integer pageId)
 	{
-		write.lock();
-		try
-		{
-			pages.remove(pageId);
-		}
-		finally
+		final Session session = SessionPageStore.getCurrentSession();
+		final PageCacheManager pcc = SessionPageStore.getPageCacheManager(session, this);
+		if (pcc != null)
+			SessionPageStore.deletePage(session, pcc, pageId);
+		else
+			removePage(pageId.intValue());
+	}
+
+	/**
+	 * Stores a page in the current Shiro session and adds it to this index.
+	 * 
+	 * @param wrapper
+	 * @deprecated use {@link SessionPageStore#storePage(String, org.apache.wicket.page.IManageablePage)}, or
+	 *             {@link #storePage(int, int)} to only update the index
+	 */
+	@Deprecated
+	public void storePages(final SerializedPageWrapper wrapper)
+	{
+		final Session session = SessionPageStore.getCurrentSession();
+		final PageCacheManager pcc = SessionPageStore.getPageCacheManager(session, this);
+		if (pcc != null)
+			SessionPageStore.writePage(session, pcc, wrapper);
+		else
+			storePage(wrapper.getPageId(), wrapper.getPage().length);
+	}
+
+	/**
+	 * Adds or replaces a page as the most recently used one and evicts pages beyond the limits.
+	 * 
+	 * @param pageId
+	 * @param size
+	 *            the size of the serialized page in bytes
+	 * @return the ids of the evicted pages
+	 */
+	public synchronized List<Integer> storePage(final int pageId, final int size)
+	{
+		final Integer previous = pageSizes.put(pageId, size);
+		totalBytes += size - (previous != null ? previous : 0);
+		mostRecentPageId = pageId;
+
+		List<Integer> evicted = Collections.emptyList();
+		final Iterator<Map.Entry<Integer, Integer>> iter = pageSizes.entrySet().iterator();
+		while (pageSizes.size() > 1 && isOverLimit())
 		{
-			write.unlock();
+			final Map.Entry<Integer, Integer> eldest = iter.next();
+			iter.remove();
+			totalBytes -= eldest.getValue();
+			if (evicted.isEmpty())
+				evicted = new ArrayList<Integer>();
+			evicted.add(eldest.getKey());
 		}
+		return evicted;
 	}
 
-	public void storePages(final SerializedPageWrapper wrapper)
+	private Integer findMostRecentPageId()
+	{
+		Integer last = null;
+		for (final Integer pageId : pageSizes.keySet())
+			last = pageId;
+		return last;
+	}
+
+	private boolean isOverLimit()
+	{
+		return (maxPages != SessionPageStore.DEFAULT_MAX_PAGES && pageSizes.size() > maxPages) ||
+			(maxBytes != SessionPageStore.DEFAULT_MAX_BYTES && totalBytes > maxBytes);
+	}
+
+	/**
+	 * @return the ids of all pages, least recently used first
+	 */
+	public synchronized List<Integer> getPageIds()
+	{
+		return new ArrayList<Integer>(pageSizes.keySet());
+	}
+
+	public synchronized int size()
+	{
+		return pageSizes.size();
+	}
+
+	public synchronized long getTotalBytes()
+	{
+		return totalBytes;
+	}
+
+	private static LinkedHashMap<Integer, Integer> newPageSizes()
+	{
+		return new LinkedHashMap<Integer, Integer>(16, 0.75f, true);
+	}
+
+	private void readObject(final ObjectInputStream in) throws IOException, ClassNotFoundException
 	{
-		write.lock();
-		try
+		final ObjectInputStream.GetField fields = in.readFields();
+		if (fields.defaulted("pageSizes"))
 		{
-			// reduce size of page store to within set size if required
-			if (MAX_SIZE != SessionPageStore.DEFAULT_MAX_PAGES)
-			{
-				int numToRemove = pages.size() + 1 - MAX_SIZE;
-				if (numToRemove > 0)
-				{
-					final Iterator<Map.Entry<Integer, SerializedPageWrapper>> iter = pages.entrySet()
-						.iterator();
-					while (iter.hasNext() && numToRemove > 0)
-					{
-						final Map.Entry<Integer, SerializedPageWrapper> entry = iter.next();
-						iter.remove();
-						pageKeys.remove(entry.getKey());
-						numToRemove--;
-					}
-				}
-			}
-			final Integer pageKey = wrapper.getPageId();
-			// remove to preserve access order
-			pages.remove(pageKey);
-			pages.put(pageKey, wrapper);
-			pageKeys.put(pageKey, id.getAndIncrement());
+			// written by a version that kept the pages themselves, which cannot be restored
+			pageSizes = newPageSizes();
+			maxPages = fields.get("MAX_SIZE", SessionPageStore.DEFAULT_MAX_PAGES);
+			maxBytes = SessionPageStore.DEFAULT_MAX_BYTES;
+			totalBytes = 0;
 		}
-		finally
+		else
 		{
-			write.unlock();
+			pageSizes = (LinkedHashMap<Integer, Integer>)fields.get("pageSizes", null);
+			maxPages = fields.get("maxPages", SessionPageStore.DEFAULT_MAX_PAGES);
+			maxBytes = fields.get("maxBytes", SessionPageStore.DEFAULT_MAX_BYTES);
+			totalBytes = fields.get("totalBytes", 0L);
 		}
+		mostRecentPageId = findMostRecentPageId();
 	}
 
 	/**
 	 * {@inheritDoc}
 	 */
 	@Override
-	public String toString()
+	public synchronized String toString()
 	{
 		final StringBuilder sb = new StringBuilder();
-		for (final Entry<Integer, SerializedPageWrapper> entry : pages.entrySet())
-			sb.append("\t").append(entry.getKey().toString()).append("\n");
-		if (LOG.isTraceEnabled())
-			sb.append("\tPageKeys TreeSet: ").append(pageKeys.toString());
+		for (final Map.Entry<Integer, Integer> entry : pageSizes.entrySet())
+			sb.append("\t").append(entry.getKey()).append(" (").append(entry.getValue())
+				.append(" bytes)\n");
 		return sb.toString();
 	}
 }
@@ -37,9 +37,14 @@ public class PageCacheManager implements IClusterable
 	private final int MAX_PAGES_PER_MAP;
 
 	public PageCacheManager(final int maxNumPagesPerMap)
+	{
+		this(maxNumPagesPerMap, SessionPageStore.DEFAULT_MAX_BYTES);
+	}
+
+	public PageCacheManager(final int maxNumPagesPerMap, final long maxBytesPerMap)
 	{
 		MAX_PAGES_PER_MAP = maxNumPagesPerMap;
-		cache = new PageCache(MAX_PAGES_PER_MAP);
+		cache = new PageCache(MAX_PAGES_PER_MAP, maxBytesPerMap);
 	}
 
 	public PageCache getPageCache()
@@ -17,6 +17,7 @@
 package org.wicketstuff.shiro.wicket.page.store;
 
 import java.io.Serializable;
+import java.util.List;
 
 import org.apache.shiro.SecurityUtils;
 import org.apache.shiro.session.Session;
@@ -47,6 +48,11 @@ import org.slf4j.LoggerFactory;
  * href="http://en.wikipedia.org/wiki/Load_balancing_(computing)#Persistence">sticky sessions</a> -
  * the Wicket PageMap can be updated on one host which is then available for any next load-balanced
  * request on another host because the {@code Session} is clustered.
+ * <p/>
+ * Every page is stored in a session attribute of its own, next to a small {@link PageCache index}
+ * of the pages in least recently used order. Storing a page therefore only updates that page and
+ * the index, so session replication does not have to copy all pages of the session on every
+ * request. The number of pages as well as their total serialized size can be limited.
  * 
  * @author Les Hazlewood
  * @author <a href="http://sebthom.de/">Sebastian Thomschke</a>
@@ -57,10 +63,17 @@ public class SessionPageStore implements IPageStore
 	private static final String PAGE_MAP_SESSION_KEY = SessionPageStore.class.getName() +
 		"_PAGE_CACHE_MANAGER_SESSION_KEY";
 
+	private static final String PAGE_SESSION_KEY_PREFIX = SessionPageStore.class.getName() +
+		"_PAGE_";
+
 	protected static final int DEFAULT_MAX_PAGES = -1;
 
+	protected static final long DEFAULT_MAX_BYTES = -1;
+
 	private final int MAX_PAGE_MAP_SIZE;
 
+	private final long MAX_PAGE_MAP_BYTES;
+
 	public SessionPageStore()
 	{
 		this(DEFAULT_MAX_PAGES);
@@ -68,6 +81,28 @@ public class SessionPageStore implements IPageStore
 
 	public SessionPageStore(final int maxPageMapSize)
 	{
+		this(maxPageMapSize, DEFAULT_MAX_BYTES);
+	}
+
+	/**
+	 * @param maxPageMapSize
+	 *            the maximum number of pages per session, {@code -1} for no limit
+	 * @param maxPageMapBytes
+	 *            the maximum total size in bytes of the serialized pages per session, {@code -1}
+	 *            for no limit
+	 */
+	public SessionPageStore(final int maxPageMapSize, final long maxPageMapBytes)
+	{
+		if (maxPageMapBytes < 1)
+		{
+			MAX_PAGE_MAP_BYTES = DEFAULT_MAX_BYTES;
+		}
+		else
+		{
+			MAX_PAGE_MAP_BYTES = maxPageMapBytes;
+			LOG.info("Created SessionPageStore: [{}] maximum bytes of pages allowed.",
+				maxPageMapBytes);
+		}
 		if (maxPageMapSize < -1)
 		{
 			MAX_PAGE_MAP_SIZE = DEFAULT_MAX_PAGES;
@@ -124,27 +159,107 @@ public class SessionPageStore implements IPageStore
 		return MAX_PAGE_MAP_SIZE;
 	}
 
+	public long getMaxPageMapBytes()
+	{
+		return MAX_PAGE_MAP_BYTES;
+	}
+
     @Override
 	public Page getPage(final String sessionId, final int pageId)
 	{
-		final SerializedPageWrapper wrapper = getPageCacheManager(sessionId).getPageCache()
-			.getPage(pageId);
-		final byte[] sPage = wrapper != null ? (byte[])wrapper.getPage() : null;
+		final Session session = getSessionForUpdate(sessionId);
+		final SerializedPageWrapper wrapper = readPage(session, getPageCacheManager(session), pageId);
+		final byte[] sPage = wrapper != null ? wrapper.getPage() : null;
 		return (Page)(sPage != null ? deserializePage(sPage) : null);
 	}
 
+	/**
+	 * Reads a page and marks it as most recently used. The index is only written back to the
+	 * session if that changed it, so reading the current page does not replicate the index.
+	 */
+	static SerializedPageWrapper readPage(final Session session, final PageCacheManager pcc,
+		final int pageId)
+	{
+		final PageCache cache = pcc.getPageCache();
+		final boolean unchanged = cache.isMostRecentlyUsed(pageId);
+		if (!cache.touchPage(pageId))
+			return null;
+
+		final SerializedPageWrapper wrapper = (SerializedPageWrapper)session.getAttribute(pageKey(pageId));
+		if (wrapper == null)
+		{
+			// the attribute got lost, e.g. by a partial replication
+			cache.removePage(pageId);
+			session.setAttribute(PAGE_MAP_SESSION_KEY, pcc);
+		}
+		else if (!unchanged)
+		{
+			// written back for the changed access order
+			session.setAttribute(PAGE_MAP_SESSION_KEY, pcc);
+		}
+		return wrapper;
+	}
+
+	static void writePage(final Session session, final PageCacheManager pcc,
+		final SerializedPageWrapper wrapper)
+	{
+		final List<Integer> evicted = pcc.getPageCache().storePage(wrapper.getPageId(),
+			wrapper.getPage().length);
+		for (final Integer pageId : evicted)
+			session.removeAttribute(pageKey(pageId));
+		session.setAttribute(pageKey(wrapper.getPageId()), wrapper);
+		session.setAttribute(PAGE_MAP_SESSION_KEY, pcc);
+	}
+
+	static void deletePage(final Session session, final PageCacheManager pcc, final int pageId)
+	{
+		if (pcc.getPageCache().removePage(pageId))
+			session.setAttribute(PAGE_MAP_SESSION_KEY, pcc);
+		session.removeAttribute(pageKey(pageId));
+	}
+
+	/**
+	 * @return the session of the current subject or {@code null} if there is none
+	 */
+	static Session getCurrentSession()
+	{
+		final Subject subject = SecurityUtils.getSubject();
+		return subject != null ? subject.getSession(false) : null;
+	}
+
+	/**
+	 * @return the manager of the given cache in the session or {@code null} if the cache is not
+	 *         the one of the session
+	 */
+	static PageCacheManager getPageCacheManager(final Session session, final PageCache cache)
+	{
+		if (session == null)
+			return null;
+		final PageCacheManager pcc = (PageCacheManager)session.getAttribute(PAGE_MAP_SESSION_KEY);
+		return pcc != null && pcc.getPageCache() == cache ? pcc : null;
+	}
+
 	protected PageCacheManager getPageCacheManager(final String sessionId)
 	{
-		final Session session = getSessionForUpdate(sessionId);
+		return getPageCacheManager(getSessionForUpdate(sessionId));
+	}
+
+	private PageCacheManager getPageCacheManager(final Session session)
+	{
 		PageCacheManager pcc = (PageCacheManager)session.getAttribute(PAGE_MAP_SESSION_KEY);
 		if (pcc == null)
 		{
-			pcc = new PageCacheManager(getMaxPageMapSize());
+			pcc = new PageCacheManager(getMaxPageMapSize(), getMaxPageMapBytes());
 			session.setAttribute(PAGE_MAP_SESSION_KEY, pcc);
 		}
 		return pcc;
 	}
 
+	private static String pageKey(final int pageId)
+	{
+		return PAGE_SESSION_KEY_PREFIX + pageId;
+	}
+
 	protected Session getSession(final String sessionId)
 	{
 		Session session = null;
@@ -197,7 +312,8 @@ public class SessionPageStore implements IPageStore
 		if (pageId != -1)
 		{
 			LOG.debug("Removing page with id [{}]", pageId);
-			getPageCacheManager(sessionId).getPageCache().removePage(pageId);
+			final Session session = getSessionForUpdate(sessionId);
+			deletePage(session, getPageCacheManager(session), pageId);
 		}
 	}
 
@@ -232,7 +348,8 @@ public class SessionPageStore implements IPageStore
 	public void storePage(final String sessionId, final IManageablePage page)
 	{
 		final SerializedPageWrapper wrapper = serialize(sessionId, page);
-		getPageCacheManager(sessionId).getPageCache().storePages(wrapper);
+		final Session session = getSessionForUpdate(sessionId);
+		writePage(session, getPageCacheManager(session), wrapper);
 		if (LOG.isDebugEnabled())
 			LOG.debug("storePage {}", page.toString());
 	}
@@ -245,7 +362,11 @@ public class SessionPageStore implements IPageStore
 		{
 			final Object existing = active.removeAttribute(PAGE_MAP_SESSION_KEY);
 			if (existing != null)
+			{
+				for (final Integer pageId : ((PageCacheManager)existing).getPageCache().getPageIds())
+					active.removeAttribute(pageKey(pageId));
 				LOG.debug("Removed PageMap [{}] from the Session (destroying)", existing);
+			}
 		}
 	}
 
@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.shiro.wicket.page.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+public class PageCacheTest
+{
+	@Test
+	public void evictsLeastRecentlyUsedPageBeyondMaxPages()
+	{
+		final PageCache cache = new PageCache(2);
+		cache.storePage(1, 10);
+		cache.storePage(2, 10);
+		assertTrue(cache.touchPage(1));
+
+		assertEquals(Collections.singletonList(2), cache.storePage(3, 10));
+		assertEquals(Arrays.asList(1, 3), cache.getPageIds());
+		assertFalse(cache.containsPage(2));
+	}
+
+	@Test
+	public void evictsPagesBeyondMaxBytes()
+	{
+		final PageCache cache = new PageCache(SessionPageStore.DEFAULT_MAX_PAGES, 100);
+		cache.storePage(1, 40);
+		cache.storePage(2, 40);
+
+		assertEquals(Collections.singletonList(1), cache.storePage(3, 40));
+		assertEquals(80, cache.getTotalBytes());
+		assertEquals(Arrays.asList(2, 3), cache.storePage(4, 150));
+		assertEquals(Collections.singletonList(4), cache.getPageIds());
+		assertEquals(150, cache.getTotalBytes());
+	}
+
+	@Test
+	public void replacingPageUpdatesSize()
+	{
+		final PageCache cache = new PageCache(SessionPageStore.DEFAULT_MAX_PAGES);
+		cache.storePage(1, 40);
+		cache.storePage(1, 25);
+
+		assertEquals(1, cache.size());
+		assertEquals(25, cache.getTotalBytes());
+	}
+
+	@Test
+	public void removePageForgetsPage()
+	{
+		final PageCache cache = new PageCache(SessionPageStore.DEFAULT_MAX_PAGES);
+		cache.storePage(1, 40);
+
+		assertTrue(cache.removePage(1));
+		assertFalse(cache.containsPage(1));
+		assertFalse(cache.removePage(1));
+		assertEquals(0, cache.getTotalBytes());
+	}
+
+	@Test
+	public void serializationKeepsAccessOrder() throws Exception
+	{
+		final PageCache cache = new PageCache(3, 100);
+		cache.storePage(1, 10);
+		cache.storePage(2, 10);
+		cache.touchPage(1);
+
+		final PageCache copy = (PageCache)read(new ByteArrayInputStream(write(cache)));
+
+		assertEquals(Arrays.asList(2, 1), copy.getPageIds());
+		assertEquals(20, copy.getTotalBytes());
+		assertTrue(copy.isMostRecentlyUsed(1));
+		assertFalse(copy.isMostRecentlyUsed(2));
+		copy.storePage(3, 10);
+		assertEquals(Collections.singletonList(2), copy.storePage(4, 10));
+	}
+
+	/**
+	 * A cache written by the version that kept the serialized pages itself, limited to 5 pages and
+	 * holding page 7.
+	 */
+	@Test
+	public void readsCacheOfPreviousVersionAsEmptyIndex() throws Exception
+	{
+		final InputStream in = getClass().getResourceAsStream("PageCache-unindexed.ser");
+		final PageCache cache;
+		try
+		{
+			cache = (PageCache)read(in);
+		}
+		finally
+		{
+			in.close();
+		}
+
+		assertEquals(0, cache.size());
+		assertFalse(cache.containsPage(7));
+		for (int pageId = 1; pageId <= 5; pageId++)
+			assertTrue(cache.storePage(pageId, 10).isEmpty());
+		assertEquals(Collections.singletonList(1), cache.storePage(6, 10));
+	}
+
+	private static byte[] write(final Object object) throws IOException
+	{
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final ObjectOutputStream oos = new ObjectOutputStream(out);
+		oos.writeObject(object);
+		oos.close();
+		return out.toByteArray();
+	}
+
+	private static Object read(final InputStream in) throws Exception
+	{
+		return new ObjectInputStream(in).readObject();
+	}
+}
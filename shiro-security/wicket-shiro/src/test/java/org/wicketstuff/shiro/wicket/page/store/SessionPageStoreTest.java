@@ -0,0 +1,239 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.shiro.wicket.page.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.shiro.session.Session;
+import org.apache.shiro.subject.Subject;
+import org.apache.shiro.util.ThreadContext;
+import org.apache.wicket.Page;
+import org.apache.wicket.markup.html.WebPage;
+import org.apache.wicket.util.tester.WicketTester;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SessionPageStoreTest
+{
+	private static final String SESSION_ID = "session";
+
+	private static final String INDEX_KEY = SessionPageStore.class.getName() +
+		"_PAGE_CACHE_MANAGER_SESSION_KEY";
+
+	private WicketTester tester;
+
+	private SessionAttributes attributes;
+
+	private SessionPageStore store;
+
+	@Before
+	public void before()
+	{
+		tester = new WicketTester();
+		attributes = new SessionAttributes();
+		store = newStore(2);
+	}
+
+	@After
+	public void after()
+	{
+		ThreadContext.unbindSubject();
+		tester.destroy();
+	}
+
+	@Test
+	public void storesEachPageInItsOwnAttribute()
+	{
+		final Page first = storeNewPage();
+		final Page second = storeNewPage();
+
+		assertNotNull(attributes.values.get(pageKey(first)));
+		assertNotNull(attributes.values.get(pageKey(second)));
+		assertEquals(first.getPageId(), store.getPage(SESSION_ID, first.getPageId()).getPageId());
+		assertTrue(store.containsPage(SESSION_ID, second.getPageId()));
+	}
+
+	@Test
+	public void evictedPagesAreRemovedFromSession()
+	{
+		final Page first = storeNewPage();
+		storeNewPage();
+		storeNewPage();
+
+		assertNull(attributes.values.get(pageKey(first)));
+		assertFalse(store.containsPage(SESSION_ID, first.getPageId()));
+		assertNull(store.getPage(SESSION_ID, first.getPageId()));
+	}
+
+	@Test
+	public void readingMostRecentPageDoesNotRewriteIndex()
+	{
+		final Page first = storeNewPage();
+		final Page second = storeNewPage();
+		final int writes = attributes.indexWrites;
+
+		store.getPage(SESSION_ID, second.getPageId());
+		assertEquals(writes, attributes.indexWrites);
+
+		// changes the access order
+		store.getPage(SESSION_ID, first.getPageId());
+		assertEquals(writes + 1, attributes.indexWrites);
+
+		store.getPage(SESSION_ID, first.getPageId());
+		assertEquals(writes + 1, attributes.indexWrites);
+	}
+
+	@Test
+	public void lostPageAttributeIsRemovedFromIndex()
+	{
+		final Page page = storeNewPage();
+		attributes.values.remove(pageKey(page));
+
+		assertNull(store.getPage(SESSION_ID, page.getPageId()));
+		assertFalse(store.containsPage(SESSION_ID, page.getPageId()));
+	}
+
+	@Test
+	public void removePageAndUnbindClearAttributes()
+	{
+		final Page first = storeNewPage();
+		final Page second = storeNewPage();
+
+		store.removePage(SESSION_ID, first.getPageId());
+		assertNull(attributes.values.get(pageKey(first)));
+		assertFalse(store.containsPage(SESSION_ID, first.getPageId()));
+
+		store.unbind(SESSION_ID);
+		assertNull(attributes.values.get(pageKey(second)));
+		assertNull(attributes.values.get(INDEX_KEY));
+	}
+
+	@Test
+	@SuppressWarnings("deprecation")
+	public void deprecatedPageCacheMethodsUseCurrentSession()
+	{
+		final Page page = storeNewPage();
+		final PageCache cache = store.getPageCacheManager(SESSION_ID).getPageCache();
+		final Session session = store.getSession(SESSION_ID);
+		ThreadContext.bind((Subject)Proxy.newProxyInstance(getClass().getClassLoader(),
+			new Class<?>[] { Subject.class }, new InvocationHandler()
+			{
+				@Override
+				public Object invoke(final Object proxy, final Method method, final Object[] args)
+				{
+					if ("getSession".equals(method.getName()))
+						return session;
+					throw new UnsupportedOperationException(method.getName());
+				}
+			}));
+
+		final SerializedPageWrapper wrapper = cache.getPage(page.getPageId());
+		assertNotNull(wrapper);
+
+		cache.removePage(Integer.valueOf(page.getPageId()));
+		assertNull(attributes.values.get(pageKey(page)));
+		assertFalse(cache.containsPage(page.getPageId()));
+
+		cache.storePages(wrapper);
+		assertNotNull(attributes.values.get(pageKey(page)));
+		assertTrue(cache.containsPage(page.getPageId()));
+	}
+
+	private Page storeNewPage()
+	{
+		final Page page = new TestPage();
+		store.storePage(SESSION_ID, page);
+		return page;
+	}
+
+	private static String pageKey(final Page page)
+	{
+		return SessionPageStore.class.getName() + "_PAGE_" + page.getPageId();
+	}
+
+	private SessionPageStore newStore(final int maxPages)
+	{
+		final Session session = attributes.newSession();
+		return new SessionPageStore(maxPages)
+		{
+			@Override
+			protected Session getSession(final String sessionId)
+			{
+				return session;
+			}
+
+			@Override
+			protected Session getSessionForUpdate(final String sessionId)
+			{
+				return session;
+			}
+		};
+	}
+
+	private static class TestPage extends WebPage
+	{
+		private static final long serialVersionUID = 1L;
+	}
+
+	/**
+	 * The attributes of a Shiro session, counting the writes of the page index.
+	 */
+	private static class SessionAttributes
+	{
+		private final Map<Object, Object> values = new HashMap<Object, Object>();
+
+		private int indexWrites;
+
+		private Session newSession()
+		{
+			return (Session)Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] { Session.class }, new InvocationHandler()
+				{
+					@Override
+					public Object invoke(final Object proxy, final Method method, final Object[] args)
+					{
+						final String name = method.getName();
+						if ("getId".equals(name))
+							return SESSION_ID;
+						if ("getAttribute".equals(name))
+							return values.get(args[0]);
+						if ("setAttribute".equals(name))
+						{
+							if (INDEX_KEY.equals(args[0]))
+								indexWrites++;
+							values.put(args[0], args[1]);
+							return null;
+						}
+						if ("removeAttribute".equals(name))
+							return values.remove(args[0]);
+						throw new UnsupportedOperationException(name);
+					}
+				});
+		}
+	}
+}
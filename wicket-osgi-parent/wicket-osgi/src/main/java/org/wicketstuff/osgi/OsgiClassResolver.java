@@ -6,6 +6,9 @@ import java.net.URL;
 import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -13,6 +16,11 @@ import org.apache.wicket.Application;
 import org.apache.wicket.WicketRuntimeException;
 import org.apache.wicket.application.DefaultClassResolver;
 import org.apache.wicket.application.IClassResolver;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.FrameworkUtil;
+import org.osgi.framework.SynchronousBundleListener;
 
 /**
  * A class resolver to be used for Wicket page deserialization in an OSGi context. This is a
@@ -27,6 +35,12 @@ import org.apache.wicket.application.IClassResolver;
  * 
  * The OsgiClassResolver is able to access all classes visible to the application bundle, which may
  * not cover all use cases, but is a reasonable default.
+ * <p>
+ * When created with the application's {@link BundleContext}, the resolver follows the bundle
+ * lifecycle: classes of a bundle being updated or uninstalled are dropped from the cache, and class
+ * names which could not be resolved are remembered until another bundle is resolved, so repeated
+ * lookups of missing classes do not search the bundle wiring again. Only the most recently looked
+ * up missing names are kept. Call {@link #close()} when the application is destroyed.
  * 
  * @author Harald Wellmann
  * 
@@ -47,6 +61,125 @@ public class OsgiClassResolver implements IClassResolver
 	 */
 	private final ConcurrentHashMap<String, WeakReference<Class<?>>> classes = new ConcurrentHashMap<String, WeakReference<Class<?>>>();
 
+	/**
+	 * Maximum number of class names not found remembered by {@link #missing}.
+	 */
+	private static final int MAX_MISSING = 4096;
+
+	/**
+	 * Names of classes not found, only kept while bundle events are followed. The least recently
+	 * looked up names are dropped beyond {@link #MAX_MISSING}.
+	 */
+	private final Map<String, Boolean> missing = new LinkedHashMap<String, Boolean>(16, 0.75f,
+		true)
+	{
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Entry<String, Boolean> eldest)
+		{
+			return size() > MAX_MISSING;
+		}
+	};
+
+	private final BundleContext bundleContext;
+
+	private final SynchronousBundleListener bundleListener;
+
+	/**
+	 * Creates a resolver caching classes without following the bundle lifecycle.
+	 */
+	public OsgiClassResolver()
+	{
+		bundleContext = null;
+		bundleListener = null;
+	}
+
+	/**
+	 * Creates a resolver keeping its cache in sync with the bundles of the framework.
+	 * 
+	 * @param bundleContext
+	 *            context of the application bundle
+	 */
+	public OsgiClassResolver(BundleContext bundleContext)
+	{
+		this.bundleContext = bundleContext;
+		bundleListener = new SynchronousBundleListener()
+		{
+			public void bundleChanged(BundleEvent event)
+			{
+				switch (event.getType())
+				{
+					case BundleEvent.RESOLVED :
+						// newly resolved bundles may provide missing classes
+						clearMissing();
+						break;
+					case BundleEvent.UNRESOLVED :
+					case BundleEvent.UPDATED :
+					case BundleEvent.UNINSTALLED :
+						evict(event.getBundle());
+						break;
+					default :
+						break;
+				}
+			}
+		};
+		bundleContext.addBundleListener(bundleListener);
+	}
+
+	/**
+	 * Stops following bundle events and clears the cache.
+	 */
+	public void close()
+	{
+		if (bundleListener != null)
+		{
+			try
+			{
+				bundleContext.removeBundleListener(bundleListener);
+			}
+			catch (IllegalStateException e)
+			{
+				// bundle already stopped
+			}
+		}
+		classes.clear();
+		clearMissing();
+	}
+
+	private void clearMissing()
+	{
+		synchronized (missing)
+		{
+			missing.clear();
+		}
+	}
+
+	private boolean isMissing(String classname)
+	{
+		synchronized (missing)
+		{
+			// get() rather than containsKey() to update the access order
+			return missing.get(classname) != null;
+		}
+	}
+
+	/**
+	 * Removes the classes of the given bundle and all collected entries from the cache.
+	 */
+	private void evict(Bundle bundle)
+	{
+		Iterator<Entry<String, WeakReference<Class<?>>>> iterator = classes.entrySet().iterator();
+		while (iterator.hasNext())
+		{
+			Class<?> clazz = iterator.next().getValue().get();
+			if (clazz == null || bundle.equals(FrameworkUtil.getBundle(clazz)))
+			{
+				iterator.remove();
+			}
+		}
+	}
+
 	/**
 	 * @see org.apache.wicket.application.IClassResolver#resolveClass(java.lang.String)
 	 */
@@ -97,13 +230,31 @@ public class OsgiClassResolver implements IClassResolver
 			}
 			else
 			{
+				if (bundleListener != null && isMissing(classname))
+				{
+					throw new ClassNotFoundException(classname);
+				}
 				synchronized (classes)
 				{
 					ClassLoader loader = Application.get().getClass().getClassLoader();
 
 					// see http://bugs.sun.com/bugdatabase/view_bug.do?bug_id=6500212
 					// clazz = loader.loadClass(classname);
-					clazz = Class.forName(classname, false, loader);
+					try
+					{
+						clazz = Class.forName(classname, false, loader);
+					}
+					catch (ClassNotFoundException e)
+					{
+						if (bundleListener != null)
+						{
+							synchronized (missing)
+							{
+								missing.put(classname, Boolean.TRUE);
+							}
+						}
+						throw e;
+					}
 				}
 				classes.put(classname, new WeakReference<Class<?>>(clazz));
 			}
@@ -17,14 +17,22 @@
  */
 package org.wicketstuff.osgi.util;
 
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+import org.apache.wicket.MetaDataKey;
 import org.apache.wicket.WicketRuntimeException;
+import org.apache.wicket.request.cycle.RequestCycle;
 import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleEvent;
 import org.osgi.framework.Filter;
 import org.osgi.framework.FrameworkUtil;
 import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.framework.SynchronousBundleListener;
 import org.osgi.util.tracker.ServiceTracker;
 
 /**
@@ -32,6 +40,14 @@ import org.osgi.util.tracker.ServiceTracker;
  * for the service for a given timeout (default 10 seconds) and throw a
  * {@code WicketRuntimeException} when no matching service becomes available during this period.
  * <p>
+ * The service trackers are kept open per bundle context, class name and properties, so a lookup
+ * returns the service currently tracked instead of querying the registry again. They are closed
+ * when the bundle of their context stops, or by {@link #release(BundleContext)}.
+ * <p>
+ * With {@link #setRequestCacheEnabled(boolean)} the services are additionally bound to the current
+ * request: all lookups of a request return the same service, even if it is replaced in the
+ * meantime.
+ * <p>
  * NOTE: Prefixing some method calls with our own class name is a workaround for a bug in the Oracle
  * Java compiler, which does not occur when compiling in Eclipse.
  * 
@@ -43,6 +59,18 @@ public class OsgiServiceLookup
 
 	public static final long DEFAULT_TIMEOUT = 10000;
 
+	private static final MetaDataKey<HashMap<TrackerKey, Object>> BINDINGS_KEY = new MetaDataKey<HashMap<TrackerKey, Object>>()
+	{
+		private static final long serialVersionUID = 1L;
+	};
+
+	private static final ConcurrentMap<TrackerKey, ServiceTracker<Object, Object>> trackers = new ConcurrentHashMap<TrackerKey, ServiceTracker<Object, Object>>();
+
+	/** bundle contexts whose bundle is watched to close their trackers */
+	private static final ConcurrentMap<BundleContext, SynchronousBundleListener> contexts = new ConcurrentHashMap<BundleContext, SynchronousBundleListener>();
+
+	private static volatile boolean requestCacheEnabled;
+
 	public static <T> T getOsgiService(BundleContext bc, String className)
 	{
 		return OsgiServiceLookup.<T> getOsgiService(bc, className, DEFAULT_TIMEOUT, null);
@@ -89,34 +117,166 @@ public class OsgiServiceLookup
 	public static <T> T getOsgiService(BundleContext bc, String className, long timeout,
 		Map<String, String> props)
 	{
-		ServiceTracker tracker = createServiceTracker(bc, className, props);
-		try
+		TrackerKey key = new TrackerKey(bc, className, props);
+
+		HashMap<TrackerKey, Object> bindings = null;
+		if (requestCacheEnabled)
 		{
-			tracker.open();
-			Object svc = tracker.waitForService(timeout);
+			RequestCycle requestCycle = RequestCycle.get();
+			if (requestCycle != null)
+			{
+				bindings = requestCycle.getMetaData(BINDINGS_KEY);
+				if (bindings == null)
+				{
+					bindings = new HashMap<TrackerKey, Object>();
+					requestCycle.setMetaData(BINDINGS_KEY, bindings);
+				}
+				Object svc = bindings.get(key);
+				if (svc != null)
+				{
+					return (T)svc;
+				}
+			}
+		}
+
+		ServiceTracker<Object, Object> tracker = getServiceTracker(key);
+		Object svc = tracker.getService();
+		if (svc == null)
+		{
+			try
+			{
+				svc = tracker.waitForService(timeout);
+			}
+			catch (InterruptedException exc)
+			{
+				throw new WicketRuntimeException(exc);
+			}
 			if (svc == null)
 			{
 				throw new WicketRuntimeException("gave up waiting for service " + className);
 			}
-			return (T)svc;
 		}
-		catch (InterruptedException exc)
+		if (bindings != null)
 		{
-			throw new WicketRuntimeException(exc);
+			bindings.put(key, svc);
+		}
+		return (T)svc;
+	}
+
+	/**
+	 * Enables binding the services looked up during a request to that request. Disabled by
+	 * default.
+	 * 
+	 * @param enabled
+	 */
+	public static void setRequestCacheEnabled(boolean enabled)
+	{
+		requestCacheEnabled = enabled;
+	}
+
+	/**
+	 * @return whether the services looked up during a request are bound to it
+	 */
+	public static boolean isRequestCacheEnabled()
+	{
+		return requestCacheEnabled;
+	}
+
+	/**
+	 * Closes all service trackers opened for the given bundle context. This happens automatically
+	 * when its bundle stops.
+	 * 
+	 * @param bc
+	 *            bundle context
+	 */
+	public static void release(BundleContext bc)
+	{
+		SynchronousBundleListener listener = contexts.remove(bc);
+		if (listener != null)
+		{
+			try
+			{
+				bc.removeBundleListener(listener);
+			}
+			catch (IllegalStateException exc)
+			{
+				// context no longer valid, listener is gone anyway
+			}
 		}
-		finally
+
+		Iterator<Entry<TrackerKey, ServiceTracker<Object, Object>>> iterator = trackers.entrySet()
+			.iterator();
+		while (iterator.hasNext())
 		{
-			tracker.close();
+			Entry<TrackerKey, ServiceTracker<Object, Object>> entry = iterator.next();
+			if (entry.getKey().bc == bc)
+			{
+				iterator.remove();
+				entry.getValue().close();
+			}
 		}
 	}
 
+	private static ServiceTracker<Object, Object> getServiceTracker(TrackerKey key)
+	{
+		ServiceTracker<Object, Object> tracker = trackers.get(key);
+		if (tracker == null)
+		{
+			watch(key.bc);
 
-	private static ServiceTracker createServiceTracker(BundleContext bc, String className,
-		Map<String, String> props)
+			tracker = createServiceTracker(key.bc, key.className, key.props);
+			tracker.open();
+			ServiceTracker<Object, Object> existing = trackers.putIfAbsent(key.copy(), tracker);
+			if (existing != null)
+			{
+				tracker.close();
+				tracker = existing;
+			}
+		}
+		return tracker;
+	}
+
+	/**
+	 * Registers a listener closing the trackers of the given context when its bundle stops.
+	 */
+	private static void watch(final BundleContext bc)
+	{
+		if (contexts.containsKey(bc))
+		{
+			return;
+		}
+		SynchronousBundleListener listener = new SynchronousBundleListener()
+		{
+			public void bundleChanged(BundleEvent event)
+			{
+				if (event.getType() == BundleEvent.STOPPING &&
+					event.getBundle().equals(bc.getBundle()))
+				{
+					release(bc);
+				}
+			}
+		};
+		if (contexts.putIfAbsent(bc, listener) == null)
+		{
+			try
+			{
+				bc.addBundleListener(listener);
+			}
+			catch (IllegalStateException exc)
+			{
+				// context no longer valid, do not keep it
+				contexts.remove(bc, listener);
+				throw exc;
+			}
+		}
+	}
+
+	private static ServiceTracker<Object, Object> createServiceTracker(BundleContext bc,
+		String className, Map<String, String> props)
 	{
 		if (props == null || props.isEmpty())
 		{
-			return new ServiceTracker(bc, className, null);
+			return new ServiceTracker<Object, Object>(bc, className, null);
 		}
 
 		StringBuilder builder = new StringBuilder("(&(objectClass=");
@@ -135,7 +295,8 @@ public class OsgiServiceLookup
 		{
 			Filter filter;
 			filter = FrameworkUtil.createFilter(builder.toString());
-			ServiceTracker tracker = new ServiceTracker(bc, filter, null);
+			ServiceTracker<Object, Object> tracker = new ServiceTracker<Object, Object>(bc, filter,
+				null);
 			return tracker;
 		}
 		catch (InvalidSyntaxException exc)
@@ -143,4 +304,57 @@ public class OsgiServiceLookup
 			throw new WicketRuntimeException(exc);
 		}
 	}
+
+	/**
+	 * Identifies a tracker by bundle context, class name and properties.
+	 */
+	private static final class TrackerKey
+	{
+		private final BundleContext bc;
+
+		private final String className;
+
+		private final Map<String, String> props;
+
+		private TrackerKey(BundleContext bc, String className, Map<String, String> props)
+		{
+			this.bc = bc;
+			this.className = className;
+			this.props = props == null || props.isEmpty() ? null : props;
+		}
+
+		/**
+		 * @return a key not sharing the caller's properties, for keeping in the cache
+		 */
+		private TrackerKey copy()
+		{
+			return props == null ? this : new TrackerKey(bc, className,
+				new HashMap<String, String>(props));
+		}
+
+		@Override
+		public int hashCode()
+		{
+			int result = System.identityHashCode(bc);
+			result = 31 * result + className.hashCode();
+			result = 31 * result + (props == null ? 0 : props.hashCode());
+			return result;
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (this == obj)
+			{
+				return true;
+			}
+			if (!(obj instanceof TrackerKey))
+			{
+				return false;
+			}
+			TrackerKey other = (TrackerKey)obj;
+			return bc == other.bc && className.equals(other.className) &&
+				(props == null ? other.props == null : props.equals(other.props));
+		}
+	}
 }
@@ -20,6 +20,7 @@ import java.util.HashMap;
 import java.util.Map;
 
 import org.wicketstuff.security.hive.config.HiveFactory;
+import org.wicketstuff.security.hive.config.ReloadingHive;
 
 /**
  * HiveMind maintains the collection of {@link Hive}s. There can only be one HiveMind in each
@@ -88,7 +89,8 @@ public class HiveMind
 	}
 
 	/**
-	 * Removes the registration of a single Hive.
+	 * Removes the registration of a single Hive. A {@link ReloadingHive} stops checking for
+	 * changes.
 	 * 
 	 * @param queen
 	 *            the key the Hive is registered with
@@ -96,6 +98,9 @@ public class HiveMind
 	 */
 	public static Hive unregisterHive(Object queen)
 	{
-		return INSTANCE.hiveCollection.remove(queen);
+		Hive hive = INSTANCE.hiveCollection.remove(queen);
+		if (hive instanceof ReloadingHive)
+			((ReloadingHive)hive).stop();
+		return hive;
 	}
 }
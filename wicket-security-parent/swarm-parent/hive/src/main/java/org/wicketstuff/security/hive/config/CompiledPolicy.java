@@ -0,0 +1,310 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.security.hive.config;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wicketstuff.security.actions.ActionFactory;
+import org.wicketstuff.security.hive.BasicHive;
+import org.wicketstuff.security.hive.authorization.EverybodyPrincipal;
+import org.wicketstuff.security.hive.authorization.Permission;
+import org.wicketstuff.security.hive.authorization.Principal;
+
+/**
+ * The grants of a single policy source as read by the {@link PolicyFileHiveFactory}, with all
+ * aliases resolved and the constructor of every permission known. Adding them to a hive again
+ * requires no parsing or constructor lookups beyond one per class.
+ */
+final class CompiledPolicy
+{
+	private static final Logger log = LoggerFactory.getLogger(CompiledPolicy.class);
+
+	private final long lastModified;
+
+	private final List<Grant> grants = new ArrayList<Grant>();
+
+	private boolean complete;
+
+	/**
+	 * Construct.
+	 *
+	 * @param lastModified
+	 *            the modification time of the source
+	 */
+	CompiledPolicy(long lastModified)
+	{
+		this.lastModified = lastModified;
+	}
+
+	/**
+	 * The modification time of the source when it was read.
+	 *
+	 * @return the time or 0 if unknown
+	 */
+	long getLastModified()
+	{
+		return lastModified;
+	}
+
+	/**
+	 * Flags if all grants of the source were recorded, a subclass of the factory may read the
+	 * source in its own way.
+	 *
+	 * @return true if this policy can replace the source
+	 */
+	boolean isComplete()
+	{
+		return complete;
+	}
+
+	void setComplete()
+	{
+		complete = true;
+	}
+
+	/**
+	 * Records a grant.
+	 *
+	 * @param principalClass
+	 *            the class of the principal or null for {@link EverybodyPrincipal}
+	 * @param principalName
+	 *            the name of the principal
+	 * @param permissions
+	 *            the granted permissions
+	 */
+	void addGrant(String principalClass, String principalName, List<PermissionEntry> permissions)
+	{
+		grants.add(new Grant(principalClass, principalName, permissions));
+	}
+
+	/**
+	 * Adds all grants to the hive. Principals and permissions that can no longer be created, e.g.
+	 * because a class has been removed, are logged and skipped.
+	 *
+	 * @param hive
+	 * @param actionFactory
+	 */
+	void apply(BasicHive hive, ActionFactory actionFactory)
+	{
+		Map<String, Constructor<?>> constructors = new HashMap<String, Constructor<?>>();
+		for (Grant grant : grants)
+		{
+			Principal principal;
+			try
+			{
+				if (grant.principalClass == null)
+					principal = new EverybodyPrincipal();
+				else
+					principal = (Principal)getConstructor(constructors, grant.principalClass,
+						PolicyFileHiveFactory.constructorArgs.length - 1).newInstance(
+						grant.principalName);
+			}
+			catch (Exception e)
+			{
+				log.error("Unable to restore principal " + grant.principalName +
+					", its permissions are skipped", e);
+				continue;
+			}
+			Set<Permission> permissions = new HashSet<Permission>(grant.permissions.size());
+			for (PermissionEntry entry : grant.permissions)
+			{
+				try
+				{
+					Constructor<?> constructor = getConstructor(constructors,
+						entry.permissionClass, entry.constructor);
+					permissions.add((Permission)constructor.newInstance(entry.getArguments(actionFactory)));
+				}
+				catch (Exception e)
+				{
+					log.error("Unable to restore permission " + entry.permissionClass + " \"" +
+						entry.name + "\" of principal " + grant.principalName + ", it is skipped", e);
+				}
+			}
+			hive.addPrincipal(principal, permissions);
+		}
+	}
+
+	private Constructor<?> getConstructor(Map<String, Constructor<?>> constructors,
+		String classname, int index) throws ClassNotFoundException, NoSuchMethodException
+	{
+		String key = classname + "#" + index;
+		Constructor<?> constructor = constructors.get(key);
+		if (constructor == null)
+		{
+			constructor = Class.forName(classname).getConstructor(
+				PolicyFileHiveFactory.constructorArgs[index]);
+			constructors.put(key, constructor);
+		}
+		return constructor;
+	}
+
+	/**
+	 * Writes this policy.
+	 *
+	 * @param out
+	 * @throws IOException
+	 */
+	void write(DataOutput out) throws IOException
+	{
+		out.writeLong(lastModified);
+		out.writeInt(grants.size());
+		for (Grant grant : grants)
+		{
+			writeString(out, grant.principalClass);
+			writeString(out, grant.principalName);
+			out.writeInt(grant.permissions.size());
+			for (PermissionEntry entry : grant.permissions)
+			{
+				out.writeUTF(entry.permissionClass);
+				writeString(out, entry.name);
+				writeString(out, entry.actions);
+				out.writeByte(entry.constructor);
+			}
+		}
+	}
+
+	/**
+	 * Reads a policy written by {@link #write(DataOutput)}.
+	 *
+	 * @param in
+	 * @return the policy
+	 * @throws IOException
+	 */
+	static CompiledPolicy read(DataInput in) throws IOException
+	{
+		CompiledPolicy policy = new CompiledPolicy(in.readLong());
+		int grants = in.readInt();
+		for (int i = 0; i < grants; i++)
+		{
+			String principalClass = readString(in);
+			String principalName = readString(in);
+			int size = in.readInt();
+			List<PermissionEntry> permissions = new ArrayList<PermissionEntry>(size);
+			for (int j = 0; j < size; j++)
+			{
+				String permissionClass = in.readUTF();
+				String name = readString(in);
+				String actions = readString(in);
+				int constructor = in.readByte();
+				if (constructor < 0 || constructor >= PolicyFileHiveFactory.constructorArgs.length)
+					throw new IOException("Unknown constructor " + constructor + " for " +
+						permissionClass);
+				permissions.add(new PermissionEntry(permissionClass, name, actions, constructor));
+			}
+			policy.addGrant(principalClass, principalName, permissions);
+		}
+		policy.setComplete();
+		return policy;
+	}
+
+	static void writeString(DataOutput out, String value) throws IOException
+	{
+		out.writeBoolean(value != null);
+		if (value != null)
+			out.writeUTF(value);
+	}
+
+	static String readString(DataInput in) throws IOException
+	{
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+
+	/**
+	 * A principal and its permissions.
+	 */
+	private static final class Grant
+	{
+		private final String principalClass;
+
+		private final String principalName;
+
+		private final List<PermissionEntry> permissions;
+
+		private Grant(String principalClass, String principalName,
+			List<PermissionEntry> permissions)
+		{
+			this.principalClass = principalClass;
+			this.principalName = principalName;
+			this.permissions = Collections.unmodifiableList(permissions);
+		}
+	}
+
+	/**
+	 * A permission as declared in the policy.
+	 */
+	static final class PermissionEntry
+	{
+		private final String permissionClass;
+
+		private final String name;
+
+		private final String actions;
+
+		private final int constructor;
+
+		/**
+		 * Construct.
+		 *
+		 * @param permissionClass
+		 * @param name
+		 * @param actions
+		 * @param constructor
+		 *            index of the constructor arguments in
+		 *            {@link PolicyFileHiveFactory#constructorArgs}
+		 */
+		PermissionEntry(String permissionClass, String name, String actions, int constructor)
+		{
+			this.permissionClass = permissionClass;
+			this.name = name;
+			this.actions = actions;
+			this.constructor = constructor;
+		}
+
+		/**
+		 * The arguments for the constructor.
+		 * 
+		 * @param actionFactory
+		 * @return the arguments
+		 */
+		Object[] getArguments(ActionFactory actionFactory)
+		{
+			switch (constructor)
+			{
+				case 0 :
+					return new Object[] { name, actionFactory.getAction(actions) };
+				case 1 :
+					return new Object[] { name, actions };
+				case 2 :
+					return new Object[] { name, actionFactory };
+				default :
+					return new Object[] { name };
+			}
+		}
+	}
+}
@@ -16,18 +16,30 @@
  */
 package org.wicketstuff.security.hive.config;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.Reader;
 import java.lang.reflect.Constructor;
+import java.net.URISyntaxException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -73,6 +85,12 @@ import org.wicketstuff.security.hive.authorization.permissions.AllPermissions;
  * <li>aliases are case sensitive</li>
  * By default the following aliases is available: AllPermissions for
  * org.wicketstuff.security.hive.authorization.permissions.AllPermissions
+ * <p>
+ * Every policy file read is kept in a compiled form, with aliases resolved and constructors
+ * known. A policy file that did not change since it was last read is not parsed again but
+ * restored from its compiled form. The compiled policy files can be stored in a snapshot, see
+ * {@link #setSnapshotFile(File)}, which saves parsing them at startup. Setting a reload interval
+ * makes the factory produce a {@link ReloadingHive}, which is rebuilt when a policy file changes.
  * 
  * 
  * @author marrink
@@ -94,7 +112,14 @@ public class PolicyFileHiveFactory implements HiveFactory
 
 	private static final Pattern aliasPattern = Pattern.compile("(\\$\\{[^\"\\{\\}\\$]+?\\})+?");
 
-	private static final Class<?>[][] constructorArgs = new Class[][] {
+	/**
+	 * Identifies a snapshot.
+	 */
+	private static final int SNAPSHOT_MAGIC = 0x48495645;
+
+	private static final int SNAPSHOT_VERSION = 2;
+
+	static final Class<?>[][] constructorArgs = new Class[][] {
 			new Class[] { String.class, WaspAction.class },
 			new Class[] { String.class, String.class },
 			new Class[] { String.class, ActionFactory.class }, new Class[] { String.class } };
@@ -109,6 +134,27 @@ public class PolicyFileHiveFactory implements HiveFactory
 
 	private final ActionFactory actionFactory;
 
+	/**
+	 * The policy files as read by the last hive.
+	 */
+	private final Map<URL, CompiledPolicy> compiledFiles = new HashMap<URL, CompiledPolicy>();
+
+	/**
+	 * The streams and readers read so far, they can't be read again when reloading.
+	 */
+	private final List<CompiledPolicy> compiledStreams = new ArrayList<CompiledPolicy>();
+
+	/**
+	 * Records the grants of the source being read.
+	 */
+	private CompiledPolicy currentPolicy;
+
+	private File snapshotFile;
+
+	private boolean snapshotRead;
+
+	private long reloadInterval;
+
 	/**
 	 * 
 	 * Constructs a new factory that builds a Hive out of one (1) or more policy files. It registers
@@ -242,7 +288,16 @@ public class PolicyFileHiveFactory implements HiveFactory
 	 */
 	public final String setAlias(String key, String value)
 	{
-		return aliases.put(key, value);
+		String previous = aliases.put(key, value);
+		if (previous == null ? value != null : !previous.equals(value))
+		{
+			// compiled policies contain resolved aliases
+			synchronized (this)
+			{
+				compiledFiles.clear();
+			}
+		}
+		return previous;
 	}
 
 	/**
@@ -334,58 +389,361 @@ public class PolicyFileHiveFactory implements HiveFactory
 	}
 
 	/**
-	 * This method is not thread safe.
+	 * This method is not thread safe. Returns a {@link ReloadingHive} if a reload interval has
+	 * been set.
 	 * 
 	 * @see org.wicketstuff.security.hive.config.HiveFactory#createHive()
+	 * @see #setReloadInterval(long, TimeUnit)
 	 */
 	public final Hive createHive()
 	{
+		BasicHive hive = buildHive(false);
+		if (reloadInterval > 0)
+			return new ReloadingHive(this, hive, reloadInterval);
+		return hive;
+	}
+
+	/**
+	 * Builds a new hive. Policy files that did not change since they were last read are restored
+	 * from their compiled form.
+	 * 
+	 * @param reload
+	 *            true to include the streams and readers read by earlier hives
+	 * @return the hive
+	 */
+	synchronized BasicHive buildHive(boolean reload)
+	{
+		readSnapshot();
 		BasicHive hive = constructHive();
 		boolean readAnything = false;
+		boolean compiledAnything = false;
 		for (URL file : policyFiles)
 		{
 			readAnything = true;
+			long lastModified = getLastModified(file);
+			CompiledPolicy policy = compiledFiles.get(file);
+			// an unknown modification time can not tell if the file changed
+			if (policy != null && lastModified != 0 && policy.getLastModified() == lastModified)
+			{
+				policy.apply(hive, actionFactory);
+				continue;
+			}
+			compiledFiles.remove(file);
+			currentPolicy = new CompiledPolicy(lastModified);
 			try
 			{
 				readPolicyFile(file, hive);
+				if (currentPolicy.isComplete())
+				{
+					compiledFiles.put(file, currentPolicy);
+					compiledAnything |= lastModified != 0;
+				}
 			}
 			catch (IOException e)
 			{
 				log.error("Could not read from " + file, e);
 			}
+			finally
+			{
+				currentPolicy = null;
+			}
+		}
+		if (reload)
+		{
+			for (CompiledPolicy policy : compiledStreams)
+			{
+				readAnything = true;
+				policy.apply(hive, actionFactory);
+			}
 		}
 		for (InputStream stream : inputStreams)
 		{
 			readAnything = true;
+			currentPolicy = new CompiledPolicy(0);
 			try
 			{
 				readInputStream(stream, hive);
+				if (currentPolicy.isComplete())
+					compiledStreams.add(currentPolicy);
+				else
+					log.warn("A stream was not fully read by this factory, it will be missing when reloading");
 			}
 			catch (IOException e)
 			{
 				log.error("Could not read from stream", e);
 			}
+			finally
+			{
+				currentPolicy = null;
+			}
 		}
 		inputStreams.clear();
 		for (Reader stream : inputReaders)
 		{
 			readAnything = true;
+			currentPolicy = new CompiledPolicy(0);
 			try
 			{
 				readInputReader(stream, hive);
+				if (currentPolicy.isComplete())
+					compiledStreams.add(currentPolicy);
+				else
+					log.warn("A reader was not fully read by this factory, it will be missing when reloading");
 			}
 			catch (IOException e)
 			{
 				log.error("Could not read from reader", e);
 			}
+			finally
+			{
+				currentPolicy = null;
+			}
 		}
 		inputReaders.clear();
 		if (!readAnything)
 			log.warn("No policyFiles or inputstreams were added to the factory!");
+		if (compiledAnything && snapshotFile != null)
+			writeSnapshot(snapshotFile);
 		hive.lock();
 		return hive;
 	}
 
+	/**
+	 * Checks if a policy file changed since the last hive was built.
+	 * 
+	 * @return true if a policy file changed
+	 */
+	synchronized boolean isModified()
+	{
+		for (URL file : policyFiles)
+		{
+			CompiledPolicy policy = compiledFiles.get(file);
+			long lastModified = getLastModified(file);
+			if (policy == null || lastModified == 0 || policy.getLastModified() != lastModified)
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * The modification time of a policy file. A file whose modification time is unknown is read
+	 * for every hive.
+	 * 
+	 * @param file
+	 * @return the time or 0 if unknown
+	 */
+	private long getLastModified(URL file)
+	{
+		try
+		{
+			if ("file".equals(file.getProtocol()))
+				return new File(file.toURI()).lastModified();
+			return file.openConnection().getLastModified();
+		}
+		catch (URISyntaxException e)
+		{
+			log.debug("Unable to determine the modification time of " + file, e);
+		}
+		catch (IOException e)
+		{
+			log.debug("Unable to determine the modification time of " + file, e);
+		}
+		return 0;
+	}
+
+	/**
+	 * Stores the compiled policy files in a snapshot file, read at the next start to restore the
+	 * policy files that have not changed meanwhile. Note that the notify and skip methods of this
+	 * factory are not called for restored policy files.
+	 * 
+	 * @param file
+	 *            the snapshot file, created when the policy files are read
+	 */
+	public final synchronized void setSnapshotFile(File file)
+	{
+		snapshotFile = file;
+		snapshotRead = false;
+	}
+
+	/**
+	 * Gets the snapshot file.
+	 * 
+	 * @return the snapshot file or null
+	 */
+	public final File getSnapshotFile()
+	{
+		return snapshotFile;
+	}
+
+	private void readSnapshot()
+	{
+		if (snapshotRead || snapshotFile == null || !snapshotFile.isFile())
+			return;
+		snapshotRead = true;
+		InputStream stream = null;
+		try
+		{
+			stream = new FileInputStream(snapshotFile);
+			readSnapshot(stream);
+		}
+		catch (IOException e)
+		{
+			log.warn("Ignoring unreadable snapshot " + snapshotFile, e);
+		}
+		finally
+		{
+			if (stream != null)
+			{
+				try
+				{
+					stream.close();
+				}
+				catch (IOException e)
+				{
+					log.debug("Unable to close " + snapshotFile, e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Restores compiled policy files, e.g. from a snapshot created at build time. Only the
+	 * policies of policy files added to this factory are used, those were compiled with other
+	 * aliases are ignored. Policy files that changed since the snapshot was written are read
+	 * again.
+	 * 
+	 * @param stream
+	 *            the snapshot, not closed
+	 * @throws IOException
+	 *             if the snapshot can not be read
+	 * @see #writeSnapshot(OutputStream)
+	 */
+	public final synchronized void readSnapshot(InputStream stream) throws IOException
+	{
+		DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+		if (in.readInt() != SNAPSHOT_MAGIC)
+			throw new IOException("Not a snapshot");
+		if (in.readInt() != SNAPSHOT_VERSION)
+			throw new IOException("Unsupported snapshot version");
+		int aliasCount = in.readInt();
+		Map<String, String> snapshotAliases = new HashMap<String, String>();
+		for (int i = 0; i < aliasCount; i++)
+			snapshotAliases.put(in.readUTF(), CompiledPolicy.readString(in));
+		if (!snapshotAliases.equals(aliases))
+		{
+			log.info("Ignoring snapshot, it was created with other aliases");
+			return;
+		}
+		Map<URL, CompiledPolicy> policies = new HashMap<URL, CompiledPolicy>();
+		int size = in.readInt();
+		for (int i = 0; i < size; i++)
+		{
+			URL file = new URL(in.readUTF());
+			CompiledPolicy policy = CompiledPolicy.read(in);
+			if (policyFiles.contains(file))
+				policies.put(file, policy);
+		}
+		compiledFiles.putAll(policies);
+	}
+
+	/**
+	 * Writes the compiled policy files to a snapshot. A snapshot can only be written after a hive
+	 * has been created.
+	 * 
+	 * @param stream
+	 *            the output, not closed
+	 * @throws IOException
+	 *             if the snapshot can not be written
+	 * @see #readSnapshot(InputStream)
+	 */
+	public final synchronized void writeSnapshot(OutputStream stream) throws IOException
+	{
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+		out.writeInt(SNAPSHOT_MAGIC);
+		out.writeInt(SNAPSHOT_VERSION);
+		out.writeInt(aliases.size());
+		for (Map.Entry<String, String> alias : aliases.entrySet())
+		{
+			out.writeUTF(alias.getKey());
+			CompiledPolicy.writeString(out, alias.getValue());
+		}
+		// policy files without a modification time are read again anyway
+		List<Map.Entry<URL, CompiledPolicy>> entries = new ArrayList<Map.Entry<URL, CompiledPolicy>>();
+		for (Map.Entry<URL, CompiledPolicy> entry : compiledFiles.entrySet())
+		{
+			if (entry.getValue().getLastModified() != 0)
+				entries.add(entry);
+		}
+		out.writeInt(entries.size());
+		for (Map.Entry<URL, CompiledPolicy> entry : entries)
+		{
+			out.writeUTF(entry.getKey().toExternalForm());
+			entry.getValue().write(out);
+		}
+		out.flush();
+	}
+
+	private void writeSnapshot(File file)
+	{
+		File temp = new File(file.getPath() + ".tmp");
+		OutputStream stream = null;
+		try
+		{
+			stream = new FileOutputStream(temp);
+			writeSnapshot(stream);
+			stream.close();
+			stream = null;
+			// replace the snapshot at once, a partial snapshot would be rejected anyway
+			if (!temp.renameTo(file) && !(file.delete() && temp.renameTo(file)))
+				throw new IOException("Unable to rename " + temp + " to " + file);
+		}
+		catch (IOException e)
+		{
+			log.warn("Unable to write snapshot " + file, e);
+		}
+		finally
+		{
+			if (stream != null)
+			{
+				try
+				{
+					stream.close();
+				}
+				catch (IOException e)
+				{
+					log.debug("Unable to close " + temp, e);
+				}
+			}
+			temp.delete();
+		}
+	}
+
+	/**
+	 * Sets the interval at which the policy files are checked for changes. If greater than 0
+	 * {@link #createHive()} produces a {@link ReloadingHive}, which is rebuilt in the background
+	 * when a policy file changes. Use {@link ReloadingHive#stop()} when the hive is no longer
+	 * used.
+	 * 
+	 * @param interval
+	 *            the interval, 0 to never check
+	 * @param unit
+	 *            the unit of the interval
+	 */
+	public final void setReloadInterval(long interval, TimeUnit unit)
+	{
+		reloadInterval = unit.toMillis(interval);
+	}
+
+	/**
+	 * Gets the reload interval.
+	 * 
+	 * @return the interval in milliseconds, 0 if the hive is never reloaded
+	 */
+	public final long getReloadInterval()
+	{
+		return reloadInterval;
+	}
+
 	/**
 	 * Reads principals and permissions from a file, found items are added to the hive.
 	 * 
@@ -568,6 +926,10 @@ public class PolicyFileHiveFactory implements HiveFactory
 		boolean inPrincipalBlock = false;
 		Principal principal = null;
 		Set<Permission> permissions = null;
+		// the source of the principal and its permissions, for the compiled policy
+		String principalClassname = null;
+		String principalName = null;
+		Map<Permission, CompiledPolicy.PermissionEntry> entries = new HashMap<Permission, CompiledPolicy.PermissionEntry>();
 		currentLineNr = 0;
 		String line = reader.readLine();
 		while (line != null)
@@ -588,7 +950,8 @@ public class PolicyFileHiveFactory implements HiveFactory
 				{
 					inPrincipalBlock = false;
 					if (permissions != null && permissions.size() > 0)
-						hive.addPrincipal(principal, permissions);
+						addPrincipal(hive, principal, principalClassname, principalName,
+							permissions, entries);
 					else
 						skipEmptyPrincipal(currentLineNr, principal);
 
@@ -619,7 +982,7 @@ public class PolicyFileHiveFactory implements HiveFactory
 							String name = resolveAliases(m.group(2));
 							String actions = m.group(3);
 							Permission temp = createPermission(
-								permissionClass.asSubclass(Permission.class), name, actions);
+								permissionClass.asSubclass(Permission.class), name, actions, entries);
 							if (temp == null)
 							{
 								line = reader.readLine();
@@ -657,6 +1020,8 @@ public class PolicyFileHiveFactory implements HiveFactory
 				if (m.matches())
 				{
 					String classname = m.group(1);
+					principalClassname = null;
+					principalName = null;
 					if (classname == null)
 						principal = new EverybodyPrincipal();
 					else
@@ -694,7 +1059,9 @@ public class PolicyFileHiveFactory implements HiveFactory
 							}
 							try
 							{
-								principal = constructor.newInstance(new Object[] { resolveAliases(m.group(2)) });
+								principalName = resolveAliases(m.group(2));
+								principal = constructor.newInstance(new Object[] { principalName });
+								principalClassname = principalClass.getName();
 							}
 							catch (Exception e)
 							{
@@ -727,13 +1094,43 @@ public class PolicyFileHiveFactory implements HiveFactory
 			warnUnclosedPrincipalBlock(principal, currentLineNr);
 			inPrincipalBlock = false;
 			if (permissions != null && permissions.size() > 0)
-				hive.addPrincipal(principal, permissions);
+				addPrincipal(hive, principal, principalClassname, principalName, permissions,
+					entries);
 			else
 				skipEmptyPrincipal(currentLineNr, principal);
 
 			permissions = null;
 			principal = null;
 		}
+		if (currentPolicy != null)
+			currentPolicy.setComplete();
+	}
+
+	/**
+	 * Adds a principal to the hive and records it in the compiled policy.
+	 * 
+	 * @param hive
+	 * @param principal
+	 * @param principalClassname
+	 *            the class of the principal or null for {@link EverybodyPrincipal}
+	 * @param principalName
+	 * @param permissions
+	 * @param entries
+	 *            the recorded permissions
+	 */
+	private void addPrincipal(BasicHive hive, Principal principal, String principalClassname,
+		String principalName, Set<Permission> permissions,
+		Map<Permission, CompiledPolicy.PermissionEntry> entries)
+	{
+		hive.addPrincipal(principal, permissions);
+		if (currentPolicy != null)
+		{
+			List<CompiledPolicy.PermissionEntry> granted = new ArrayList<CompiledPolicy.PermissionEntry>(
+				permissions.size());
+			for (Permission permission : permissions)
+				granted.add(entries.get(permission));
+			currentPolicy.addGrant(principalClassname, principalName, granted);
+		}
 	}
 
 	/**
@@ -742,11 +1139,13 @@ public class PolicyFileHiveFactory implements HiveFactory
 	 * @param permissionClass
 	 * @param name
 	 * @param actions
+	 * @param entries
+	 *            records how the permission was created
 	 * @return the permission or null if it could not be created.
 	 * @see #findConstructor(Class, String)
 	 */
 	private Permission createPermission(Class<? extends Permission> permissionClass, String name,
-		String actions)
+		String actions, Map<Permission, CompiledPolicy.PermissionEntry> entries)
 	{
 		Constructor<? extends Permission> constructor = findConstructor(permissionClass, actions);
 		if (constructor == null)
@@ -754,16 +1153,13 @@ public class PolicyFileHiveFactory implements HiveFactory
 			skipPermission(currentLineNr, permissionClass);
 			return null;
 		}
-		Object[] argValues = null;
-		if (match(constructor.getParameterTypes(), constructorArgs[0]))
-			argValues = new Object[] { name, getActionFactory().getAction(actions) };
-		else if (match(constructor.getParameterTypes(), constructorArgs[1]))
-			argValues = new Object[] { name, actions };
-		else if (match(constructor.getParameterTypes(), constructorArgs[2]))
-			argValues = new Object[] { name, actionFactory };
-		else if (match(constructor.getParameterTypes(), constructorArgs[3]))
-			argValues = new Object[] { name };
-		else
+		int index = -1;
+		for (int i = 0; i < constructorArgs.length && index < 0; i++)
+		{
+			if (match(constructor.getParameterTypes(), constructorArgs[i]))
+				index = i;
+		}
+		if (index < 0)
 		{
 			// should not happen
 			String msg = "Unable to handle constructor " + constructor + ", at line nr " +
@@ -771,9 +1167,15 @@ public class PolicyFileHiveFactory implements HiveFactory
 			log.error(msg);
 			throw new RuntimeException(msg);
 		}
+		CompiledPolicy.PermissionEntry entry = new CompiledPolicy.PermissionEntry(
+			permissionClass.getName(), name, actions, index);
+		Object[] argValues = entry.getArguments(getActionFactory());
 		try
 		{
-			return constructor.newInstance(argValues);
+			Permission permission = constructor.newInstance(argValues);
+			if (!entries.containsKey(permission))
+				entries.put(permission, entry);
+			return permission;
 		}
 		catch (Exception e)
 		{
@@ -0,0 +1,199 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.security.hive.config;
+
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wicketstuff.security.hive.Hive;
+import org.wicketstuff.security.hive.authentication.Subject;
+import org.wicketstuff.security.hive.authorization.Permission;
+import org.wicketstuff.security.hive.authorization.Principal;
+
+/**
+ * A {@link Hive} that is rebuilt by its {@link PolicyFileHiveFactory} when one of the policy
+ * files changes. The new hive is built in the background and then replaces the current one at
+ * once, checks in progress complete against the hive they started with and are never blocked.
+ * <p>
+ * The thread checking for changes is stopped when the hive is unregistered from the
+ * {@link org.wicketstuff.security.hive.HiveMind}, or by {@link #stop()}.
+ *
+ * @see PolicyFileHiveFactory#setReloadInterval(long, TimeUnit)
+ */
+public final class ReloadingHive implements Hive
+{
+	private static final Logger log = LoggerFactory.getLogger(ReloadingHive.class);
+
+	private final PolicyFileHiveFactory factory;
+
+	private volatile Hive hive;
+
+	private ScheduledExecutorService watcher;
+
+	/**
+	 * Construct.
+	 *
+	 * @param factory
+	 *            the factory that built the hive
+	 * @param hive
+	 *            the current hive
+	 * @param interval
+	 *            milliseconds between checks for changes, 0 to never check
+	 */
+	ReloadingHive(PolicyFileHiveFactory factory, Hive hive, long interval)
+	{
+		this.factory = factory;
+		this.hive = hive;
+		if (interval > 0)
+		{
+			watcher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+			{
+				public Thread newThread(Runnable runnable)
+				{
+					Thread thread = new Thread(runnable, "ReloadingHive");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			watcher.scheduleWithFixedDelay(new Runnable()
+			{
+				public void run()
+				{
+					checkForChanges();
+				}
+			}, interval, interval, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Reloads if a policy file has changed since the current hive was built.
+	 *
+	 * @return true if the hive was reloaded
+	 */
+	public boolean checkForChanges()
+	{
+		try
+		{
+			if (factory.isModified())
+				return reload();
+		}
+		catch (RuntimeException e)
+		{
+			log.error("Unable to check the policy files for changes", e);
+		}
+		return false;
+	}
+
+	/**
+	 * Rebuilds the hive, only policy files that changed are read again. If the hive can not be
+	 * built the current hive is kept.
+	 *
+	 * @return true if the hive was replaced
+	 */
+	public boolean reload()
+	{
+		try
+		{
+			hive = factory.buildHive(true);
+			log.info("Reloaded the hive");
+			return true;
+		}
+		catch (RuntimeException e)
+		{
+			log.error("Unable to reload the hive, keeping the current one", e);
+			return false;
+		}
+	}
+
+	/**
+	 * Stops checking for changes.
+	 */
+	public synchronized void stop()
+	{
+		if (watcher != null)
+		{
+			watcher.shutdownNow();
+			watcher = null;
+		}
+	}
+
+	/**
+	 * Is this hive checking for changes.
+	 *
+	 * @return true until stopped, if a reload interval was set
+	 */
+	public synchronized boolean isWatching()
+	{
+		return watcher != null;
+	}
+
+	/**
+	 * The hive currently used.
+	 *
+	 * @return the hive
+	 */
+	public Hive getHive()
+	{
+		return hive;
+	}
+
+	/**
+	 * @see org.wicketstuff.security.hive.Hive#containsPrincipal(org.wicketstuff.security.hive.authorization.Principal)
+	 */
+	public boolean containsPrincipal(Principal principal)
+	{
+		return hive.containsPrincipal(principal);
+	}
+
+	/**
+	 * @see org.wicketstuff.security.hive.Hive#containsPermission(org.wicketstuff.security.hive.authorization.Permission)
+	 */
+	public boolean containsPermission(Permission permission)
+	{
+		return hive.containsPermission(permission);
+	}
+
+	/**
+	 * @see org.wicketstuff.security.hive.Hive#hasPermission(org.wicketstuff.security.hive.authentication.Subject,
+	 *      org.wicketstuff.security.hive.authorization.Permission)
+	 */
+	public boolean hasPermission(Subject subject, Permission permission)
+	{
+		return hive.hasPermission(subject, permission);
+	}
+
+	/**
+	 * @see org.wicketstuff.security.hive.Hive#getPrincipals(org.wicketstuff.security.hive.authorization.Permission)
+	 */
+	public Set<Principal> getPrincipals(Permission permission)
+	{
+		return hive.getPrincipals(permission);
+	}
+
+	/**
+	 * @see org.wicketstuff.security.hive.Hive#getPermissions(org.wicketstuff.security.hive.authorization.Principal)
+	 */
+	public Set<Permission> getPermissions(Principal principal)
+	{
+		return hive.getPermissions(principal);
+	}
+}
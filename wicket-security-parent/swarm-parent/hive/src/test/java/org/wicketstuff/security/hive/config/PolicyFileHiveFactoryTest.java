@@ -16,21 +16,31 @@
  */
 package org.wicketstuff.security.hive.config;
 
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.StringReader;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import junit.framework.TestCase;
 
 import org.wicketstuff.security.actions.Actions;
+import org.wicketstuff.security.hive.BasicHive;
 import org.wicketstuff.security.hive.Hive;
+import org.wicketstuff.security.hive.HiveMind;
 import org.wicketstuff.security.hive.authorization.EverybodyPrincipal;
 import org.wicketstuff.security.hive.authorization.FaultyPermission;
 import org.wicketstuff.security.hive.authorization.SimplePrincipal;
@@ -484,4 +494,295 @@ public class PolicyFileHiveFactoryTest extends TestCase
 		assertFalse(factory.addStream(null));
 
 	}
+
+	/**
+	 * Test a policy file is restored from the snapshot without reading it.
+	 * 
+	 * @throws IOException
+	 */
+	public void testSnapshot() throws IOException
+	{
+		File policy = copyPolicy();
+		File snapshot = new File(policy.getPath() + ".snapshot");
+		try
+		{
+			PolicyFileHiveFactory factory = new PolicyFileHiveFactory(Actions.getActionFactory(KEY));
+			factory.addPolicyFile(policy.toURI().toURL());
+			factory.setSnapshotFile(snapshot);
+			doCreateHive(factory);
+			assertTrue(snapshot.isFile());
+
+			final int[] files = new int[1];
+			factory = new PolicyFileHiveFactory(Actions.getActionFactory(KEY))
+			{
+				@Override
+				protected void notifyFileStart(URL file)
+				{
+					files[0]++;
+				}
+			};
+			factory.addPolicyFile(policy.toURI().toURL());
+			factory.setSnapshotFile(snapshot);
+			doCreateHive(factory);
+			assertEquals(0, files[0]);
+
+			// a changed policy file is read again
+			assertTrue(policy.setLastModified(policy.lastModified() + 2000));
+			factory = new PolicyFileHiveFactory(Actions.getActionFactory(KEY))
+			{
+				@Override
+				protected void notifyFileStart(URL file)
+				{
+					files[0]++;
+				}
+			};
+			factory.addPolicyFile(policy.toURI().toURL());
+			factory.setSnapshotFile(snapshot);
+			doCreateHive(factory);
+			assertEquals(1, files[0]);
+		}
+		finally
+		{
+			policy.delete();
+			snapshot.delete();
+		}
+	}
+
+	/**
+	 * Test a snapshot is only used with the aliases it was created with.
+	 * 
+	 * @throws IOException
+	 */
+	public void testSnapshotWithOtherAliases() throws IOException
+	{
+		File policy = copyPolicy();
+		File snapshot = new File(policy.getPath() + ".snapshot");
+		try
+		{
+			PolicyFileHiveFactory factory = new PolicyFileHiveFactory(Actions.getActionFactory(KEY));
+			factory.addPolicyFile(policy.toURI().toURL());
+			factory.setSnapshotFile(snapshot);
+			doCreateHive(factory);
+
+			final int[] files = new int[1];
+			factory = new PolicyFileHiveFactory(Actions.getActionFactory(KEY))
+			{
+				@Override
+				protected void notifyFileStart(URL file)
+				{
+					files[0]++;
+				}
+			};
+			factory.addPolicyFile(policy.toURI().toURL());
+			factory.setSnapshotFile(snapshot);
+			factory.setAlias("unused", "value");
+			doCreateHive(factory);
+			assertEquals(1, files[0]);
+		}
+		finally
+		{
+			policy.delete();
+			snapshot.delete();
+		}
+	}
+
+	/**
+	 * Test a policy file without a modification time is read for every hive and left out of the
+	 * snapshot.
+	 * 
+	 * @throws IOException
+	 */
+	public void testUnknownModificationTime() throws IOException
+	{
+		final File policy = File.createTempFile("policy", ".hive");
+		File snapshot = new File(policy.getPath() + ".snapshot");
+		try
+		{
+			writePolicy(policy, "A");
+			URL url = new URL(null, "nomodified:" + policy.getName(), new URLStreamHandler()
+			{
+				@Override
+				protected URLConnection openConnection(URL u) throws IOException
+				{
+					final URLConnection connection = policy.toURI().toURL().openConnection();
+					return new URLConnection(u)
+					{
+						@Override
+						public void connect() throws IOException
+						{
+							connection.connect();
+						}
+
+						@Override
+						public InputStream getInputStream() throws IOException
+						{
+							return connection.getInputStream();
+						}
+
+						@Override
+						public long getLastModified()
+						{
+							return 0;
+						}
+					};
+				}
+			});
+
+			final int[] files = new int[1];
+			PolicyFileHiveFactory factory = new PolicyFileHiveFactory(Actions.getActionFactory(KEY))
+			{
+				@Override
+				protected void notifyFileStart(URL file)
+				{
+					files[0]++;
+				}
+			};
+			factory.addPolicyFile(url);
+			factory.setSnapshotFile(snapshot);
+			assertTrue(factory.createHive().containsPermission(new TestPermission("A")));
+			assertTrue(factory.isModified());
+
+			writePolicy(policy, "B");
+			assertTrue(factory.createHive().containsPermission(new TestPermission("B")));
+			assertEquals(2, files[0]);
+			assertFalse(snapshot.exists());
+		}
+		finally
+		{
+			policy.delete();
+			snapshot.delete();
+		}
+	}
+
+	/**
+	 * Test a permission that can not be restored does not drop the other permissions of its
+	 * principal.
+	 */
+	public void testRestoreSkipsFailingPermission()
+	{
+		CompiledPolicy policy = new CompiledPolicy(1);
+		policy.addGrant(SimplePrincipal.class.getName(), "test", Arrays.asList(
+			new CompiledPolicy.PermissionEntry("org.example.RemovedPermission", "R", null, 3),
+			new CompiledPolicy.PermissionEntry(TestPermission.class.getName(), "A", null, 3)));
+		policy.addGrant("org.example.RemovedPrincipal", "removed",
+			Arrays.asList(new CompiledPolicy.PermissionEntry(TestPermission.class.getName(), "B",
+				null, 3)));
+		policy.addGrant(null, null, Arrays.asList(new CompiledPolicy.PermissionEntry(
+			TestPermission.class.getName(), "C", null, 3)));
+
+		BasicHive hive = new BasicHive();
+		policy.apply(hive, Actions.getActionFactory(KEY));
+		assertTrue(hive.containsPrincipal(new SimplePrincipal("test")));
+		assertTrue(hive.containsPermission(new TestPermission("A")));
+		assertFalse(hive.containsPermission(new TestPermission("B")));
+		assertTrue(hive.containsPermission(new TestPermission("C")));
+	}
+
+	/**
+	 * Test the hive is replaced when a policy file changes.
+	 * 
+	 * @throws IOException
+	 */
+	public void testReload() throws IOException
+	{
+		File policy = File.createTempFile("policy", ".hive");
+		try
+		{
+			writePolicy(policy, "A");
+			PolicyFileHiveFactory factory = new PolicyFileHiveFactory(Actions.getActionFactory(KEY));
+			factory.addPolicyFile(policy.toURI().toURL());
+			factory.addReader(new StringReader(
+				"grant\n{\npermission org.wicketstuff.security.hive.authorization.TestPermission \"S\";\n};"));
+			factory.setReloadInterval(1, TimeUnit.HOURS);
+			ReloadingHive hive = (ReloadingHive)factory.createHive();
+			try
+			{
+				assertTrue(hive.containsPermission(new TestPermission("A")));
+				assertFalse(hive.checkForChanges());
+
+				writePolicy(policy, "B");
+				assertTrue(policy.setLastModified(policy.lastModified() + 2000));
+				Hive previous = hive.getHive();
+				assertTrue(hive.checkForChanges());
+				assertNotSame(previous, hive.getHive());
+				assertFalse(hive.containsPermission(new TestPermission("A")));
+				assertTrue(hive.containsPermission(new TestPermission("B")));
+				// the reader is not lost
+				assertTrue(hive.containsPermission(new TestPermission("S")));
+				// the replaced hive is left intact
+				assertTrue(previous.containsPermission(new TestPermission("A")));
+			}
+			finally
+			{
+				hive.stop();
+			}
+		}
+		finally
+		{
+			policy.delete();
+		}
+	}
+
+	/**
+	 * Test unregistering the hive stops checking for changes.
+	 * 
+	 * @throws IOException
+	 */
+	public void testUnregisterStopsReloading() throws IOException
+	{
+		File policy = File.createTempFile("policy", ".hive");
+		try
+		{
+			writePolicy(policy, "A");
+			PolicyFileHiveFactory factory = new PolicyFileHiveFactory(Actions.getActionFactory(KEY));
+			factory.addPolicyFile(policy.toURI().toURL());
+			factory.setReloadInterval(1, TimeUnit.HOURS);
+			String queen = getClass().getName() + ":reloading";
+			HiveMind.registerHive(queen, factory);
+			ReloadingHive hive = (ReloadingHive)HiveMind.getHive(queen);
+			assertTrue(hive.isWatching());
+
+			assertSame(hive, HiveMind.unregisterHive(queen));
+			assertFalse(hive.isWatching());
+		}
+		finally
+		{
+			policy.delete();
+		}
+	}
+
+	private File copyPolicy() throws IOException
+	{
+		File policy = File.createTempFile("policy", ".hive");
+		InputStream in = getClass().getResource("test-policy.hive").openStream();
+		OutputStream out = new FileOutputStream(policy);
+		try
+		{
+			byte[] buffer = new byte[4096];
+			int read;
+			while ((read = in.read(buffer)) > 0)
+				out.write(buffer, 0, read);
+		}
+		finally
+		{
+			in.close();
+			out.close();
+		}
+		return policy;
+	}
+
+	private void writePolicy(File policy, String permission) throws IOException
+	{
+		OutputStream out = new FileOutputStream(policy);
+		try
+		{
+			out.write(("grant principal org.wicketstuff.security.hive.authorization.SimplePrincipal \"test\"\n" +
+				"{\n" + "permission org.wicketstuff.security.hive.authorization.TestPermission \"" +
+				permission + "\";\n" + "};\n").getBytes("UTF-8"));
+		}
+		finally
+		{
+			out.close();
+		}
+	}
 }
@@ -129,8 +129,12 @@ public class SwarmActionFactory implements WaspActionFactory
 	 */
 	public WaspAction getAction(String actions)
 	{
+		// the name as used by the caller, saves converting it for every check
+		SwarmAction sa = actions == null ? null : getCachedAction(actions);
+		if (sa != null)
+			return sa;
 		String saveActions = convertWicket2Wasp(actions);
-		SwarmAction sa = getCachedAction(saveActions);
+		sa = getCachedAction(saveActions);
 		if (sa == null)
 		{
 			int actionValues = parseActions(saveActions);
@@ -139,6 +143,8 @@ public class SwarmActionFactory implements WaspActionFactory
 			sa = new SwarmAction(actionValues, nameValues, getFactoryKey());
 			cacheAction(saveActions, sa);
 		}
+		if (actions != null)
+			cacheAction(actions, sa);
 		return sa;
 	}
 
@@ -16,8 +16,13 @@
  */
 package org.wicketstuff.security.swarm.strategies;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import org.apache.wicket.Component;
+import org.apache.wicket.MetaDataKey;
 import org.apache.wicket.model.IModel;
+import org.apache.wicket.request.cycle.RequestCycle;
 import org.wicketstuff.security.actions.WaspAction;
 import org.wicketstuff.security.components.ISecureComponent;
 import org.wicketstuff.security.components.SecureComponentHelper;
@@ -38,6 +43,14 @@ public abstract class AbstractSwarmStrategy extends ClassAuthorizationStrategy
 {
 	private static final long serialVersionUID = 1L;
 
+	/**
+	 * Key for the decisions of the current request.
+	 */
+	private static final MetaDataKey<PermissionMemo> MEMO_KEY = new MetaDataKey<PermissionMemo>()
+	{
+		private static final long serialVersionUID = 1L;
+	};
+
 	protected LoginContainer loginContainer;
 
 	public AbstractSwarmStrategy()
@@ -74,7 +87,52 @@ public abstract class AbstractSwarmStrategy extends ClassAuthorizationStrategy
 	 */
 	public boolean hasPermission(Permission permission)
 	{
-		return hasPermission(permission, getSubject());
+		Subject subject = getSubject();
+		PermissionMemo memo = getPermissionMemo(subject);
+		if (memo == null)
+			return hasPermission(permission, subject);
+		Boolean decision = memo.decisions.get(permission);
+		if (decision == null)
+		{
+			decision = hasPermission(permission, subject);
+			memo.decisions.put(permission, decision);
+		}
+		return decision;
+	}
+
+	/**
+	 * Whether the decisions of {@link #hasPermission(Permission)} are remembered for the rest of
+	 * the request. A page checks the same permissions for many components, e.g. in a repeater.
+	 * Override to return false if permissions may change within a request.
+	 * 
+	 * @return true by default
+	 */
+	protected boolean isPermissionMemoEnabled()
+	{
+		return true;
+	}
+
+	/**
+	 * Returns the decisions of the current request for the subject, a login or logoff discards
+	 * them.
+	 * 
+	 * @param subject
+	 * @return the memo or null if there is no request
+	 */
+	private PermissionMemo getPermissionMemo(Subject subject)
+	{
+		if (!isPermissionMemoEnabled())
+			return null;
+		RequestCycle cycle = RequestCycle.get();
+		if (cycle == null)
+			return null;
+		PermissionMemo memo = cycle.getMetaData(MEMO_KEY);
+		if (memo == null || memo.strategy != this || memo.subject != subject)
+		{
+			memo = new PermissionMemo(this, subject);
+			cycle.setMetaData(MEMO_KEY, memo);
+		}
+		return memo;
 	}
 
 	/**
@@ -166,4 +224,22 @@ public abstract class AbstractSwarmStrategy extends ClassAuthorizationStrategy
 		return false;
 
 	}
+
+	/**
+	 * The decisions of a strategy for a subject during a request.
+	 */
+	private static final class PermissionMemo
+	{
+		private final AbstractSwarmStrategy strategy;
+
+		private final Subject subject;
+
+		private final Map<Permission, Boolean> decisions = new HashMap<Permission, Boolean>();
+
+		private PermissionMemo(AbstractSwarmStrategy strategy, Subject subject)
+		{
+			this.strategy = strategy;
+			this.subject = subject;
+		}
+	}
 }
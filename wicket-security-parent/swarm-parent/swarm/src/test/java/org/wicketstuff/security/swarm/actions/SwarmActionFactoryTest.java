@@ -106,6 +106,17 @@ public class SwarmActionFactoryTest extends TestCase
 		assertSame(action2, factory.getAction("all")); // cache lookup
 	}
 
+	/**
+	 * Test the names used by wicket are resolved once.
+	 */
+	public void testGetActionCachesName()
+	{
+		WaspAction action = factory.getAction("RENDER");
+		assertEquals(factory.getAction("render"), action);
+		assertSame(action, factory.getAction("RENDER"));
+		assertSame(factory.getAction(""), factory.getAction((String)null));
+	}
+
 	/**
 	 * @see SwarmActionFactory#getAction(Action)
 	 */
@@ -0,0 +1,185 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.security.swarm.strategies;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.wicket.util.tester.WicketTester;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.wicketstuff.security.actions.Actions;
+import org.wicketstuff.security.hive.authentication.DefaultSubject;
+import org.wicketstuff.security.hive.authentication.LoginContext;
+import org.wicketstuff.security.hive.authentication.Subject;
+import org.wicketstuff.security.hive.authorization.Permission;
+import org.wicketstuff.security.hive.authorization.SimplePrincipal;
+import org.wicketstuff.security.hive.authorization.permissions.AllPermissions;
+import org.wicketstuff.security.swarm.actions.SwarmActionFactory;
+
+/**
+ * Tests the decisions of {@link AbstractSwarmStrategy#hasPermission(Permission)} are remembered
+ * per request and subject.
+ */
+public class AbstractSwarmStrategyTest
+{
+	private static final String KEY = "MEMO_TEST";
+
+	private WicketTester mock;
+
+	private CountingStrategy strategy;
+
+	private Permission permission;
+
+	private Permission other;
+
+	private LoginContext context;
+
+	@Before
+	public void setUp()
+	{
+		mock = new WicketTester();
+		SwarmActionFactory factory = new SwarmActionFactory(KEY);
+		permission = new AllPermissions("memo", factory);
+		other = new AllPermissions("other", factory);
+		strategy = new CountingStrategy();
+		context = new LoginContext()
+		{
+			@Override
+			public Subject login()
+			{
+				DefaultSubject subject = new DefaultSubject();
+				subject.addPrincipal(new SimplePrincipal("memo"));
+				return subject;
+			}
+		};
+	}
+
+	@After
+	public void tearDown()
+	{
+		mock.destroy();
+		Actions.unregisterActionFactory(KEY);
+	}
+
+	/**
+	 * Repeated checks of a request are answered by the memo.
+	 */
+	@Test
+	public void testRepeatedChecksInRequest()
+	{
+		assertFalse(strategy.hasPermission(permission));
+		assertFalse(strategy.hasPermission(permission));
+		assertFalse(strategy.hasPermission(other));
+		assertFalse(strategy.hasPermission(other));
+		assertEquals(2, strategy.checks);
+	}
+
+	/**
+	 * A login or logoff replaces the subject and thereby the decisions.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testLoginAndLogoffDiscardDecisions() throws Exception
+	{
+		assertFalse(strategy.hasPermission(permission));
+
+		strategy.login(context);
+		assertTrue(strategy.hasPermission(permission));
+		assertTrue(strategy.hasPermission(permission));
+		assertEquals(2, strategy.checks);
+
+		strategy.logoff(context);
+		assertFalse(strategy.hasPermission(permission));
+		assertFalse(strategy.hasPermission(permission));
+		assertEquals(3, strategy.checks);
+	}
+
+	/**
+	 * Every request starts without decisions.
+	 */
+	@Test
+	public void testDecisionsNotSharedBetweenRequests()
+	{
+		assertFalse(strategy.hasPermission(permission));
+		assertEquals(1, strategy.checks);
+
+		mock.processRequest();
+		assertFalse(strategy.hasPermission(permission));
+		assertFalse(strategy.hasPermission(permission));
+		assertEquals(2, strategy.checks);
+	}
+
+	/**
+	 * Strategies of the same request do not share decisions.
+	 */
+	@Test
+	public void testDecisionsNotSharedBetweenStrategies()
+	{
+		CountingStrategy second = new CountingStrategy();
+		assertFalse(strategy.hasPermission(permission));
+		assertFalse(second.hasPermission(permission));
+		assertEquals(1, strategy.checks);
+		assertEquals(1, second.checks);
+	}
+
+	/**
+	 * Without the memo every check is performed.
+	 */
+	@Test
+	public void testMemoDisabled()
+	{
+		strategy = new CountingStrategy()
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean isPermissionMemoEnabled()
+			{
+				return false;
+			}
+		};
+		strategy.hasPermission(permission);
+		strategy.hasPermission(permission);
+		assertEquals(2, strategy.checks);
+	}
+
+	/**
+	 * Grants every permission to a logged in subject and counts the checks.
+	 */
+	private static class CountingStrategy extends SwarmStrategy
+	{
+		private static final long serialVersionUID = 1L;
+
+		private int checks;
+
+		private CountingStrategy()
+		{
+			super(KEY);
+		}
+
+		@Override
+		public boolean hasPermission(Permission permission, Subject subject)
+		{
+			checks++;
+			return subject != null;
+		}
+	}
+}
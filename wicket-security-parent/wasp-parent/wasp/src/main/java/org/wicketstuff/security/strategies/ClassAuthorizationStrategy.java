@@ -19,15 +19,16 @@ package org.wicketstuff.security.strategies;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.wicket.authorization.IAuthorizationStrategy;
 import org.apache.wicket.request.component.IRequestableComponent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.wicketstuff.security.actions.Access;
+import org.wicketstuff.security.actions.WaspAction;
 import org.wicketstuff.security.checks.ClassSecurityCheck;
 import org.wicketstuff.security.checks.ISecurityCheck;
 import org.wicketstuff.security.components.ISecureComponent;
@@ -58,7 +59,18 @@ public abstract class ClassAuthorizationStrategy extends WaspAuthorizationStrate
 	 */
 	private Class<? extends ISecureComponent> secureClass = ISecurePage.class;
 
-	private Map<Class<?>, ISecurityCheck[]> cache = new HashMap<Class<?>, ISecurityCheck[]>(100); // guess
+	/**
+	 * The static checks by class, shared by all request threads and read without locking.
+	 */
+	private final ConcurrentMap<Class<?>, ISecurityCheck[]> cache = new ConcurrentHashMap<Class<?>, ISecurityCheck[]>(
+		100); // guess
+
+	/**
+	 * The checks performed at instantiation by class, the static checks or a
+	 * {@link ClassSecurityCheck} if there are none.
+	 */
+	private final ConcurrentMap<Class<?>, ISecurityCheck[]> instantiationChecks = new ConcurrentHashMap<Class<?>, ISecurityCheck[]>(
+		100);
 
 	/**
 	 * Creates a strategy that checks all implementations of {@link ISecurePage} . All other classes
@@ -102,20 +114,39 @@ public abstract class ClassAuthorizationStrategy extends WaspAuthorizationStrate
 	{
 		if (c != null && secureClass.isAssignableFrom(c))
 		{
-			ISecurityCheck[] checks = getClassChecks(c);
+			ISecurityCheck[] checks = getInstantiationChecks(c);
+			WaspAction access = getActionFactory().getAction(Access.class);
 			for (int i = 0; i < checks.length; i++)
 			{
-				if (!checks[i].isActionAuthorized(getActionFactory().getAction(Access.class)))
+				if (!checks[i].isActionAuthorized(access))
 					return false;
 			}
-			if (checks.length == 0)
-				return new ClassSecurityCheck(c).isActionAuthorized(getActionFactory().getAction(
-					Access.class));
 			return true;
 		}
 		return true;
 	}
 
+	/**
+	 * Returns the checks performed when a class is instantiated, computed once per class.
+	 * 
+	 * @param clazz
+	 * @return the static checks of the class, or a {@link ClassSecurityCheck} if there are none
+	 */
+	private ISecurityCheck[] getInstantiationChecks(Class<? extends IRequestableComponent> clazz)
+	{
+		ISecurityCheck[] checks = instantiationChecks.get(clazz);
+		if (checks == null)
+		{
+			checks = getClassChecks(clazz);
+			if (checks.length == 0)
+				checks = new ISecurityCheck[] { new ClassSecurityCheck(clazz) };
+			ISecurityCheck[] concurrent = instantiationChecks.putIfAbsent(clazz, checks);
+			if (concurrent != null)
+				checks = concurrent;
+		}
+		return checks;
+	}
+
 	/**
 	 * Returns the static {@link ISecurityCheck}s of a class. Note that found checks are cached
 	 * therefore all checks should be final.
@@ -134,8 +165,9 @@ public abstract class ClassAuthorizationStrategy extends WaspAuthorizationStrate
 			checks = new ISecurityCheck[0];
 		else
 			checks = list.toArray(new ISecurityCheck[list.size()]);
-		cache.put(clazz, checks);
-		return checks;
+		// another thread may have computed the same checks meanwhile
+		ISecurityCheck[] concurrent = cache.putIfAbsent(clazz, checks);
+		return concurrent != null ? concurrent : checks;
 	}
 
 	/**
@@ -208,5 +240,6 @@ public abstract class ClassAuthorizationStrategy extends WaspAuthorizationStrate
 	public void destroy()
 	{
 		cache.clear();
+		instantiationChecks.clear();
 	}
 }
@@ -177,14 +177,15 @@ public abstract class WaspAuthorizationStrategy implements IAuthorizationStrateg
 			ISecurityCheck check = getSecurityCheck(component);
 			if (check != null)
 			{
-				if (check.isActionAuthorized(getActionFactory().getAction(action)))
+				WaspAction waspAction = getActionFactory().getAction(action);
+				if (check.isActionAuthorized(waspAction))
 					return true;
 				IAuthorizationMessageSource message = getMessageSource();
 				if (message != null)
 				{
 					message.setComponent(component);
 					message.addVariable("wicket.action", action);
-					message.addVariable("wasp.action", getActionFactory().getAction(action));
+					message.addVariable("wasp.action", waspAction);
 					logMessage(message);
 				}
 				return false;
@@ -193,15 +194,15 @@ public abstract class WaspAuthorizationStrategy implements IAuthorizationStrateg
 			IModel<?> model = component.getDefaultModel();
 			if (model instanceof ISecureModel<?>)
 			{
-				if (((ISecureModel<?>)model).isAuthorized(component,
-					getActionFactory().getAction(action)))
+				WaspAction waspAction = getActionFactory().getAction(action);
+				if (((ISecureModel<?>)model).isAuthorized(component, waspAction))
 					return true;
 				IAuthorizationMessageSource message = getMessageSource();
 				if (message != null)
 				{
 					message.setComponent(component);
 					message.addVariable("wicket.action", action);
-					message.addVariable("wasp.action", getActionFactory().getAction(action));
+					message.addVariable("wasp.action", waspAction);
 					logMessage(message);
 				}
 				return false;
@@ -15,7 +15,13 @@
  */
 package org.wicketstuff.wicket.mount.secure.processor;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -26,8 +32,10 @@ import javax.annotation.processing.SupportedSourceVersion;
 import javax.lang.model.SourceVersion;
 import javax.lang.model.element.Element;
 import javax.lang.model.element.TypeElement;
+import javax.tools.JavaFileObject;
 
 import org.apache.wicket.authroles.authorization.strategies.role.annotations.AuthorizeInstantiation;
+import org.apache.wicket.authroles.authorization.strategies.role.annotations.AuthorizeInstantiations;
 import org.wicketstuff.wicket.mount.core.annotation.MountPath;
 import org.wicketstuff.wicket.mount.core.processor.AbstractAutoMountAnnotationProcessor;
 import org.wicketstuff.wicket.mount.core.processor.AutoMountContext;
@@ -74,6 +82,7 @@ public class SecureMountAnnotationProcessor extends AbstractAutoMountAnnotationP
 				}
 
 				generateSource(context);
+				generatePageRolesSource(context);
 			}
 			
 		} catch (IOException ex)
@@ -143,6 +152,137 @@ public class SecureMountAnnotationProcessor extends AbstractAutoMountAnnotationP
 		return mimeExtension;
 	}
 
+	/**
+	 * Generates the role sets required by the mounted pages, evaluated like
+	 * AnnotationsRoleAuthorizationStrategy does: the class annotation, or else
+	 * the package annotation, and each rule of
+	 * {@link AuthorizeInstantiations}.
+	 */
+	protected void generatePageRolesSource(AutoMountContext context) throws IOException
+	{
+		final Map<String, Integer> roleIndex = new LinkedHashMap<String, Integer>();
+		final Map<TypeElement, List<BitSet>> pageRoles = new LinkedHashMap<TypeElement, List<BitSet>>();
+
+		for (TypeElement elem : context.getMountableElements())
+		{
+			final List<BitSet> roleSets = new ArrayList<BitSet>();
+
+			AuthorizeInstantiation authorize = elem.getAnnotation(AuthorizeInstantiation.class);
+			if (authorize == null)
+			{
+				authorize = processingEnv.getElementUtils().getPackageOf(elem).getAnnotation(AuthorizeInstantiation.class);
+			}
+			if (authorize != null)
+			{
+				roleSets.add(toBitSet(roleIndex, authorize.value()));
+			}
+
+			final AuthorizeInstantiations rules = elem.getAnnotation(AuthorizeInstantiations.class);
+			if (rules != null)
+			{
+				for (AuthorizeInstantiation rule : rules.ruleset())
+				{
+					roleSets.add(toBitSet(roleIndex, rule.value()));
+				}
+			}
+			pageRoles.put(elem, roleSets);
+		}
+
+		// named after the binary name of the application, so nested applications find it by Class#getName()
+		final String packageName = context.getApplicationPackage().getQualifiedName().toString();
+		final String binaryName = processingEnv.getElementUtils().getBinaryName(
+				context.getApplicationClassTypeElement()) + "PageRolesInfo";
+		final String infoClassName = binaryName.substring(packageName.length() + 1);
+		final JavaFileObject jfo = processingEnv.getFiler().createSourceFile(binaryName);
+
+		final BufferedWriter bw = new BufferedWriter(jfo.openWriter());
+		bw.append("package ");
+		bw.append(packageName);
+		bw.append(";");
+		bw.newLine();
+		bw.newLine();
+		bw.append("import org.wicketstuff.wicket.servlet3.auth.PageRolesInfo;");
+		bw.newLine();
+		bw.append("import java.util.*;");
+		bw.newLine();
+		bw.newLine();
+		bw.append("public class " + infoClassName + " implements PageRolesInfo");
+		bw.newLine();
+		bw.append("{");
+		bw.newLine();
+		bw.append("\tprivate static final String[] ROLES = {");
+		boolean first = true;
+		for (String role : roleIndex.keySet())
+		{
+			bw.append(first ? "" : ", ").append('"').append(escape(role)).append('"');
+			first = false;
+		}
+		bw.append("};");
+		bw.newLine();
+		bw.newLine();
+		bw.append("\t@Override");
+		bw.newLine();
+		bw.append("\tpublic String[] getRoles() {");
+		bw.newLine();
+		bw.append("\t\treturn ROLES;");
+		bw.newLine();
+		bw.append("\t}");
+		bw.newLine();
+		bw.newLine();
+		bw.append("\t@Override");
+		bw.newLine();
+		bw.append("\tpublic Map<Class<?>, BitSet[]> getPageRoles() {");
+		bw.newLine();
+		bw.append("\t\tMap<Class<?>, BitSet[]> ret = new HashMap<Class<?>, BitSet[]>();");
+		bw.newLine();
+		for (Map.Entry<TypeElement, List<BitSet>> entry : pageRoles.entrySet())
+		{
+			bw.append("\t\tret.put(" + entry.getKey().getQualifiedName().toString() + ".class, new BitSet[] {");
+			first = true;
+			for (BitSet roleSet : entry.getValue())
+			{
+				bw.append(first ? "" : ", ").append("BitSet.valueOf(new long[] {");
+				final long[] words = roleSet.toLongArray();
+				for (int i = 0; i < words.length; i++)
+				{
+					bw.append(i == 0 ? "" : ", ").append("0x" + Long.toHexString(words[i]) + "L");
+				}
+				bw.append("})");
+				first = false;
+			}
+			bw.append("});");
+			bw.newLine();
+		}
+		bw.append("\t\treturn ret;");
+		bw.newLine();
+		bw.append("\t}");
+		bw.newLine();
+		bw.append("}");
+		bw.newLine();
+		bw.close();
+	}
+
+	private static BitSet toBitSet(Map<String, Integer> roleIndex, String[] roles)
+	{
+		final BitSet bits = new BitSet();
+		for (String role : roles)
+		{
+			Integer index = roleIndex.get(role);
+			if (index == null)
+			{
+				index = roleIndex.size();
+				roleIndex.put(role, index);
+			}
+			bits.set(index);
+		}
+		return bits;
+	}
+
+	private static String escape(String value)
+	{
+		return value.replace("\\", "\\\\").replace("\"", "\\\"");
+	}
+
 	private boolean isSecureElement(TypeElement elem)
 	{
 		if (elem.getAnnotation(AuthorizeInstantiation.class) != null)
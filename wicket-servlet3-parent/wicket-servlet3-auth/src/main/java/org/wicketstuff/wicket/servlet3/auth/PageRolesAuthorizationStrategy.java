@@ -0,0 +1,93 @@
+/*
+ * Copyright 2014 WicketStuff.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.wicket.servlet3.auth;
+
+import java.util.BitSet;
+import java.util.Map;
+
+import org.apache.wicket.Component;
+import org.apache.wicket.Session;
+import org.apache.wicket.authorization.Action;
+import org.apache.wicket.authorization.IAuthorizationStrategy;
+import org.apache.wicket.request.component.IRequestableComponent;
+import org.apache.wicket.request.mapper.parameter.PageParameters;
+import org.apache.wicket.request.resource.IResource;
+
+/**
+ * Authorizes the instantiation of mounted pages with the role sets precomputed
+ * from their {@code @AuthorizeInstantiation} annotations, so the check is a
+ * {@link BitSet} test against the roles granted to the session. All other
+ * checks are passed to a delegate.
+ *
+ * @see PageRolesInfo
+ */
+public class PageRolesAuthorizationStrategy implements IAuthorizationStrategy
+{
+
+	private final String[] roles;
+	private final Map<Class<?>, BitSet[]> pageRoles;
+	private final IAuthorizationStrategy delegate;
+
+	public PageRolesAuthorizationStrategy(PageRolesInfo info, IAuthorizationStrategy delegate)
+	{
+		this.roles = info.getRoles();
+		this.pageRoles = info.getPageRoles();
+		this.delegate = delegate;
+	}
+
+	@Override
+	public <T extends IRequestableComponent> boolean isInstantiationAuthorized(Class<T> componentClass)
+	{
+		final BitSet[] required = pageRoles.get(componentClass);
+		if (required == null)
+		{
+			return delegate.isInstantiationAuthorized(componentClass);
+		}
+		if (required.length == 0)
+		{
+			return true;
+		}
+
+		final Session session = Session.get();
+		if (!(session instanceof ServletContainerAuthenticatedWebSession))
+		{
+			return delegate.isInstantiationAuthorized(componentClass);
+		}
+
+		final BitSet granted = ((ServletContainerAuthenticatedWebSession) session).getGrantedRoles(roles);
+
+		for (BitSet anyOf : required)
+		{
+			if (!anyOf.isEmpty() && !anyOf.intersects(granted))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public boolean isActionAuthorized(Component component, Action action)
+	{
+		return delegate.isActionAuthorized(component, action);
+	}
+
+	@Override
+	public boolean isResourceAuthorized(IResource resource, PageParameters parameters)
+	{
+		return delegate.isResourceAuthorized(resource, parameters);
+	}
+}
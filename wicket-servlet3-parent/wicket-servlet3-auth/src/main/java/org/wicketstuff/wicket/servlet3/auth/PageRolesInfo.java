@@ -0,0 +1,43 @@
+/*
+ * Copyright 2014 WicketStuff.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.wicket.servlet3.auth;
+
+import java.util.BitSet;
+import java.util.Map;
+
+/**
+ * Interface for the roles required by mounted pages, generated at compile time
+ * for applications annotated with
+ * {@link org.wicketstuff.wicket.servlet3.auth.annotation.SecureAutoMount}.
+ *
+ * @see PageRolesAuthorizationStrategy
+ */
+public interface PageRolesInfo
+{
+
+	/**
+	 * @return all roles required by mounted pages, the index of a role is its
+	 *         bit in the role sets
+	 */
+	String[] getRoles();
+
+	/**
+	 * @return the role sets per mounted page, a page is authorized if the user
+	 *         has any role of each set
+	 */
+	Map<Class<?>, BitSet[]> getPageRoles();
+
+}
@@ -19,8 +19,10 @@ import org.apache.wicket.Component;
 import org.apache.wicket.Page;
 import org.apache.wicket.RestartResponseAtInterceptPageException;
 import org.apache.wicket.authorization.IUnauthorizedComponentInstantiationListener;
+import org.apache.wicket.authorization.strategies.CompoundAuthorizationStrategy;
 import org.apache.wicket.authroles.authentication.AbstractAuthenticatedWebSession;
 import org.apache.wicket.authroles.authentication.AuthenticatedWebApplication;
+import org.apache.wicket.authroles.authorization.strategies.role.annotations.AnnotationsRoleAuthorizationStrategy;
 import org.apache.wicket.authroles.authorization.strategies.role.metadata.MetaDataRoleAuthorizationStrategy;
 import org.apache.wicket.core.request.handler.IPageClassRequestHandler;
 import org.apache.wicket.markup.html.WebPage;
@@ -61,6 +63,43 @@ public abstract class ServletContainerAuthenticatedWebApplication extends Authen
 		getRequestCycleListeners().add(listener);
 
 		autoMountPages();
+		installPageRoles();
+	}
+
+	/**
+	 * Replaces the annotation based authorization of page instantiations with
+	 * the role sets precomputed by the annotation processor, if available.
+	 *
+	 * @return true if precomputed page roles are used
+	 */
+	protected boolean installPageRoles()
+	{
+		final String infoClassName = getClass().getName() + "PageRolesInfo";
+		final Class<?> infoClass;
+		try
+		{
+			infoClass = getApplicationSettings().getClassResolver().resolveClass(infoClassName);
+		} catch (ClassNotFoundException ex)
+		{
+			LOG.debug("No precomputed page roles found: {}", infoClassName);
+			return false;
+		}
+
+		final PageRolesInfo info;
+		try
+		{
+			info = infoClass.asSubclass(PageRolesInfo.class).newInstance();
+		} catch (Exception ex)
+		{
+			LOG.warn("Unable to instantiate precomputed page roles " + infoClassName, ex);
+			return false;
+		}
+
+		final CompoundAuthorizationStrategy strategy = new CompoundAuthorizationStrategy();
+		strategy.add(new PageRolesAuthorizationStrategy(info, new AnnotationsRoleAuthorizationStrategy(this)));
+		strategy.add(new MetaDataRoleAuthorizationStrategy(this));
+		getSecuritySettings().setAuthorizationStrategy(strategy);
+		return true;
 	}
 
 	protected boolean autoMountPages()
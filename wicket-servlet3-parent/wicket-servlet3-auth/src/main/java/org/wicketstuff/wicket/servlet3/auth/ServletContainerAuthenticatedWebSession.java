@@ -15,11 +15,17 @@
  */
 package org.wicketstuff.wicket.servlet3.auth;
 
+import java.io.Serializable;
 import java.security.Principal;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 
+import org.apache.wicket.MetaDataKey;
 import org.apache.wicket.Session;
 import org.apache.wicket.authroles.authentication.AuthenticatedWebSession;
 import org.apache.wicket.authroles.authorization.strategies.role.Roles;
@@ -29,6 +35,12 @@ import org.apache.wicket.request.cycle.RequestCycle;
 /**
  * Implementation class for AuthenticatedWebSession that uses servlet 3 request
  * to authenticate user.
+ * <p>
+ * Roles resolved by the servlet container are cached for the request and, unless
+ * {@link #isCachingRoles()} is overridden, for the session. This includes the
+ * roles resolved by {@link #getGrantedRoles(String[])}. The caches are
+ * invalidated on login, on logout and when the user principal of the request
+ * changes.
  *
  * @author jsarman
  */
@@ -37,6 +49,24 @@ public class ServletContainerAuthenticatedWebSession extends AuthenticatedWebSes
 
 	private static final long serialVersionUID = 1L;
 
+	private static final MetaDataKey<Map<String, Boolean>> REQUEST_ROLES = new MetaDataKey<Map<String, Boolean>>()
+	{
+		private static final long serialVersionUID = 1L;
+	};
+
+	private static final MetaDataKey<GrantedRoles> REQUEST_GRANTED_ROLES = new MetaDataKey<GrantedRoles>()
+	{
+		private static final long serialVersionUID = 1L;
+	};
+
+	private final UserPrincipalRoles roles = new UserPrincipalRoles();
+
+	private final Map<String, Boolean> sessionRoles = new ConcurrentHashMap<String, Boolean>();
+
+	private volatile String sessionRolesUser;
+
+	private volatile GrantedRoles sessionGrantedRoles;
+
 	/**
 	 * @return Current authenticated web session
 	 */
@@ -70,15 +100,137 @@ public class ServletContainerAuthenticatedWebSession extends AuthenticatedWebSes
 	{
 		if (isSignedIn())
 		{
-			return new UserPrincipalRoles();
+			return roles;
 		}
 		return null;
 	}
 
+	/**
+	 * Is the current user in a role. The answer of the servlet container is
+	 * cached for the current request and, if {@link #isCachingRoles()}, for this
+	 * session.
+	 *
+	 * @param role
+	 *            the role to check
+	 * @return true if the user is in the role
+	 */
+	public boolean isUserInRole(String role)
+	{
+		final Map<String, Boolean> requestRoles = getRequestRoles();
+		Boolean result = requestRoles.get(role);
+		if (result == null)
+		{
+			if (isCachingRoles())
+			{
+				result = sessionRoles.get(role);
+				if (result == null)
+				{
+					result = getRequest().isUserInRole(role);
+					sessionRoles.put(role, result);
+				}
+			} else
+			{
+				result = getRequest().isUserInRole(role);
+			}
+			requestRoles.put(role, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Resolves the given roles at once, so checking a set of required roles is a
+	 * single {@link BitSet#intersects(BitSet)}. The result is cached like the
+	 * single roles, for the request and, if {@link #isCachingRoles()}, for this
+	 * session.
+	 *
+	 * @param allRoles
+	 *            the roles to resolve, the index of a role is its bit
+	 * @return the bits of the roles the current user is in, empty if not signed in
+	 */
+	public BitSet getGrantedRoles(String[] allRoles)
+	{
+		getRequestRoles();
+		final boolean caching = isCachingRoles();
+		GrantedRoles granted = caching ? sessionGrantedRoles : RequestCycle.get().getMetaData(REQUEST_GRANTED_ROLES);
+		if (granted == null || granted.index != allRoles)
+		{
+			final BitSet bits = new BitSet(allRoles.length);
+			if (isSignedIn())
+			{
+				for (int i = 0; i < allRoles.length; i++)
+				{
+					if (isUserInRole(allRoles[i]))
+					{
+						bits.set(i);
+					}
+				}
+			}
+			granted = new GrantedRoles(allRoles, bits);
+			if (caching)
+			{
+				sessionGrantedRoles = granted;
+			} else
+			{
+				RequestCycle.get().setMetaData(REQUEST_GRANTED_ROLES, granted);
+			}
+		}
+		return granted.bits;
+	}
+
+	/**
+	 * Should roles be cached for the whole session. Override to return false if
+	 * the roles of a user can change while logged in.
+	 *
+	 * @return true by default
+	 */
+	protected boolean isCachingRoles()
+	{
+		return true;
+	}
+
+	/**
+	 * Drops all cached roles, e.g. after the roles of the user changed in the
+	 * realm.
+	 */
+	public void invalidateRoles()
+	{
+		sessionRoles.clear();
+		sessionRolesUser = null;
+		sessionGrantedRoles = null;
+		if (RequestCycle.get() != null)
+		{
+			RequestCycle.get().setMetaData(REQUEST_ROLES, null);
+			RequestCycle.get().setMetaData(REQUEST_GRANTED_ROLES, null);
+		}
+	}
+
+	/**
+	 * Get the roles resolved in the current request. On first access in a
+	 * request the session cache is checked to belong to the current user.
+	 */
+	private Map<String, Boolean> getRequestRoles()
+	{
+		final RequestCycle cycle = RequestCycle.get();
+		Map<String, Boolean> requestRoles = cycle.getMetaData(REQUEST_ROLES);
+		if (requestRoles == null)
+		{
+			final String user = getUserName();
+			if (user == null ? sessionRolesUser != null : !user.equals(sessionRolesUser))
+			{
+				invalidateRoles();
+				sessionRolesUser = user;
+			}
+			requestRoles = new HashMap<String, Boolean>();
+			cycle.setMetaData(REQUEST_ROLES, requestRoles);
+		}
+		return requestRoles;
+	}
+
 	@Override
 	public final void signOut()
 	{
 		signIn(false);
+		invalidateRoles();
 		if (getRequest().getUserPrincipal() != null)
 		{
 			try
@@ -103,6 +255,7 @@ public class ServletContainerAuthenticatedWebSession extends AuthenticatedWebSes
 			}
 			//Login using the 3.0 servlet request call
 			getRequest().login(username, password);
+			invalidateRoles();
 
 			return true;
 		} catch (ServletException ex)
@@ -117,4 +270,22 @@ public class ServletContainerAuthenticatedWebSession extends AuthenticatedWebSes
 		return (HttpServletRequest) RequestCycle.get().getRequest().getContainerRequest();
 	}
 
+	/**
+	 * The roles resolved for an array of roles.
+	 */
+	private static final class GrantedRoles implements Serializable
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final String[] index;
+
+		private final BitSet bits;
+
+		private GrantedRoles(String[] index, BitSet bits)
+		{
+			this.index = index;
+			this.bits = bits;
+		}
+	}
+
 }
@@ -19,12 +19,15 @@ import java.util.Iterator;
 
 import javax.servlet.http.HttpServletRequest;
 
+import org.apache.wicket.Session;
 import org.apache.wicket.authroles.authorization.strategies.role.Roles;
 import org.apache.wicket.request.cycle.RequestCycle;
 
 /**
  * Implementation of Roles class that use the servlet 3 request object to
- * determine the current user roles.
+ * determine the current user roles. Within a
+ * {@link ServletContainerAuthenticatedWebSession} the resolved roles are
+ * cached by the session.
  *
  * @author jsarman
  */
@@ -41,12 +44,11 @@ public class UserPrincipalRoles extends Roles
 	@Override
 	public final boolean hasAllRoles(Roles roles)
 	{
-		final HttpServletRequest request = getRequest();
 		final Iterator<String> allRoles = roles.iterator();
 		boolean result = true;
 		while (allRoles.hasNext() && result)
 		{
-			result = request.isUserInRole(allRoles.next());
+			result = isUserInRole(allRoles.next());
 		}
 		return result;
 	}
@@ -54,12 +56,11 @@ public class UserPrincipalRoles extends Roles
 	@Override
 	public final boolean hasAnyRole(Roles roles)
 	{
-		final HttpServletRequest request = getRequest();
 		final Iterator<String> allRoles = roles.iterator();
 		boolean result = false;
 		while (allRoles.hasNext() && !result)
 		{
-			result = request.isUserInRole(allRoles.next());
+			result = isUserInRole(allRoles.next());
 		}
 		return result;
 	}
@@ -67,6 +68,15 @@ public class UserPrincipalRoles extends Roles
 	@Override
 	public final boolean hasRole(String role)
 	{
+		return isUserInRole(role);
+	}
+
+	private static boolean isUserInRole(String role)
+	{
+		if (Session.exists() && Session.get() instanceof ServletContainerAuthenticatedWebSession)
+		{
+			return ((ServletContainerAuthenticatedWebSession) Session.get()).isUserInRole(role);
+		}
 		return getRequest().isUserInRole(role);
 	}
 
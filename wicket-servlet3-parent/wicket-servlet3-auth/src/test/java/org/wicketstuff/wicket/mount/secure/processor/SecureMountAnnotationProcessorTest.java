@@ -0,0 +1,138 @@
+/*
+ * Copyright 2014 WicketStuff.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.wicket.mount.secure.processor;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import javax.tools.JavaCompiler;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.wicketstuff.wicket.servlet3.auth.PageRolesInfo;
+
+/**
+ * Compiles a small application with the processor and checks the generated
+ * {@link PageRolesInfo}.
+ */
+public class SecureMountAnnotationProcessorTest
+{
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private URLClassLoader classLoader;
+
+	@Before
+	public void compile() throws IOException
+	{
+		final File sources = folder.newFolder("src");
+		final File classes = folder.newFolder("classes");
+		write(sources, "app/App.java",
+				"package app;",
+				"@org.wicketstuff.wicket.servlet3.auth.annotation.SecureAutoMount",
+				"public abstract class App extends org.apache.wicket.protocol.http.WebApplication {}");
+		write(sources, "app/AdminPage.java",
+				"package app;",
+				"@org.apache.wicket.authroles.authorization.strategies.role.annotations.AuthorizeInstantiation({\"ADMIN\", \"DEV\"})",
+				"public class AdminPage extends org.apache.wicket.markup.html.WebPage {}");
+		write(sources, "app/ReportPage.java",
+				"package app;",
+				"import org.apache.wicket.authroles.authorization.strategies.role.annotations.*;",
+				"@org.wicketstuff.wicket.mount.core.annotation.MountPath(\"report\")",
+				"@AuthorizeInstantiations(ruleset = { @AuthorizeInstantiation(\"DEV\"), @AuthorizeInstantiation(\"REPORT\") })",
+				"public class ReportPage extends org.apache.wicket.markup.html.WebPage {}");
+		write(sources, "app/PublicPage.java",
+				"package app;",
+				"@org.wicketstuff.wicket.mount.core.annotation.MountPath(\"public\")",
+				"public class PublicPage extends org.apache.wicket.markup.html.WebPage {}");
+
+		final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		final StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, StandardCharsets.UTF_8);
+		try
+		{
+			final String classPath = System.getProperty("surefire.test.class.path", System.getProperty("java.class.path"));
+			final JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, null,
+					Arrays.asList("-classpath", classPath, "-d", classes.getPath(), "-s", classes.getPath()), null,
+					fileManager.getJavaFileObjects(new File(sources, "app").listFiles()));
+			task.setProcessors(Collections.singletonList(new SecureMountAnnotationProcessor()));
+			assertTrue(task.call());
+		} finally
+		{
+			fileManager.close();
+		}
+		classLoader = new URLClassLoader(new URL[]{classes.toURI().toURL()}, getClass().getClassLoader());
+	}
+
+	@After
+	public void close() throws IOException
+	{
+		classLoader.close();
+	}
+
+	@Test
+	public void generatesRoleSetsPerPage() throws Exception
+	{
+		final PageRolesInfo info = (PageRolesInfo) classLoader.loadClass("app.AppPageRolesInfo").newInstance();
+
+		final List<String> roles = Arrays.asList(info.getRoles());
+		assertEquals(new HashSet<String>(Arrays.asList("ADMIN", "DEV", "REPORT")), new HashSet<String>(roles));
+		assertEquals(3, roles.size());
+
+		final Map<Class<?>, BitSet[]> pageRoles = info.getPageRoles();
+		assertEquals(3, pageRoles.size());
+		assertArrayEquals(new BitSet[]{bits(roles, "ADMIN", "DEV")}, pageRoles.get(classLoader.loadClass("app.AdminPage")));
+		assertArrayEquals(new BitSet[]{bits(roles, "DEV"), bits(roles, "REPORT")},
+				pageRoles.get(classLoader.loadClass("app.ReportPage")));
+		assertArrayEquals(new BitSet[0], pageRoles.get(classLoader.loadClass("app.PublicPage")));
+	}
+
+	private static BitSet bits(List<String> roles, String... names)
+	{
+		final BitSet bits = new BitSet();
+		for (String name : names)
+		{
+			bits.set(roles.indexOf(name));
+		}
+		return bits;
+	}
+
+	private static void write(File dir, String path, String... lines) throws IOException
+	{
+		final File file = new File(dir, path);
+		file.getParentFile().mkdirs();
+		Files.write(file.toPath(), Arrays.asList(lines), StandardCharsets.UTF_8);
+	}
+}
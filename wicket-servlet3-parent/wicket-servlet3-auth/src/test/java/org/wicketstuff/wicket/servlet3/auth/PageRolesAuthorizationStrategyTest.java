@@ -0,0 +1,255 @@
+/*
+ * Copyright 2014 WicketStuff.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.wicket.servlet3.auth;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.wicket.Component;
+import org.apache.wicket.Session;
+import org.apache.wicket.authorization.Action;
+import org.apache.wicket.authorization.IAuthorizationStrategy;
+import org.apache.wicket.markup.html.WebPage;
+import org.apache.wicket.mock.MockApplication;
+import org.apache.wicket.protocol.http.mock.MockHttpServletRequest;
+import org.apache.wicket.request.IRequestCycle;
+import org.apache.wicket.request.IRequestHandler;
+import org.apache.wicket.request.Request;
+import org.apache.wicket.request.Response;
+import org.apache.wicket.request.component.IRequestableComponent;
+import org.apache.wicket.request.mapper.parameter.PageParameters;
+import org.apache.wicket.request.resource.IResource;
+import org.apache.wicket.util.tester.WicketTester;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PageRolesAuthorizationStrategyTest
+{
+
+	private static final String[] ROLES = {"ADMIN", "DEV", "REPORT"};
+
+	private final Set<String> containerRoles = new HashSet<String>();
+
+	private final List<String> containerChecks = new ArrayList<String>();
+
+	private boolean cachingRoles = true;
+
+	private WicketTester tester;
+
+	private PageRolesAuthorizationStrategy strategy;
+
+	@Before
+	public void before()
+	{
+		tester = new WicketTester(new MockApplication()
+		{
+			@Override
+			public Session newSession(Request request, Response response)
+			{
+				return new TestSession(request);
+			}
+		});
+
+		final Map<Class<?>, BitSet[]> pageRoles = new HashMap<Class<?>, BitSet[]>();
+		pageRoles.put(AdminPage.class, new BitSet[]{bits(0, 1)});
+		pageRoles.put(ReportPage.class, new BitSet[]{bits(1), bits(2)});
+		pageRoles.put(PublicPage.class, new BitSet[0]);
+		strategy = new PageRolesAuthorizationStrategy(new PageRolesInfo()
+		{
+			@Override
+			public String[] getRoles()
+			{
+				return ROLES;
+			}
+
+			@Override
+			public Map<Class<?>, BitSet[]> getPageRoles()
+			{
+				return pageRoles;
+			}
+		}, new DenyingStrategy());
+	}
+
+	@After
+	public void after()
+	{
+		tester.destroy();
+	}
+
+	@Test
+	public void authorizesWithAnyRoleOfEachSet()
+	{
+		containerRoles.add("ADMIN");
+		assertEquals(Arrays.asList(true, false, true, false), authorize(true));
+
+		containerRoles.add("DEV");
+		containerRoles.add("REPORT");
+		((TestSession) tester.getSession()).invalidateRoles();
+		assertEquals(Arrays.asList(true, true, true, false), authorize(true));
+	}
+
+	@Test
+	public void signedOutUserHasNoRoles()
+	{
+		containerRoles.addAll(Arrays.asList(ROLES));
+
+		assertEquals(Arrays.asList(false, false, true, false), authorize(false));
+		assertTrue(containerChecks.isEmpty());
+	}
+
+	@Test
+	public void cachesGrantedRolesForSession()
+	{
+		containerRoles.add("DEV");
+		assertEquals(Arrays.asList(true, false, true, false), authorize(true));
+		assertEquals(3, containerChecks.size());
+
+		containerRoles.add("REPORT");
+		assertEquals(Arrays.asList(true, false, true, false), authorize(true));
+		assertEquals(3, containerChecks.size());
+	}
+
+	@Test
+	public void cachesGrantedRolesForRequestOnly()
+	{
+		cachingRoles = false;
+		containerRoles.add("DEV");
+		assertEquals(Arrays.asList(true, false, true, false), authorize(true));
+		assertEquals(3, containerChecks.size());
+
+		containerRoles.add("REPORT");
+		assertEquals(Arrays.asList(true, true, true, false), authorize(true));
+		assertEquals(6, containerChecks.size());
+	}
+
+	/**
+	 * Checks the pages in a request of a user that is signed in or not.
+	 *
+	 * @return the authorization of the admin, report, public and unknown page
+	 */
+	private List<Boolean> authorize(final boolean signedIn)
+	{
+		final List<Boolean> result = new ArrayList<Boolean>();
+		final MockHttpServletRequest request = new MockHttpServletRequest(tester.getApplication(),
+				tester.getHttpSession(), tester.getServletContext())
+		{
+			@Override
+			public boolean isUserInRole(String role)
+			{
+				containerChecks.add(role);
+				return containerRoles.contains(role);
+			}
+		};
+		tester.processRequest(request, new IRequestHandler()
+		{
+			@Override
+			public void respond(IRequestCycle requestCycle)
+			{
+				((TestSession) Session.get()).setSignedIn(signedIn);
+				result.add(strategy.isInstantiationAuthorized(AdminPage.class));
+				result.add(strategy.isInstantiationAuthorized(ReportPage.class));
+				result.add(strategy.isInstantiationAuthorized(PublicPage.class));
+				result.add(strategy.isInstantiationAuthorized(OtherPage.class));
+			}
+		});
+		return result;
+	}
+
+	private static BitSet bits(int... indexes)
+	{
+		final BitSet bits = new BitSet();
+		for (int index : indexes)
+		{
+			bits.set(index);
+		}
+		return bits;
+	}
+
+	private class TestSession extends ServletContainerAuthenticatedWebSession
+	{
+		private static final long serialVersionUID = 1L;
+
+		TestSession(Request request)
+		{
+			super(request);
+		}
+
+		void setSignedIn(boolean signedIn)
+		{
+			signIn(signedIn);
+		}
+
+		@Override
+		protected boolean isCachingRoles()
+		{
+			return cachingRoles;
+		}
+	}
+
+	/**
+	 * Denies all, to tell delegated checks apart.
+	 */
+	private static class DenyingStrategy implements IAuthorizationStrategy
+	{
+		@Override
+		public <T extends IRequestableComponent> boolean isInstantiationAuthorized(Class<T> componentClass)
+		{
+			return false;
+		}
+
+		@Override
+		public boolean isActionAuthorized(Component component, Action action)
+		{
+			return false;
+		}
+
+		@Override
+		public boolean isResourceAuthorized(IResource resource, PageParameters parameters)
+		{
+			return false;
+		}
+	}
+
+	private static class AdminPage extends WebPage
+	{
+		private static final long serialVersionUID = 1L;
+	}
+
+	private static class ReportPage extends WebPage
+	{
+		private static final long serialVersionUID = 1L;
+	}
+
+	private static class PublicPage extends WebPage
+	{
+		private static final long serialVersionUID = 1L;
+	}
+
+	private static class OtherPage extends WebPage
+	{
+		private static final long serialVersionUID = 1L;
+	}
+}
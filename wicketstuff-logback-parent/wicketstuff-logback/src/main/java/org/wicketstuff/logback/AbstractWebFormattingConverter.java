@@ -13,8 +13,9 @@
  */
 package org.wicketstuff.logback;
 
+import java.util.List;
+
 import javax.servlet.http.HttpServletRequest;
-import javax.servlet.http.HttpSession;
 
 import ch.qos.logback.classic.pattern.ClassicConverter;
 import ch.qos.logback.classic.spi.ILoggingEvent;
@@ -30,22 +31,77 @@ import ch.qos.logback.classic.spi.ILoggingEvent;
  * Message format:
  * <code>$method $requestUrl?$queryString $sessionId $remoteUser $remoteAddr:$remotePort $localAddr:$localPort $x-forwarded-for $user-agent</code>
  * </p>
+ * <p>
+ * The printed parts can be limited by options naming {@link WebInfo.Field}s, for example
+ * <code>%web{method,url,session}</code>. Only the parts used by the converters of a logback
+ * context are read from the request.
+ * </p>
+ * <p>
+ * If the web information was copied into the MDC when the event was created (see
+ * {@link WicketWebContextTurboFilter}) it is taken from there, so it is also available when the
+ * event is formatted on another thread, e.g. behind an {@code AsyncAppender}.
+ * </p>
  * 
  * @author akiraly
  */
 public abstract class AbstractWebFormattingConverter extends ClassicConverter
 {
 	/**
-	 * Used as request attribute key to cache web information String for a request.
+	 * Used as request attribute key to cache the {@link WebInfo} of a request.
 	 */
 	public static final String RA_WEB_INFO = AbstractWebFormattingConverter.class.getName() +
 		".RA_WEB_INFO";
 
+	private int fields = WebInfo.ALL_FIELDS;
+
+	@Override
+	public void start()
+	{
+		List<String> options = getOptionList();
+		if (options != null && !options.isEmpty())
+		{
+			fields = 0;
+			for (String option : options)
+			{
+				WebInfo.Field field = WebInfo.Field.forKey(option.trim());
+				if (field == null)
+					addError("Unknown web field: " + option);
+				else
+					fields |= field.mask();
+			}
+		}
+		WebInfo.registerFields(getContext(), fields);
+		super.start();
+	}
+
 	@Override
 	public String convert(ILoggingEvent event)
 	{
-		String webString = getWebString();
-		return webString == null ? "" : webString;
+		WebInfo webInfo = getWebInfo(event);
+		if (webInfo == null)
+			return "";
+
+		StringBuilder buf = new StringBuilder(256);
+		webInfo.appendTo(buf, fields);
+		return buf.toString();
+	}
+
+	/**
+	 * @param event
+	 * @return web information captured with the event or of the current request, null if none
+	 *         available
+	 */
+	protected WebInfo getWebInfo(ILoggingEvent event)
+	{
+		WebInfo webInfo = WebInfo.fromMdc(event.getMDCPropertyMap());
+		if (webInfo != null)
+			return webInfo;
+
+		HttpServletRequest request = getRequest();
+		if (request == null)
+			return null;
+
+		return getWebInfo(request, WebInfo.getFields(getContext()));
 	}
 
 	/**
@@ -58,21 +114,27 @@ public abstract class AbstractWebFormattingConverter extends ClassicConverter
 		if (request == null)
 			return null;
 
-		Object raAttribute = request.getAttribute(RA_WEB_INFO);
-		if (raAttribute != null)
-			return raAttribute.toString();
-
-		HttpSession session = request.getSession(false);
+		return getWebInfo(request, WebInfo.getFields(getContext())).toString();
+	}
 
-		String webString = request.getMethod() + " " + request.getRequestURL() + "?" +
-			request.getQueryString() + " " + (session != null ? session.getId() : null) + " " +
-			request.getRemoteUser() + " " + request.getRemoteAddr() + ":" +
-			request.getRemotePort() + " " + request.getLocalAddr() + ":" + request.getLocalPort() +
-			" " + request.getHeader("X-Forwarded-For") + " " + request.getHeader("User-Agent");
+	/**
+	 * Returns the web information of a request, captured once per request.
+	 * 
+	 * @param request
+	 * @param fields
+	 *            mask of the fields to capture
+	 * @return web information of the request
+	 */
+	static WebInfo getWebInfo(HttpServletRequest request, int fields)
+	{
+		Object raAttribute = request.getAttribute(RA_WEB_INFO);
+		if (raAttribute instanceof WebInfo)
+			return (WebInfo)raAttribute;
 
-		request.setAttribute(RA_WEB_INFO, webString);
+		WebInfo webInfo = WebInfo.capture(request, fields);
+		request.setAttribute(RA_WEB_INFO, webInfo);
 
-		return webString;
+		return webInfo;
 	}
 
 	/**
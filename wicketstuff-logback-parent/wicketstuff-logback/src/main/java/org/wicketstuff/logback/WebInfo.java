@@ -0,0 +1,360 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.logback;
+
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSession;
+
+import org.slf4j.MDC;
+
+import ch.qos.logback.core.Context;
+
+/**
+ * <p>
+ * Snapshot of the web information of a request, as printed by {@link AbstractWebFormattingConverter}.
+ * Only the values of the requested {@link Field}s are read from the request, they are kept as they
+ * are and only joined when appended to the log message.
+ * </p>
+ * <p>
+ * A snapshot can be copied into the MDC of the current thread, so it is carried along with logging
+ * events processed on other threads, see {@link WicketWebContextTurboFilter}.
+ * </p>
+ */
+public final class WebInfo
+{
+	/**
+	 * The parts of the web information, in the order they are printed.
+	 */
+	public enum Field
+	{
+		/** request method */
+		METHOD("method"),
+		/** request url and query string */
+		URL("url"),
+		/** session id */
+		SESSION("session"),
+		/** remote user */
+		USER("user"),
+		/** remote address and port */
+		REMOTE("remote"),
+		/** local address and port */
+		LOCAL("local"),
+		/** X-Forwarded-For header */
+		FORWARDED_FOR("forwardedFor"),
+		/** User-Agent header */
+		USER_AGENT("userAgent");
+
+		private final String key;
+
+		Field(String key)
+		{
+			this.key = key;
+		}
+
+		/**
+		 * @return name of the field in converter options
+		 */
+		public String getKey()
+		{
+			return key;
+		}
+
+		/**
+		 * @return bit of the field in a field mask
+		 */
+		public int mask()
+		{
+			return 1 << ordinal();
+		}
+
+		/**
+		 * @param key
+		 * @return field with the given name or null
+		 */
+		public static Field forKey(String key)
+		{
+			for (Field field : values())
+				if (field.key.equalsIgnoreCase(key))
+					return field;
+			return null;
+		}
+	}
+
+	/**
+	 * Mask of all fields.
+	 */
+	public static final int ALL_FIELDS = (1 << Field.values().length) - 1;
+
+	/**
+	 * Prefix of the MDC keys of the captured values.
+	 */
+	public static final String MDC_PREFIX = "web.";
+
+	/**
+	 * MDC key present if the web information was captured into the MDC.
+	 */
+	public static final String MDC_CAPTURED = MDC_PREFIX + "captured";
+
+	private static final String MDC_METHOD = MDC_PREFIX + "method";
+	private static final String MDC_URL = MDC_PREFIX + "url";
+	private static final String MDC_QUERY = MDC_PREFIX + "query";
+	private static final String MDC_SESSION = MDC_PREFIX + "session";
+	private static final String MDC_USER = MDC_PREFIX + "user";
+	private static final String MDC_REMOTE_ADDR = MDC_PREFIX + "remoteAddr";
+	private static final String MDC_REMOTE_PORT = MDC_PREFIX + "remotePort";
+	private static final String MDC_LOCAL_ADDR = MDC_PREFIX + "localAddr";
+	private static final String MDC_LOCAL_PORT = MDC_PREFIX + "localPort";
+	private static final String MDC_FORWARDED_FOR = MDC_PREFIX + "forwardedFor";
+	private static final String MDC_USER_AGENT = MDC_PREFIX + "userAgent";
+
+	private static final String[] MDC_KEYS = { MDC_METHOD, MDC_URL, MDC_QUERY, MDC_SESSION,
+			MDC_USER, MDC_REMOTE_ADDR, MDC_REMOTE_PORT, MDC_LOCAL_ADDR, MDC_LOCAL_PORT,
+			MDC_FORWARDED_FOR, MDC_USER_AGENT, MDC_CAPTURED };
+
+	/**
+	 * Logback context object key of the fields used by the converters of that context.
+	 */
+	private static final String CONTEXT_FIELDS = WebInfo.class.getName() + ".FIELDS";
+
+	private final int fields;
+
+	private String method;
+	private String requestUrl;
+	private String queryString;
+	private String sessionId;
+	private String remoteUser;
+	private String remoteAddr;
+	private String remotePort;
+	private String localAddr;
+	private String localPort;
+	private String forwardedFor;
+	private String userAgent;
+
+	private WebInfo(int fields)
+	{
+		this.fields = fields;
+	}
+
+	/**
+	 * Reads the given fields of a request.
+	 *
+	 * @param request
+	 * @param fields
+	 *            mask of the {@link Field}s to read
+	 * @return snapshot of the request
+	 */
+	public static WebInfo capture(HttpServletRequest request, int fields)
+	{
+		WebInfo info = new WebInfo(fields);
+		if (has(fields, Field.METHOD))
+			info.method = request.getMethod();
+		if (has(fields, Field.URL))
+		{
+			StringBuffer url = request.getRequestURL();
+			info.requestUrl = url != null ? url.toString() : null;
+			info.queryString = request.getQueryString();
+		}
+		if (has(fields, Field.SESSION))
+		{
+			HttpSession session = request.getSession(false);
+			info.sessionId = session != null ? session.getId() : null;
+		}
+		if (has(fields, Field.USER))
+			info.remoteUser = request.getRemoteUser();
+		if (has(fields, Field.REMOTE))
+		{
+			info.remoteAddr = request.getRemoteAddr();
+			info.remotePort = Integer.toString(request.getRemotePort());
+		}
+		if (has(fields, Field.LOCAL))
+		{
+			info.localAddr = request.getLocalAddr();
+			info.localPort = Integer.toString(request.getLocalPort());
+		}
+		if (has(fields, Field.FORWARDED_FOR))
+			info.forwardedFor = request.getHeader("X-Forwarded-For");
+		if (has(fields, Field.USER_AGENT))
+			info.userAgent = request.getHeader("User-Agent");
+		return info;
+	}
+
+	/**
+	 * Reads the values copied by {@link #putIntoMdc()} from the MDC property map of a logging
+	 * event.
+	 *
+	 * @param mdc
+	 *            MDC property map, may be null
+	 * @return snapshot or null if none was copied into the map
+	 */
+	public static WebInfo fromMdc(Map<String, String> mdc)
+	{
+		if (mdc == null || !mdc.containsKey(MDC_CAPTURED))
+			return null;
+
+		WebInfo info = new WebInfo(ALL_FIELDS);
+		info.method = mdc.get(MDC_METHOD);
+		info.requestUrl = mdc.get(MDC_URL);
+		info.queryString = mdc.get(MDC_QUERY);
+		info.sessionId = mdc.get(MDC_SESSION);
+		info.remoteUser = mdc.get(MDC_USER);
+		info.remoteAddr = mdc.get(MDC_REMOTE_ADDR);
+		info.remotePort = mdc.get(MDC_REMOTE_PORT);
+		info.localAddr = mdc.get(MDC_LOCAL_ADDR);
+		info.localPort = mdc.get(MDC_LOCAL_PORT);
+		info.forwardedFor = mdc.get(MDC_FORWARDED_FOR);
+		info.userAgent = mdc.get(MDC_USER_AGENT);
+		return info;
+	}
+
+	/**
+	 * Copies the captured values into the MDC of the current thread, replacing earlier ones.
+	 */
+	public void putIntoMdc()
+	{
+		put(MDC_METHOD, method);
+		put(MDC_URL, requestUrl);
+		put(MDC_QUERY, queryString);
+		put(MDC_SESSION, sessionId);
+		put(MDC_USER, remoteUser);
+		put(MDC_REMOTE_ADDR, remoteAddr);
+		put(MDC_REMOTE_PORT, remotePort);
+		put(MDC_LOCAL_ADDR, localAddr);
+		put(MDC_LOCAL_PORT, localPort);
+		put(MDC_FORWARDED_FOR, forwardedFor);
+		put(MDC_USER_AGENT, userAgent);
+		MDC.put(MDC_CAPTURED, "");
+	}
+
+	/**
+	 * Removes the values copied by {@link #putIntoMdc()} from the MDC of the current thread.
+	 */
+	public static void removeFromMdc()
+	{
+		for (String key : MDC_KEYS)
+			MDC.remove(key);
+	}
+
+	private static void put(String key, String value)
+	{
+		if (value == null)
+			MDC.remove(key);
+		else
+			MDC.put(key, value);
+	}
+
+	/**
+	 * Appends the given fields, missing values are printed as "null".
+	 *
+	 * @param buf
+	 * @param fields
+	 *            mask of the {@link Field}s to append
+	 */
+	public void appendTo(StringBuilder buf, int fields)
+	{
+		boolean first = true;
+		for (Field field : Field.values())
+		{
+			if (!has(fields, field))
+				continue;
+			if (!first)
+				buf.append(' ');
+			first = false;
+
+			switch (field)
+			{
+				case METHOD :
+					buf.append(method);
+					break;
+				case URL :
+					buf.append(requestUrl).append('?').append(queryString);
+					break;
+				case SESSION :
+					buf.append(sessionId);
+					break;
+				case USER :
+					buf.append(remoteUser);
+					break;
+				case REMOTE :
+					buf.append(remoteAddr).append(':').append(remotePort);
+					break;
+				case LOCAL :
+					buf.append(localAddr).append(':').append(localPort);
+					break;
+				case FORWARDED_FOR :
+					buf.append(forwardedFor);
+					break;
+				case USER_AGENT :
+					buf.append(userAgent);
+					break;
+			}
+		}
+	}
+
+	/**
+	 * @return mask of the fields read from the request
+	 */
+	public int getFields()
+	{
+		return fields;
+	}
+
+	/**
+	 * @return the captured fields in the format of {@link AbstractWebFormattingConverter}
+	 */
+	@Override
+	public String toString()
+	{
+		StringBuilder buf = new StringBuilder(256);
+		appendTo(buf, fields);
+		return buf.toString();
+	}
+
+	/**
+	 * Records fields used by a converter of a logback context.
+	 *
+	 * @param context
+	 *            logback context, may be null
+	 * @param fields
+	 *            mask of the used fields
+	 */
+	static void registerFields(Context context, int fields)
+	{
+		if (context == null)
+			return;
+		synchronized (context)
+		{
+			Object registered = context.getObject(CONTEXT_FIELDS);
+			int all = registered instanceof Integer ? (Integer)registered | fields : fields;
+			context.putObject(CONTEXT_FIELDS, all);
+		}
+	}
+
+	/**
+	 * @param context
+	 *            logback context, may be null
+	 * @return mask of the fields used by the converters of the context, all if unknown
+	 */
+	static int getFields(Context context)
+	{
+		Object registered = context != null ? context.getObject(CONTEXT_FIELDS) : null;
+		return registered instanceof Integer ? (Integer)registered : ALL_FIELDS;
+	}
+
+	private static boolean has(int fields, Field field)
+	{
+		return (fields & field.mask()) != 0;
+	}
+}
@@ -0,0 +1,94 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wicketstuff.logback;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.slf4j.Marker;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.core.spi.FilterReply;
+
+/**
+ * <p>
+ * A {@link TurboFilter} copying the web information of the current wicket request into the MDC
+ * before a logging event is created, so {@link WicketWebFormattingConverter} can print it even
+ * when the event is formatted on another thread, like the worker of an {@code AsyncAppender}.
+ * </p>
+ * <p>
+ * The information is captured once per request and thread, only when an event is actually logged
+ * and only the fields used by the converters of the logback context. It is removed from the MDC
+ * by the first event logged outside of a request. The filter never denies or accepts events.
+ * </p>
+ *
+ * <pre>
+ * <code>
+ * {@literal
+ * <turboFilter class="org.wicketstuff.logback.WicketWebContextTurboFilter" />
+ *
+ * <conversionRule conversionWord="web"
+ *     converterClass="org.wicketstuff.logback.WicketWebFormattingConverter" />
+ *
+ * <appender name="async" class="ch.qos.logback.classic.AsyncAppender">
+ *     <appender-ref ref="consoleAppender" />
+ * </appender>
+ * }
+ * </code>
+ * </pre>
+ */
+public class WicketWebContextTurboFilter extends TurboFilter
+{
+	/**
+	 * The information last copied into the MDC of a thread.
+	 */
+	private final ThreadLocal<WebInfo> captured = new ThreadLocal<WebInfo>();
+
+	@Override
+	public FilterReply decide(Marker marker, Logger logger, Level level, String format,
+		Object[] params, Throwable t)
+	{
+		if (!isStarted() || level == null || !level.isGreaterOrEqual(logger.getEffectiveLevel()))
+			return FilterReply.NEUTRAL;
+
+		HttpServletRequest request = getRequest();
+		if (request == null)
+		{
+			if (captured.get() != null)
+			{
+				captured.remove();
+				WebInfo.removeFromMdc();
+			}
+			return FilterReply.NEUTRAL;
+		}
+
+		WebInfo webInfo = AbstractWebFormattingConverter.getWebInfo(request,
+			WebInfo.getFields(getContext()));
+		if (webInfo != captured.get())
+		{
+			webInfo.putIntoMdc();
+			captured.set(webInfo);
+		}
+		return FilterReply.NEUTRAL;
+	}
+
+	/**
+	 * @return current request object or null if none available
+	 */
+	protected HttpServletRequest getRequest()
+	{
+		return WicketWebFormattingConverter.getWicketRequest();
+	}
+}
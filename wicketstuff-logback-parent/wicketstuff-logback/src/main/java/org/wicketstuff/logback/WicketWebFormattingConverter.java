@@ -61,6 +61,8 @@ import org.apache.wicket.request.cycle.RequestCycle;
  * </pre>
  * 
  * The full message format is available in the javadoc of {@link AbstractWebFormattingConverter}.
+ * To keep the web information when logging through an {@code AsyncAppender}, also register the
+ * {@link WicketWebContextTurboFilter}.
  * 
  * </p>
  * <p>
@@ -89,6 +91,15 @@ public class WicketWebFormattingConverter extends AbstractWebFormattingConverter
 
 	@Override
 	protected HttpServletRequest getRequest()
+	{
+		return getWicketRequest();
+	}
+
+	/**
+	 * @return the {@link HttpServletRequest} of the current wicket request or null if none
+	 *         available
+	 */
+	static HttpServletRequest getWicketRequest()
 	{
 		RequestCycle cycle = RequestCycle.get();
 		if (cycle == null)
@@ -0,0 +1,112 @@
+package org.wicketstuff.logback;
+
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.MDC;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+
+/**
+ * Tests for {@link WicketWebFormattingConverter} formatting web information captured into the MDC.
+ */
+public class WicketWebFormattingConverterTest
+{
+	private final LoggerContext context = new LoggerContext();
+
+	@After
+	public void after()
+	{
+		MDC.clear();
+	}
+
+	@Test
+	public void noRequest()
+	{
+		WicketWebFormattingConverter converter = newConverter(Collections.<String> emptyList());
+
+		Assert.assertEquals("", converter.convert(newEvent()));
+	}
+
+	@Test
+	public void allFieldsFromMdc()
+	{
+		WicketWebFormattingConverter converter = newConverter(Collections.<String> emptyList());
+		captureIntoMdc(WebInfo.ALL_FIELDS);
+
+		// the event keeps its MDC after the request is gone
+		ILoggingEvent event = newEvent();
+		((LoggingEvent)event).prepareForDeferredProcessing();
+		WebInfo.removeFromMdc();
+
+		Assert.assertEquals(
+			"GET http://localhost/app/?a=1 null null 127.0.0.1:1234 127.0.0.2:80 null Mozilla",
+			converter.convert(event));
+	}
+
+	@Test
+	public void selectedFields()
+	{
+		WicketWebFormattingConverter converter = newConverter(Arrays.asList("url", "method"));
+		captureIntoMdc(WebInfo.getFields(context));
+
+		Assert.assertEquals(WebInfo.Field.METHOD.mask() | WebInfo.Field.URL.mask(),
+			WebInfo.getFields(context));
+		Assert.assertEquals("GET http://localhost/app/?a=1", converter.convert(newEvent()));
+	}
+
+	private WicketWebFormattingConverter newConverter(List<String> options)
+	{
+		WicketWebFormattingConverter converter = new WicketWebFormattingConverter();
+		converter.setContext(context);
+		converter.setOptionList(options);
+		converter.start();
+		return converter;
+	}
+
+	private ILoggingEvent newEvent()
+	{
+		return new LoggingEvent(getClass().getName(), context.getLogger(getClass()), Level.WARN,
+			"message", null, null);
+	}
+
+	private static void captureIntoMdc(int fields)
+	{
+		HttpServletRequest request = (HttpServletRequest)Proxy.newProxyInstance(
+			WicketWebFormattingConverterTest.class.getClassLoader(),
+			new Class<?>[] { HttpServletRequest.class }, (proxy, method, args) -> {
+				switch (method.getName())
+				{
+					case "getMethod" :
+						return "GET";
+					case "getRequestURL" :
+						return new StringBuffer("http://localhost/app/");
+					case "getQueryString" :
+						return "a=1";
+					case "getRemoteAddr" :
+						return "127.0.0.1";
+					case "getRemotePort" :
+						return 1234;
+					case "getLocalAddr" :
+						return "127.0.0.2";
+					case "getLocalPort" :
+						return 80;
+					case "getHeader" :
+						return "User-Agent".equals(args[0]) ? "Mozilla" : null;
+					default :
+						return null;
+				}
+			});
+		WebInfo.capture(request, fields).putIntoMdc();
+	}
+}